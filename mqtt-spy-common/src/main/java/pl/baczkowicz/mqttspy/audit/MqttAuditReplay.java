@@ -20,15 +20,20 @@
 
 package pl.baczkowicz.mqttspy.audit;
 
+import java.io.File;
+import java.io.IOException;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import pl.baczkowicz.mqttspy.logger.MqttMessageLogParser;
-import pl.baczkowicz.mqttspy.logger.MqttMessageLogParserUtils;
+import pl.baczkowicz.mqttspy.connectivity.IMqttConnection;
+import pl.baczkowicz.mqttspy.logger.MqttBinaryMessageLog;
+import pl.baczkowicz.mqttspy.logger.MqttMessageLogLineParser;
 import pl.baczkowicz.mqttspy.messages.BaseMqttMessage;
 import pl.baczkowicz.spy.audit.AuditReplay;
+import pl.baczkowicz.spy.audit.IAuditReader;
+import pl.baczkowicz.spy.audit.StreamedAuditReader;
 import pl.baczkowicz.spy.exceptions.SpyException;
-import pl.baczkowicz.spy.exceptions.XMLException;
 import pl.baczkowicz.spy.messages.BaseMessage;
 
 public class MqttAuditReplay extends AuditReplay
@@ -38,22 +43,30 @@ public class MqttAuditReplay extends AuditReplay
 	
 	private boolean messageReadAhead = false;
 	
-	private final MqttMessageLogParser parser;	
-	
 	private BaseMqttMessage message;
 
 	private long messageIndex = 0;
 	
-	public MqttAuditReplay() throws SpyException
+	/** Connection to publish replayed messages on (can be null). */
+	private final IMqttConnection connection;
+	
+	/** The last created replay publisher (stopped with this object). */
+	private MqttReplayPublisher publisher;
+	
+	/** Reader of the XML message log (null if reading a binary log). */
+	private StreamedAuditReader lineReader;
+	
+	/** Reader of the binary message log (null if reading an XML log). */
+	private MqttBinaryAuditReader binaryReader;
+	
+	/**
+	 * Creates the MqttAuditReplay.
+	 * 
+	 * @param connection Connection to publish replayed messages on (can be null)
+	 */
+	public MqttAuditReplay(final IMqttConnection connection)
 	{
-		try
-		{
-			parser = new MqttMessageLogParser();
-		}
-		catch (XMLException e)
-		{
-			throw new SpyException("Cannot initiate the audit replay", e);
-		}	
+		this.connection = connection;
 	}
 	
 	private void processNextMessage()
@@ -62,9 +75,14 @@ public class MqttAuditReplay extends AuditReplay
 		{
 			messageIndex++;
 			
-			final String next = auditReader.getNextLine();
-			
-			message = MqttMessageLogParserUtils.convertToBaseMqttMessage(parser.parse(next));
+			if (binaryReader != null)
+			{
+				message = binaryReader.getNextMessage();
+			}
+			else
+			{
+				message = MqttMessageLogLineParser.parse(lineReader.getNextLine());
+			}
 			
 			messageReadAhead = true;
 		}
@@ -98,4 +116,115 @@ public class MqttAuditReplay extends AuditReplay
 		
 		return message;
 	}
+	
+	/**
+	 * Reads the next message, skipping any that cannot be parsed.
+	 * 
+	 * @return The message, or null if there are no more messages
+	 */
+	private synchronized BaseMqttMessage readNextMessage()
+	{
+		try
+		{
+			while (messageReadAhead || auditReader.hasNext())
+			{
+				if (!messageReadAhead)
+				{
+					processNextMessage();
+				}
+				
+				if (messageReadAhead)
+				{
+					messageReadAhead = false;
+					return message;
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			logger.error("Cannot read message number {}", messageIndex, e);
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Creates a publisher for replaying the messages from the current
+	 * position on the script's connection, on its own thread (as an
+	 * alternative to the time checker). The publisher needs to be started,
+	 * and can be paused, resumed and stopped.
+	 * 
+	 * @return The replay publisher
+	 */
+	public MqttReplayPublisher createPublisher()
+	{
+		if (connection == null)
+		{
+			throw new IllegalStateException("No connection available for publishing");
+		}
+		
+		if (auditReader == null)
+		{
+			throw new IllegalStateException("No message audit log read");
+		}
+		
+		publisher = new MqttReplayPublisher(this::readNextMessage, connection::publish);
+		
+		return publisher;
+	}
+	
+	@Override
+	public void stop()
+	{
+		super.stop();
+		
+		if (publisher != null)
+		{
+			publisher.stop();
+		}
+	}
+	
+	@Override
+	protected IAuditReader openAuditFile(final File file) throws SpyException
+	{
+		lineReader = null;
+		binaryReader = null;
+		
+		try
+		{
+			if (MqttBinaryMessageLog.isBinaryLog(file))
+			{
+				binaryReader = new MqttBinaryAuditReader(file);
+				return binaryReader;
+			}
+		}
+		catch (IOException e)
+		{
+			throw new SpyException("Cannot open file " + file, e);
+		}
+		
+		lineReader = new StreamedAuditReader();
+		lineReader.openAuditFile(file, this::decodeHeader);
+		
+		return lineReader;
+	}
+	
+	@Override
+	protected BaseMessage decodeHeader(final String line) throws SpyException
+	{
+		return MqttMessageLogLineParser.parseHeader(line);
+	}
+	
+	@Override
+	protected void messagePositionChanged(final long messageNumber)
+	{
+		messageReadAhead = false;
+		messageIndex = messageNumber;
+	}
+	
+	@Override
+	public long getMessagePosition()
+	{
+		return messageReadAhead ? messageIndex - 1 : messageIndex;
+	}
 }
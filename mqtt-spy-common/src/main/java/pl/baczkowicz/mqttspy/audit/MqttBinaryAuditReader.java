@@ -0,0 +1,283 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2015 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.mqttspy.audit;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.baczkowicz.mqttspy.logger.MqttBinaryMessageLogReader;
+import pl.baczkowicz.mqttspy.messages.BaseMqttMessage;
+import pl.baczkowicz.spy.audit.IAuditReader;
+import pl.baczkowicz.spy.exceptions.SpyException;
+
+/**
+ * Reads messages from a binary message log (see MqttBinaryMessageLog), one
+ * block at a time. Seeking uses the block headers (message counts and latest
+ * timestamps), so only the block containing the requested message is decoded.
+ * 
+ * Blocks that cannot be read are skipped.
+ */
+public class MqttBinaryAuditReader implements IAuditReader
+{
+	/** Diagnostic logger. */
+	private final static Logger logger = LoggerFactory.getLogger(MqttBinaryAuditReader.class);
+	
+	private final File file;
+	
+	private final MqttBinaryMessageLogReader reader;
+	
+	/** Latest timestamp up to the end of each block. */
+	private final long[] latestTimes;
+	
+	/** Messages of the current block. */
+	private List<BaseMqttMessage> blockMessages = Collections.emptyList();
+	
+	/** The current block (-1 if none read yet). */
+	private int block = -1;
+	
+	/** Index of the next message in the current block. */
+	private int index;
+	
+	/** Message counts per topic (null until first requested). */
+	private Map<String, Long> topics;
+	
+	/**
+	 * Opens the given binary message log.
+	 * 
+	 * @param file The log file
+	 * 
+	 * @throws SpyException Thrown when the file cannot be opened
+	 */
+	public MqttBinaryAuditReader(final File file) throws SpyException
+	{
+		this.file = file;
+		
+		try
+		{
+			this.reader = new MqttBinaryMessageLogReader(file, null);
+		}
+		catch (IOException e)
+		{
+			throw new SpyException("Cannot open file " + file, e);
+		}
+		
+		latestTimes = new long[reader.getBlockCount()];
+		long latestTime = Long.MIN_VALUE;
+		for (int i = 0; i < latestTimes.length; i++)
+		{
+			latestTime = Math.max(latestTime, reader.getMaxTimestamp(i));
+			latestTimes[i] = latestTime;
+		}
+	}
+	
+	private void readBlock(final int blockNumber)
+	{
+		try
+		{
+			blockMessages = reader.readBlock(blockNumber);
+		}
+		catch (IOException e)
+		{
+			logger.error("Cannot read block {} of {}", blockNumber, file, e);
+			blockMessages = Collections.emptyList();
+		}
+		
+		block = blockNumber;
+		index = 0;
+	}
+	
+	@Override
+	public boolean hasNext()
+	{
+		while (index >= blockMessages.size())
+		{
+			if (block + 1 >= reader.getBlockCount())
+			{
+				return false;
+			}
+			
+			readBlock(block + 1);
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Gets the next message.
+	 * 
+	 * @return The message
+	 * 
+	 * @throws EOFException Thrown when there are no more messages
+	 */
+	public BaseMqttMessage getNextMessage() throws EOFException
+	{
+		if (!hasNext())
+		{
+			throw new EOFException("No more messages in " + file);
+		}
+		
+		return blockMessages.get(index++);
+	}
+	
+	@Override
+	public long getPosition()
+	{
+		return block < 0 ? 0 : reader.getFirstMessage(block) + index;
+	}
+	
+	@Override
+	public long seekToMessage(final long messageNumber)
+	{
+		// Last block starting at or before the message
+		int low = 0;
+		int high = reader.getBlockCount() - 1;
+		int found = -1;
+		
+		while (low <= high)
+		{
+			final int middle = (low + high) >>> 1;
+			
+			if (reader.getFirstMessage(middle) <= messageNumber)
+			{
+				found = middle;
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle - 1;
+			}
+		}
+		
+		if (found < 0)
+		{
+			blockMessages = Collections.emptyList();
+			block = -1;
+			index = 0;
+		}
+		else
+		{
+			readBlock(found);
+			index = (int) Math.min(messageNumber - reader.getFirstMessage(found), blockMessages.size());
+		}
+		
+		return getPosition();
+	}
+	
+	@Override
+	public long seekToTime(final long time)
+	{
+		// First block by the end of which a message at or after the given time has been logged
+		int low = 0;
+		int high = latestTimes.length - 1;
+		int found = -1;
+		
+		while (low <= high)
+		{
+			final int middle = (low + high) >>> 1;
+			
+			if (latestTimes[middle] >= time)
+			{
+				found = middle;
+				high = middle - 1;
+			}
+			else
+			{
+				low = middle + 1;
+			}
+		}
+		
+		if (found < 0)
+		{
+			return seekToMessage(reader.getMessageCount());
+		}
+		
+		readBlock(found);
+		long latestTime = found > 0 ? latestTimes[found - 1] : Long.MIN_VALUE;
+		
+		while (index < blockMessages.size())
+		{
+			latestTime = Math.max(latestTime, blockMessages.get(index).getDate().getTime());
+			
+			if (latestTime >= time)
+			{
+				break;
+			}
+			
+			index++;
+		}
+		
+		return getPosition();
+	}
+	
+	@Override
+	public long getCount()
+	{
+		return reader.getMessageCount();
+	}
+	
+	@Override
+	public synchronized Map<String, Long> getTopics()
+	{
+		if (topics == null)
+		{
+			final Map<String, Long> counts = new HashMap<>();
+			
+			for (int i = 0; i < reader.getBlockCount(); i++)
+			{
+				try
+				{
+					for (final BaseMqttMessage message : reader.readBlock(i))
+					{
+						counts.merge(message.getTopic(), 1L, Long::sum);
+					}
+				}
+				catch (IOException e)
+				{
+					logger.error("Cannot read block {} of {}", i, file, e);
+				}
+			}
+			
+			topics = Collections.unmodifiableMap(counts);
+		}
+		
+		return topics;
+	}
+	
+	@Override
+	public void closeAuditFile()
+	{
+		try
+		{
+			reader.close();
+		}
+		catch (IOException e)
+		{
+			logger.error("Cannot close file {}", file, e);
+		}
+	}
+}
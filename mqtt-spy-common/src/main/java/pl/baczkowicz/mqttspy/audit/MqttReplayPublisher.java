@@ -0,0 +1,553 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2015 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.mqttspy.audit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.baczkowicz.mqttspy.connectivity.IMqttConnection;
+import pl.baczkowicz.mqttspy.messages.BaseMqttMessage;
+import pl.baczkowicz.spy.utils.ThreadingUtils;
+import pl.baczkowicz.spy.utils.tasks.StoppableTask;
+
+/**
+ * Replays messages on a dedicated thread, publishing them in batches. Each
+ * message gets a deadline (depending on the pacing mode), and the thread
+ * parks until the deadline of the next message, finishing with a short spin
+ * for precision. All messages due at that point (up to the batch size) are
+ * published together, so that a replay running behind catches up quickly.
+ * 
+ * The speed, rate and pacing mode can be changed while replaying - the
+ * schedule continues from the current replay position. Pausing stops the
+ * replay clock, so no messages become due while paused.
+ */
+public class MqttReplayPublisher implements StoppableTask, Runnable
+{
+	/** Diagnostic logger. */
+	private final static Logger logger = LoggerFactory.getLogger(MqttReplayPublisher.class);
+	
+	/** How messages get spread in time. */
+	public enum Pacing
+	{
+		/** Messages published with the logged intervals, divided by the speed. */
+		ORIGINAL_TIMING,
+		
+		/** Messages published at a fixed rate (messages per second). */
+		FIXED_RATE,
+		
+		/** Messages published as fast as the connection allows. */
+		AS_FAST_AS_POSSIBLE
+	}
+	
+	/** Default maximum number of messages published in one go. */
+	public static final int DEFAULT_BATCH_SIZE = 100;
+	
+	/** Deadline of messages published as fast as possible. */
+	private static final long NO_DEADLINE = Long.MIN_VALUE;
+	
+	/** Below this time to the deadline, the thread spins instead of parking. */
+	private static final long SPIN_THRESHOLD = TimeUnit.MICROSECONDS.toNanos(100);
+	
+	/** Maximum time to park in one go (so that changes are picked up). */
+	private static final long MAX_PARK_TIME = TimeUnit.MILLISECONDS.toNanos(10);
+	
+	/** How long to wait before retrying when no messages could be published. */
+	private static final long RETRY_INTERVAL = TimeUnit.MILLISECONDS.toNanos(1);
+	
+	/** Source of the messages to replay (returns null when there are no more). */
+	private final Supplier<BaseMqttMessage> source;
+	
+	/** Publishes a batch, returning the number of published messages (or PUBLICATION_FAILED). */
+	private final ToIntFunction<List<BaseMqttMessage>> publisher;
+	
+	private Pacing pacing = Pacing.ORIGINAL_TIMING;
+	
+	/** Speed for the original timing (1 is normal; 2 is twice the normal). */
+	private double speed = 1;
+	
+	/** Messages per second for the fixed rate. */
+	private double rate = 1000;
+	
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	
+	/** Replay clock: time at which the anchor message was (or would be) due. */
+	private long anchorNanos;
+	
+	/** Replay clock: logged time of the anchor message (in milliseconds, for the original timing). */
+	private double anchorLogTime;
+	
+	/** Replay clock: number of the anchor message (for the fixed rate). */
+	private double anchorIndex;
+	
+	/** Whether to re-anchor the clock at the next message (e.g. when starting). */
+	private volatile boolean reanchor = true;
+	
+	private volatile boolean running;
+	
+	private volatile boolean paused;
+	
+	/** When the replay has been paused. */
+	private long pausedAt;
+	
+	/** When the replay was started. */
+	private long startedAt;
+	
+	/** Total time spent paused. */
+	private long pausedTime;
+	
+	/** The next message to publish (read ahead). */
+	private BaseMqttMessage next;
+	
+	/** Number of the next message. */
+	private long nextIndex;
+	
+	private volatile long publishedCount;
+	
+	/** Number of messages taken for publishing, but not published (e.g. when stopped). */
+	private volatile long droppedCount;
+	
+	/** How late the last batch was published (in nanoseconds). */
+	private volatile long lag;
+	
+	private volatile Thread thread;
+	
+	/**
+	 * Creates the publisher.
+	 * 
+	 * @param source Source of the messages to replay (returns null when there are no more)
+	 * @param publisher Publishes a batch of messages, returning the number of published messages or PUBLICATION_FAILED (e.g. IMqttConnection::publish)
+	 */
+	public MqttReplayPublisher(final Supplier<BaseMqttMessage> source, final ToIntFunction<List<BaseMqttMessage>> publisher)
+	{
+		this.source = source;
+		this.publisher = publisher;
+	}
+	
+	/**
+	 * Starts replaying on a new thread. If the previous run has just been
+	 * stopped, waits for its thread to finish first.
+	 */
+	public void start()
+	{
+		if (running)
+		{
+			return;
+		}
+		
+		// Not synchronized, as the previous thread might need the lock to finish
+		final Thread previous = thread;
+		if (previous != null && previous != Thread.currentThread())
+		{
+			try
+			{
+				previous.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		
+		synchronized (this)
+		{
+			if (running)
+			{
+				return;
+			}
+			
+			running = true;
+			paused = false;
+			reanchor = true;
+			startedAt = System.nanoTime();
+			pausedTime = 0;
+			
+			thread = new Thread(this, "Replay publisher");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+	
+	@Override
+	public void stop()
+	{
+		running = false;
+		
+		final Thread current = thread;
+		if (current != null)
+		{
+			LockSupport.unpark(current);
+		}
+	}
+	
+	/**
+	 * Pauses the replay. No messages become due until resumed.
+	 */
+	public synchronized void pause()
+	{
+		if (!paused)
+		{
+			paused = true;
+			pausedAt = System.nanoTime();
+			logger.info("Replay paused after {} message(s)", publishedCount);
+		}
+	}
+	
+	/**
+	 * Resumes the paused replay, from where it was paused.
+	 */
+	public synchronized void resume()
+	{
+		if (paused)
+		{
+			final long duration = System.nanoTime() - pausedAt;
+			
+			// Shift the clock by the paused time
+			anchorNanos = anchorNanos + duration;
+			pausedTime = pausedTime + duration;
+			paused = false;
+			
+			if (thread != null)
+			{
+				LockSupport.unpark(thread);
+			}
+			logger.info("Replay resumed");
+		}
+	}
+	
+	/**
+	 * Sets the pacing mode.
+	 * 
+	 * @param pacing The pacing mode
+	 */
+	public synchronized void setPacing(final Pacing pacing)
+	{
+		this.pacing = pacing;
+		reanchor = true;
+	}
+	
+	/**
+	 * Sets the speed used with the original timing.
+	 * 
+	 * @param speed The replay speed (1 is normal; 2 is twice the normal; 0.5 is half the normal)
+	 */
+	public synchronized void setSpeed(final double speed)
+	{
+		if (speed <= 0)
+		{
+			throw new IllegalArgumentException("Speed must be positive: " + speed);
+		}
+		
+		moveAnchorToNow();
+		this.speed = speed;
+	}
+	
+	/**
+	 * Sets the rate used with the fixed rate pacing.
+	 * 
+	 * @param rate Messages per second
+	 */
+	public synchronized void setRate(final double rate)
+	{
+		if (rate <= 0)
+		{
+			throw new IllegalArgumentException("Rate must be positive: " + rate);
+		}
+		
+		moveAnchorToNow();
+		this.rate = rate;
+	}
+	
+	/**
+	 * Sets the maximum number of messages published in one go.
+	 * 
+	 * @param batchSize The batch size
+	 */
+	public synchronized void setBatchSize(final int batchSize)
+	{
+		this.batchSize = Math.max(1, batchSize);
+	}
+	
+	/**
+	 * Moves the clock's anchor to the current replay position, so that the
+	 * speed or rate can be changed without jumping back or forward.
+	 */
+	private void moveAnchorToNow()
+	{
+		final long now = paused ? pausedAt : System.nanoTime();
+		final double elapsed = now - anchorNanos;
+		
+		anchorLogTime = anchorLogTime + elapsed * speed / TimeUnit.MILLISECONDS.toNanos(1);
+		anchorIndex = anchorIndex + elapsed * rate / TimeUnit.SECONDS.toNanos(1);
+		anchorNanos = now;
+	}
+	
+	/**
+	 * Gets the time at which the given message is due.
+	 * 
+	 * @param message The message
+	 * @param index Number of the message
+	 * 
+	 * @return The deadline (as in System.nanoTime)
+	 */
+	private synchronized long getDeadline(final BaseMqttMessage message, final long index)
+	{
+		final long logTime = message.getDate().getTime();
+		
+		if (reanchor)
+		{
+			anchorNanos = System.nanoTime();
+			anchorLogTime = logTime;
+			anchorIndex = index;
+			reanchor = false;
+		}
+		
+		switch (pacing)
+		{
+			case ORIGINAL_TIMING:
+				// Messages logged out of order are simply published late
+				return anchorNanos + (long) ((logTime - anchorLogTime) * TimeUnit.MILLISECONDS.toNanos(1) / speed);
+			case FIXED_RATE:
+				return anchorNanos + (long) ((index - anchorIndex) * TimeUnit.SECONDS.toNanos(1) / rate);
+			default:
+				return NO_DEADLINE;
+		}
+	}
+	
+	@Override
+	public void run()
+	{
+		ThreadingUtils.logThreadStarting("Replay publisher");
+		
+		try
+		{
+			final List<BaseMqttMessage> batch = new ArrayList<>();
+			if (next == null)
+			{
+				next = source.get();
+			}
+			
+			while (running && next != null)
+			{
+				if (paused)
+				{
+					LockSupport.parkNanos(this, MAX_PARK_TIME);
+					continue;
+				}
+				
+				final long deadline = getDeadline(next, nextIndex);
+				
+				if (!waitUntil(deadline))
+				{
+					continue;
+				}
+				
+				// Take all messages that are due by now
+				final long now = System.nanoTime();
+				batch.clear();
+				while (next != null && batch.size() < batchSize && (batch.isEmpty() || getDeadline(next, nextIndex) <= now))
+				{
+					batch.add(next);
+					next = source.get();
+					nextIndex++;
+				}
+				
+				if (!publish(batch))
+				{
+					logger.error("Replay stopped - cannot publish after {} message(s)", publishedCount);
+					return;
+				}
+				lag = deadline == NO_DEADLINE ? 0 : Math.max(0, now - deadline);
+			}
+			
+			if (next == null)
+			{
+				logger.info("Replay finished - published {} message(s) at {} msg/s", publishedCount, String.format("%.1f", getAchievedRate()));
+			}
+		}
+		catch (RuntimeException e)
+		{
+			logger.error("Replay failed after {} message(s)", publishedCount, e);
+		}
+		finally
+		{
+			running = false;
+			ThreadingUtils.logThreadEnding();
+		}
+	}
+	
+	/**
+	 * Waits until the given deadline.
+	 * 
+	 * @param deadline The deadline (as in System.nanoTime)
+	 * 
+	 * @return True if the deadline has been reached; false if the replay was stopped, paused or changed in the meantime
+	 */
+	private boolean waitUntil(final long deadline)
+	{
+		if (deadline == NO_DEADLINE)
+		{
+			return running;
+		}
+		
+		long remaining = deadline - System.nanoTime();
+		
+		while (remaining > 0)
+		{
+			if (!running || paused || reanchor)
+			{
+				return false;
+			}
+			
+			if (remaining > SPIN_THRESHOLD)
+			{
+				LockSupport.parkNanos(this, Math.min(MAX_PARK_TIME, remaining - SPIN_THRESHOLD));
+				
+				// The deadline might have moved (e.g. changed speed)
+				return false;
+			}
+			
+			Thread.yield();
+			remaining = deadline - System.nanoTime();
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Publishes the given batch, retrying the messages that could not be
+	 * published yet (e.g. too many messages in flight).
+	 * 
+	 * @param batch Messages to publish
+	 * 
+	 * @return False if the publication failed (e.g. no connection)
+	 */
+	private boolean publish(final List<BaseMqttMessage> batch)
+	{
+		int published = 0;
+		boolean failed = false;
+		
+		while (running && published < batch.size())
+		{
+			final int count = publisher.applyAsInt(published == 0 ? batch : batch.subList(published, batch.size()));
+			
+			if (count == IMqttConnection.PUBLICATION_FAILED)
+			{
+				failed = true;
+				break;
+			}
+			
+			published = published + count;
+			publishedCount = publishedCount + count;
+			
+			if (count == 0)
+			{
+				// Let the connection catch up (e.g. too many messages in flight)
+				LockSupport.parkNanos(this, RETRY_INTERVAL);
+			}
+		}
+		
+		final int unsent = batch.size() - published;
+		if (unsent > 0)
+		{
+			droppedCount = droppedCount + unsent;
+			logger.warn("{} message(s) of the current batch not published", unsent);
+		}
+		
+		return !failed;
+	}
+	
+	/**
+	 * Checks whether the replay is running (including when paused).
+	 * 
+	 * @return True if running
+	 */
+	public boolean isRunning()
+	{
+		return running;
+	}
+	
+	/**
+	 * Checks whether the replay is paused.
+	 * 
+	 * @return True if paused
+	 */
+	public boolean isPaused()
+	{
+		return paused;
+	}
+	
+	/**
+	 * Gets the number of published messages.
+	 * 
+	 * @return Number of messages
+	 */
+	public long getPublishedCount()
+	{
+		return publishedCount;
+	}
+	
+	/**
+	 * Gets the number of messages taken for publishing, but not published
+	 * (the rest of the batch being published when stopped or when the
+	 * publication failed).
+	 * 
+	 * @return Number of messages
+	 */
+	public long getDroppedCount()
+	{
+		return droppedCount;
+	}
+	
+	/**
+	 * Gets the average publication rate since started (not counting the time paused).
+	 * 
+	 * @return Messages per second
+	 */
+	public synchronized double getAchievedRate()
+	{
+		final long end = paused ? pausedAt : System.nanoTime();
+		final long active = end - startedAt - pausedTime;
+		
+		if (active <= 0)
+		{
+			return 0;
+		}
+		
+		return publishedCount * (double) TimeUnit.SECONDS.toNanos(1) / active;
+	}
+	
+	/**
+	 * Gets how late the last batch was published, compared to the schedule.
+	 * 
+	 * @return Lag in milliseconds
+	 */
+	public double getLag()
+	{
+		return lag / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
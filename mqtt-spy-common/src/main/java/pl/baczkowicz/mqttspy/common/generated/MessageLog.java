@@ -45,6 +45,10 @@ import org.jvnet.jaxb2_commons.locator.util.LocatorUtils;
  *       &lt;attribute name="logConnection" type="{http://www.w3.org/2001/XMLSchema}boolean" /&gt;
  *       &lt;attribute name="logSubscription" type="{http://www.w3.org/2001/XMLSchema}boolean" /&gt;
  *       &lt;attribute name="logBeforeScripts" type="{http://www.w3.org/2001/XMLSchema}boolean" /&gt;
+ *       &lt;attribute name="maxFileSize" type="{http://www.w3.org/2001/XMLSchema}int" /&gt;
+ *       &lt;attribute name="maxBackupIndex" type="{http://www.w3.org/2001/XMLSchema}int" /&gt;
+ *       &lt;attribute name="rotationInterval" type="{http://www.w3.org/2001/XMLSchema}int" /&gt;
+ *       &lt;attribute name="syncPolicy" type="{http://baczkowicz.pl/mqtt-spy/common}MessageLogSyncPolicyEnum" /&gt;
  *     &lt;/extension&gt;
  *   &lt;/simpleContent&gt;
  * &lt;/complexType&gt;
@@ -74,6 +78,14 @@ public class MessageLog implements Serializable, Cloneable, CopyTo, Equals, Hash
     protected Boolean logSubscription;
     @XmlAttribute(name = "logBeforeScripts")
     protected Boolean logBeforeScripts;
+    @XmlAttribute(name = "maxFileSize")
+    protected Integer maxFileSize;
+    @XmlAttribute(name = "maxBackupIndex")
+    protected Integer maxBackupIndex;
+    @XmlAttribute(name = "rotationInterval")
+    protected Integer rotationInterval;
+    @XmlAttribute(name = "syncPolicy")
+    protected MessageLogSyncPolicyEnum syncPolicy;
 
     /**
      * Default no-arg constructor
@@ -87,7 +99,7 @@ public class MessageLog implements Serializable, Cloneable, CopyTo, Equals, Hash
      * Fully-initialising value constructor
      * 
      */
-    public MessageLog(final MessageLogEnum value, final String logFile, final Boolean logQos, final Boolean logRetained, final Boolean logConnection, final Boolean logSubscription, final Boolean logBeforeScripts) {
+    public MessageLog(final MessageLogEnum value, final String logFile, final Boolean logQos, final Boolean logRetained, final Boolean logConnection, final Boolean logSubscription, final Boolean logBeforeScripts, final Integer maxFileSize, final Integer maxBackupIndex, final Integer rotationInterval, final MessageLogSyncPolicyEnum syncPolicy) {
         this.value = value;
         this.logFile = logFile;
         this.logQos = logQos;
@@ -95,6 +107,10 @@ public class MessageLog implements Serializable, Cloneable, CopyTo, Equals, Hash
         this.logConnection = logConnection;
         this.logSubscription = logSubscription;
         this.logBeforeScripts = logBeforeScripts;
+        this.maxFileSize = maxFileSize;
+        this.maxBackupIndex = maxBackupIndex;
+        this.rotationInterval = rotationInterval;
+        this.syncPolicy = syncPolicy;
     }
 
     /**
@@ -265,6 +281,102 @@ public class MessageLog implements Serializable, Cloneable, CopyTo, Equals, Hash
         this.logBeforeScripts = value;
     }
 
+    /**
+     * Gets the value of the maxFileSize property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public Integer getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    /**
+     * Sets the value of the maxFileSize property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setMaxFileSize(Integer value) {
+        this.maxFileSize = value;
+    }
+
+    /**
+     * Gets the value of the maxBackupIndex property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public Integer getMaxBackupIndex() {
+        return maxBackupIndex;
+    }
+
+    /**
+     * Sets the value of the maxBackupIndex property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setMaxBackupIndex(Integer value) {
+        this.maxBackupIndex = value;
+    }
+
+    /**
+     * Gets the value of the rotationInterval property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public Integer getRotationInterval() {
+        return rotationInterval;
+    }
+
+    /**
+     * Sets the value of the rotationInterval property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setRotationInterval(Integer value) {
+        this.rotationInterval = value;
+    }
+
+    /**
+     * Gets the value of the syncPolicy property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link MessageLogSyncPolicyEnum }
+     *     
+     */
+    public MessageLogSyncPolicyEnum getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    /**
+     * Sets the value of the syncPolicy property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link MessageLogSyncPolicyEnum }
+     *     
+     */
+    public void setSyncPolicy(MessageLogSyncPolicyEnum value) {
+        this.syncPolicy = value;
+    }
+
     public String toString() {
         final ToStringStrategy strategy = JAXBToStringStrategy.INSTANCE;
         final StringBuilder buffer = new StringBuilder();
@@ -315,6 +427,26 @@ public class MessageLog implements Serializable, Cloneable, CopyTo, Equals, Hash
             theLogBeforeScripts = this.isLogBeforeScripts();
             strategy.appendField(locator, this, "logBeforeScripts", buffer, theLogBeforeScripts);
         }
+        {
+            Integer theMaxFileSize;
+            theMaxFileSize = this.getMaxFileSize();
+            strategy.appendField(locator, this, "maxFileSize", buffer, theMaxFileSize);
+        }
+        {
+            Integer theMaxBackupIndex;
+            theMaxBackupIndex = this.getMaxBackupIndex();
+            strategy.appendField(locator, this, "maxBackupIndex", buffer, theMaxBackupIndex);
+        }
+        {
+            Integer theRotationInterval;
+            theRotationInterval = this.getRotationInterval();
+            strategy.appendField(locator, this, "rotationInterval", buffer, theRotationInterval);
+        }
+        {
+            MessageLogSyncPolicyEnum theSyncPolicy;
+            theSyncPolicy = this.getSyncPolicy();
+            strategy.appendField(locator, this, "syncPolicy", buffer, theSyncPolicy);
+        }
         return buffer;
     }
 
@@ -388,6 +520,42 @@ public class MessageLog implements Serializable, Cloneable, CopyTo, Equals, Hash
             if (!strategy.equals(LocatorUtils.property(thisLocator, "logBeforeScripts", lhsLogBeforeScripts), LocatorUtils.property(thatLocator, "logBeforeScripts", rhsLogBeforeScripts), lhsLogBeforeScripts, rhsLogBeforeScripts)) {
                 return false;
             }
+        {
+            Integer lhsMaxFileSize;
+            lhsMaxFileSize = this.getMaxFileSize();
+            Integer rhsMaxFileSize;
+            rhsMaxFileSize = that.getMaxFileSize();
+            if (!strategy.equals(LocatorUtils.property(thisLocator, "maxFileSize", lhsMaxFileSize), LocatorUtils.property(thatLocator, "maxFileSize", rhsMaxFileSize), lhsMaxFileSize, rhsMaxFileSize)) {
+                return false;
+            }
+        }
+        {
+            Integer lhsMaxBackupIndex;
+            lhsMaxBackupIndex = this.getMaxBackupIndex();
+            Integer rhsMaxBackupIndex;
+            rhsMaxBackupIndex = that.getMaxBackupIndex();
+            if (!strategy.equals(LocatorUtils.property(thisLocator, "maxBackupIndex", lhsMaxBackupIndex), LocatorUtils.property(thatLocator, "maxBackupIndex", rhsMaxBackupIndex), lhsMaxBackupIndex, rhsMaxBackupIndex)) {
+                return false;
+            }
+        }
+        {
+            Integer lhsRotationInterval;
+            lhsRotationInterval = this.getRotationInterval();
+            Integer rhsRotationInterval;
+            rhsRotationInterval = that.getRotationInterval();
+            if (!strategy.equals(LocatorUtils.property(thisLocator, "rotationInterval", lhsRotationInterval), LocatorUtils.property(thatLocator, "rotationInterval", rhsRotationInterval), lhsRotationInterval, rhsRotationInterval)) {
+                return false;
+            }
+        }
+        {
+            MessageLogSyncPolicyEnum lhsSyncPolicy;
+            lhsSyncPolicy = this.getSyncPolicy();
+            MessageLogSyncPolicyEnum rhsSyncPolicy;
+            rhsSyncPolicy = that.getSyncPolicy();
+            if (!strategy.equals(LocatorUtils.property(thisLocator, "syncPolicy", lhsSyncPolicy), LocatorUtils.property(thatLocator, "syncPolicy", rhsSyncPolicy), lhsSyncPolicy, rhsSyncPolicy)) {
+                return false;
+            }
+        }
         }
         return true;
     }
@@ -434,6 +602,26 @@ public class MessageLog implements Serializable, Cloneable, CopyTo, Equals, Hash
             theLogBeforeScripts = this.isLogBeforeScripts();
             currentHashCode = strategy.hashCode(LocatorUtils.property(locator, "logBeforeScripts", theLogBeforeScripts), currentHashCode, theLogBeforeScripts);
         }
+        {
+            Integer theMaxFileSize;
+            theMaxFileSize = this.getMaxFileSize();
+            currentHashCode = strategy.hashCode(LocatorUtils.property(locator, "maxFileSize", theMaxFileSize), currentHashCode, theMaxFileSize);
+        }
+        {
+            Integer theMaxBackupIndex;
+            theMaxBackupIndex = this.getMaxBackupIndex();
+            currentHashCode = strategy.hashCode(LocatorUtils.property(locator, "maxBackupIndex", theMaxBackupIndex), currentHashCode, theMaxBackupIndex);
+        }
+        {
+            Integer theRotationInterval;
+            theRotationInterval = this.getRotationInterval();
+            currentHashCode = strategy.hashCode(LocatorUtils.property(locator, "rotationInterval", theRotationInterval), currentHashCode, theRotationInterval);
+        }
+        {
+            MessageLogSyncPolicyEnum theSyncPolicy;
+            theSyncPolicy = this.getSyncPolicy();
+            currentHashCode = strategy.hashCode(LocatorUtils.property(locator, "syncPolicy", theSyncPolicy), currentHashCode, theSyncPolicy);
+        }
         return currentHashCode;
     }
 
@@ -511,6 +699,38 @@ public class MessageLog implements Serializable, Cloneable, CopyTo, Equals, Hash
             } else {
                 copy.logBeforeScripts = null;
             }
+            if (this.maxFileSize!= null) {
+                Integer sourceMaxFileSize;
+                sourceMaxFileSize = this.getMaxFileSize();
+                Integer copyMaxFileSize = ((Integer) strategy.copy(LocatorUtils.property(locator, "maxFileSize", sourceMaxFileSize), sourceMaxFileSize));
+                copy.setMaxFileSize(copyMaxFileSize);
+            } else {
+                copy.maxFileSize = null;
+            }
+            if (this.maxBackupIndex!= null) {
+                Integer sourceMaxBackupIndex;
+                sourceMaxBackupIndex = this.getMaxBackupIndex();
+                Integer copyMaxBackupIndex = ((Integer) strategy.copy(LocatorUtils.property(locator, "maxBackupIndex", sourceMaxBackupIndex), sourceMaxBackupIndex));
+                copy.setMaxBackupIndex(copyMaxBackupIndex);
+            } else {
+                copy.maxBackupIndex = null;
+            }
+            if (this.rotationInterval!= null) {
+                Integer sourceRotationInterval;
+                sourceRotationInterval = this.getRotationInterval();
+                Integer copyRotationInterval = ((Integer) strategy.copy(LocatorUtils.property(locator, "rotationInterval", sourceRotationInterval), sourceRotationInterval));
+                copy.setRotationInterval(copyRotationInterval);
+            } else {
+                copy.rotationInterval = null;
+            }
+            if (this.syncPolicy!= null) {
+                MessageLogSyncPolicyEnum sourceSyncPolicy;
+                sourceSyncPolicy = this.getSyncPolicy();
+                MessageLogSyncPolicyEnum copySyncPolicy = ((MessageLogSyncPolicyEnum) strategy.copy(LocatorUtils.property(locator, "syncPolicy", sourceSyncPolicy), sourceSyncPolicy));
+                copy.setSyncPolicy(copySyncPolicy);
+            } else {
+                copy.syncPolicy = null;
+            }
         }
         return draftCopy;
     }
@@ -23,6 +23,8 @@ import javax.xml.bind.annotation.XmlType;
  *     &lt;enumeration value="DISABLED"/&gt;
  *     &lt;enumeration value="XML_WITH_ENCODED_PAYLOAD"/&gt;
  *     &lt;enumeration value="XML_WITH_PLAIN_PAYLOAD"/&gt;
+ *     &lt;enumeration value="BINARY"/&gt;
+ *     &lt;enumeration value="BINARY_COMPRESSED"/&gt;
  *   &lt;/restriction&gt;
  * &lt;/simpleType&gt;
  * </pre>
@@ -34,7 +36,9 @@ public enum MessageLogEnum {
 
     DISABLED,
     XML_WITH_ENCODED_PAYLOAD,
-    XML_WITH_PLAIN_PAYLOAD;
+    XML_WITH_PLAIN_PAYLOAD,
+    BINARY,
+    BINARY_COMPRESSED;
 
     public String value() {
         return name();
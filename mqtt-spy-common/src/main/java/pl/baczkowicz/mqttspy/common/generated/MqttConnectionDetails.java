@@ -56,6 +56,7 @@ import pl.baczkowicz.spy.common.generated.UserCredentials;
  *         &lt;element name="KeepAliveInterval" type="{http://www.w3.org/2001/XMLSchema}int" minOccurs="0"/&gt;
  *         &lt;element name="SSL" type="{http://baczkowicz.pl/mqtt-spy/common}SecureSocketSettings" minOccurs="0"/&gt;
  *         &lt;element name="ReconnectionSettings" type="{http://baczkowicz.pl/spy/common}ReconnectionSettings" minOccurs="0"/&gt;
+ *         &lt;element name="MessageIngest" type="{http://baczkowicz.pl/mqtt-spy/common}MessageIngest" minOccurs="0"/&gt;
  *       &lt;/sequence&gt;
  *     &lt;/extension&gt;
  *   &lt;/complexContent&gt;
@@ -76,7 +77,8 @@ import pl.baczkowicz.spy.common.generated.UserCredentials;
     "connectionTimeout",
     "keepAliveInterval",
     "ssl",
-    "reconnectionSettings"
+    "reconnectionSettings",
+    "messageIngest"
 })
 public class MqttConnectionDetails
     extends ConnectionDetails
@@ -107,6 +109,8 @@ public class MqttConnectionDetails
     protected SecureSocketSettings ssl;
     @XmlElement(name = "ReconnectionSettings")
     protected ReconnectionSettings reconnectionSettings;
+    @XmlElement(name = "MessageIngest")
+    protected MessageIngest messageIngest;
 
     /**
      * Default no-arg constructor
@@ -120,7 +124,7 @@ public class MqttConnectionDetails
      * Fully-initialising value constructor
      * 
      */
-    public MqttConnectionDetails(final ProtocolVersionEnum protocol, final List<String> serverURI, final Boolean webSocket, final String clientID, final UserCredentials userCredentials, final SimpleMqttMessage lastWillAndTestament, final Boolean cleanSession, final Integer connectionTimeout, final Integer keepAliveInterval, final SecureSocketSettings ssl, final ReconnectionSettings reconnectionSettings) {
+    public MqttConnectionDetails(final ProtocolVersionEnum protocol, final List<String> serverURI, final Boolean webSocket, final String clientID, final UserCredentials userCredentials, final SimpleMqttMessage lastWillAndTestament, final Boolean cleanSession, final Integer connectionTimeout, final Integer keepAliveInterval, final SecureSocketSettings ssl, final ReconnectionSettings reconnectionSettings, final MessageIngest messageIngest) {
         this.protocol = protocol;
         this.serverURI = serverURI;
         this.webSocket = webSocket;
@@ -132,6 +136,7 @@ public class MqttConnectionDetails
         this.keepAliveInterval = keepAliveInterval;
         this.ssl = ssl;
         this.reconnectionSettings = reconnectionSettings;
+        this.messageIngest = messageIngest;
     }
 
     /**
@@ -403,6 +408,30 @@ public class MqttConnectionDetails
         this.reconnectionSettings = value;
     }
 
+    /**
+     * Gets the value of the messageIngest property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link MessageIngest }
+     *     
+     */
+    public MessageIngest getMessageIngest() {
+        return messageIngest;
+    }
+
+    /**
+     * Sets the value of the messageIngest property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link MessageIngest }
+     *     
+     */
+    public void setMessageIngest(MessageIngest value) {
+        this.messageIngest = value;
+    }
+
     public String toString() {
         final ToStringStrategy strategy = JAXBToStringStrategy.INSTANCE;
         final StringBuilder buffer = new StringBuilder();
@@ -474,6 +503,11 @@ public class MqttConnectionDetails
             theReconnectionSettings = this.getReconnectionSettings();
             strategy.appendField(locator, this, "reconnectionSettings", buffer, theReconnectionSettings);
         }
+        {
+            MessageIngest theMessageIngest;
+            theMessageIngest = this.getMessageIngest();
+            strategy.appendField(locator, this, "messageIngest", buffer, theMessageIngest);
+        }
         return buffer;
     }
 
@@ -587,6 +621,15 @@ public class MqttConnectionDetails
                 return false;
             }
         }
+        {
+            MessageIngest lhsMessageIngest;
+            lhsMessageIngest = this.getMessageIngest();
+            MessageIngest rhsMessageIngest;
+            rhsMessageIngest = that.getMessageIngest();
+            if (!strategy.equals(LocatorUtils.property(thisLocator, "messageIngest", lhsMessageIngest), LocatorUtils.property(thatLocator, "messageIngest", rhsMessageIngest), lhsMessageIngest, rhsMessageIngest)) {
+                return false;
+            }
+        }
         return true;
     }
 
@@ -652,6 +695,11 @@ public class MqttConnectionDetails
             theReconnectionSettings = this.getReconnectionSettings();
             currentHashCode = strategy.hashCode(LocatorUtils.property(locator, "reconnectionSettings", theReconnectionSettings), currentHashCode, theReconnectionSettings);
         }
+        {
+            MessageIngest theMessageIngest;
+            theMessageIngest = this.getMessageIngest();
+            currentHashCode = strategy.hashCode(LocatorUtils.property(locator, "messageIngest", theMessageIngest), currentHashCode, theMessageIngest);
+        }
         return currentHashCode;
     }
 
@@ -767,6 +815,14 @@ public class MqttConnectionDetails
             } else {
                 copy.reconnectionSettings = null;
             }
+            if (this.messageIngest!= null) {
+                MessageIngest sourceMessageIngest;
+                sourceMessageIngest = this.getMessageIngest();
+                MessageIngest copyMessageIngest = ((MessageIngest) strategy.copy(LocatorUtils.property(locator, "messageIngest", sourceMessageIngest), sourceMessageIngest));
+                copy.setMessageIngest(copyMessageIngest);
+            } else {
+                copy.messageIngest = null;
+            }
         }
         return draftCopy;
     }
@@ -96,6 +96,14 @@ public class ObjectFactory {
         return new MessageLog();
     }
 
+    /**
+     * Create an instance of {@link MessageIngest }
+     * 
+     */
+    public MessageIngest createMessageIngest() {
+        return new MessageIngest();
+    }
+
     /**
      * Create an instance of {@link JAXBElement }{@code <}{@link LoggedMqttMessage }{@code >}}
      * 
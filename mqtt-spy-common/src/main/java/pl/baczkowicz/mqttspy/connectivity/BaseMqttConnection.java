@@ -21,6 +21,7 @@ package pl.baczkowicz.mqttspy.connectivity;
 
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.eclipse.paho.client.mqttv3.IMqttActionListener;
@@ -33,6 +34,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import pl.baczkowicz.mqttspy.connectivity.topicmatching.TopicMatcher;
+import pl.baczkowicz.mqttspy.messages.BaseMqttMessage;
 import pl.baczkowicz.spy.common.generated.ReconnectionSettings;
 import pl.baczkowicz.spy.common.generated.ScriptDetails;
 import pl.baczkowicz.spy.connectivity.ConnectionStatus;
@@ -389,6 +391,44 @@ public abstract class BaseMqttConnection implements IMqttConnection
 		return client != null && client.isConnected();
 	}
 	
+	@Override
+	public int publish(final List<? extends BaseMqttMessage> messages)
+	{
+		if (!canPublish())
+		{
+			logger.warn("Publication attempt failure - no connection available...");
+			return PUBLICATION_FAILED;
+		}
+		
+		int published = 0;
+		
+		try
+		{
+			for (final BaseMqttMessage message : messages)
+			{
+				client.publish(message.getTopic(), message.getRawPayload(), message.getQoS(), message.isRetained());
+				published++;
+			}
+		}
+		catch (MqttException e)
+		{
+			// Too many messages in flight is expected when publishing quickly - the rest can be retried later
+			if (e.getReasonCode() != MqttException.REASON_CODE_MAX_INFLIGHT)
+			{
+				logger.error("Cannot publish message on " + messages.get(published).getTopic(), e);
+				
+				if (published == 0)
+				{
+					return PUBLICATION_FAILED;
+				}
+			}
+		}
+		
+		logger.trace("Published {} of {} message(s)", published, messages.size());
+		
+		return published;
+	}
+	
 	/**
 	 * Records lost connection.
 	 * 
@@ -53,7 +53,7 @@ public class BaseMqttSubscription extends BaseSubscription
 		this(topic, qos);
 		
 		this.store = new BasicMessageStore<FormattedMqttMessage>(
-				new MessageList<FormattedMqttMessage>(minMessagesPerTopic, preferredStoreSize, topic));
+				new MessageList<FormattedMqttMessage>(minMessagesPerTopic, preferredStoreSize, topic, FormattedMqttMessage::getId));
 	}
 
 	public Integer getQos()
@@ -0,0 +1,217 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2014 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.mqttspy.connectivity;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pl.baczkowicz.mqttspy.common.generated.IngestOverflowPolicyEnum;
+import pl.baczkowicz.mqttspy.common.generated.MessageIngest;
+
+/**
+ * Bounded queue sitting between the MQTT client's callback thread and
+ * whatever processes received messages. When the consumer doesn't keep up,
+ * the configured overflow policy decides what happens:
+ *
+ * BLOCK - the callback thread waits for space (which results in TCP backpressure to the broker);
+ * DROP_OLDEST - the oldest queued message is discarded to make space for the new one;
+ * DROP_NEWEST - the new message is discarded;
+ * SAMPLE - once the queue is half full, only 1 in N messages is accepted; the new message is discarded if there is no space.
+ *
+ * Only one producer (the callback thread) is expected; any number of consumers can use the underlying queue.
+ */
+public class BoundedIngestQueue<T>
+{
+	/** Default maximum number of queued messages. */
+	public static final int DEFAULT_QUEUE_SIZE = 10000;
+
+	/** Default N for the 1-in-N sampling policy. */
+	public static final int DEFAULT_SAMPLE_RATE = 10;
+
+	/** Default overflow policy - doesn't lose any messages. */
+	public static final IngestOverflowPolicyEnum DEFAULT_POLICY = IngestOverflowPolicyEnum.BLOCK;
+
+	/** The underlying queue. */
+	private final BlockingQueue<T> queue;
+
+	/** Maximum number of queued messages. */
+	private final int queueSize;
+
+	/** What to do when the queue is full. */
+	private final IngestOverflowPolicyEnum policy;
+
+	/** N for the 1-in-N sampling policy. */
+	private final int sampleRate;
+
+	/** Queue depth above which sampling kicks in. */
+	private final int samplingThreshold;
+
+	/** Number of messages seen while sampling. */
+	private long sampledMessages;
+
+	/** Number of messages dropped so far. */
+	private final AtomicLong droppedMessages = new AtomicLong();
+
+	/**
+	 * Creates the queue based on the given settings. Any missing values are replaced with defaults.
+	 *
+	 * @param settings Message ingest settings (can be null)
+	 */
+	public BoundedIngestQueue(final MessageIngest settings)
+	{
+		this(settings == null || settings.getValue() == null ? DEFAULT_POLICY : settings.getValue(),
+				settings == null || settings.getQueueSize() == null ? DEFAULT_QUEUE_SIZE : settings.getQueueSize(),
+				settings == null || settings.getSampleRate() == null ? DEFAULT_SAMPLE_RATE : settings.getSampleRate());
+	}
+
+	/**
+	 * Creates the queue.
+	 *
+	 * @param policy What to do when the queue is full
+	 * @param queueSize Maximum number of queued messages
+	 * @param sampleRate N for the 1-in-N sampling policy
+	 */
+	public BoundedIngestQueue(final IngestOverflowPolicyEnum policy, final int queueSize, final int sampleRate)
+	{
+		if (queueSize < 1)
+		{
+			throw new IllegalArgumentException("Queue size must be positive: " + queueSize);
+		}
+
+		this.policy = policy;
+		this.queueSize = queueSize;
+		this.sampleRate = Math.max(1, sampleRate);
+		this.samplingThreshold = queueSize / 2;
+		this.queue = new ArrayBlockingQueue<T>(queueSize);
+	}
+
+	/**
+	 * Adds the given message to the queue, applying the overflow policy if required.
+	 *
+	 * @param message The message to add
+	 *
+	 * @return Number of messages dropped as the result of this call (either the given one or the oldest one)
+	 */
+	public int add(final T message)
+	{
+		switch (policy)
+		{
+			case BLOCK:
+			{
+				try
+				{
+					queue.put(message);
+					return 0;
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					return dropped(1);
+				}
+			}
+			case DROP_OLDEST:
+			{
+				int dropped = 0;
+				while (!queue.offer(message))
+				{
+					if (queue.poll() != null)
+					{
+						dropped++;
+					}
+				}
+				return dropped(dropped);
+			}
+			case SAMPLE:
+			{
+				if (queue.size() >= samplingThreshold && (sampledMessages++ % sampleRate) != 0)
+				{
+					return dropped(1);
+				}
+				return queue.offer(message) ? 0 : dropped(1);
+			}
+			case DROP_NEWEST:
+			default:
+			{
+				return queue.offer(message) ? 0 : dropped(1);
+			}
+		}
+	}
+
+	private int dropped(final int count)
+	{
+		if (count > 0)
+		{
+			droppedMessages.addAndGet(count);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Gets the underlying queue, from which messages should be taken off.
+	 *
+	 * @return The queue
+	 */
+	public BlockingQueue<T> getQueue()
+	{
+		return queue;
+	}
+
+	/**
+	 * Gets the number of queued messages.
+	 *
+	 * @return Queue depth
+	 */
+	public int size()
+	{
+		return queue.size();
+	}
+
+	/**
+	 * Gets the maximum number of queued messages.
+	 *
+	 * @return The queue size
+	 */
+	public int getQueueSize()
+	{
+		return queueSize;
+	}
+
+	/**
+	 * Gets the overflow policy.
+	 *
+	 * @return The policy
+	 */
+	public IngestOverflowPolicyEnum getPolicy()
+	{
+		return policy;
+	}
+
+	/**
+	 * Gets the number of messages dropped so far.
+	 *
+	 * @return Number of dropped messages
+	 */
+	public long getDroppedMessages()
+	{
+		return droppedMessages.get();
+	}
+}
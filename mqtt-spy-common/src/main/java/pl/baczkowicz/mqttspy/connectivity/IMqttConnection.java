@@ -19,6 +19,9 @@
  */
 package pl.baczkowicz.mqttspy.connectivity;
 
+import java.util.List;
+
+import pl.baczkowicz.mqttspy.messages.BaseMqttMessage;
 import pl.baczkowicz.spy.connectivity.IConnection;
 
 /** 
@@ -28,6 +31,9 @@ import pl.baczkowicz.spy.connectivity.IConnection;
  */
 public interface IMqttConnection extends IConnection
 {
+	/** Returned when publishing a list of messages failed (e.g. no connection). */
+	int PUBLICATION_FAILED = -1;
+	
 	BaseMqttSubscription getMqttSubscriptionForTopic(final String topic);
 	
 	void addSubscription(final BaseMqttSubscription subscription);
@@ -81,4 +87,16 @@ public interface IMqttConnection extends IConnection
 	 * @return True if publication was successful
 	 */
 	boolean publish(final String publicationTopic, final byte[] payload, final int qos, final boolean retained);
+	
+	/**
+	 * Publishes the given messages in order, stopping at the first message
+	 * that cannot be published (e.g. when too many messages are in flight).
+	 * 
+	 * @param messages Messages to publish
+	 * 
+	 * @return Number of published messages (the rest can be retried later),
+	 * or PUBLICATION_FAILED if the first message cannot be published at all
+	 * (e.g. no connection or an error other than too many messages in flight)
+	 */
+	int publish(final List<? extends BaseMqttMessage> messages);
 }
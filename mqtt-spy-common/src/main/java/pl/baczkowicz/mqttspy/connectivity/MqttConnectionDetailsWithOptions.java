@@ -70,6 +70,7 @@ public class MqttConnectionDetailsWithOptions extends MqttConnectionDetails
 		this.setLastWillAndTestament(details.getLastWillAndTestament());
 		this.setUserCredentials(details.getUserCredentials());
 		this.setReconnectionSettings(details.getReconnectionSettings());
+		this.setMessageIngest(details.getMessageIngest());
 		
 		this.setSSL(details.getSSL());
 		final boolean sslEnabled = details.getSSL() != null 
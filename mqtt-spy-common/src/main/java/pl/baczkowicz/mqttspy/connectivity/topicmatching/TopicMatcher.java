@@ -19,94 +19,259 @@
  */
 package pl.baczkowicz.mqttspy.connectivity.topicmatching;
 
-import io.moquette.spi.ISessionsStore.ClientTopicCouple;
-import io.moquette.spi.impl.subscriptions.Subscription;
-import io.moquette.spi.impl.subscriptions.SubscriptionsStore;
-
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * This class is responsible for matching topics against subscriptions, and
- * figure out which subscription the message has been received for. It uses
- * moquette's SubscriptionStore to achieve that.
+ * figure out which subscription the message has been received for.
+ *
+ * Subscription topics are kept in a topic level tree. The result of matching
+ * a concrete topic is cached, so that for most messages matching is a single
+ * map lookup. The cache is invalidated whenever a subscription is added or
+ * removed.
  */
 public class TopicMatcher
 {
 	/** Diagnostic logger. */
 	private static final Logger logger = LoggerFactory.getLogger(TopicMatcher.class);
-	
-	/** Subscription store - used to matching topics against subscriptions - from moquette. */
-	private SubscriptionsStore subscriptionsStore;
-	
+
+	/** Maximum number of concrete topics to cache the matching result for. */
+	public static final int MAX_CACHED_TOPICS = 100000;
+
+	/** Topic level separator. */
+	private static final char LEVEL_SEPARATOR = '/';
+
+	/** Single level wildcard. */
+	private static final String SINGLE_LEVEL_WILDCARD = "+";
+
+	/** Multi level wildcard. */
+	private static final String MULTI_LEVEL_WILDCARD = "#";
+
+	/** Topics starting with this character are not matched by wildcards on the first level (e.g. $SYS). */
+	private static final char SYSTEM_TOPIC_PREFIX = '$';
+
+	/** Root of the subscription topic tree. */
+	private final TopicNode root = new TopicNode();
+
+	/** Cached matching subscriptions per concrete topic. */
+	private final Map<String, List<String>> matchingCache = new ConcurrentHashMap<>();
+
 	/** All topics that are in the store. */
-	private Set<String> topics = new HashSet<>();
-	
-	/**
-	 * Creates the topic matcher.
-	 */
-	public TopicMatcher()
-	{
-		// Manage subscriptions, uses moquette's SubscriptionsStore
-		subscriptionsStore = new SubscriptionsStore();
-		subscriptionsStore.init(new MapBasedSubscriptionStore());
-	}
-	
+	private final Set<String> topics = new LinkedHashSet<>();
+
 	/**
 	 * Returns matching subscriptions for the given topic.
-	 * 
+	 *
 	 * @param topic The topic to get active subscriptions for
-	 * 
-	 * @return List of subscription topics matching the given topic
+	 *
+	 * @return Unmodifiable list of subscription topics matching the given topic
 	 */
 	public List<String> getMatchingSubscriptions(final String topic)
-	{		
-		// Check matching subscription
-		final List<Subscription> matchingSubscriptions = subscriptionsStore.matches(topic);
-		
-		final List<String> matchingSubscriptionTopics = new ArrayList<String>();
-		
-		// For all found subscriptions
-		for (final Subscription matchingSubscription : matchingSubscriptions)
-		{						
-			matchingSubscriptionTopics.add(matchingSubscription.getTopicFilter());
-		}		
-
-		return matchingSubscriptionTopics;
+	{
+		final List<String> cached = matchingCache.get(topic);
+
+		if (cached != null)
+		{
+			return cached;
+		}
+
+		synchronized (root)
+		{
+			// Compute and cache under the lock, so that a concurrent add/remove cannot leave a stale entry
+			List<String> matchingSubscriptionTopics = matchingCache.get(topic);
+
+			if (matchingSubscriptionTopics == null)
+			{
+				final Set<String> matches = new LinkedHashSet<>();
+				collectMatches(root, topic, 0, matches);
+
+				matchingSubscriptionTopics = matches.isEmpty()
+						? Collections.<String>emptyList() : Collections.unmodifiableList(new ArrayList<>(matches));
+
+				if (matchingCache.size() >= MAX_CACHED_TOPICS)
+				{
+					logger.debug("Topic matching cache full ({}), clearing", matchingCache.size());
+					matchingCache.clear();
+				}
+				matchingCache.put(topic, matchingSubscriptionTopics);
+			}
+
+			return matchingSubscriptionTopics;
+		}
 	}
 
 	/**
 	 * Adds the given topic to the subscription store - used for topic to subscription matching.
-	 *  
+	 *
 	 * @param topic Topic to add
 	 */
 	public void addSubscriptionToStore(final String topic, final String clientId)
 	{
-		final ClientTopicCouple subscription = new ClientTopicCouple(clientId, topic);
-		
-		if (!topics.contains(topic))
+		synchronized (root)
 		{
-			logger.debug("Added subscription " + topic + " (" + clientId + ") to store");
-			// Store the subscription topic for further matching
-			subscriptionsStore.add(subscription);
-			topics.add(topic);
+			if (!topics.contains(topic))
+			{
+				logger.debug("Added subscription " + topic + " (" + clientId + ") to store");
+
+				// Store the subscription topic for further matching
+				TopicNode node = root;
+				for (final String level : topic.split(String.valueOf(LEVEL_SEPARATOR), -1))
+				{
+					node = node.getOrCreateChild(level);
+				}
+				node.subscriptionTopic = topic;
+
+				topics.add(topic);
+				matchingCache.clear();
+			}
 		}
 	}
-	
+
 	/**
 	 * Removes the given topic from the subscription store - used for topic to subscription matching.
-	 *  
+	 *
 	 * @param topic Topic to remove
 	 */
 	public void removeSubscriptionFromStore(final String topic, final String clientId)
 	{
-		subscriptionsStore.removeSubscription(topic, clientId);
-		
-		topics.remove(topic);
+		synchronized (root)
+		{
+			if (topics.remove(topic))
+			{
+				removeSubscription(root, topic.split(String.valueOf(LEVEL_SEPARATOR), -1), 0);
+				matchingCache.clear();
+			}
+		}
+	}
+
+	/**
+	 * Removes the subscription topic from the tree, pruning nodes that are no longer needed.
+	 *
+	 * @param node The current node
+	 * @param levels Levels of the subscription topic
+	 * @param index Index of the level to process
+	 *
+	 * @return True if the given node can be removed from its parent
+	 */
+	private boolean removeSubscription(final TopicNode node, final String[] levels, final int index)
+	{
+		if (index == levels.length)
+		{
+			node.subscriptionTopic = null;
+		}
+		else
+		{
+			final TopicNode child = node.children.get(levels[index]);
+
+			if (child != null && removeSubscription(child, levels, index + 1))
+			{
+				node.children.remove(levels[index]);
+			}
+		}
+
+		return node.subscriptionTopic == null && node.children.isEmpty();
+	}
+
+	/**
+	 * Collects all subscription topics matching the remaining levels of the given topic.
+	 *
+	 * @param node The current node
+	 * @param topic The concrete topic
+	 * @param levelStart Index of the first character of the current level
+	 * @param matches Where to put the matching subscription topics
+	 */
+	private static void collectMatches(final TopicNode node, final String topic, final int levelStart, final Set<String> matches)
+	{
+		// Wildcards on the first level don't match topics like $SYS
+		final boolean wildcardsAllowed = levelStart > 0 || topic.isEmpty() || topic.charAt(0) != SYSTEM_TOPIC_PREFIX;
+
+		// Multi level wildcard matches all remaining levels
+		if (wildcardsAllowed)
+		{
+			addMatch(node.children.get(MULTI_LEVEL_WILDCARD), matches);
+		}
+
+		int levelEnd = topic.indexOf(LEVEL_SEPARATOR, levelStart);
+		if (levelEnd < 0)
+		{
+			levelEnd = topic.length();
+		}
+
+		collectLevelMatches(node.children.get(topic.substring(levelStart, levelEnd)), topic, levelEnd, matches);
+
+		if (wildcardsAllowed)
+		{
+			collectLevelMatches(node.children.get(SINGLE_LEVEL_WILDCARD), topic, levelEnd, matches);
+		}
+	}
+
+	/**
+	 * Collects matches for a node that matched the current topic level.
+	 *
+	 * @param node The matching node (could be null)
+	 * @param topic The concrete topic
+	 * @param levelEnd Index of the end of the current level
+	 * @param matches Where to put the matching subscription topics
+	 */
+	private static void collectLevelMatches(final TopicNode node, final String topic, final int levelEnd, final Set<String> matches)
+	{
+		if (node == null)
+		{
+			return;
+		}
+
+		if (levelEnd == topic.length())
+		{
+			// Last level - e.g. both 'a/b' and 'a/b/#' match 'a/b'
+			addMatch(node, matches);
+			addMatch(node.children.get(MULTI_LEVEL_WILDCARD), matches);
+		}
+		else
+		{
+			collectMatches(node, topic, levelEnd + 1, matches);
+		}
+	}
+
+	private static void addMatch(final TopicNode node, final Set<String> matches)
+	{
+		if (node != null && node.subscriptionTopic != null)
+		{
+			matches.add(node.subscriptionTopic);
+		}
+	}
+
+	/**
+	 * Single topic level in the subscription tree.
+	 */
+	private static class TopicNode
+	{
+		/** Child levels. */
+		private final Map<String, TopicNode> children = new HashMap<>();
+
+		/** Subscription topic ending at this level, if any. */
+		private String subscriptionTopic;
+
+		private TopicNode getOrCreateChild(final String level)
+		{
+			TopicNode child = children.get(level);
+
+			if (child == null)
+			{
+				child = new TopicNode();
+				children.put(level, child);
+			}
+
+			return child;
+		}
 	}
 }
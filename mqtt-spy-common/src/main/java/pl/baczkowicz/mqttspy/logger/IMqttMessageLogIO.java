@@ -19,6 +19,7 @@
  */
 package pl.baczkowicz.mqttspy.logger;
 
+import pl.baczkowicz.mqttspy.audit.MqttReplayPublisher;
 import pl.baczkowicz.mqttspy.messages.BaseMqttMessage;
 import pl.baczkowicz.spy.utils.tasks.StoppableTask;
 
@@ -48,9 +49,15 @@ public interface IMqttMessageLogIO extends StoppableTask
 	 */
 	void start();
 	
-	//	TODO: to be added in the future
-	// void pause();	
-	// void resume();
+	/**
+	 * Pauses the time checker, so that no more messages become due until resumed.
+	 */
+	void pause();
+	
+	/**
+	 * Resumes the time checker - see the pause method.
+	 */
+	void resume();
 	
 	/**
 	 * Stops the time checker - see the start method.
@@ -81,4 +88,14 @@ public interface IMqttMessageLogIO extends StoppableTask
 	 * @return ReceivedMqttMessage
 	 */
 	BaseMqttMessage getMessage(final int messageIndex);
+	
+	/**
+	 * Creates a publisher for replaying all messages read from file on the
+	 * script's connection, on its own thread (as an alternative to the time
+	 * checker). The publisher needs to be started, and can be paused,
+	 * resumed and stopped.
+	 * 
+	 * @return The replay publisher
+	 */
+	MqttReplayPublisher createPublisher();
 }
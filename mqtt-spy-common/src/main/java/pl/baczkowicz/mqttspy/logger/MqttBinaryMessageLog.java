@@ -0,0 +1,186 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2014 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.mqttspy.logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import pl.baczkowicz.mqttspy.common.generated.MessageLogEnum;
+
+/**
+ * Constants and utilities of the binary message log format. The log starts
+ * with a file header (magic and version), followed by blocks of messages:
+ *
+ * <pre>
+ * block      = storedLength (int) rawLength (int) messageCount (int) maxTimestamp (long) compression (byte) checksum (int) data
+ * message    = flags (byte) idDelta (varint) timestampDelta (varint) topic [connection] [subscription] payloadLength (varint) payload
+ * string     = varint (index &lt;&lt; 1) | varint (length &lt;&lt; 1 | 1) UTF-8 bytes
+ * </pre>
+ *
+ * Message IDs and timestamps are stored as zigzag-encoded deltas from the
+ * previous message in the block. Strings (topics, connection and subscription
+ * names) are stored once per block and then referenced by index. Payloads are
+ * stored as raw bytes. The checksum is the CRC32 of the uncompressed data.
+ *
+ * Each block is self-contained, so that blocks can be decoded independently
+ * (e.g. in parallel or when seeking).
+ */
+public final class MqttBinaryMessageLog
+{
+	/** Magic bytes at the start of a binary log. */
+	public static final byte[] MAGIC = { 'S', 'P', 'Y', 'B' };
+
+	/** Current version of the format. */
+	public static final byte VERSION = 1;
+
+	/** Size of the file header (magic, version and 3 reserved bytes). */
+	public static final int FILE_HEADER_SIZE = 8;
+
+	/** Size of the block header. */
+	public static final int BLOCK_HEADER_SIZE = 25;
+
+	/** Size of uncompressed data at which a block gets completed. */
+	public static final int BLOCK_SIZE = 64 * 1024;
+
+	/** Maximum size of an MQTT message (the largest MQTT packet). */
+	public static final int MAX_MESSAGE_SIZE = 268435455;
+
+	/** Maximum size of uncompressed block data (a block gets completed after the message taking it over the block size). */
+	public static final int MAX_RAW_BLOCK_SIZE = BLOCK_SIZE + MAX_MESSAGE_SIZE;
+
+	/** Block data stored as is. */
+	public static final byte COMPRESSION_NONE = 0;
+
+	/** Block data compressed with deflate (no zlib wrapper). */
+	public static final byte COMPRESSION_DEFLATE = 1;
+
+	/** Message flag - retained. */
+	static final int FLAG_RETAINED = 0x01;
+
+	/** Message flags - QoS (2 bits). */
+	static final int FLAG_QOS_SHIFT = 1;
+
+	/** Message flag - connection name present. */
+	static final int FLAG_CONNECTION = 0x08;
+
+	/** Message flag - subscription present. */
+	static final int FLAG_SUBSCRIPTION = 0x10;
+
+	private MqttBinaryMessageLog()
+	{
+		// Constants and utilities only
+	}
+
+	/**
+	 * Checks if the given message log format is binary.
+	 *
+	 * @param format The format
+	 *
+	 * @return True if binary
+	 */
+	public static boolean isBinary(final MessageLogEnum format)
+	{
+		return MessageLogEnum.BINARY.equals(format) || MessageLogEnum.BINARY_COMPRESSED.equals(format);
+	}
+
+	/**
+	 * Checks if the given file is a binary message log (by looking at its magic bytes).
+	 *
+	 * @param file The file to check
+	 *
+	 * @return True if binary
+	 *
+	 * @throws IOException Thrown when the file cannot be read
+	 */
+	public static boolean isBinaryLog(final File file) throws IOException
+	{
+		final byte[] magic = new byte[MAGIC.length];
+
+		try (final InputStream in = new FileInputStream(file))
+		{
+			int read = 0;
+			while (read < magic.length)
+			{
+				final int count = in.read(magic, read, magic.length - read);
+				if (count < 0)
+				{
+					return false;
+				}
+				read = read + count;
+			}
+		}
+
+		return Arrays.equals(MAGIC, magic);
+	}
+
+	/**
+	 * Writes the file header to the given buffer.
+	 *
+	 * @param buffer The buffer to write to
+	 */
+	public static void putFileHeader(final ByteBuffer buffer)
+	{
+		buffer.put(MAGIC);
+		buffer.put(VERSION);
+		buffer.put(new byte[FILE_HEADER_SIZE - MAGIC.length - 1]);
+	}
+
+	static void putVarint(final ByteBuffer buffer, long value)
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value = value >>> 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	static long getVarint(final ByteBuffer buffer) throws IOException
+	{
+		long value = 0;
+
+		for (int shift = 0; shift < 64; shift = shift + 7)
+		{
+			final byte b = buffer.get();
+			value = value | ((long) (b & 0x7F) << shift);
+
+			if ((b & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+
+		throw new IOException("Invalid varint");
+	}
+
+	static long zigzag(final long value)
+	{
+		return (value << 1) ^ (value >> 63);
+	}
+
+	static long unzigzag(final long value)
+	{
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
@@ -0,0 +1,282 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2014 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.mqttspy.logger;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import pl.baczkowicz.mqttspy.common.generated.MessageLog;
+import pl.baczkowicz.mqttspy.messages.BaseMqttMessage;
+import pl.baczkowicz.mqttspy.messages.FormattedMqttMessage;
+
+/**
+ * Encodes messages into blocks of the binary message log (see
+ * MqttBinaryMessageLog). Messages are added one by one, and then the block is
+ * completed, which (optionally) compresses it and adds the block header. All
+ * buffers are reused between blocks.
+ *
+ * QoS and the retained flag are always recorded; the connection name and
+ * subscription only if configured.
+ *
+ * This class is not thread-safe.
+ */
+public class MqttBinaryMessageLogEncoder
+{
+	/** Whether blocks should be compressed. */
+	private final boolean compress;
+
+	/** Strings (topics, connection and subscription names) in the current block, with their indexes. */
+	private final Map<String, Integer> strings = new HashMap<>();
+
+	/** Checksum of the uncompressed data. */
+	private final CRC32 checksum = new CRC32();
+
+	/** Compressor (null if not compressing). */
+	private final Deflater deflater;
+
+	/** Uncompressed data of the current block. */
+	private ByteBuffer raw = ByteBuffer.allocate(MqttBinaryMessageLog.BLOCK_SIZE * 2);
+
+	/** Compressed data of the current block. */
+	private byte[] compressed = new byte[0];
+
+	/** The completed block (header and data). */
+	private ByteBuffer block = ByteBuffer.allocate(0);
+
+	/** Number of messages in the current block. */
+	private int messageCount;
+
+	/** ID of the previous message in the block. */
+	private long previousId;
+
+	/** Timestamp of the previous message in the block. */
+	private long previousTimestamp;
+
+	/** Latest timestamp in the block. */
+	private long maxTimestamp;
+
+	/**
+	 * Creates the encoder.
+	 *
+	 * @param compress Whether blocks should be compressed
+	 */
+	public MqttBinaryMessageLogEncoder(final boolean compress)
+	{
+		this.compress = compress;
+		this.deflater = compress ? new Deflater(Deflater.BEST_SPEED, true) : null;
+		reset();
+	}
+
+	/**
+	 * Adds the given message to the current block.
+	 *
+	 * @param message The message to add
+	 * @param messageLogOptions Logging options
+	 */
+	public void add(final FormattedMqttMessage message, final MessageLog messageLogOptions)
+	{
+		final String connection = messageLogOptions.isLogConnection()
+				? message.getConnection().getMqttConnectionDetails().getName() : null;
+
+		// As in the XML log, only the first matching subscription is recorded
+		final String subscription = messageLogOptions.isLogSubscription()
+				&& message.getMatchingSubscriptionTopics() != null && message.getMatchingSubscriptionTopics().size() > 0
+				? message.getMatchingSubscriptionTopics().get(0) : null;
+
+		add(message, connection, subscription);
+	}
+
+	/**
+	 * Adds the given message to the current block.
+	 *
+	 * @param message The message to add
+	 * @param connection Connection name (null if not to be recorded)
+	 * @param subscription Subscription (null if not to be recorded)
+	 */
+	public void add(final BaseMqttMessage message, final String connection, final String subscription)
+	{
+		final byte[] payload = message.getRawPayload();
+		final long timestamp = message.getDate().getTime();
+
+		int flags = (message.getQoS() & 0x03) << MqttBinaryMessageLog.FLAG_QOS_SHIFT;
+		if (message.isRetained())
+		{
+			flags = flags | MqttBinaryMessageLog.FLAG_RETAINED;
+		}
+		if (connection != null)
+		{
+			flags = flags | MqttBinaryMessageLog.FLAG_CONNECTION;
+		}
+		if (subscription != null)
+		{
+			flags = flags | MqttBinaryMessageLog.FLAG_SUBSCRIPTION;
+		}
+
+		ensureCapacity(21);
+		raw.put((byte) flags);
+		MqttBinaryMessageLog.putVarint(raw, MqttBinaryMessageLog.zigzag(message.getId() - previousId));
+		MqttBinaryMessageLog.putVarint(raw, MqttBinaryMessageLog.zigzag(timestamp - previousTimestamp));
+
+		putString(message.getTopic());
+		if (connection != null)
+		{
+			putString(connection);
+		}
+		if (subscription != null)
+		{
+			putString(subscription);
+		}
+
+		ensureCapacity(5 + payload.length);
+		MqttBinaryMessageLog.putVarint(raw, payload.length);
+		raw.put(payload);
+
+		previousId = message.getId();
+		previousTimestamp = timestamp;
+		maxTimestamp = Math.max(maxTimestamp, timestamp);
+		messageCount++;
+	}
+
+	private void putString(final String value)
+	{
+		final Integer index = strings.get(value);
+
+		if (index != null)
+		{
+			ensureCapacity(5);
+			MqttBinaryMessageLog.putVarint(raw, (long) index << 1);
+		}
+		else
+		{
+			final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+			ensureCapacity(5 + bytes.length);
+			MqttBinaryMessageLog.putVarint(raw, ((long) bytes.length << 1) | 1);
+			raw.put(bytes);
+			strings.put(value, strings.size());
+		}
+	}
+
+	private void ensureCapacity(final int length)
+	{
+		if (raw.remaining() < length)
+		{
+			final ByteBuffer larger = ByteBuffer.allocate(Math.max(raw.capacity() * 2, raw.position() + length));
+			raw.flip();
+			larger.put(raw);
+			raw = larger;
+		}
+	}
+
+	/**
+	 * Completes the current block and starts a new one.
+	 *
+	 * @return The block (header and data), valid until the next block is completed
+	 */
+	public ByteBuffer finishBlock()
+	{
+		final int rawLength = raw.position();
+		checksum.reset();
+		checksum.update(raw.array(), 0, rawLength);
+
+		byte compression = MqttBinaryMessageLog.COMPRESSION_NONE;
+		byte[] data = raw.array();
+		int storedLength = rawLength;
+
+		if (compress)
+		{
+			if (compressed.length < rawLength)
+			{
+				compressed = new byte[rawLength];
+			}
+
+			deflater.reset();
+			deflater.setInput(raw.array(), 0, rawLength);
+			deflater.finish();
+
+			// Only keep the compressed data if smaller
+			int length = 0;
+			while (!deflater.finished() && length < rawLength)
+			{
+				length = length + deflater.deflate(compressed, length, rawLength - length);
+			}
+
+			if (deflater.finished() && length < rawLength)
+			{
+				compression = MqttBinaryMessageLog.COMPRESSION_DEFLATE;
+				data = compressed;
+				storedLength = length;
+			}
+		}
+
+		if (block.capacity() < MqttBinaryMessageLog.BLOCK_HEADER_SIZE + storedLength)
+		{
+			block = ByteBuffer.allocate(MqttBinaryMessageLog.BLOCK_HEADER_SIZE + Math.max(storedLength, raw.capacity()));
+		}
+
+		block.clear();
+		block.putInt(storedLength);
+		block.putInt(rawLength);
+		block.putInt(messageCount);
+		block.putLong(maxTimestamp);
+		block.put(compression);
+		block.putInt((int) checksum.getValue());
+		block.put(data, 0, storedLength);
+		block.flip();
+
+		reset();
+
+		return block;
+	}
+
+	private void reset()
+	{
+		raw.clear();
+		strings.clear();
+		messageCount = 0;
+		previousId = 0;
+		previousTimestamp = 0;
+		maxTimestamp = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Gets the number of messages in the current block.
+	 *
+	 * @return Number of messages
+	 */
+	public int getMessageCount()
+	{
+		return messageCount;
+	}
+
+	/**
+	 * Gets the size of uncompressed data in the current block.
+	 *
+	 * @return Size in bytes
+	 */
+	public int getRawSize()
+	{
+		return raw.position();
+	}
+}
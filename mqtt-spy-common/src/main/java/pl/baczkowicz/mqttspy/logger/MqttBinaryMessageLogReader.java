@@ -0,0 +1,402 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2014 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.mqttspy.logger;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import pl.baczkowicz.mqttspy.messages.BaseMqttMessage;
+import pl.baczkowicz.spy.utils.tasks.ProgressUpdater;
+
+/**
+ * Reader of the binary message log (see MqttBinaryMessageLog). When opened,
+ * the block headers are scanned to find where the blocks are and how many
+ * messages they have. Blocks can then be read in any order.
+ *
+ * A block that is cut short (e.g. when the application stopped while writing
+ * it) and anything after it is ignored.
+ *
+ * Blocks can be read from a number of threads at the same time.
+ */
+public class MqttBinaryMessageLogReader implements Closeable
+{
+	/** The file channel. */
+	private final FileChannel channel;
+
+	/** Offsets of the blocks. */
+	private long[] offsets = new long[64];
+
+	/** Number of messages before each block. */
+	private long[] firstMessages = new long[64];
+
+	/** Latest timestamp in each block. */
+	private long[] maxTimestamps = new long[64];
+
+	/** Number of blocks. */
+	private int blockCount;
+
+	/** Number of messages. */
+	private long messageCount;
+
+	/** Length of the file up to the end of the last complete block. */
+	private long validLength;
+
+	/**
+	 * Opens the given log and scans its blocks.
+	 *
+	 * @param file The binary message log
+	 * @param progress Updated with the number of scanned bytes, and checked for cancellation (can be null)
+	 *
+	 * @throws IOException Thrown when the file cannot be read or is not a binary message log
+	 */
+	public MqttBinaryMessageLogReader(final File file, final ProgressUpdater progress) throws IOException
+	{
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+		try
+		{
+			readFileHeader(file);
+			scan(progress);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	private void readFileHeader(final File file) throws IOException
+	{
+		final ByteBuffer header = ByteBuffer.allocate(MqttBinaryMessageLog.FILE_HEADER_SIZE);
+		readFully(header, 0);
+
+		final byte[] magic = new byte[MqttBinaryMessageLog.MAGIC.length];
+		header.get(magic);
+
+		if (!Arrays.equals(MqttBinaryMessageLog.MAGIC, magic))
+		{
+			throw new IOException(file + " is not a binary message log");
+		}
+
+		final byte version = header.get();
+		if (version > MqttBinaryMessageLog.VERSION)
+		{
+			throw new IOException("Unsupported binary message log version " + version + " in " + file);
+		}
+	}
+
+	private void scan(final ProgressUpdater progress) throws IOException
+	{
+		final long size = channel.size();
+		final ByteBuffer header = ByteBuffer.allocate(MqttBinaryMessageLog.BLOCK_HEADER_SIZE);
+		long position = MqttBinaryMessageLog.FILE_HEADER_SIZE;
+
+		while (position + MqttBinaryMessageLog.BLOCK_HEADER_SIZE <= size)
+		{
+			header.clear();
+			readFully(header, position);
+
+			final int storedLength = header.getInt();
+			header.getInt();
+			final int count = header.getInt();
+			final long maxTimestamp = header.getLong();
+
+			final long end = position + MqttBinaryMessageLog.BLOCK_HEADER_SIZE + storedLength;
+			if (storedLength < 0 || count < 0 || end > size)
+			{
+				break;
+			}
+
+			addBlock(position, count, maxTimestamp);
+			position = end;
+
+			if (progress != null && blockCount % 1000 == 0)
+			{
+				if (progress.isCancelled())
+				{
+					break;
+				}
+				progress.update(position, size);
+			}
+		}
+
+		validLength = position;
+	}
+
+	private void addBlock(final long offset, final int count, final long maxTimestamp)
+	{
+		if (blockCount == offsets.length)
+		{
+			offsets = Arrays.copyOf(offsets, blockCount * 2);
+			firstMessages = Arrays.copyOf(firstMessages, blockCount * 2);
+			maxTimestamps = Arrays.copyOf(maxTimestamps, blockCount * 2);
+		}
+
+		offsets[blockCount] = offset;
+		firstMessages[blockCount] = messageCount;
+		maxTimestamps[blockCount] = maxTimestamp;
+		blockCount++;
+		messageCount = messageCount + count;
+	}
+
+	private void readFully(final ByteBuffer buffer, final long position) throws IOException
+	{
+		long offset = position;
+
+		while (buffer.hasRemaining())
+		{
+			final int read = channel.read(buffer, offset);
+			if (read < 0)
+			{
+				throw new EOFException("Unexpected end of file at " + offset);
+			}
+			offset = offset + read;
+		}
+
+		buffer.flip();
+	}
+
+	/**
+	 * Reads and decodes the messages of the given block.
+	 *
+	 * @param block Block number (starting from 0)
+	 *
+	 * @return The messages
+	 *
+	 * @throws IOException Thrown when the block cannot be read or is corrupted
+	 */
+	public List<BaseMqttMessage> readBlock(final int block) throws IOException
+	{
+		final long offset = offsets[block];
+		final long end = block + 1 < blockCount ? offsets[block + 1] : validLength;
+		final ByteBuffer data = ByteBuffer.allocate((int) (end - offset));
+		readFully(data, offset);
+
+		final int storedLength = data.getInt();
+		final int rawLength = data.getInt();
+		final int count = data.getInt();
+		data.getLong();
+		final byte compression = data.get();
+		final int expectedChecksum = data.getInt();
+
+		// The header isn't covered by the checksum, so check the lengths before allocating anything
+		if (storedLength < 0 || storedLength > data.remaining() || rawLength < 0 || rawLength > MqttBinaryMessageLog.MAX_RAW_BLOCK_SIZE)
+		{
+			throw new IOException("Invalid length in block " + block + " at offset " + offset);
+		}
+
+		final ByteBuffer raw = decompress(data, storedLength, rawLength, compression, block);
+
+		final CRC32 checksum = new CRC32();
+		checksum.update(raw);
+		raw.rewind();
+		if ((int) checksum.getValue() != expectedChecksum)
+		{
+			throw new IOException("Checksum mismatch in block " + block + " at offset " + offset);
+		}
+
+		try
+		{
+			return decode(raw, count);
+		}
+		catch (RuntimeException e)
+		{
+			throw new IOException("Invalid data in block " + block + " at offset " + offset, e);
+		}
+	}
+
+	private ByteBuffer decompress(final ByteBuffer data, final int storedLength, final int rawLength,
+			final byte compression, final int block) throws IOException
+	{
+		if (compression == MqttBinaryMessageLog.COMPRESSION_NONE && storedLength == rawLength)
+		{
+			return ByteBuffer.wrap(data.array(), data.position(), storedLength).slice();
+		}
+		else if (compression != MqttBinaryMessageLog.COMPRESSION_DEFLATE)
+		{
+			throw new IOException("Invalid compression " + compression + " in block " + block);
+		}
+
+		final byte[] raw = new byte[rawLength];
+		final Inflater inflater = new Inflater(true);
+
+		try
+		{
+			inflater.setInput(data.array(), data.position(), storedLength);
+
+			int length = 0;
+			while (length < rawLength && !inflater.finished())
+			{
+				final int inflated = inflater.inflate(raw, length, rawLength - length);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+				{
+					break;
+				}
+				length = length + inflated;
+			}
+
+			if (length != rawLength)
+			{
+				throw new IOException("Invalid compressed data in block " + block);
+			}
+		}
+		catch (DataFormatException e)
+		{
+			throw new IOException("Invalid compressed data in block " + block, e);
+		}
+		finally
+		{
+			inflater.end();
+		}
+
+		return ByteBuffer.wrap(raw);
+	}
+
+	private static List<BaseMqttMessage> decode(final ByteBuffer raw, final int count) throws IOException
+	{
+		final List<BaseMqttMessage> messages = new ArrayList<>(count);
+		final List<String> strings = new ArrayList<>();
+
+		long id = 0;
+		long timestamp = 0;
+
+		for (int i = 0; i < count; i++)
+		{
+			final int flags = raw.get();
+			id = id + MqttBinaryMessageLog.unzigzag(MqttBinaryMessageLog.getVarint(raw));
+			timestamp = timestamp + MqttBinaryMessageLog.unzigzag(MqttBinaryMessageLog.getVarint(raw));
+
+			final String topic = getString(raw, strings);
+
+			// Connection and subscription are not needed (as when parsing the XML log)
+			if ((flags & MqttBinaryMessageLog.FLAG_CONNECTION) != 0)
+			{
+				getString(raw, strings);
+			}
+			if ((flags & MqttBinaryMessageLog.FLAG_SUBSCRIPTION) != 0)
+			{
+				getString(raw, strings);
+			}
+
+			final byte[] payload = new byte[(int) MqttBinaryMessageLog.getVarint(raw)];
+			raw.get(payload);
+
+			final MqttMessage mqttMessage = new MqttMessage(payload);
+			mqttMessage.setQos((flags >> MqttBinaryMessageLog.FLAG_QOS_SHIFT) & 0x03);
+			mqttMessage.setRetained((flags & MqttBinaryMessageLog.FLAG_RETAINED) != 0);
+
+			messages.add(new BaseMqttMessage(id, topic, mqttMessage, new Date(timestamp)));
+		}
+
+		return messages;
+	}
+
+	private static String getString(final ByteBuffer raw, final List<String> strings) throws IOException
+	{
+		final long value = MqttBinaryMessageLog.getVarint(raw);
+
+		if ((value & 1) == 0)
+		{
+			return strings.get((int) (value >>> 1));
+		}
+
+		final int length = (int) (value >>> 1);
+		final String string = new String(raw.array(), raw.arrayOffset() + raw.position(), length, StandardCharsets.UTF_8);
+		raw.position(raw.position() + length);
+		strings.add(string);
+
+		return string;
+	}
+
+	/**
+	 * Gets the number of blocks.
+	 *
+	 * @return Number of blocks
+	 */
+	public int getBlockCount()
+	{
+		return blockCount;
+	}
+
+	/**
+	 * Gets the number of messages.
+	 *
+	 * @return Number of messages
+	 */
+	public long getMessageCount()
+	{
+		return messageCount;
+	}
+
+	/**
+	 * Gets the number of messages before the given block.
+	 *
+	 * @param block Block number (starting from 0)
+	 *
+	 * @return Number of the block's first message (starting from 0)
+	 */
+	public long getFirstMessage(final int block)
+	{
+		return firstMessages[block];
+	}
+
+	/**
+	 * Gets the latest timestamp in the given block.
+	 *
+	 * @param block Block number (starting from 0)
+	 *
+	 * @return The timestamp (in milliseconds)
+	 */
+	public long getMaxTimestamp(final int block)
+	{
+		return maxTimestamps[block];
+	}
+
+	/**
+	 * Gets the length of the file up to the end of the last complete block.
+	 *
+	 * @return Length in bytes
+	 */
+	public long getValidLength()
+	{
+		return validLength;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+}
@@ -0,0 +1,123 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2014 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.mqttspy.logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import pl.baczkowicz.mqttspy.common.generated.MessageLog;
+import pl.baczkowicz.mqttspy.common.generated.MessageLogEnum;
+import pl.baczkowicz.mqttspy.common.generated.MessageLogSyncPolicyEnum;
+import pl.baczkowicz.mqttspy.messages.BaseMqttMessage;
+import pl.baczkowicz.mqttspy.messages.FormattedMqttMessage;
+import pl.baczkowicz.spy.exceptions.SpyException;
+
+/**
+ * Converts message logs between the XML and binary formats. The source
+ * format is detected automatically. The QoS and retained flag are always
+ * recorded; connection and subscription names are not carried over.
+ */
+public class MqttMessageLogConverter
+{
+	/**
+	 * Converts the given message log.
+	 * 
+	 * @param source The log to convert (XML or binary)
+	 * @param target The file to write to (must not exist)
+	 * @param targetFormat Format to convert to
+	 * 
+	 * @return Number of converted messages (messages that cannot be read are skipped)
+	 * 
+	 * @throws SpyException Thrown when the conversion fails
+	 */
+	public static long convert(final File source, final File target, final MessageLogEnum targetFormat) throws SpyException
+	{
+		if (MessageLogEnum.DISABLED.equals(targetFormat))
+		{
+			throw new IllegalArgumentException("Invalid target format " + targetFormat);
+		}
+		
+		if (target.exists())
+		{
+			throw new SpyException("File " + target.getAbsolutePath() + " already exists");
+		}
+		
+		// All in one file, left to the operating system to sync
+		final MessageLog settings = new MessageLog(targetFormat, target.getPath(), 
+				true, true, false, false, false, 0, 0, null, MessageLogSyncPolicyEnum.NONE);
+		
+		try (final MqttMessageLogLoader loader = new MqttMessageLogLoader(source, null);
+				final MqttMessageLogWriter writer = new MqttMessageLogWriter(target, settings))
+		{
+			final List<FormattedMqttMessage> batch = new ArrayList<>(MqttMessageLogLoader.CHUNK_SIZE);
+			
+			loader.load(chunk -> 
+			{
+				for (final BaseMqttMessage message : chunk)
+				{
+					batch.add(new FormattedMqttMessage(message, null));
+				}
+				
+				try
+				{
+					writer.write(batch);
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+				
+				batch.clear();
+			}, null);
+			
+			return writer.getWrittenMessages();
+		}
+		catch (IOException e)
+		{
+			throw new SpyException("Cannot write " + target.getAbsolutePath(), e);
+		}
+		catch (UncheckedIOException e)
+		{
+			throw new SpyException("Cannot write " + target.getAbsolutePath(), e.getCause());
+		}
+	}
+	
+	/**
+	 * Converts a message log from the command line.
+	 * 
+	 * @param args Source file, target file and target format (e.g. BINARY or XML_WITH_PLAIN_PAYLOAD)
+	 * 
+	 * @throws SpyException Thrown when the conversion fails
+	 */
+	public static void main(final String[] args) throws SpyException
+	{
+		if (args.length != 3)
+		{
+			System.out.println("Usage: MqttMessageLogConverter <source> <target> <BINARY|BINARY_COMPRESSED|XML_WITH_PLAIN_PAYLOAD|XML_WITH_ENCODED_PAYLOAD>");
+			return;
+		}
+		
+		final long count = convert(new File(args[0]), new File(args[1]), MessageLogEnum.fromValue(args[2]));
+		System.out.println("Converted " + count + " messages");
+	}
+}
@@ -20,11 +20,15 @@
 package pl.baczkowicz.mqttspy.logger;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import pl.baczkowicz.mqttspy.audit.MqttReplayPublisher;
+import pl.baczkowicz.mqttspy.connectivity.IMqttConnection;
 import pl.baczkowicz.mqttspy.messages.BaseMqttMessage;
 import pl.baczkowicz.spy.utils.ThreadingUtils;
 import pl.baczkowicz.spy.utils.TimeUtils;
@@ -49,9 +53,36 @@ public class MqttMessageLogIO implements IMqttMessageLogIO, Runnable
 	/** Flag indicating whether the time checker is running. */
 	private boolean running = false;
 
+	/** Flag indicating whether the time checker is paused. */
+	private volatile boolean paused = false;
+
 	/** The current running speed. */
 	private double speed = 1;
 	
+	/** Connection to publish replayed messages on (can be null). */
+	private final IMqttConnection connection;
+	
+	/** The last created replay publisher (stopped with this object). */
+	private MqttReplayPublisher publisher;
+	
+	/**
+	 * Creates the MqttMessageLogIO, without a connection for the replay publisher.
+	 */
+	public MqttMessageLogIO()
+	{
+		this(null);
+	}
+	
+	/**
+	 * Creates the MqttMessageLogIO.
+	 * 
+	 * @param connection Connection to publish replayed messages on (can be null)
+	 */
+	public MqttMessageLogIO(final IMqttConnection connection)
+	{
+		this.connection = connection;
+	}
+	
 	@Override
 	public int readFromFile(final String logLocation)
 	{
@@ -85,6 +116,23 @@ public class MqttMessageLogIO implements IMqttMessageLogIO, Runnable
 	public void stop()
 	{
 		running = false;		
+		
+		if (publisher != null)
+		{
+			publisher.stop();
+		}
+	}
+	
+	@Override
+	public void pause()
+	{
+		paused = true;
+	}
+	
+	@Override
+	public void resume()
+	{
+		paused = false;
 	}
 
 	@Override
@@ -149,10 +197,14 @@ public class MqttMessageLogIO implements IMqttMessageLogIO, Runnable
 			
 			if (now > lastUpdated)
 			{
-				final long sinceLastUpdated = now - lastUpdated;				
-				final double increase = sinceLastUpdated * speed;
-				
-				replayTime =  replayTime + (long) increase;
+				// While paused, the replay time stays the same
+				if (!paused)
+				{
+					final long sinceLastUpdated = now - lastUpdated;				
+					final double increase = sinceLastUpdated * speed;
+					
+					replayTime =  replayTime + (long) increase;
+				}
 				lastUpdated = now;
 			}
 			
@@ -176,4 +228,19 @@ public class MqttMessageLogIO implements IMqttMessageLogIO, Runnable
 		
 		return messages.size();
 	}
+	
+	@Override
+	public MqttReplayPublisher createPublisher()
+	{
+		if (connection == null)
+		{
+			throw new IllegalStateException("No connection available for publishing");
+		}
+		
+		final Iterator<BaseMqttMessage> iterator = messages != null ? messages.iterator() : Collections.emptyIterator();
+		
+		publisher = new MqttReplayPublisher(() -> iterator.hasNext() ? iterator.next() : null, connection::publish);
+		
+		return publisher;
+	}
 }
@@ -0,0 +1,484 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2015 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.mqttspy.logger;
+
+import java.util.Date;
+
+import org.apache.commons.codec.binary.Base64;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import pl.baczkowicz.mqttspy.messages.BaseMqttMessage;
+import pl.baczkowicz.spy.exceptions.XMLException;
+import pl.baczkowicz.spy.utils.ConversionUtils;
+
+/**
+ * Hand-written parser for single lines of the mqtt-spy message log, e.g.
+ * 
+ * <pre>
+ * &lt;MqttMessage id="1" timestamp="1420000000000" topic="a/b" qos="0" encoded="true"&gt;cGF5bG9hZA==&lt;/MqttMessage&gt;
+ * </pre>
+ * 
+ * Each line is a single element with attributes and text content (plain,
+ * with entity references, or in CDATA sections), as written by the
+ * SimpleMqttMessageLogComposer. Messages are decoded straight into
+ * BaseMqttMessage objects, without building a DOM or going through JAXB.
+ * 
+ * All methods are thread-safe.
+ */
+public class MqttMessageLogLineParser
+{
+	private static final String CDATA_START = "<![CDATA[";
+	
+	private static final String CDATA_END = "]]>";
+	
+	private static final String COMMENT_START = "<!--";
+	
+	private static final String COMMENT_END = "-->";
+	
+	/** Attribute values of the message being parsed. */
+	private static class Attributes
+	{
+		private String id;
+		
+		private String timestamp;
+		
+		private String topic;
+		
+		private String qos;
+		
+		private String retained;
+		
+		private String encoded;
+		
+		private void set(final String name, final String value)
+		{
+			switch (name)
+			{
+				case "id":
+					id = value;
+					break;
+				case "timestamp":
+					timestamp = value;
+					break;
+				case "topic":
+					topic = value;
+					break;
+				case "qos":
+					qos = value;
+					break;
+				case "retained":
+					retained = value;
+					break;
+				case "encoded":
+					encoded = value;
+					break;
+				default:
+					// Other attributes (e.g. connection and subscription) are not needed
+					break;
+			}
+		}
+	}
+	
+	/**
+	 * Parses the given message log line.
+	 * 
+	 * @param line The line to parse
+	 * 
+	 * @return The message
+	 * 
+	 * @throws XMLException Thrown when the line is not a valid message
+	 */
+	public static BaseMqttMessage parse(final String line) throws XMLException
+	{
+		return parse(line, true);
+	}
+	
+	/**
+	 * Parses the attributes of the given message log line, without decoding
+	 * the payload (e.g. to quickly get the message's time and topic).
+	 * 
+	 * @param line The line to parse
+	 * 
+	 * @return The message, with an empty payload
+	 * 
+	 * @throws XMLException Thrown when the line is not a valid message
+	 */
+	public static BaseMqttMessage parseHeader(final String line) throws XMLException
+	{
+		return parse(line, false);
+	}
+	
+	private static BaseMqttMessage parse(final String line, final boolean decodePayload) throws XMLException
+	{
+		if (line == null || line.isEmpty())
+		{
+			throw new XMLException("Cannot parse empty XML");
+		}
+		
+		final Attributes attributes = new Attributes();
+		int position = skipProlog(line, 0);
+		
+		// Element name
+		expect(line, position, "<");
+		position++;
+		final int nameStart = position;
+		while (position < line.length() && !isWhitespace(line.charAt(position)) 
+				&& line.charAt(position) != '>' && line.charAt(position) != '/')
+		{
+			position++;
+		}
+		final String name = line.substring(nameStart, position);
+		
+		// Attributes
+		while (true)
+		{
+			position = skipWhitespace(line, position);
+			
+			if (line.startsWith("/>", position))
+			{
+				return createMessage(attributes, "");
+			}
+			else if (line.startsWith(">", position))
+			{
+				if (!decodePayload)
+				{
+					return createMessage(attributes, null);
+				}
+				
+				position++;
+				break;
+			}
+			
+			final int attributeStart = position;
+			while (position < line.length() && !isWhitespace(line.charAt(position)) && line.charAt(position) != '=')
+			{
+				position++;
+			}
+			final String attributeName = line.substring(attributeStart, position);
+			
+			position = skipWhitespace(line, position);
+			expect(line, position, "=");
+			position = skipWhitespace(line, position + 1);
+			
+			if (position >= line.length() || (line.charAt(position) != '"' && line.charAt(position) != '\''))
+			{
+				throw new XMLException("Missing attribute value for " + attributeName);
+			}
+			
+			final char quote = line.charAt(position);
+			final int valueEnd = line.indexOf(quote, position + 1);
+			if (valueEnd < 0)
+			{
+				throw new XMLException("Unterminated attribute value for " + attributeName);
+			}
+			
+			attributes.set(attributeName, decode(line, position + 1, valueEnd, true));
+			position = valueEnd + 1;
+		}
+		
+		// Content
+		final StringBuilder value = new StringBuilder();
+		final String endTag = "</" + name;
+		
+		while (true)
+		{
+			final int next = line.indexOf('<', position);
+			
+			if (next < 0)
+			{
+				throw new XMLException("Missing end tag " + endTag + ">");
+			}
+			
+			value.append(decode(line, position, next, false));
+			
+			if (line.startsWith(CDATA_START, next))
+			{
+				final int cdataEnd = line.indexOf(CDATA_END, next + CDATA_START.length());
+				if (cdataEnd < 0)
+				{
+					throw new XMLException("Unterminated CDATA section");
+				}
+				
+				value.append(line, next + CDATA_START.length(), cdataEnd);
+				position = cdataEnd + CDATA_END.length();
+			}
+			else if (line.startsWith(COMMENT_START, next))
+			{
+				final int commentEnd = line.indexOf(COMMENT_END, next + COMMENT_START.length());
+				if (commentEnd < 0)
+				{
+					throw new XMLException("Unterminated comment");
+				}
+				
+				position = commentEnd + COMMENT_END.length();
+			}
+			else if (line.startsWith(endTag, next))
+			{
+				position = skipWhitespace(line, next + endTag.length());
+				expect(line, position, ">");
+				break;
+			}
+			else
+			{
+				throw new XMLException("Unexpected element in the message content");
+			}
+		}
+		
+		return createMessage(attributes, value.toString());
+	}
+	
+	private static BaseMqttMessage createMessage(final Attributes attributes, final String value) throws XMLException
+	{
+		if (attributes.topic == null)
+		{
+			throw new XMLException("Missing topic attribute");
+		}
+		
+		final MqttMessage mqttMessage = new MqttMessage();
+		
+		if (value == null)
+		{
+			// Payload not decoded - leave it empty
+		}
+		else if (parseBoolean(attributes.encoded))
+		{
+			mqttMessage.setPayload(Base64.decodeBase64(value));
+		}
+		else
+		{
+			mqttMessage.setPayload(ConversionUtils.stringToArray(value));
+		}
+		
+		mqttMessage.setQos(attributes.qos == null ? 0 : (int) parseNumber(attributes.qos, "qos"));
+		mqttMessage.setRetained(parseBoolean(attributes.retained));
+		
+		final long id = attributes.id == null ? 0 : parseNumber(attributes.id, "id");
+		final long timestamp = attributes.timestamp == null ? 0 : parseNumber(attributes.timestamp, "timestamp");
+		
+		return new BaseMqttMessage(id, attributes.topic, mqttMessage, new Date(timestamp));
+	}
+	
+	/**
+	 * Skips any leading whitespace, XML declaration and comments.
+	 */
+	private static int skipProlog(final String line, final int start) throws XMLException
+	{
+		int position = skipWhitespace(line, start);
+		
+		while (true)
+		{
+			if (line.startsWith("<?", position))
+			{
+				final int end = line.indexOf("?>", position);
+				if (end < 0)
+				{
+					throw new XMLException("Unterminated XML declaration");
+				}
+				position = skipWhitespace(line, end + 2);
+			}
+			else if (line.startsWith(COMMENT_START, position))
+			{
+				final int end = line.indexOf(COMMENT_END, position);
+				if (end < 0)
+				{
+					throw new XMLException("Unterminated comment");
+				}
+				position = skipWhitespace(line, end + COMMENT_END.length());
+			}
+			else
+			{
+				return position;
+			}
+		}
+	}
+	
+	/**
+	 * Decodes entity references in the given part of the line. Ampersands
+	 * not starting a known entity reference are kept as they are.
+	 * 
+	 * @param line The line
+	 * @param from Start of the text to decode
+	 * @param to End of the text to decode
+	 * @param attribute Whether an attribute value is decoded (whitespace characters get normalised)
+	 * 
+	 * @return The decoded text
+	 */
+	private static String decode(final String line, final int from, final int to, final boolean attribute) throws XMLException
+	{
+		final int firstSpecial = indexOfSpecial(line, from, to, attribute);
+		
+		// Nothing to decode - most common
+		if (firstSpecial < 0)
+		{
+			return line.substring(from, to);
+		}
+		
+		final StringBuilder decoded = new StringBuilder(to - from);
+		decoded.append(line, from, firstSpecial);
+		
+		int position = firstSpecial;
+		while (position < to)
+		{
+			final char c = line.charAt(position);
+			
+			if (c == '&')
+			{
+				final int end = line.indexOf(';', position);
+				
+				if (end > 0 && end < to)
+				{
+					final int character = decodeEntity(line.substring(position + 1, end));
+					
+					if (character >= 0)
+					{
+						decoded.appendCodePoint(character);
+						position = end + 1;
+						continue;
+					}
+				}
+				
+				decoded.append(c);
+			}
+			else if (attribute && (c == '\t' || c == '\n' || c == '\r'))
+			{
+				decoded.append(' ');
+			}
+			else
+			{
+				decoded.append(c);
+			}
+			
+			position++;
+		}
+		
+		return decoded.toString();
+	}
+	
+	private static int indexOfSpecial(final String line, final int from, final int to, final boolean attribute)
+	{
+		for (int i = from; i < to; i++)
+		{
+			final char c = line.charAt(i);
+			
+			if (c == '&' || (attribute && (c == '\t' || c == '\n' || c == '\r')))
+			{
+				return i;
+			}
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * Decodes the given entity (without the leading ampersand and trailing semicolon).
+	 * 
+	 * @return The character, or -1 if not a known entity
+	 * 
+	 * @throws XMLException Thrown when the entity is a character reference to an invalid character
+	 */
+	private static int decodeEntity(final String entity) throws XMLException
+	{
+		switch (entity)
+		{
+			case "lt":
+				return '<';
+			case "gt":
+				return '>';
+			case "amp":
+				return '&';
+			case "quot":
+				return '"';
+			case "apos":
+				return '\'';
+			default:
+				break;
+		}
+		
+		if (!entity.startsWith("#"))
+		{
+			return -1;
+		}
+		
+		try
+		{
+			final int character = entity.startsWith("#x") 
+					? Integer.parseInt(entity.substring(2), 16) : Integer.parseInt(entity.substring(1));
+			
+			if (Character.isValidCodePoint(character))
+			{
+				return character;
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			// Handled below
+		}
+		
+		throw new XMLException("Invalid character reference: &" + entity + ";");
+	}
+	
+	private static long parseNumber(final String value, final String name) throws XMLException
+	{
+		try
+		{
+			return Long.parseLong(value.trim());
+		}
+		catch (NumberFormatException e)
+		{
+			throw new XMLException("Invalid " + name + " value: " + value, e);
+		}
+	}
+	
+	private static boolean parseBoolean(final String value)
+	{
+		if (value == null)
+		{
+			return false;
+		}
+		
+		final String trimmed = value.trim();
+		return "true".equals(trimmed) || "1".equals(trimmed);
+	}
+	
+	private static int skipWhitespace(final String line, final int start)
+	{
+		int position = start;
+		
+		while (position < line.length() && isWhitespace(line.charAt(position)))
+		{
+			position++;
+		}
+		
+		return position;
+	}
+	
+	private static boolean isWhitespace(final char c)
+	{
+		return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+	}
+	
+	private static void expect(final String line, final int position, final String expected) throws XMLException
+	{
+		if (!line.startsWith(expected, position))
+		{
+			throw new XMLException("Expected '" + expected + "' at position " + position);
+		}
+	}
+}
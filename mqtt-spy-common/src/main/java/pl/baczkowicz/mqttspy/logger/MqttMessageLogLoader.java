@@ -0,0 +1,283 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2014 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.mqttspy.logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.baczkowicz.mqttspy.messages.BaseMqttMessage;
+import pl.baczkowicz.spy.exceptions.SpyException;
+import pl.baczkowicz.spy.exceptions.XMLException;
+import pl.baczkowicz.spy.files.MappedLineFile;
+import pl.baczkowicz.spy.utils.tasks.ProgressUpdater;
+
+/**
+ * Streaming loader of the mqtt-spy message log. The log file is memory-mapped
+ * and indexed by line, and then parsed in chunks on a number of threads.
+ * Parsed chunks are passed on in the file's order as soon as they are ready,
+ * so that only a few chunks are held in memory at any time (apart from what
+ * the consumer keeps). Lines are decoded with the MqttMessageLogLineParser.
+ * 
+ * Binary logs (see MqttBinaryMessageLog) are loaded the same way, with chunks
+ * made of whole blocks.
+ */
+public class MqttMessageLogLoader implements Closeable
+{
+	/** Diagnostic logger. */
+	private final static Logger logger = LoggerFactory.getLogger(MqttMessageLogLoader.class);
+	
+	/** Number of messages parsed in one go. */
+	public static final int CHUNK_SIZE = 1000;
+	
+	/** The indexed log file (null if binary). */
+	private final MappedLineFile file;
+	
+	/** The binary log (null if XML). */
+	private final MqttBinaryMessageLogReader binaryFile;
+	
+	/**
+	 * Opens and indexes the given message log.
+	 * 
+	 * @param logFile The message log file
+	 * @param progress Updated with the number of indexed bytes, and checked for cancellation (can be null)
+	 * 
+	 * @throws SpyException Thrown when the file cannot be opened
+	 */
+	public MqttMessageLogLoader(final File logFile, final ProgressUpdater progress) throws SpyException
+	{
+		try
+		{
+			if (MqttBinaryMessageLog.isBinaryLog(logFile))
+			{
+				this.file = null;
+				this.binaryFile = new MqttBinaryMessageLogReader(logFile, progress);
+			}
+			else
+			{
+				// Same charset as used when writing the log
+				this.file = new MappedLineFile(logFile, Charset.defaultCharset(), progress);
+				this.binaryFile = null;
+			}
+		}
+		catch (IOException e)
+		{
+			throw new SpyException("Can't open the message audit log file at " + logFile.getAbsolutePath(), e);
+		}
+		
+		logger.info("Message audit log - indexed {} messages in {}", getMessageCount(), logFile.getAbsoluteFile());
+	}
+	
+	/**
+	 * Gets the number of messages in the log (including any that might fail to parse).
+	 * 
+	 * @return Number of messages
+	 */
+	public int getMessageCount()
+	{
+		return file != null ? file.getLineCount() : (int) binaryFile.getMessageCount();
+	}
+	
+	/**
+	 * Parses all messages, passing them on in chunks, in the log's order.
+	 * Chunks are passed on from the calling thread.
+	 * 
+	 * @param chunkConsumer Consumer of the parsed messages
+	 * @param progress Updated with the number of parsed messages, and checked for cancellation (can be null)
+	 * 
+	 * @return Number of parsed messages (messages that cannot be parsed are skipped)
+	 * 
+	 * @throws SpyException Thrown when the messages cannot be parsed
+	 */
+	public int load(final Consumer<List<BaseMqttMessage>> chunkConsumer, final ProgressUpdater progress) throws SpyException
+	{
+		final int threads = Runtime.getRuntime().availableProcessors();
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		
+		// Only a few chunks are parsed ahead of the consumer
+		final Deque<Future<List<BaseMqttMessage>>> pending = new ArrayDeque<>();
+		final Deque<Integer> pendingEnds = new ArrayDeque<>();
+		
+		// Lines or blocks
+		final int units = file != null ? file.getLineCount() : binaryFile.getBlockCount();
+		
+		int nextChunk = 0;
+		int parsed = 0;
+		
+		try
+		{
+			while (nextChunk < units || !pending.isEmpty())
+			{
+				while (nextChunk < units && pending.size() < threads * 2)
+				{
+					final int from = nextChunk;
+					final int to = chunkEnd(from, units);
+					pending.add(executor.submit(() -> parse(from, to)));
+					pendingEnds.add(to);
+					nextChunk = to;
+				}
+				
+				final List<BaseMqttMessage> chunk = pending.poll().get();
+				final int consumed = pendingEnds.poll();
+				parsed = parsed + chunk.size();
+				chunkConsumer.accept(chunk);
+				
+				if (progress != null)
+				{
+					if (progress.isCancelled())
+					{
+						logger.info("Task cancelled!");
+						break;
+					}
+					progress.update(consumed, units);
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			logger.info("Loading interrupted");
+		}
+		catch (ExecutionException e)
+		{
+			throw new SpyException("Can't parse the message audit log file", e.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		
+		logger.info("Message audit log - parsed {} messages", parsed);
+		
+		return parsed;
+	}
+	
+	/**
+	 * Finds the end of the chunk starting at the given line or block.
+	 * 
+	 * @param from Index of the first line or block
+	 * @param units Number of lines or blocks
+	 * 
+	 * @return Index after the last line or block of the chunk
+	 */
+	private int chunkEnd(final int from, final int units)
+	{
+		if (file != null)
+		{
+			return Math.min(units, from + CHUNK_SIZE);
+		}
+		
+		// Whole blocks, with at least a chunk's worth of messages
+		int to = from + 1;
+		while (to < units && binaryFile.getFirstMessage(to) - binaryFile.getFirstMessage(from) < CHUNK_SIZE)
+		{
+			to++;
+		}
+		
+		return to;
+	}
+	
+	/**
+	 * Parses the given range of messages (or blocks).
+	 * 
+	 * @param from Index of the first message (or block)
+	 * @param to Index after the last message (or block)
+	 * 
+	 * @return Parsed messages
+	 */
+	private List<BaseMqttMessage> parse(final int from, final int to)
+	{
+		if (binaryFile != null)
+		{
+			return readBlocks(from, to);
+		}
+		
+		final List<BaseMqttMessage> messages = new ArrayList<>(to - from);
+		
+		for (int i = from; i < to; i++)
+		{
+			final String message = file.getLine(i);
+			
+			try
+			{
+				messages.add(MqttMessageLogLineParser.parse(message));
+			}
+			catch (XMLException e)
+			{
+				logger.error("Can't process message " + message, e);
+			}
+		}
+		
+		return messages;
+	}
+
+	/**
+	 * Reads the given range of blocks.
+	 * 
+	 * @param from Index of the first block
+	 * @param to Index after the last block
+	 * 
+	 * @return Read messages (blocks that cannot be read are skipped)
+	 */
+	private List<BaseMqttMessage> readBlocks(final int from, final int to)
+	{
+		final List<BaseMqttMessage> messages = new ArrayList<>();
+		
+		for (int i = from; i < to; i++)
+		{
+			try
+			{
+				messages.addAll(binaryFile.readBlock(i));
+			}
+			catch (IOException e)
+			{
+				logger.error("Can't read block " + i, e);
+			}
+		}
+		
+		return messages;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if (file != null)
+		{
+			file.close();
+		}
+		else
+		{
+			binaryFile.close();
+		}
+	}
+}
@@ -20,6 +20,7 @@
 package pl.baczkowicz.mqttspy.logger;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -33,7 +34,6 @@ import pl.baczkowicz.mqttspy.common.generated.LoggedMqttMessage;
 import pl.baczkowicz.mqttspy.messages.BaseMqttMessage;
 import pl.baczkowicz.spy.exceptions.SpyException;
 import pl.baczkowicz.spy.exceptions.XMLException;
-import pl.baczkowicz.spy.files.FileUtils;
 import pl.baczkowicz.spy.utils.ConversionUtils;
 import pl.baczkowicz.spy.utils.TimeUtils;
 import pl.baczkowicz.spy.utils.tasks.ProgressUpdater;
@@ -57,10 +57,17 @@ public class MqttMessageLogParserUtils
 	 */
 	public static List<BaseMqttMessage> readAndConvertMessageLog(final File selectedFile) throws SpyException
 	{
-		final List<String> lines = FileUtils.readFileAsLines(selectedFile);
-		logger.info("Message audit log - read {} messages from {}", lines.size(), selectedFile.getAbsoluteFile());		
-		
-		return processMessageLog(parseMessageLog(lines, null, 0, 0), null, 0, 0);
+		try (final MqttMessageLogLoader loader = new MqttMessageLogLoader(selectedFile, null))
+		{
+			final List<BaseMqttMessage> messages = new ArrayList<BaseMqttMessage>(loader.getMessageCount());
+			loader.load(messages::addAll, null);
+			
+			return messages;
+		}
+		catch (IOException e)
+		{
+			throw new SpyException("Can't close the message audit log file at " + selectedFile.getAbsolutePath(), e);
+		}
 	}
 	
 //	/**
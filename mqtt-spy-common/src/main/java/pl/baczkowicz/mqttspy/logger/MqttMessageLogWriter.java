@@ -0,0 +1,543 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2014 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.mqttspy.logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import pl.baczkowicz.mqttspy.common.generated.MessageLog;
+import pl.baczkowicz.mqttspy.common.generated.MessageLogEnum;
+import pl.baczkowicz.mqttspy.common.generated.MessageLogSyncPolicyEnum;
+import pl.baczkowicz.mqttspy.messages.FormattedMqttMessage;
+
+/**
+ * Writes batches of messages to a message log file, rotating it by size and
+ * (optionally) by time. Messages are encoded into reused buffers and each
+ * batch is written to the file channel in as few writes as possible.
+ *
+ * Messages are written either as XML lines or as blocks of the binary format
+ * (see MqttBinaryMessageLog), as per the message log settings. An existing
+ * file in the other format is rotated out of the way, and an incomplete last
+ * block of an existing binary log is cut off, so that new blocks can be read.
+ *
+ * Rotated files are named like log4j's rolling files (e.g. messages.log.1 is
+ * the most recent one). The file is only opened on the first write.
+ *
+ * This class is not thread-safe - it is meant to be used by a single logger thread.
+ */
+public class MqttMessageLogWriter implements Closeable
+{
+	/** Default size (in MB) at which the log gets rotated. */
+	public static final int DEFAULT_MAX_FILE_SIZE = 10;
+
+	/** Default number of rotated files kept. */
+	public static final int DEFAULT_MAX_BACKUP_INDEX = 5;
+
+	/** Default sync policy. */
+	public static final MessageLogSyncPolicyEnum DEFAULT_SYNC_POLICY = MessageLogSyncPolicyEnum.PERIODIC;
+
+	/** Interval (in milliseconds) between syncs for the periodic sync policy. */
+	public static final long SYNC_INTERVAL = 1000;
+
+	/** Size of the write buffer. */
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	/** Line separator (as used by log4j's %n). */
+	private static final String LINE_SEPARATOR = System.lineSeparator();
+
+	/** The log file. */
+	private final File file;
+
+	/** Message log settings. */
+	private final MessageLog messageLogSettings;
+
+	/** Size (in bytes) at which the log gets rotated. */
+	private final long maxFileSize;
+
+	/** Number of rotated files kept. */
+	private final int maxBackupIndex;
+
+	/** Interval (in milliseconds) at which the log gets rotated; 0 if not rotated by time. */
+	private final long rotationInterval;
+
+	/** When written data is forced to disk. */
+	private final MessageLogSyncPolicyEnum syncPolicy;
+
+	/** Reused builder for composing log lines. */
+	private final StringBuilder line = new StringBuilder(1024);
+
+	/** Reused buffer for the characters of the current line. */
+	private CharBuffer lineChars = CharBuffer.allocate(1024);
+
+	/** Reused buffer for the encoded current line. */
+	private ByteBuffer lineBytes = ByteBuffer.allocate(1024);
+
+	/** Buffer for the encoded lines waiting to be written. */
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+	/** Encoder for the log lines. */
+	private final CharsetEncoder encoder;
+
+	/** Encoder for the binary log (null if writing XML). */
+	private final MqttBinaryMessageLogEncoder binaryEncoder;
+
+	/** Size of the file before any messages are written. */
+	private final int emptyFileSize;
+
+	/** The open file channel (null if not open). */
+	private FileChannel channel;
+
+	/** Size of the current file (including buffered data). */
+	private long fileSize;
+
+	/** When the current file was opened or rotated. */
+	private long fileStartTime;
+
+	/** When the file was last synced. */
+	private long lastSyncTime;
+
+	/** Whether there is any written data that hasn't been synced yet. */
+	private boolean syncPending;
+
+	/** Number of written messages. */
+	private volatile long writtenMessages;
+
+	/** Time between the last written message being received and written (in milliseconds). */
+	private volatile long lag;
+
+	/**
+	 * Creates the writer.
+	 *
+	 * @param file The log file
+	 * @param messageLogSettings Message log settings (including rotation and sync settings)
+	 */
+	public MqttMessageLogWriter(final File file, final MessageLog messageLogSettings)
+	{
+		this.file = file;
+		this.messageLogSettings = messageLogSettings;
+
+		this.maxFileSize = (messageLogSettings.getMaxFileSize() != null
+				? messageLogSettings.getMaxFileSize() : DEFAULT_MAX_FILE_SIZE) * 1024L * 1024L;
+		this.maxBackupIndex = messageLogSettings.getMaxBackupIndex() != null
+				? messageLogSettings.getMaxBackupIndex() : DEFAULT_MAX_BACKUP_INDEX;
+		this.rotationInterval = messageLogSettings.getRotationInterval() != null
+				? messageLogSettings.getRotationInterval() * 60 * 1000L : 0;
+		this.syncPolicy = messageLogSettings.getSyncPolicy() != null
+				? messageLogSettings.getSyncPolicy() : DEFAULT_SYNC_POLICY;
+
+		// Same as log4j - platform's default encoding
+		this.encoder = Charset.defaultCharset().newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		if (MqttBinaryMessageLog.isBinary(messageLogSettings.getValue()))
+		{
+			this.binaryEncoder = new MqttBinaryMessageLogEncoder(
+					MessageLogEnum.BINARY_COMPRESSED.equals(messageLogSettings.getValue()));
+			this.emptyFileSize = MqttBinaryMessageLog.FILE_HEADER_SIZE;
+		}
+		else
+		{
+			this.binaryEncoder = null;
+			this.emptyFileSize = 0;
+		}
+	}
+
+	/**
+	 * Writes the given messages (one line each) and syncs the file as per the sync policy.
+	 *
+	 * @param messages Messages to write
+	 *
+	 * @throws IOException Thrown when cannot write to or rotate the file
+	 */
+	public void write(final List<FormattedMqttMessage> messages) throws IOException
+	{
+		if (messages.isEmpty())
+		{
+			return;
+		}
+
+		final long now = System.currentTimeMillis();
+
+		if (channel == null)
+		{
+			open(now);
+		}
+		else if (rotationInterval > 0 && now - fileStartTime >= rotationInterval)
+		{
+			rotate(now);
+		}
+
+		for (final FormattedMqttMessage message : messages)
+		{
+			if (binaryEncoder != null)
+			{
+				binaryEncoder.add(message, messageLogSettings);
+				if (binaryEncoder.getRawSize() >= MqttBinaryMessageLog.BLOCK_SIZE)
+				{
+					append(binaryEncoder.finishBlock(), now);
+				}
+			}
+			else
+			{
+				appendLine(message, now);
+			}
+		}
+
+		if (binaryEncoder != null && binaryEncoder.getMessageCount() > 0)
+		{
+			append(binaryEncoder.finishBlock(), now);
+		}
+
+		flush();
+
+		if (MessageLogSyncPolicyEnum.EVERY_BATCH.equals(syncPolicy)
+				|| (MessageLogSyncPolicyEnum.PERIODIC.equals(syncPolicy) && now - lastSyncTime >= SYNC_INTERVAL))
+		{
+			sync(now);
+		}
+
+		writtenMessages = writtenMessages + messages.size();
+		lag = System.currentTimeMillis() - messages.get(messages.size() - 1).getDate().getTime();
+	}
+
+	/**
+	 * Syncs any data written since the last sync, if due as per the periodic
+	 * sync policy. To be called when there is nothing to write.
+	 *
+	 * @throws IOException Thrown when cannot sync the file
+	 */
+	public void syncIfDue() throws IOException
+	{
+		final long now = System.currentTimeMillis();
+
+		if (syncPending && MessageLogSyncPolicyEnum.PERIODIC.equals(syncPolicy) && now - lastSyncTime >= SYNC_INTERVAL)
+		{
+			sync(now);
+		}
+	}
+
+	private void appendLine(final FormattedMqttMessage message, final long now) throws IOException
+	{
+		line.setLength(0);
+		SimpleMqttMessageLogComposer.appendReceivedMessageLog(line, message, messageLogSettings);
+		line.append(LINE_SEPARATOR);
+
+		encodeLine();
+		append(lineBytes, now);
+	}
+
+	/**
+	 * Appends a complete line or block to the file.
+	 */
+	private void append(final ByteBuffer data, final long now) throws IOException
+	{
+		final int length = data.remaining();
+
+		// Rotate on line (or block) boundaries, so that every file has complete lines only
+		if (maxFileSize > 0 && fileSize > emptyFileSize && fileSize + length > maxFileSize)
+		{
+			rotate(now);
+		}
+
+		if (buffer.remaining() < length)
+		{
+			flush();
+		}
+
+		if (length > buffer.capacity())
+		{
+			writeFully(data);
+		}
+		else
+		{
+			buffer.put(data);
+		}
+
+		fileSize = fileSize + length;
+	}
+
+	private void encodeLine()
+	{
+		final int length = line.length();
+		if (lineChars.capacity() < length)
+		{
+			lineChars = CharBuffer.allocate(Math.max(length, lineChars.capacity() * 2));
+		}
+
+		lineChars.clear();
+		line.getChars(0, length, lineChars.array(), 0);
+		lineChars.limit(length);
+
+		while (true)
+		{
+			lineBytes.clear();
+			encoder.reset();
+
+			CoderResult result = encoder.encode(lineChars, lineBytes, true);
+			if (!result.isOverflow())
+			{
+				result = encoder.flush(lineBytes);
+			}
+
+			if (!result.isOverflow())
+			{
+				break;
+			}
+
+			// Line too long for the buffer - grow it and start again
+			lineBytes = ByteBuffer.allocate(lineBytes.capacity() * 2);
+			lineChars.rewind();
+		}
+
+		lineBytes.flip();
+	}
+
+	private void open(final long now) throws IOException
+	{
+		final File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.exists())
+		{
+			Files.createDirectories(parent.toPath());
+		}
+
+		channel = openChannel(file.toPath());
+		fileSize = channel.size();
+		fileStartTime = now;
+
+		if (fileSize > 0 && MqttBinaryMessageLog.isBinaryLog(file) != (binaryEncoder != null))
+		{
+			// Don't mix formats in one file
+			rotate(now);
+		}
+		else if (binaryEncoder != null && fileSize == 0)
+		{
+			MqttBinaryMessageLog.putFileHeader(buffer);
+			fileSize = emptyFileSize;
+		}
+		else if (binaryEncoder != null)
+		{
+			truncateIncompleteBlock();
+		}
+		else if (fileSize > 0)
+		{
+			endIncompleteLine();
+		}
+	}
+
+	/**
+	 * Starts a new line if the last one is incomplete (e.g. after a failed write).
+	 */
+	private void endIncompleteLine() throws IOException
+	{
+		final ByteBuffer last = ByteBuffer.allocate(1);
+
+		try (final FileChannel reader = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			reader.read(last, fileSize - 1);
+		}
+
+		if (last.get(0) != '\n')
+		{
+			final byte[] separator = LINE_SEPARATOR.getBytes(encoder.charset());
+			buffer.put(separator);
+			fileSize = fileSize + separator.length;
+		}
+	}
+
+	/**
+	 * Opens the file channel for appending.
+	 *
+	 * @param path Path to the file
+	 *
+	 * @return The open channel
+	 *
+	 * @throws IOException Thrown when cannot open the file
+	 */
+	FileChannel openChannel(final Path path) throws IOException
+	{
+		return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	private void truncateIncompleteBlock() throws IOException
+	{
+		final long validLength;
+
+		try (final MqttBinaryMessageLogReader reader = new MqttBinaryMessageLogReader(file, null))
+		{
+			validLength = reader.getValidLength();
+		}
+
+		if (validLength < fileSize)
+		{
+			channel.truncate(validLength);
+			fileSize = validLength;
+		}
+	}
+
+	private void rotate(final long now) throws IOException
+	{
+		flush();
+		closeChannel();
+
+		if (maxBackupIndex > 0)
+		{
+			// Shift the older files up, dropping the oldest one
+			Files.deleteIfExists(backupFile(maxBackupIndex).toPath());
+
+			for (int i = maxBackupIndex - 1; i >= 1; i--)
+			{
+				final File backup = backupFile(i);
+				if (backup.exists())
+				{
+					Files.move(backup.toPath(), backupFile(i + 1).toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+
+			Files.move(file.toPath(), backupFile(1).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		else
+		{
+			Files.deleteIfExists(file.toPath());
+		}
+
+		open(now);
+	}
+
+	private File backupFile(final int index)
+	{
+		return new File(file.getPath() + "." + index);
+	}
+
+	private void flush() throws IOException
+	{
+		buffer.flip();
+		try
+		{
+			writeFully(buffer);
+		}
+		finally
+		{
+			// Also drop the data if the write failed part way through, so that it isn't written twice (e.g. when closing)
+			buffer.clear();
+		}
+	}
+
+	private void writeFully(final ByteBuffer data) throws IOException
+	{
+		while (data.hasRemaining())
+		{
+			channel.write(data);
+			syncPending = true;
+		}
+	}
+
+	private void sync(final long now) throws IOException
+	{
+		if (syncPending)
+		{
+			channel.force(false);
+			syncPending = false;
+		}
+		lastSyncTime = now;
+	}
+
+	private void closeChannel() throws IOException
+	{
+		if (channel != null)
+		{
+			try
+			{
+				if (!MessageLogSyncPolicyEnum.NONE.equals(syncPolicy))
+				{
+					sync(System.currentTimeMillis());
+				}
+			}
+			finally
+			{
+				channel.close();
+				channel = null;
+			}
+		}
+	}
+
+	/**
+	 * Writes out any buffered data and closes the file. The file gets reopened
+	 * on the next write.
+	 */
+	public void close() throws IOException
+	{
+		try
+		{
+			if (channel != null)
+			{
+				flush();
+			}
+		}
+		finally
+		{
+			buffer.clear();
+			closeChannel();
+		}
+	}
+
+	/**
+	 * Gets the log file.
+	 *
+	 * @return The log file
+	 */
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * Gets the number of written messages.
+	 *
+	 * @return Number of messages written so far
+	 */
+	public long getWrittenMessages()
+	{
+		return writtenMessages;
+	}
+
+	/**
+	 * Gets the time between the last written message being received and written.
+	 *
+	 * @return The lag in milliseconds
+	 */
+	public long getLag()
+	{
+		return lag;
+	}
+}
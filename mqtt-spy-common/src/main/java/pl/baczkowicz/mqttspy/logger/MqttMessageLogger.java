@@ -19,10 +19,12 @@
  */
 package pl.baczkowicz.mqttspy.logger;
 
-import java.util.Queue;
-
-import org.apache.log4j.Logger;
-import org.apache.log4j.RollingFileAppender;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import pl.baczkowicz.mqttspy.common.generated.MessageLog;
 import pl.baczkowicz.mqttspy.messages.FormattedMqttMessage;
@@ -30,73 +32,67 @@ import pl.baczkowicz.mqttspy.utils.Utils;
 import pl.baczkowicz.spy.utils.ThreadingUtils;
 
 /**
- * This class is responsible for handling logging messages.
+ * This class is responsible for handling logging messages. Queued messages
+ * are taken off in batches and written out by a message log writer.
+ * 
+ * The logger can either run on its own thread, or be called periodically
+ * (see logQueuedMessages) - e.g. when a number of loggers share a thread pool.
  */
 public class MqttMessageLogger implements Runnable
 {
-	/** Message log logger. */
-	private final static Logger logger = Logger.getLogger(MqttMessageLogger.class);
+	/** Maximum number of messages written in one batch. */
+	public final static int MAX_BATCH_SIZE = 1000;
+	
+	/** If the lag goes above this (in milliseconds), log a warning. */
+	private final static long LAG_WARNING_THRESHOLD = 1000;
 	
-	/** If X messages logged without a break, log this. */
-	private final static int LOG_INTERVAL = 10000;
+	/** Minimum interval (in milliseconds) between lag warnings. */
+	private final static long LAG_WARNING_INTERVAL = 10000;
 	
-	/** Message log logger. */
-	private Logger localLogger;
+	/** Maximum number of batches written in one call to logQueuedMessages, so that other loggers sharing the thread get their turn. */
+	private final static int MAX_BATCHES_PER_CALL = 10;
+	
+	/** Connection ID. */
+	private final String connectionId;
 	
 	/** Received messages that are to be logged. */
-	private final Queue<FormattedMqttMessage> queue;
+	private final BlockingQueue<FormattedMqttMessage> queue;
 
-	/** Message log settings. */
-	private final MessageLog messageLogSettings;
+	/** Message log writer (null if there is no file to log to). */
+	private final MqttMessageLogWriter writer;
 	
 	/** Flag indicating whether the logger is/should be running. */
-	private boolean running;
+	private volatile boolean running;
 
-	private int sleepWhenNoMessages;
+	/** How long to wait for messages (in milliseconds) before checking whether still running. */
+	private final int pollTimeout;
+	
+	/** When the last lag warning was logged. */
+	private long lastLagWarning;
+	
+	/** Batch used by logQueuedMessages. */
+	private final List<FormattedMqttMessage> queuedBatch = new ArrayList<>(MAX_BATCH_SIZE);
 
 	/**
 	 * Creates a MqttMessageLogger.
 	 * 
 	 * @param connectionId Connection ID 
 	 * @param queue The message queue to be used
-	 * @param connectionSettings The connection details
+	 * @param messageLogSettings The message log settings
+	 * @param defaultLogFile File to log to if none specified in the settings (null if none)
+	 * @param pollTimeout How long to wait for messages (in milliseconds) before checking whether still running
 	 */
 	public MqttMessageLogger(
-			final String connectionId, final Queue<FormattedMqttMessage> queue, 
+			final String connectionId, final BlockingQueue<FormattedMqttMessage> queue, 
 			final MessageLog messageLogSettings, 
-			final boolean useAsTemplate, final int sleepWhenNoMessages)
+			final String defaultLogFile, final int pollTimeout)
 	{
+		this.connectionId = connectionId;
 		this.queue = queue;
-		this.messageLogSettings = messageLogSettings;
-		this.sleepWhenNoMessages = sleepWhenNoMessages;
+		this.pollTimeout = pollTimeout;
 		
-		final String file = messageLogSettings.getLogFile();
-		if (file != null)
-		{			
-			RollingFileAppender appender;
-			
-			if (useAsTemplate)
-			{
-				final RollingFileAppender templateAppender = (RollingFileAppender) logger.getAppender("messagelog");
-				
-				appender = new RollingFileAppender();
-				appender.setThreshold(templateAppender.getThreshold());
-				appender.setMaximumFileSize(templateAppender.getMaximumFileSize());
-				appender.setMaxBackupIndex(templateAppender.getMaxBackupIndex());
-				appender.setLayout(templateAppender.getLayout());
-				appender.setFile(file);
-				appender.activateOptions();
-				
-				localLogger = Logger.getLogger("pl.baczkowicz.mqttspy.logger.ConnectionSpecificLogger" + connectionId);
-				localLogger.addAppender(appender);
-				localLogger.setAdditivity(false);
-			}
-			else
-			{
-				appender = (RollingFileAppender) logger.getAppender("messagelog");
-				appender.setFile(file);
-			}			
-		}
+		final String file = messageLogSettings.getLogFile() != null ? messageLogSettings.getLogFile() : defaultLogFile;
+		this.writer = file != null ? new MqttMessageLogWriter(new File(file), messageLogSettings) : null;
 	}
 	
 	public void run()
@@ -104,41 +100,144 @@ public class MqttMessageLogger implements Runnable
 		ThreadingUtils.logThreadStarting("Message Audit Logger");
 		running = true;
 		
-		while (running)
+		final List<FormattedMqttMessage> batch = new ArrayList<>(MAX_BATCH_SIZE);
+		
+		try
 		{
-			try
+			while (running)
 			{
-				int mesagesProcessed = 0;
-				while (queue.size() > 0)
+				final FormattedMqttMessage message = queue.poll(pollTimeout, TimeUnit.MILLISECONDS);
+				
+				if (message == null)
 				{
-					mesagesProcessed++;
-					if (localLogger != null)
-					{
-						localLogger.info(SimpleMqttMessageLogComposer.createReceivedMessageLog(queue.remove(), messageLogSettings));
-					}
-					else
-					{
-						logger.info(SimpleMqttMessageLogComposer.createReceivedMessageLog(queue.remove(), messageLogSettings));
-					}
-					
-					if (mesagesProcessed > LOG_INTERVAL)
-					{
-						Utils.logger.warn("Logged " + LOG_INTERVAL + " messages; logger not keeping up; queue size = " + queue.size());						
-						mesagesProcessed = 0;
-					}
+					syncIfDue();
+					continue;
 				}
-			
-				// When no messages present, sleep a bit
-				Thread.sleep(sleepWhenNoMessages);
+				
+				batch.add(message);
+				queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+				write(batch);
 			}
-			catch (InterruptedException e)
-			{				
-				// Not expected
+			
+			// Write out whatever is still queued
+			while (queue.drainTo(batch, MAX_BATCH_SIZE) > 0)
+			{
+				write(batch);
 			}
 		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			running = false;
+			close();
+		}
 		
 		ThreadingUtils.logThreadEnding();
 	}
+	
+	/**
+	 * Writes out the queued messages, without waiting for more. To be called
+	 * periodically when the logger is not running on its own thread.
+	 * 
+	 * @return Number of messages taken off the queue
+	 */
+	public synchronized int logQueuedMessages()
+	{
+		int logged = 0;
+		
+		for (int i = 0; i < MAX_BATCHES_PER_CALL && queue.drainTo(queuedBatch, MAX_BATCH_SIZE) > 0; i++)
+		{
+			logged = logged + queuedBatch.size();
+			write(queuedBatch);
+		}
+		
+		if (logged == 0)
+		{
+			syncIfDue();
+		}
+		
+		return logged;
+	}
+	
+	/**
+	 * Writes out all queued messages and closes the log file. To be called
+	 * when the logger is not running on its own thread.
+	 */
+	public synchronized void logQueuedMessagesAndClose()
+	{
+		while (logQueuedMessages() > 0)
+		{
+			// Keep going until the queue is empty
+		}
+		
+		close();
+	}
+	
+	private void write(final List<FormattedMqttMessage> batch)
+	{
+		try
+		{
+			if (writer != null)
+			{
+				writer.write(batch);
+				checkLag();
+			}
+		}
+		catch (IOException e)
+		{
+			Utils.logger.error("Cannot write " + batch.size() + " message(s) to " + writer.getFile(), e);
+			close();
+		}
+		finally
+		{
+			batch.clear();
+		}
+	}
+	
+	private void checkLag()
+	{
+		final long now = System.currentTimeMillis();
+		
+		if (writer.getLag() > LAG_WARNING_THRESHOLD && now - lastLagWarning >= LAG_WARNING_INTERVAL)
+		{
+			Utils.logger.warn("[" + connectionId + "] Message logger not keeping up; lag = " + writer.getLag() 
+					+ " ms; queue size = " + queue.size() + "; messages logged = " + writer.getWrittenMessages());
+			lastLagWarning = now;
+		}
+	}
+	
+	private void syncIfDue()
+	{
+		try
+		{
+			if (writer != null)
+			{
+				writer.syncIfDue();
+			}
+		}
+		catch (IOException e)
+		{
+			Utils.logger.error("Cannot sync " + writer.getFile(), e);
+		}
+	}
+	
+	private void close()
+	{
+		try
+		{
+			if (writer != null)
+			{
+				writer.close();
+			}
+		}
+		catch (IOException e)
+		{
+			Utils.logger.error("Cannot close " + writer.getFile(), e);
+		}
+	}
 		
 	/**
 	 * Returns the number of message awaiting processing.
@@ -150,6 +249,26 @@ public class MqttMessageLogger implements Runnable
 		return queue.size();
 	}
 	
+	/**
+	 * Gets the time between the last logged message being received and written.
+	 * 
+	 * @return The lag in milliseconds (0 if nothing logged yet)
+	 */
+	public long getLag()
+	{
+		return writer != null ? writer.getLag() : 0;
+	}
+	
+	/**
+	 * Gets the number of logged messages.
+	 * 
+	 * @return Number of messages written so far
+	 */
+	public long getLoggedMessages()
+	{
+		return writer != null ? writer.getWrittenMessages() : 0;
+	}
+	
 	/**
 	 * The running state.
 	 * 
@@ -161,14 +280,14 @@ public class MqttMessageLogger implements Runnable
 	}
 	
 	/**
-	 * Stops the logger.
+	 * Stops the logger (once all queued messages have been written).
 	 */
 	public void stop()
 	{
 		running = false;
 	}
 	
-	public Queue<FormattedMqttMessage> getQueue()
+	public BlockingQueue<FormattedMqttMessage> getQueue()
 	{
 		return queue;
 	}
@@ -31,7 +31,7 @@ import pl.baczkowicz.mqttspy.messages.FormattedMqttMessage;
 import pl.baczkowicz.spy.utils.ConversionUtils;
 
 /**
- * Simple message log composer (string buffer based, no JAXB).
+ * Simple message log composer (string builder based, no JAXB).
  */
 public class SimpleMqttMessageLogComposer
 {
@@ -51,7 +51,22 @@ public class SimpleMqttMessageLogComposer
      */
 	public static String createReceivedMessageLog(final FormattedMqttMessage message, final MessageLog messageLogOptions)
 	{
-		final StringBuffer logMessage = new StringBuffer();
+		final StringBuilder logMessage = new StringBuilder();
+		appendReceivedMessageLog(logMessage, message, messageLogOptions);
+		
+		return logMessage.toString();
+	}
+	
+    /**
+     * Appends a single message log entry for the supplied message object to
+     * the given builder (which can be reused for subsequent messages).
+     * 
+     * @param logMessage The builder to append to
+     * @param message The message to be logged
+     * @param messageLogOptions Logging options
+     */
+	public static void appendReceivedMessageLog(final StringBuilder logMessage, final FormattedMqttMessage message, final MessageLog messageLogOptions)
+	{
 		logMessage.append("<MqttMessage");
 		
 		appendAttribute(logMessage, "id", String.valueOf(message.getId()));
@@ -86,8 +101,6 @@ public class SimpleMqttMessageLogComposer
 		populatePayload(logMessage, message, messageLogOptions);
 		
 		logMessage.append("</MqttMessage>");
-		
-		return logMessage.toString();
 	}
 	
 	/**
@@ -97,10 +110,10 @@ public class SimpleMqttMessageLogComposer
 	 * @param message The message to be logged 
      * @param messageLogOptions Logging options
 	 */
-	private static void populatePayload(final StringBuffer logMessage, final FormattedMqttMessage message, final MessageLog messageLogOptions)
+	private static void populatePayload(final StringBuilder logMessage, final FormattedMqttMessage message, final MessageLog messageLogOptions)
 	{
 		boolean encoded = MessageLogEnum.XML_WITH_ENCODED_PAYLOAD.equals(messageLogOptions.getValue());
-		final String payload = new String(message.getPayload());
+		final String payload = message.getPayload();
 		
 		// If the payload contains a new line character, encode it, as it would make the message log invalid (no new lines allowed for a message)
 		if (!encoded && 
@@ -121,14 +134,14 @@ public class SimpleMqttMessageLogComposer
 		
 		if (encoded)
 		{
-			appendValue(logMessage, Base64.encodeBase64String(message.getRawMessage().getPayload()));
+			appendValue(logMessage, Base64.encodeBase64String(message.getRawPayload()));
 		}
 		else
 		{			
 			final boolean useCData = XML_CHARS.matcher(payload).find();
 			if (useCData)
 			{
-				appendValue(logMessage, "<![CDATA[" + payload + "]]>");
+				logMessage.append("<![CDATA[").append(payload).append("]]>");
 			}
 			else
 			{
@@ -144,9 +157,9 @@ public class SimpleMqttMessageLogComposer
 	 * @param attributeName The attribute name
 	 * @param attributeValue The attribute value
 	 */
-	public static void appendAttribute(final StringBuffer logMessage, final String attributeName, final String attributeValue)
+	public static void appendAttribute(final StringBuilder logMessage, final String attributeName, final String attributeValue)
 	{
-		logMessage.append(" " + attributeName + "=\"" + attributeValue + "\"");
+		logMessage.append(' ').append(attributeName).append("=\"").append(attributeValue).append('"');
 	}
 	
 	/**
@@ -155,7 +168,7 @@ public class SimpleMqttMessageLogComposer
 	 * @param logMessage The message log to be populated
 	 * @param value The value to be appended
 	 */
-	public static void appendValue(final StringBuffer logMessage, final String value)
+	public static void appendValue(final StringBuilder logMessage, final String value)
 	{
 		logMessage.append(value);
 	}
@@ -24,11 +24,18 @@ import java.util.Date;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 
 import pl.baczkowicz.spy.messages.FormattedMessage;
+import pl.baczkowicz.spy.messages.SharedPayload;
+import pl.baczkowicz.spy.storage.PayloadArena;
 import pl.baczkowicz.spy.utils.ConversionUtils;
 
 /**
  * Represents a message received on a topic (wraps the Paho's MqttMessage).
  * 
+ * The payload can be moved to an off-heap arena, in which case the wrapped
+ * MqttMessage holds an empty payload, and the actual payload is read from the
+ * arena whenever requested. When released from the arena, the payload is
+ * copied back onto the heap.
+ * 
  * TODO: merge that with FormattedMqttMessage
  */
 public class BaseMqttMessage extends FormattedMessage implements IBaseMqttMessage
@@ -36,6 +43,18 @@ public class BaseMqttMessage extends FormattedMessage implements IBaseMqttMessag
 	/** The received message. */
 	private final MqttMessage rawMessage;
 	
+	/** Payload set on the MqttMessage when the actual payload is kept off-heap. */
+	private static final byte[] OFF_HEAP_PLACEHOLDER = new byte[0];
+	
+	/** The payload and its decoded string, shared with copies of this message. */
+	private SharedPayload sharedPayload;
+	
+	/** Arena holding the payload (if moved off-heap). */
+	private PayloadArena payloadArena;
+	
+	/** Where the payload is stored in the arena (null if on the heap). */
+	private PayloadArena.Allocation offHeapPayload;
+	
 	/**
 	 * Creates a BaseMqttMessage from the given parameters.
 	 * 
@@ -64,17 +83,46 @@ public class BaseMqttMessage extends FormattedMessage implements IBaseMqttMessag
 	}
 	
 	/**
-	 * Makes a copy of the MqttMessage object.
+	 * Creates a BaseMqttMessage from the given parameters.
+	 * 
+	 * @param id Message ID
+	 * @param topic Topic on which it was received
+	 * @param message The received message
+	 * @param date When the message was received
+	 * @param sharedPayload The message's payload (shared with other messages)
+	 */
+	protected BaseMqttMessage(final long id, final String topic, final MqttMessage message, final Date date, final SharedPayload sharedPayload)
+	{
+		this(id, topic, message, date);
+		this.sharedPayload = sharedPayload;
+	}
+	
+	/**
+	 * Makes a copy of the MqttMessage object. The payload array is not copied,
+	 * as it is never modified in place (setting the payload replaces the array).
 	 *  
 	 * @param message The object to be copied.
 	 * 
 	 * @return A copy of the given object
 	 */
 	public static MqttMessage copyMqttMessage(final MqttMessage message)
+	{
+		return copyMqttMessage(message, message.getPayload());
+	}
+	
+	/**
+	 * Makes a copy of the MqttMessage object, with the given payload.
+	 *  
+	 * @param message The object to be copied.
+	 * @param payload The payload to set on the copy
+	 * 
+	 * @return A copy of the given object
+	 */
+	public static MqttMessage copyMqttMessage(final MqttMessage message, final byte[] payload)
 	{
 		final MqttMessage copy = new MqttMessage();
 		
-		copy.setPayload(message.getPayload());
+		copy.setPayload(payload);
 		copy.setQos(message.getQos());
 		copy.setRetained(message.isRetained());
 		
@@ -91,18 +139,120 @@ public class BaseMqttMessage extends FormattedMessage implements IBaseMqttMessag
 		return rawMessage;
 	}
 	
+	/**
+	 * Gets the payload and its decoded string. If the payload has been
+	 * replaced since last time (e.g. directly on the MqttMessage), a new
+	 * holder is created. Decoding only happens when the string is requested.
+	 * 
+	 * If the payload is kept off-heap, the arena's heap copy of it is used,
+	 * which is not retained by this message (the arena only keeps recently
+	 * read payloads).
+	 * 
+	 * @return The shared payload
+	 */
+	public synchronized SharedPayload getSharedPayload()
+	{
+		if (offHeapPayload != null)
+		{
+			final SharedPayload view = payloadArena.readShared(offHeapPayload);
+			
+			// Null only if the whole arena has been cleared
+			if (view != null)
+			{
+				return view;
+			}
+		}
+		
+		final byte[] payload = rawMessage.getPayload();
+		
+		if (sharedPayload == null || !sharedPayload.holds(payload))
+		{
+			sharedPayload = new SharedPayload(payload);
+		}
+		
+		return sharedPayload;
+	}
+	
 	// Convenience methods for accessing the message object	
 	
 	@Override
 	public String getPayload()
 	{
-		return ConversionUtils.arrayToString(this.rawMessage.getPayload());
+		return getSharedPayload().getDecodedPayload();
 	}
 	
 	@Override
-	public void setPayload(final String payload)
+	public synchronized boolean movePayloadTo(final PayloadArena arena)
 	{
-		this.rawMessage.setPayload(ConversionUtils.stringToArray(payload));
+		if (offHeapPayload != null)
+		{
+			return true;
+		}
+		
+		// Copies of this message share the off-heap copy
+		final PayloadArena.Allocation allocation = getSharedPayload().storeIn(arena);
+		
+		if (allocation == null)
+		{
+			// No space (or nothing to store) - keep it on the heap
+			return false;
+		}
+		
+		payloadArena = arena;
+		offHeapPayload = allocation;
+		sharedPayload = null;
+		rawMessage.setPayload(OFF_HEAP_PLACEHOLDER);
+		
+		return true;
+	}
+	
+	@Override
+	public synchronized void releasePayload()
+	{
+		if (offHeapPayload == null)
+		{
+			return;
+		}
+		
+		// The message might still be used elsewhere (e.g. search results, charts), so bring the payload back onto the heap
+		SharedPayload view = payloadArena.getCachedView(offHeapPayload);
+		
+		if (view == null)
+		{
+			final byte[] payload = payloadArena.read(offHeapPayload);
+			view = payload != null ? new SharedPayload(payload) : null;
+		}
+		
+		if (view != null)
+		{
+			rawMessage.setPayload(view.getPayload());
+			sharedPayload = view;
+		}
+		releaseOffHeapPayload();
+	}
+	
+	private void releaseOffHeapPayload()
+	{
+		if (offHeapPayload != null)
+		{
+			payloadArena.release(offHeapPayload);
+			offHeapPayload = null;
+		}
+	}
+	
+	@Override
+	public synchronized void setPayload(final String payload)
+	{
+		final byte[] newPayload = ConversionUtils.stringToArray(payload);
+		releaseOffHeapPayload();
+		this.rawMessage.setPayload(newPayload);
+		this.sharedPayload = new SharedPayload(newPayload, payload);
+		
+		// Anything formatted is now out of date
+		deferFormatting(null, null);
+		setLastUsedFormatter(null);
+		setFormattedPayload(null);
+		setPrettyPayload(null);
 	}
 	
 	@Override
@@ -119,6 +269,6 @@ public class BaseMqttMessage extends FormattedMessage implements IBaseMqttMessag
 	
 	public byte[] getRawPayload()
 	{
-		return getRawMessage().getPayload();
+		return getSharedPayload().getPayload();
 	}
 }
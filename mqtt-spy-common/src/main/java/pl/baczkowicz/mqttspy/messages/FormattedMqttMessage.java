@@ -25,7 +25,7 @@ import java.util.List;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 
 import pl.baczkowicz.mqttspy.connectivity.BaseMqttConnection;
-import pl.baczkowicz.spy.utils.ConversionUtils;
+import pl.baczkowicz.spy.messages.SharedPayload;
 
 public class FormattedMqttMessage extends BaseMqttMessage
 {
@@ -42,24 +42,32 @@ public class FormattedMqttMessage extends BaseMqttMessage
 	{
 		super(id, topic, message);
 		this.connection = connection;
-		setFormattedPayload(ConversionUtils.arrayToString(message.getPayload()));
 	}
 	
 	public FormattedMqttMessage(final long id, final String topic, final MqttMessage message, final Date date, final BaseMqttConnection connection)
 	{
 		super(id, topic, message, date);
 		this.connection = connection;
-		setFormattedPayload(ConversionUtils.arrayToString(message.getPayload()));
 	}
 	
+	/**
+	 * Creates a lightweight copy of the given message. The payload (and its
+	 * decoded string, once decoded) is shared with the original rather than copied; if the
+	 * payload gets set on either message afterwards, only that message 
+	 * switches to the new payload.
+	 * 
+	 * @param message The message to copy
+	 */
 	public FormattedMqttMessage(final FormattedMqttMessage message)
 	{
-		this(message.getId(), message.getTopic(), copyMqttMessage(message.getRawMessage()), message.getConnection());
-		// Note: if payload is set, this results in a bug, where it performs unnecessary conversions
-		// setPayload(new String(message.getPayload()));
-		setRawPayload(message.getRawPayload().clone());
-		setFormattedPayload(message.getFormattedPayload());
-		setLastUsedFormatter(message.getLastUsedFormatter());
+		this(message, message.getSharedPayload());
+	}
+	
+	private FormattedMqttMessage(final FormattedMqttMessage message, final SharedPayload sharedPayload)
+	{
+		super(message.getId(), message.getTopic(), copyMqttMessage(message.getRawMessage(), sharedPayload.getPayload()), 
+				message.getDate(), sharedPayload);
+		this.connection = message.getConnection();
 		setSubscription(message.getSubscription());
 		setMatchingSubscriptionTopics(message.getMatchingSubscriptionTopics());
 	}
@@ -67,7 +75,6 @@ public class FormattedMqttMessage extends BaseMqttMessage
 	public FormattedMqttMessage(final BaseMqttMessage message, final BaseMqttConnection connection)
 	{
 		this(message.getId(), message.getTopic(), message.getRawMessage(), message.getDate(), connection);
-		setFormattedPayload(message.getPayload());
 	}	
 
 	/**
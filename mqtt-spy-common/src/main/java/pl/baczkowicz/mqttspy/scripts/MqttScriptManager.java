@@ -73,10 +73,10 @@ public class MqttScriptManager extends BaseScriptManager
 		
 		scriptVariables.put("logger", LoggerFactory.getLogger(ScriptRunner.class));
 		
-		final IMqttMessageLogIO mqttMessageLog = new MqttMessageLogIO();
+		final IMqttMessageLogIO mqttMessageLog = new MqttMessageLogIO(connection);
 		scriptVariables.put("messageLog", mqttMessageLog);
 		
-		final IAuditReplayIO mqttAuditReplay = new MqttAuditReplay();
+		final IAuditReplayIO mqttAuditReplay = new MqttAuditReplay(connection);
 		scriptVariables.put("auditReplay", mqttAuditReplay);
 		
 		// Add it to the script IO so that it gets stopped when requested
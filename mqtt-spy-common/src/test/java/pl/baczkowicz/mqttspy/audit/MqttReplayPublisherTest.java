@@ -0,0 +1,190 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2015 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.mqttspy.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.Test;
+
+import pl.baczkowicz.mqttspy.audit.MqttReplayPublisher.Pacing;
+import pl.baczkowicz.mqttspy.connectivity.IMqttConnection;
+import pl.baczkowicz.mqttspy.messages.BaseMqttMessage;
+
+/**
+ * Tests for the MqttReplayPublisher.
+ */
+public class MqttReplayPublisherTest
+{
+	private final List<BaseMqttMessage> published = Collections.synchronizedList(new ArrayList<>());
+	
+	private static Supplier<BaseMqttMessage> createSource(final int count, final long interval)
+	{
+		final List<BaseMqttMessage> messages = new ArrayList<>();
+		for (int i = 0; i < count; i++)
+		{
+			messages.add(new BaseMqttMessage(i, "topic", new MqttMessage(("" + i).getBytes()), new Date(1000 + i * interval)));
+		}
+		
+		final Iterator<BaseMqttMessage> iterator = messages.iterator();
+		return () -> iterator.hasNext() ? iterator.next() : null;
+	}
+	
+	private static void waitUntilFinished(final MqttReplayPublisher publisher) throws InterruptedException
+	{
+		for (int i = 0; i < 500 && publisher.isRunning(); i++)
+		{
+			Thread.sleep(10);
+		}
+		assertFalse(publisher.isRunning());
+	}
+	
+	@Test
+	public void testAsFastAsPossibleWithBackpressure() throws InterruptedException
+	{
+		// Only takes up to 7 messages at a time
+		final MqttReplayPublisher publisher = new MqttReplayPublisher(createSource(10000, 1000), batch ->
+		{
+			final int count = Math.min(7, batch.size());
+			published.addAll(batch.subList(0, count));
+			return count;
+		});
+		publisher.setPacing(Pacing.AS_FAST_AS_POSSIBLE);
+		publisher.start();
+		waitUntilFinished(publisher);
+		
+		assertEquals(10000, publisher.getPublishedCount());
+		for (int i = 0; i < 10000; i++)
+		{
+			assertEquals(i, published.get(i).getId());
+		}
+	}
+	
+	@Test
+	public void testOriginalTimingWithSpeed() throws InterruptedException
+	{
+		// 400 ms of messages at twice the speed
+		final MqttReplayPublisher publisher = new MqttReplayPublisher(createSource(41, 10), batch ->
+		{
+			published.addAll(batch);
+			return batch.size();
+		});
+		publisher.setSpeed(2);
+		
+		final long start = System.nanoTime();
+		publisher.start();
+		waitUntilFinished(publisher);
+		final long elapsed = (System.nanoTime() - start) / 1000000;
+		
+		assertEquals(41, published.size());
+		assertTrue("Took " + elapsed + " ms", elapsed >= 195 && elapsed < 1000);
+	}
+	
+	@Test
+	public void testPauseAndResume() throws InterruptedException
+	{
+		final MqttReplayPublisher publisher = new MqttReplayPublisher(createSource(20, 0), batch ->
+		{
+			published.addAll(batch);
+			return batch.size();
+		});
+		publisher.setPacing(Pacing.FIXED_RATE);
+		publisher.setRate(100);
+		publisher.start();
+		
+		Thread.sleep(50);
+		publisher.pause();
+		final long count = publisher.getPublishedCount();
+		assertTrue(publisher.isPaused());
+		
+		Thread.sleep(100);
+		assertEquals(count, publisher.getPublishedCount());
+		assertTrue(count < 20);
+		
+		publisher.resume();
+		waitUntilFinished(publisher);
+		assertEquals(20, published.size());
+		assertTrue(publisher.getAchievedRate() > 0);
+	}
+	
+	@Test
+	public void testPublicationFailureStopsReplay() throws InterruptedException
+	{
+		final AtomicInteger attempts = new AtomicInteger();
+		final MqttReplayPublisher publisher = new MqttReplayPublisher(createSource(100, 0), batch ->
+		{
+			attempts.incrementAndGet();
+			return IMqttConnection.PUBLICATION_FAILED;
+		});
+		publisher.setPacing(Pacing.AS_FAST_AS_POSSIBLE);
+		publisher.start();
+		waitUntilFinished(publisher);
+		
+		assertEquals(1, attempts.get());
+		assertEquals(0, publisher.getPublishedCount());
+		assertEquals(MqttReplayPublisher.DEFAULT_BATCH_SIZE, publisher.getDroppedCount());
+	}
+	
+	@Test
+	public void testRuntimeExceptionStopsReplay() throws InterruptedException
+	{
+		final MqttReplayPublisher publisher = new MqttReplayPublisher(createSource(100, 0), batch ->
+		{
+			throw new IllegalArgumentException("Invalid topic");
+		});
+		publisher.setPacing(Pacing.AS_FAST_AS_POSSIBLE);
+		publisher.start();
+		waitUntilFinished(publisher);
+	}
+	
+	@Test
+	public void testRestartAfterStop() throws InterruptedException
+	{
+		final MqttReplayPublisher publisher = new MqttReplayPublisher(createSource(10000, 0), batch ->
+		{
+			final int count = Math.min(3, batch.size());
+			published.addAll(batch.subList(0, count));
+			return count;
+		});
+		publisher.setPacing(Pacing.AS_FAST_AS_POSSIBLE);
+		publisher.start();
+		publisher.stop();
+		publisher.start();
+		waitUntilFinished(publisher);
+		
+		// No messages published twice by overlapping runs; any not published when stopped are reported
+		assertEquals(10000, published.size() + publisher.getDroppedCount());
+		assertEquals(published.size(), publisher.getPublishedCount());
+		for (int i = 1; i < published.size(); i++)
+		{
+			assertTrue(published.get(i).getId() > published.get(i - 1).getId());
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2014 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.mqttspy.connectivity;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import pl.baczkowicz.mqttspy.common.generated.IngestOverflowPolicyEnum;
+import pl.baczkowicz.mqttspy.common.generated.MessageIngest;
+
+/**
+ * Tests for the BoundedIngestQueue.
+ */
+public class BoundedIngestQueueTest
+{
+	private static List<Integer> fill(final BoundedIngestQueue<Integer> queue, final int count)
+	{
+		for (int i = 1; i <= count; i++)
+		{
+			queue.add(i);
+		}
+
+		final List<Integer> queued = new ArrayList<>();
+		queue.getQueue().drainTo(queued);
+		return queued;
+	}
+
+	@Test
+	public void testDropOldest()
+	{
+		final BoundedIngestQueue<Integer> queue = new BoundedIngestQueue<>(IngestOverflowPolicyEnum.DROP_OLDEST, 3, 1);
+
+		assertEquals(Arrays.asList(3, 4, 5), fill(queue, 5));
+		assertEquals(2, queue.getDroppedMessages());
+	}
+
+	@Test
+	public void testDropNewest()
+	{
+		final BoundedIngestQueue<Integer> queue = new BoundedIngestQueue<>(IngestOverflowPolicyEnum.DROP_NEWEST, 3, 1);
+
+		assertEquals(Arrays.asList(1, 2, 3), fill(queue, 5));
+		assertEquals(2, queue.getDroppedMessages());
+	}
+
+	@Test
+	public void testSample()
+	{
+		final BoundedIngestQueue<Integer> queue = new BoundedIngestQueue<>(IngestOverflowPolicyEnum.SAMPLE, 10, 2);
+
+		// Everything accepted until half full, then every other message until full
+		assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 8, 10, 12, 14), fill(queue, 20));
+		assertEquals(10, queue.getDroppedMessages());
+	}
+
+	@Test
+	public void testDefaults()
+	{
+		final BoundedIngestQueue<Integer> queue = new BoundedIngestQueue<>(new MessageIngest());
+
+		assertEquals(BoundedIngestQueue.DEFAULT_POLICY, queue.getPolicy());
+		assertEquals(BoundedIngestQueue.DEFAULT_QUEUE_SIZE, queue.getQueueSize());
+		assertEquals(BoundedIngestQueue.DEFAULT_QUEUE_SIZE, queue.getQueue().remainingCapacity());
+	}
+}
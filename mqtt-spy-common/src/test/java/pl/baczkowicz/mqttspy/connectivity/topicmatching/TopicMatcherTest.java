@@ -0,0 +1,96 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2014 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.mqttspy.connectivity.topicmatching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+/**
+ * Tests for the TopicMatcher.
+ */
+public class TopicMatcherTest
+{
+	private static void assertMatches(final TopicMatcher matcher, final String topic, final String... expected)
+	{
+		assertEquals(new HashSet<>(Arrays.asList(expected)), new HashSet<>(matcher.getMatchingSubscriptions(topic)));
+	}
+
+	@Test
+	public void testWildcards()
+	{
+		final TopicMatcher matcher = new TopicMatcher();
+		matcher.addSubscriptionToStore("home/kitchen/temperature", "subscription1");
+		matcher.addSubscriptionToStore("home/+/temperature", "subscription2");
+		matcher.addSubscriptionToStore("home/#", "subscription3");
+		matcher.addSubscriptionToStore("#", "subscription4");
+		matcher.addSubscriptionToStore("+/+", "subscription5");
+
+		assertMatches(matcher, "home/kitchen/temperature", "home/kitchen/temperature", "home/+/temperature", "home/#", "#");
+		assertMatches(matcher, "home/bedroom/temperature", "home/+/temperature", "home/#", "#");
+		assertMatches(matcher, "home/kitchen", "home/#", "#", "+/+");
+
+		// Multi level wildcard also matches the parent level
+		assertMatches(matcher, "home", "home/#", "#");
+		assertMatches(matcher, "office/kitchen/temperature", "#");
+
+		// Empty levels are levels too
+		assertMatches(matcher, "home/", "home/#", "#", "+/+");
+		assertMatches(matcher, "/home", "#", "+/+");
+	}
+
+	@Test
+	public void testSystemTopics()
+	{
+		final TopicMatcher matcher = new TopicMatcher();
+		matcher.addSubscriptionToStore("#", "subscription1");
+		matcher.addSubscriptionToStore("+/broker/uptime", "subscription2");
+		matcher.addSubscriptionToStore("$SYS/#", "subscription3");
+		matcher.addSubscriptionToStore("$SYS/+/uptime", "subscription4");
+
+		assertMatches(matcher, "$SYS/broker/uptime", "$SYS/#", "$SYS/+/uptime");
+		assertMatches(matcher, "sys/broker/uptime", "#", "+/broker/uptime");
+	}
+
+	@Test
+	public void testCacheInvalidation()
+	{
+		final TopicMatcher matcher = new TopicMatcher();
+		matcher.addSubscriptionToStore("a/+", "subscription1");
+
+		assertMatches(matcher, "a/b", "a/+");
+		assertSame(matcher.getMatchingSubscriptions("a/b"), matcher.getMatchingSubscriptions("a/b"));
+
+		matcher.addSubscriptionToStore("a/b", "subscription2");
+		assertMatches(matcher, "a/b", "a/+", "a/b");
+
+		matcher.removeSubscriptionFromStore("a/+", "subscription1");
+		assertMatches(matcher, "a/b", "a/b");
+		assertMatches(matcher, "a/c");
+
+		matcher.removeSubscriptionFromStore("a/b", "subscription2");
+		assertTrue(matcher.getMatchingSubscriptions("a/b").isEmpty());
+	}
+}
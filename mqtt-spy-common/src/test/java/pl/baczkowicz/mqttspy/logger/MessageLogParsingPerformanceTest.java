@@ -0,0 +1,69 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2015 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.mqttspy.logger;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import pl.baczkowicz.mqttspy.messages.BaseMqttMessage;
+import pl.baczkowicz.spy.exceptions.XMLException;
+
+public class MessageLogParsingPerformanceTest
+{
+	@Ignore
+	@Test
+	public void compareParsingMethods() throws XMLException
+	{
+		final String[] lines = {
+			"<MqttMessage id=\"1\" timestamp=\"1420070400000\" topic=\"home/bedroom/temp\" qos=\"1\" connection=\"local\">21.5</MqttMessage>",
+			"<MqttMessage id=\"2\" timestamp=\"1420070400001\" topic=\"home/bedroom/xml\"><![CDATA[<Body>value & unit</Body>]]></MqttMessage>",
+			"<MqttMessage id=\"3\" timestamp=\"1420070400002\" topic=\"home/bedroom/raw\" encoded=\"true\">VGhpcyBpcyBhIHNhbXBsZSBtZXNzYWdlIGVuY29kZWQgaW4gQkFTRTY0Lg==</MqttMessage>",
+		};
+		
+		long startTime = 0;
+		long totalTime = 0;
+		long repeat = 100000;
+		long checksum = 0;
+		
+		// 1. DOM + JAXB
+		final MqttMessageLogParser jaxbParser = new MqttMessageLogParser();
+		
+		startTime = System.nanoTime();
+		for (int i = 0; i < repeat; i++)
+		{
+			final BaseMqttMessage message = MqttMessageLogParserUtils.convertToBaseMqttMessage(jaxbParser.parse(lines[i % lines.length]));
+			checksum = checksum + message.getRawMessage().getPayload().length;
+		}
+		totalTime = System.nanoTime() - startTime;
+		System.out.println("DOM + JAXB took " + totalTime + " ns; avg = " + (totalTime / repeat) + " ns");
+		
+		// 2. Line parser
+		startTime = System.nanoTime();
+		for (int i = 0; i < repeat; i++)
+		{
+			final BaseMqttMessage message = MqttMessageLogLineParser.parse(lines[i % lines.length]);
+			checksum = checksum + message.getRawMessage().getPayload().length;
+		}
+		totalTime = System.nanoTime() - startTime;
+		System.out.println("Line parser took " + totalTime + " ns; avg = " + (totalTime / repeat) + " ns");
+		
+		System.out.println("Checksum = " + checksum);
+	}
+}
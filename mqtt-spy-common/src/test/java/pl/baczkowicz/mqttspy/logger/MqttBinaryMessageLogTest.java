@@ -0,0 +1,226 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2014 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.mqttspy.logger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.Test;
+
+import pl.baczkowicz.mqttspy.audit.MqttBinaryAuditReader;
+import pl.baczkowicz.mqttspy.common.generated.MessageLog;
+import pl.baczkowicz.mqttspy.common.generated.MessageLogEnum;
+import pl.baczkowicz.mqttspy.messages.BaseMqttMessage;
+import pl.baczkowicz.mqttspy.messages.FormattedMqttMessage;
+import pl.baczkowicz.spy.exceptions.SpyException;
+
+/**
+ * Tests for the binary message log.
+ */
+public class MqttBinaryMessageLogTest
+{
+	private static File createFile(final String name) throws IOException
+	{
+		final File directory = Files.createTempDirectory("mqtt-spy").toFile();
+		directory.deleteOnExit();
+
+		final File file = new File(directory, name);
+		file.deleteOnExit();
+
+		return file;
+	}
+
+	private static List<FormattedMqttMessage> createMessages(final int firstId, final int count)
+	{
+		final Random random = new Random(firstId);
+		final List<FormattedMqttMessage> messages = new ArrayList<>();
+
+		for (int i = firstId; i < firstId + count; i++)
+		{
+			final byte[] payload = new byte[random.nextInt(200)];
+			random.nextBytes(payload);
+
+			final MqttMessage mqttMessage = new MqttMessage(payload);
+			mqttMessage.setQos(i % 3);
+			mqttMessage.setRetained(i % 5 == 0);
+
+			// Timestamps mostly in order
+			final Date date = new Date(1420070400000L + i * 10 - (i % 7 == 0 ? 25 : 0));
+			messages.add(new FormattedMqttMessage(i, "home/room" + (i % 10) + "/sensor", mqttMessage, date, null));
+		}
+
+		return messages;
+	}
+
+	private static MessageLog createSettings(final MessageLogEnum format, final File file)
+	{
+		return new MessageLog(format, file.getPath(), true, true, false, false, false, null, null, null, null);
+	}
+
+	private static void write(final File file, final MessageLog settings, final List<FormattedMqttMessage> messages, final int batchSize)
+			throws IOException
+	{
+		try (final MqttMessageLogWriter writer = new MqttMessageLogWriter(file, settings))
+		{
+			for (int i = 0; i < messages.size(); i = i + batchSize)
+			{
+				writer.write(messages.subList(i, Math.min(messages.size(), i + batchSize)));
+			}
+		}
+	}
+
+	private static void assertSameMessages(final List<? extends BaseMqttMessage> expected, final List<BaseMqttMessage> actual)
+	{
+		assertEquals(expected.size(), actual.size());
+
+		for (int i = 0; i < expected.size(); i++)
+		{
+			assertEquals(expected.get(i).getId(), actual.get(i).getId());
+			assertEquals(expected.get(i).getDate(), actual.get(i).getDate());
+			assertEquals(expected.get(i).getTopic(), actual.get(i).getTopic());
+			assertEquals(expected.get(i).getQoS(), actual.get(i).getQoS());
+			assertEquals(expected.get(i).isRetained(), actual.get(i).isRetained());
+			assertArrayEquals(expected.get(i).getRawPayload(), actual.get(i).getRawPayload());
+		}
+	}
+
+	@Test
+	public void testWriteAndLoad() throws IOException, SpyException
+	{
+		final List<FormattedMqttMessage> messages = createMessages(1, 5000);
+
+		for (final MessageLogEnum format : new MessageLogEnum[] { MessageLogEnum.BINARY, MessageLogEnum.BINARY_COMPRESSED })
+		{
+			final File file = createFile("mqtt-spy.messages");
+
+			// Small batches (a block each) and large ones (split into a number of blocks)
+			write(file, createSettings(format, file), messages.subList(0, 100), 7);
+			write(file, createSettings(format, file), messages.subList(100, messages.size()), 2000);
+
+			assertTrue(MqttBinaryMessageLog.isBinaryLog(file));
+			assertSameMessages(messages, MqttMessageLogParserUtils.readAndConvertMessageLog(file));
+		}
+	}
+
+	@Test
+	public void testIncompleteAndCorruptedBlocks() throws IOException, SpyException
+	{
+		final File file = createFile("mqtt-spy.messages");
+		final MessageLog settings = createSettings(MessageLogEnum.BINARY, file);
+		final List<FormattedMqttMessage> messages = createMessages(1, 30);
+		write(file, settings, messages.subList(0, 10), 10);
+
+		// Application stopped while writing a block
+		final long length = file.length();
+		write(file, settings, messages.subList(10, 20), 10);
+		try (final RandomAccessFile data = new RandomAccessFile(file, "rw"))
+		{
+			data.setLength(file.length() - 5);
+		}
+		assertSameMessages(messages.subList(0, 10), MqttMessageLogParserUtils.readAndConvertMessageLog(file));
+
+		// The incomplete block gets cut off before writing more
+		write(file, settings, messages.subList(20, 30), 10);
+		final List<FormattedMqttMessage> expected = new ArrayList<>(messages.subList(0, 10));
+		expected.addAll(messages.subList(20, 30));
+		assertSameMessages(expected, MqttMessageLogParserUtils.readAndConvertMessageLog(file));
+
+		// Corrupted block is skipped
+		try (final RandomAccessFile data = new RandomAccessFile(file, "rw"))
+		{
+			data.seek(length - 1);
+			final int last = data.read();
+			data.seek(length - 1);
+			data.write(last ^ 0xFF);
+		}
+		assertSameMessages(messages.subList(20, 30), MqttMessageLogParserUtils.readAndConvertMessageLog(file));
+	}
+
+	@Test
+	public void testCorruptedBlockLength() throws IOException, SpyException
+	{
+		final File file = createFile("mqtt-spy.messages");
+		final MessageLog settings = createSettings(MessageLogEnum.BINARY_COMPRESSED, file);
+		final List<FormattedMqttMessage> messages = createMessages(1, 20);
+		write(file, settings, messages, 10);
+
+		// Uncompressed length of the first block (not covered by the checksum)
+		try (final RandomAccessFile data = new RandomAccessFile(file, "rw"))
+		{
+			data.seek(MqttBinaryMessageLog.FILE_HEADER_SIZE + 4);
+			data.writeInt(Integer.MAX_VALUE);
+		}
+		assertSameMessages(messages.subList(10, 20), MqttMessageLogParserUtils.readAndConvertMessageLog(file));
+	}
+
+	@Test
+	public void testConvert() throws IOException, SpyException
+	{
+		final List<FormattedMqttMessage> messages = createMessages(1, 3000);
+		final File xml = createFile("mqtt-spy.messages");
+		write(xml, createSettings(MessageLogEnum.XML_WITH_ENCODED_PAYLOAD, xml), messages, 1000);
+
+		final File binary = createFile("mqtt-spy.binary");
+		assertEquals(3000, MqttMessageLogConverter.convert(xml, binary, MessageLogEnum.BINARY));
+		assertTrue(binary.length() < xml.length() / 2);
+		assertSameMessages(messages, MqttMessageLogParserUtils.readAndConvertMessageLog(binary));
+
+		final File convertedXml = createFile("mqtt-spy.xml");
+		assertEquals(3000, MqttMessageLogConverter.convert(binary, convertedXml, MessageLogEnum.XML_WITH_ENCODED_PAYLOAD));
+		assertEquals(Files.readAllLines(xml.toPath()), Files.readAllLines(convertedXml.toPath()));
+	}
+
+	@Test
+	public void testAuditReaderSeek() throws IOException, SpyException
+	{
+		final File file = createFile("mqtt-spy.messages");
+		final List<FormattedMqttMessage> messages = createMessages(0, 1000);
+		write(file, createSettings(MessageLogEnum.BINARY_COMPRESSED, file), messages, 30);
+
+		final MqttBinaryAuditReader reader = new MqttBinaryAuditReader(file);
+		assertEquals(1000, reader.getCount());
+		assertEquals(10, reader.getTopics().size());
+		assertEquals(100, reader.getTopics().get("home/room3/sensor").longValue());
+
+		assertEquals(345, reader.seekToMessage(345));
+		assertEquals(345, reader.getNextMessage().getId());
+		assertEquals(1000, reader.seekToMessage(5000));
+
+		// First message at or after the given time (message 700 is logged earlier, but after 698)
+		assertEquals(698, reader.seekToTime(messages.get(698).getDate().getTime() - 5));
+		assertEquals(698, reader.getNextMessage().getId());
+		assertEquals(699, reader.getPosition());
+
+		assertEquals(0, reader.seekToTime(0));
+		assertEquals(1000, reader.seekToTime(Long.MAX_VALUE));
+		reader.closeAuditFile();
+	}
+}
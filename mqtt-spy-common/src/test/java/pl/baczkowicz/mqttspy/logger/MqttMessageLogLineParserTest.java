@@ -0,0 +1,107 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2015 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.mqttspy.logger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import pl.baczkowicz.mqttspy.messages.BaseMqttMessage;
+import pl.baczkowicz.spy.exceptions.XMLException;
+
+/**
+ * Tests for the MqttMessageLogLineParser.
+ */
+public class MqttMessageLogLineParserTest
+{
+	private static final String[] LINES = {
+		"<MqttMessage id=\"1\" timestamp=\"1420070400000\" topic=\"home/bedroom/temp\">21.5</MqttMessage>",
+		"<MqttMessage id=\"2\" timestamp=\"1420070400001\" topic=\"a/b\" qos=\"2\" retained=\"true\" connection=\"local\" subscription=\"#\">test</MqttMessage>",
+		"<MqttMessage id=\"3\" timestamp=\"1420070400002\" topic=\"a/b\" encoded=\"true\">bGluZSAxCmxpbmUgMg==</MqttMessage>",
+		"<MqttMessage id=\"4\" timestamp=\"1420070400003\" topic=\"a/b\"><![CDATA[<Body>a & b</Body>]]></MqttMessage>",
+		"<MqttMessage id=\"5\" timestamp=\"1420070400004\" topic=\"a/b\">x<![CDATA[<]]>y<![CDATA[>]]>z</MqttMessage>",
+		"<MqttMessage id=\"6\" timestamp=\"1420070400005\" topic=\"a &amp; b\">&lt;tag&gt; &#65;&#x42; &quot;&apos;</MqttMessage>",
+		"<MqttMessage id=\"7\" timestamp=\"1420070400006\" topic=\"a/b\" retained=\"false\" qos=\"1\"></MqttMessage>",
+		"<MqttMessage id=\"8\" timestamp=\"1420070400007\" topic=\"a/b\"/>",
+		"<?xml version=\"1.0\"?><MqttMessage  id = '9'\ttimestamp='1420070400008' topic='zażółć' >gęślą jaźń</MqttMessage >",
+	};
+	
+	@Test
+	public void testSameAsJaxb() throws XMLException
+	{
+		final MqttMessageLogParser jaxbParser = new MqttMessageLogParser();
+		
+		for (final String line : LINES)
+		{
+			final BaseMqttMessage expected = MqttMessageLogParserUtils.convertToBaseMqttMessage(jaxbParser.parse(line));
+			final BaseMqttMessage actual = MqttMessageLogLineParser.parse(line);
+			
+			assertEquals(line, expected.getId(), actual.getId());
+			assertEquals(line, expected.getDate(), actual.getDate());
+			assertEquals(line, expected.getTopic(), actual.getTopic());
+			assertEquals(line, expected.getQoS(), actual.getQoS());
+			assertEquals(line, expected.isRetained(), actual.isRetained());
+			assertArrayEquals(line, expected.getRawMessage().getPayload(), actual.getRawMessage().getPayload());
+		}
+	}
+	
+	@Test
+	public void testDecodedValues() throws XMLException
+	{
+		assertEquals("line 1\nline 2", MqttMessageLogLineParser.parse(LINES[2]).getPayload());
+		assertEquals("<Body>a & b</Body>", MqttMessageLogLineParser.parse(LINES[3]).getPayload());
+		assertEquals("a & b", MqttMessageLogLineParser.parse(LINES[5]).getTopic());
+		assertEquals("<tag> AB \"'", MqttMessageLogLineParser.parse(LINES[5]).getPayload());
+		assertEquals(2, MqttMessageLogLineParser.parse(LINES[1]).getQoS());
+	}
+	
+	@Test
+	public void testInvalidLines()
+	{
+		final String[] invalid = {
+			"",
+			"MqttMessage",
+			"<MqttMessage id=\"1\" timestamp=\"2\">no topic</MqttMessage>",
+			"<MqttMessage id=\"x\" timestamp=\"2\" topic=\"a\">bad id</MqttMessage>",
+			"<MqttMessage id=\"1\" timestamp=\"2\" topic=\"a\">no end tag",
+			"<MqttMessage id=\"1\" timestamp=\"2\" topic=\"a\">wrong end tag</Other>",
+			"<MqttMessage id=\"1\" timestamp=\"2\" topic=\"a>missing quote</MqttMessage>",
+			"<MqttMessage id=\"1\" timestamp=\"2\" topic=\"a\"><![CDATA[unterminated</MqttMessage>",
+			"<MqttMessage id=\"1\" timestamp=\"2\" topic=\"a\">&#x110000;</MqttMessage>",
+			"<MqttMessage id=\"1\" timestamp=\"2\" topic=\"a&#-1;\">negative</MqttMessage>",
+			"<MqttMessage id=\"1\" timestamp=\"2\" topic=\"a\">&#99999999999;</MqttMessage>",
+		};
+		
+		for (final String line : invalid)
+		{
+			try
+			{
+				MqttMessageLogLineParser.parse(line);
+				fail("Expected an exception for " + line);
+			}
+			catch (XMLException e)
+			{
+				// Expected
+			}
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2015 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.mqttspy.logger;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import pl.baczkowicz.mqttspy.messages.BaseMqttMessage;
+import pl.baczkowicz.spy.exceptions.SpyException;
+
+/**
+ * Tests for the MqttMessageLogLoader.
+ */
+public class MqttMessageLogLoaderTest
+{
+	@Test
+	public void testLoadInOrder() throws IOException, SpyException
+	{
+		final int count = MqttMessageLogLoader.CHUNK_SIZE * 5 + 3;
+		final File logFile = File.createTempFile("mqtt-spy", ".messages");
+		logFile.deleteOnExit();
+		
+		final List<String> lines = new ArrayList<>();
+		for (int i = 1; i <= count; i++)
+		{
+			if (i % 2 == 0)
+			{
+				// "payload" encoded in Base64
+				lines.add("<MqttMessage id=\"" + i + "\" timestamp=\"" + (1000 + i) + "\" topic=\"topic/" + i + "\" encoded=\"true\">cGF5bG9hZA==</MqttMessage>");
+			}
+			else
+			{
+				lines.add("<MqttMessage id=\"" + i + "\" timestamp=\"" + (1000 + i) + "\" topic=\"topic/" + i + "\">payload</MqttMessage>");
+			}
+		}
+		Files.write(logFile.toPath(), lines);
+		
+		final List<BaseMqttMessage> messages = MqttMessageLogParserUtils.readAndConvertMessageLog(logFile);
+		
+		assertEquals(count, messages.size());
+		for (int i = 0; i < count; i++)
+		{
+			assertEquals(i + 1, messages.get(i).getId());
+			assertEquals("topic/" + (i + 1), messages.get(i).getTopic());
+			assertEquals(1001 + i, messages.get(i).getDate().getTime());
+			assertEquals("payload", messages.get(i).getPayload());
+		}
+	}
+	
+	@Test
+	public void testInvalidLineSkipped() throws IOException, SpyException
+	{
+		final File logFile = File.createTempFile("mqtt-spy", ".messages");
+		logFile.deleteOnExit();
+		
+		final List<String> lines = new ArrayList<>();
+		lines.add("<MqttMessage id=\"1\" timestamp=\"1001\" topic=\"topic\">payload</MqttMessage>");
+		lines.add("<MqttMessage id=\"2\" timestamp=\"1002\" topic=\"topic\">&#x110000;</MqttMessage>");
+		lines.add("<MqttMessage id=\"3\" timestamp=\"1003\" topic=\"topic\">payload</MqttMessage>");
+		Files.write(logFile.toPath(), lines);
+		
+		final List<BaseMqttMessage> messages = MqttMessageLogParserUtils.readAndConvertMessageLog(logFile);
+		
+		assertEquals(2, messages.size());
+		assertEquals(3, messages.get(1).getId());
+	}
+}
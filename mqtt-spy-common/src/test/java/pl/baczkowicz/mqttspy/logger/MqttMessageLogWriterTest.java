@@ -0,0 +1,371 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2014 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.mqttspy.logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import pl.baczkowicz.mqttspy.common.generated.MessageLog;
+import pl.baczkowicz.mqttspy.common.generated.MessageLogEnum;
+import pl.baczkowicz.mqttspy.common.generated.MessageLogSyncPolicyEnum;
+import pl.baczkowicz.mqttspy.messages.FormattedMqttMessage;
+import pl.baczkowicz.spy.exceptions.XMLException;
+
+/**
+ * Tests for the MqttMessageLogWriter.
+ */
+public class MqttMessageLogWriterTest
+{
+	private static File createLogFile() throws IOException
+	{
+		final File directory = Files.createTempDirectory("mqtt-spy").toFile();
+		directory.deleteOnExit();
+
+		return new File(directory, "mqtt-spy.messages");
+	}
+
+	private static List<FormattedMqttMessage> createMessages(final int firstId, final int count)
+	{
+		final List<FormattedMqttMessage> messages = new ArrayList<>();
+		for (int i = firstId; i < firstId + count; i++)
+		{
+			final MqttMessage mqttMessage = new MqttMessage(("payload " + i + " <a & b>").getBytes());
+			messages.add(new FormattedMqttMessage(i, "topic/" + (i % 10), mqttMessage, null));
+		}
+
+		return messages;
+	}
+
+	private static List<Long> readIds(final File file) throws IOException, XMLException
+	{
+		final List<Long> ids = new ArrayList<>();
+		if (file.exists())
+		{
+			file.deleteOnExit();
+			for (final String line : Files.readAllLines(file.toPath()))
+			{
+				ids.add(MqttMessageLogLineParser.parse(line).getId());
+			}
+		}
+
+		return ids;
+	}
+
+	@Test
+	public void testRotateBySize() throws IOException, XMLException
+	{
+		final File file = createLogFile();
+		final MessageLog settings = new MessageLog(MessageLogEnum.XML_WITH_PLAIN_PAYLOAD, file.getPath(),
+				false, false, false, false, false, 1, 2, null, MessageLogSyncPolicyEnum.EVERY_BATCH);
+		final MqttMessageLogWriter writer = new MqttMessageLogWriter(file, settings);
+
+		// About 2.5 MB in total
+		final int count = 25000;
+		for (int i = 1; i <= count; i = i + 1000)
+		{
+			writer.write(createMessages(i, 1000));
+		}
+		writer.close();
+		assertEquals(count, writer.getWrittenMessages());
+
+		// Oldest first, complete lines only
+		final List<Long> ids = new ArrayList<>();
+		for (final File logFile : new File[] { new File(file + ".2"), new File(file + ".1"), file })
+		{
+			assertTrue(logFile.length() <= 1024 * 1024);
+			ids.addAll(readIds(logFile));
+		}
+		assertFalse(new File(file + ".3").exists());
+
+		assertEquals(count, ids.size());
+		for (int i = 0; i < count; i++)
+		{
+			assertEquals(i + 1, ids.get(i).longValue());
+		}
+	}
+
+	@Test
+	public void testLoggerWritesAllQueued() throws IOException, XMLException, InterruptedException
+	{
+		final File file = createLogFile();
+		final MessageLog settings = new MessageLog(MessageLogEnum.XML_WITH_ENCODED_PAYLOAD, null,
+				false, false, false, false, false, null, null, null, null);
+		final BlockingQueue<FormattedMqttMessage> queue = new ArrayBlockingQueue<>(10000);
+		final MqttMessageLogger logger = new MqttMessageLogger("0", queue, settings, file.getPath(), 10);
+
+		final Thread thread = new Thread(logger);
+		thread.start();
+		while (!logger.isRunning())
+		{
+			Thread.sleep(1);
+		}
+
+		for (final FormattedMqttMessage message : createMessages(1, 5000))
+		{
+			queue.put(message);
+		}
+		logger.stop();
+		thread.join(10000);
+
+		assertFalse(thread.isAlive());
+		assertEquals(5000, logger.getLoggedMessages());
+		assertEquals(5000, readIds(file).size());
+		assertEquals("payload 5000 <a & b>",
+				MqttMessageLogLineParser.parse(Files.readAllLines(file.toPath()).get(4999)).getPayload());
+	}
+
+	@Test
+	public void testPartialWriteNotRepeatedOnClose() throws IOException, XMLException
+	{
+		final File file = createLogFile();
+		final MessageLog settings = new MessageLog(MessageLogEnum.XML_WITH_PLAIN_PAYLOAD, file.getPath(),
+				false, false, false, false, false, null, null, null, MessageLogSyncPolicyEnum.NONE);
+
+		// The first channel writes 100 bytes, then fails once
+		final MqttMessageLogWriter writer = new MqttMessageLogWriter(file, settings)
+		{
+			private boolean reopened;
+
+			@Override
+			FileChannel openChannel(final Path path) throws IOException
+			{
+				final FileChannel channel = super.openChannel(path);
+				if (reopened)
+				{
+					return channel;
+				}
+
+				reopened = true;
+				return new PartiallyFailingChannel(channel, 100);
+			}
+		};
+
+		try
+		{
+			writer.write(createMessages(1, 10));
+			fail("Write should have failed");
+		}
+		catch (IOException e)
+		{
+			// Expected
+		}
+		writer.close();
+		file.deleteOnExit();
+
+		// Nothing written twice
+		assertEquals(100, file.length());
+
+		// Complete lines written after reopening (after the incomplete one)
+		writer.write(createMessages(11, 5));
+		writer.close();
+		final List<String> lines = Files.readAllLines(file.toPath());
+		assertEquals(6, lines.size());
+		assertEquals(11, MqttMessageLogLineParser.parse(lines.get(1)).getId());
+		assertEquals(15, MqttMessageLogLineParser.parse(lines.get(5)).getId());
+	}
+
+	/**
+	 * File channel failing once after writing the given number of bytes.
+	 */
+	private static class PartiallyFailingChannel extends FileChannel
+	{
+		private final FileChannel channel;
+
+		private int allowed;
+
+		private boolean failed;
+
+		PartiallyFailingChannel(final FileChannel channel, final int allowed)
+		{
+			this.channel = channel;
+			this.allowed = allowed;
+		}
+
+		@Override
+		public int write(final ByteBuffer src) throws IOException
+		{
+			if (failed || src.remaining() <= allowed)
+			{
+				allowed = allowed - src.remaining();
+				return channel.write(src);
+			}
+
+			if (allowed == 0)
+			{
+				failed = true;
+				throw new IOException("No space left on device");
+			}
+
+			// Write part of the data
+			final ByteBuffer part = src.duplicate();
+			part.limit(part.position() + allowed);
+			final int written = channel.write(part);
+			src.position(src.position() + written);
+			allowed = allowed - written;
+
+			return written;
+		}
+
+		@Override
+		public int read(final ByteBuffer dst) throws IOException
+		{
+			return channel.read(dst);
+		}
+
+		@Override
+		public long read(final ByteBuffer[] dsts, final int offset, final int length) throws IOException
+		{
+			return channel.read(dsts, offset, length);
+		}
+
+		@Override
+		public long write(final ByteBuffer[] srcs, final int offset, final int length) throws IOException
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long position() throws IOException
+		{
+			return channel.position();
+		}
+
+		@Override
+		public FileChannel position(final long newPosition) throws IOException
+		{
+			channel.position(newPosition);
+			return this;
+		}
+
+		@Override
+		public long size() throws IOException
+		{
+			return channel.size();
+		}
+
+		@Override
+		public FileChannel truncate(final long size) throws IOException
+		{
+			channel.truncate(size);
+			return this;
+		}
+
+		@Override
+		public void force(final boolean metaData) throws IOException
+		{
+			channel.force(metaData);
+		}
+
+		@Override
+		public long transferTo(final long position, final long count, final WritableByteChannel target) throws IOException
+		{
+			return channel.transferTo(position, count, target);
+		}
+
+		@Override
+		public long transferFrom(final ReadableByteChannel src, final long position, final long count) throws IOException
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int read(final ByteBuffer dst, final long position) throws IOException
+		{
+			return channel.read(dst, position);
+		}
+
+		@Override
+		public int write(final ByteBuffer src, final long position) throws IOException
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public MappedByteBuffer map(final MapMode mode, final long position, final long size) throws IOException
+		{
+			return channel.map(mode, position, size);
+		}
+
+		@Override
+		public FileLock lock(final long position, final long size, final boolean shared) throws IOException
+		{
+			return channel.lock(position, size, shared);
+		}
+
+		@Override
+		public FileLock tryLock(final long position, final long size, final boolean shared) throws IOException
+		{
+			return channel.tryLock(position, size, shared);
+		}
+
+		@Override
+		protected void implCloseChannel() throws IOException
+		{
+			channel.close();
+		}
+	}
+
+	@Ignore
+	@Test
+	public void testThroughput() throws IOException
+	{
+		final File file = createLogFile();
+		final MessageLog settings = new MessageLog(MessageLogEnum.XML_WITH_PLAIN_PAYLOAD, file.getPath(),
+				true, true, false, false, false, 100, 1, null, MessageLogSyncPolicyEnum.PERIODIC);
+		final MqttMessageLogWriter writer = new MqttMessageLogWriter(file, settings);
+		final List<FormattedMqttMessage> batch = createMessages(1, MqttMessageLogger.MAX_BATCH_SIZE);
+		final int repeat = 1000;
+
+		final long startTime = System.nanoTime();
+		for (int i = 0; i < repeat; i++)
+		{
+			writer.write(batch);
+		}
+		writer.close();
+		final long totalTime = System.nanoTime() - startTime;
+
+		System.out.println("Wrote " + writer.getWrittenMessages() + " messages in " + (totalTime / 1000000)
+				+ " ms; " + (writer.getWrittenMessages() * 1000000000L / totalTime) + " msg/s");
+
+		new File(file + ".1").delete();
+		file.delete();
+	}
+}
@@ -58,7 +58,7 @@ public class SimpleMessageLogComposerTest
 		final BaseMqttConnection connection = context.mock(BaseMqttConnection.class); 
 		final FormattedMqttMessage message = new FormattedMqttMessage(1, "topic", mqttMessage, connection);
 		
-		final MessageLog messageLog = new MessageLog(MessageLogEnum.XML_WITH_PLAIN_PAYLOAD, null, false, false, false, false, false);
+		final MessageLog messageLog = new MessageLog(MessageLogEnum.XML_WITH_PLAIN_PAYLOAD, null, false, false, false, false, false, null, null, null, null);
 		final long timestamp = message.getDate().getTime();
 		
 		final String loggedMessage = "<MqttMessage id=\"1\" timestamp=\"" + timestamp + "\" topic=\"topic\">" + SAMPLE_PAYLOAD + "</MqttMessage>";
@@ -79,7 +79,7 @@ public class SimpleMessageLogComposerTest
 		final BaseMqttConnection connection = context.mock(BaseMqttConnection.class); 
 		final FormattedMqttMessage message = new FormattedMqttMessage(1, "topic", mqttMessage, connection);
 		
-		final MessageLog messageLog = new MessageLog(MessageLogEnum.XML_WITH_ENCODED_PAYLOAD, null, false, false, false, false, false);
+		final MessageLog messageLog = new MessageLog(MessageLogEnum.XML_WITH_ENCODED_PAYLOAD, null, false, false, false, false, false, null, null, null, null);
 		final long timestamp = message.getDate().getTime();
 		
 		final String loggedMessage = "<MqttMessage id=\"1\" timestamp=\"" + timestamp + "\" topic=\"topic\" encoded=\"true\">" + 
@@ -0,0 +1,138 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2015 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.mqttspy.messages;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.Test;
+
+import pl.baczkowicz.spy.storage.PayloadArena;
+
+/**
+ * Tests for the FormattedMqttMessage.
+ */
+public class FormattedMqttMessageTest
+{
+	@Test
+	public void testCopySharesPayload()
+	{
+		final FormattedMqttMessage message = new FormattedMqttMessage(1, "topic", new MqttMessage("test".getBytes()), null);
+		final FormattedMqttMessage copy = new FormattedMqttMessage(message);
+
+		assertSame(message.getRawPayload(), copy.getRawPayload());
+		assertSame(message.getPayload(), copy.getPayload());
+		assertSame(message.getPayload(), copy.getFormattedPayload());
+		assertEquals(message.getDate(), copy.getDate());
+	}
+
+	@Test
+	public void testCopyOnSetPayload()
+	{
+		final FormattedMqttMessage message = new FormattedMqttMessage(1, "topic", new MqttMessage("test".getBytes()), null);
+		final FormattedMqttMessage copy = new FormattedMqttMessage(message);
+
+		// Only the modified message changes
+		message.setPayload("modified");
+		assertEquals("modified", message.getPayload());
+		assertEquals("test", copy.getPayload());
+
+		// Copies made afterwards share the new payload
+		final FormattedMqttMessage secondCopy = new FormattedMqttMessage(message);
+		assertSame(message.getRawPayload(), secondCopy.getRawPayload());
+		assertEquals("modified", secondCopy.getFormattedPayload());
+	}
+
+	@Test
+	public void testRawPayloadReplaced()
+	{
+		final FormattedMqttMessage message = new FormattedMqttMessage(1, "topic", new MqttMessage("test".getBytes()), null);
+
+		message.getRawMessage().setPayload("replaced".getBytes());
+		assertEquals("replaced", message.getPayload());
+		assertEquals("replaced", new FormattedMqttMessage(message).getFormattedPayload());
+	}
+
+	@Test
+	public void testSetPayloadInvalidatesFormatting()
+	{
+		final FormattedMqttMessage message = new FormattedMqttMessage(1, "topic", new MqttMessage("test".getBytes()), null);
+
+		// Nothing formatted - the payload is used
+		assertEquals("test", message.getFormattedPayload());
+		assertEquals("test", message.getPrettyPayload());
+
+		message.setFormattedPayload("formatted");
+		message.setPrettyPayload("pretty");
+		assertEquals("formatted", message.getFormattedPayload());
+		assertEquals("pretty", message.getPrettyPayload());
+
+		message.setPayload("modified");
+		assertEquals("modified", message.getFormattedPayload());
+		assertEquals("modified", message.getPrettyPayload());
+	}
+
+	@Test
+	public void testOffHeapPayload()
+	{
+		final PayloadArena arena = new PayloadArena(1024);
+		final FormattedMqttMessage message = new FormattedMqttMessage(1, "topic", new MqttMessage("test".getBytes()), null);
+
+		assertTrue(message.movePayloadTo(arena));
+		assertEquals(0, message.getRawMessage().getPayload().length);
+		assertEquals(4, arena.getStoredBytes());
+
+		// Read from the arena on demand
+		assertEquals("test", message.getPayload());
+		assertEquals("test", new String(message.getRawPayload()));
+		assertEquals("test", new FormattedMqttMessage(message).getPayload());
+
+		// Decoded once and shared while cached
+		assertSame(message.getPayload(), message.getPayload());
+
+		// Recently read, so still on the heap when released
+		message.releasePayload();
+		assertEquals("test", new String(message.getRawMessage().getPayload()));
+		assertEquals(0, arena.getStoredBytes());
+	}
+
+	@Test
+	public void testCopiesShareOffHeapPayload()
+	{
+		final PayloadArena arena = new PayloadArena(1024);
+		final FormattedMqttMessage message = new FormattedMqttMessage(1, "topic", new MqttMessage("test".getBytes()), null);
+		final FormattedMqttMessage copy = new FormattedMqttMessage(message);
+
+		assertTrue(copy.movePayloadTo(arena));
+		assertTrue(message.movePayloadTo(arena));
+		assertEquals(1, arena.getAllocationCount());
+
+		// Released once both have released it; copied back onto the heap
+		copy.releasePayload();
+		assertEquals(4, arena.getStoredBytes());
+		assertEquals("test", copy.getPayload());
+		assertEquals("test", message.getPayload());
+		message.releasePayload();
+		assertEquals(0, arena.getStoredBytes());
+		assertEquals("test", message.getPayload());
+	}
+}
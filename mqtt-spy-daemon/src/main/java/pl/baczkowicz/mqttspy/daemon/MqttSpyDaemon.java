@@ -19,44 +19,82 @@
  */
 package pl.baczkowicz.mqttspy.daemon;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import pl.baczkowicz.mqttspy.common.generated.MessageLogEnum;
 import pl.baczkowicz.mqttspy.connectivity.SimpleMqttConnection;
 import pl.baczkowicz.mqttspy.daemon.configuration.MqttSpyDaemonConfigLoader;
 import pl.baczkowicz.mqttspy.daemon.configuration.generated.DaemonMqttConnectionDetails;
 import pl.baczkowicz.mqttspy.daemon.configuration.generated.MqttSpyDaemonConfiguration;
 import pl.baczkowicz.mqttspy.daemon.connectivity.MqttCallbackHandler;
+import pl.baczkowicz.mqttspy.daemon.connectivity.MqttDaemonConnection;
 import pl.baczkowicz.mqttspy.daemon.connectivity.SimpleMqttConnectionRunnable;
 import pl.baczkowicz.mqttspy.scripts.MqttScriptIO;
 import pl.baczkowicz.mqttspy.scripts.MqttScriptManager;
-import pl.baczkowicz.spy.common.generated.ReconnectionSettings;
+import pl.baczkowicz.spy.common.generated.RunningMode;
 import pl.baczkowicz.spy.configuration.BasePropertyNames;
 import pl.baczkowicz.spy.connectivity.ReconnectionManager;
 import pl.baczkowicz.spy.daemon.BaseDaemon;
 import pl.baczkowicz.spy.eventbus.IKBus;
 import pl.baczkowicz.spy.eventbus.KBus;
+import pl.baczkowicz.spy.exceptions.ConfigurationException;
 import pl.baczkowicz.spy.exceptions.SpyException;
 import pl.baczkowicz.spy.exceptions.XMLException;
 import pl.baczkowicz.spy.testcases.TestCaseManager;
+import pl.baczkowicz.spy.utils.ThreadingUtils;
 
 /**
- * The main class of the daemon.
+ * The main class of the daemon. The daemon can have a number of connections,
+ * each with its own scripts, test cases and message log. The connections
+ * share the event bus, the reconnection manager and the thread pools
+ * processing received messages.
+ * 
+ * Methods inherited from IDaemon (e.g. runScript, runTestCase, canPublish) 
+ * use the first configured connection.
  */
 public class MqttSpyDaemon extends BaseDaemon
 {
 	/** Diagnostic logger. */
 	private final static Logger logger = LoggerFactory.getLogger(MqttSpyDaemon.class);
 	
+	/** Message log file used if none configured (for the first connection). */
+	private final static String DEFAULT_MESSAGE_LOG_FILE = "mqtt-spy-daemon.messages";
+	
+	/** How long to wait (in milliseconds) for the processing threads to finish when stopping. */
+	private final static int PROCESSING_SHUTDOWN_TIMEOUT = 5000;
+	
 	private MqttSpyDaemonConfigLoader loader;
 
+	/** Reconnection manager shared by all connections. */
 	private ReconnectionManager mqttReconnectionManager;
+	
+	/** Thread pool shared by all connections - for running subscription scripts. */
+	private ScheduledExecutorService processingExecutor;
+	
+	/** Thread pool shared by all connections - for writing the message logs (separate, so that scripts can't hold it up). */
+	private ScheduledExecutorService messageLogExecutor;
 
+	/** The first (default) connection. */
 	protected SimpleMqttConnection mqttConnection;
 
-	private MqttCallbackHandler mqttCallback;
-
-	private MqttScriptIO scriptIO;
+	/** All connections (in the configured order). */
+	private final List<MqttDaemonConnection> connections = new ArrayList<>();
+	
+	/** Threads starting the scripts and test cases of each connection (if more than one connection). */
+	private final List<Thread> scriptStarters = new ArrayList<>();
 	
 	/**
 	 * This is an internal method - initialises the daemon class.
@@ -101,37 +139,177 @@ public class MqttSpyDaemon extends BaseDaemon
 	 */
 	protected void loadAndRun(final MqttSpyDaemonConfiguration configuration) throws SpyException
 	{			
-		// Retrieve connection details
-		final DaemonMqttConnectionDetails connectionSettings = configuration.getConnection();
-
-		configureMqtt(connectionSettings);
-		runScripts(connectionSettings.getBackgroundScript(), connectionSettings.getTestCases(), connectionSettings.getRunningMode());
+		configureMqtt(configuration);
+		
+		boolean scriptsOnly = true;
+		for (int i = 0; i < connections.size(); i++)
+		{
+			final MqttDaemonConnection connection = connections.get(i);
+			final DaemonMqttConnectionDetails connectionSettings = connection.getConnectionSettings();
+			
+			if (connections.size() == 1)
+			{
+				runScripts(connection);
+			}
+			else
+			{
+				// Test cases wait for their connection, so don't let one connection hold up the others
+				final Thread scriptStarter = new Thread(() -> 
+				{
+					try
+					{
+						runScripts(connection);
+					}
+					catch (SpyException e)
+					{
+						logger.error("Cannot run scripts for connection {}", connectionSettings.getName(), e);
+					}
+				}, "Scripts of connection " + i);
+				
+				scriptStarters.add(scriptStarter);
+				scriptStarter.start();
+			}
+			
+			scriptsOnly = scriptsOnly && RunningMode.SCRIPTS_ONLY.equals(connectionSettings.getRunningMode());
+		}
+		
+		// If all connections are in 'scripts only' mode, exit when all scripts finished
+		if (scriptsOnly)
+		{
+			waitAndStop();
+		}
 	}
 	
-	protected void configureMqtt(final DaemonMqttConnectionDetails connectionSettings) throws SpyException
+	private void runScripts(final MqttDaemonConnection connection) throws SpyException
 	{
-		final IKBus eventBus = new KBus();
+		final DaemonMqttConnectionDetails connectionSettings = connection.getConnectionSettings();
+		
+		runScripts(connection.getScriptManager(), connection.getTestCaseManager(), connection.getConnection()::canPublish,
+				connectionSettings.getBackgroundScript(), connectionSettings.getTestCases(), null);
+	}
+	
+	protected void configureMqtt(final MqttSpyDaemonConfiguration configuration) throws SpyException
+	{
+		final List<DaemonMqttConnectionDetails> connectionsSettings = configuration.getConnection();
+		final List<String> logFiles = getMessageLogFiles(connectionsSettings);
 		
-		// Wire up all classes (assuming ID = 0)
+		final IKBus eventBus = new KBus();
 		mqttReconnectionManager = new ReconnectionManager();
-		mqttConnection = new SimpleMqttConnection(mqttReconnectionManager, "0", connectionSettings);
-		scriptManager = new MqttScriptManager(eventBus, null, mqttConnection);
-		testCaseManager = new TestCaseManager(scriptManager);
-		mqttCallback = new MqttCallbackHandler(mqttConnection, connectionSettings, scriptManager); 
-				
-		// Set up reconnection
-		final ReconnectionSettings reconnectionSettings = mqttConnection.getMqttConnectionDetails().getReconnectionSettings();			
-		final Runnable connectionRunnable = new SimpleMqttConnectionRunnable(scriptManager, mqttConnection, connectionSettings);
+		processingExecutor = createExecutor("Message processing", configuration.getProcessingThreads() != null 
+				&& configuration.getProcessingThreads() > 0 ? configuration.getProcessingThreads() : Runtime.getRuntime().availableProcessors());
+		messageLogExecutor = createExecutor("Message logging", Math.min(connectionsSettings.size(), Runtime.getRuntime().availableProcessors()));
 		
-		mqttConnection.setScriptManager(scriptManager);
-		mqttConnection.connect(mqttCallback, connectionRunnable);
-		scriptIO = new MqttScriptIO(mqttConnection, eventBus, null, null);
-		if (reconnectionSettings != null)
+		boolean reconnect = false;
+		for (int i = 0; i < connectionsSettings.size(); i++)
+		{
+			final DaemonMqttConnectionDetails connectionSettings = connectionsSettings.get(i);
+			connections.add(configureMqtt(eventBus, String.valueOf(i), connectionSettings, logFiles.get(i)));
+			reconnect = reconnect || connectionSettings.getReconnectionSettings() != null;
+		}
+		
+		// Use the first connection by default
+		mqttConnection = connections.get(0).getConnection();
+		scriptManager = connections.get(0).getScriptManager();
+		testCaseManager = connections.get(0).getTestCaseManager();
+		
+		// Set up reconnection
+		if (reconnect)
 		{
 			new Thread(mqttReconnectionManager).start();
 		}
 	}
 	
+	private MqttDaemonConnection configureMqtt(final IKBus eventBus, final String id, 
+			final DaemonMqttConnectionDetails connectionSettings, final String logFile) throws SpyException
+	{
+		// Wire up all classes
+		final SimpleMqttConnection connection = new SimpleMqttConnection(mqttReconnectionManager, id, connectionSettings);
+		final MqttScriptManager connectionScriptManager = new MqttScriptManager(eventBus, null, connection);
+		final TestCaseManager connectionTestCaseManager = new TestCaseManager(connectionScriptManager);
+		final MqttCallbackHandler callback = new MqttCallbackHandler(
+				connection, connectionSettings, connectionScriptManager, processingExecutor, messageLogExecutor, logFile); 
+				
+		final Runnable connectionRunnable = new SimpleMqttConnectionRunnable(connectionScriptManager, connection, connectionSettings);
+		
+		connection.setScriptManager(connectionScriptManager);
+		connection.connect(callback, connectionRunnable);
+		final MqttScriptIO scriptIO = new MqttScriptIO(connection, eventBus, null, null);
+		
+		return new MqttDaemonConnection(connectionSettings, connection, connectionScriptManager, 
+				connectionTestCaseManager, callback, scriptIO);
+	}
+	
+	/**
+	 * Works out the message log file of each connection, making sure they don't clash.
+	 * 
+	 * @param connectionsSettings Connection details
+	 * 
+	 * @return Message log file for each connection (null for disabled logs)
+	 * 
+	 * @throws ConfigurationException Thrown if two connections are set up to log to the same file
+	 */
+	private static List<String> getMessageLogFiles(final List<DaemonMqttConnectionDetails> connectionsSettings) 
+			throws ConfigurationException
+	{
+		final List<String> logFiles = new ArrayList<>();
+		final Map<String, Integer> usedFiles = new HashMap<>();
+		
+		for (int i = 0; i < connectionsSettings.size(); i++)
+		{
+			final DaemonMqttConnectionDetails connectionSettings = connectionsSettings.get(i);
+			
+			if (MessageLogEnum.DISABLED.equals(connectionSettings.getMessageLog().getValue()))
+			{
+				logFiles.add(null);
+				continue;
+			}
+			
+			final String logFile = connectionSettings.getMessageLog().getLogFile() != null 
+					? connectionSettings.getMessageLog().getLogFile() : getDefaultMessageLogFile(i, connectionSettings);
+			
+			final Integer otherConnection = usedFiles.put(new File(logFile).getAbsolutePath(), i);
+			if (otherConnection != null)
+			{
+				throw new ConfigurationException("Connections " + otherConnection + " and " + i 
+						+ " are both set up to log messages to " + logFile);
+			}
+			
+			logFiles.add(logFile);
+		}
+		
+		return logFiles;
+	}
+	
+	private static String getDefaultMessageLogFile(final int index, final DaemonMqttConnectionDetails connectionSettings)
+	{
+		if (index == 0)
+		{
+			return DEFAULT_MESSAGE_LOG_FILE;
+		}
+		
+		final String name = connectionSettings.getName() != null && !connectionSettings.getName().isEmpty() 
+				? connectionSettings.getName().replaceAll("[^A-Za-z0-9._-]", "_") : String.valueOf(index);
+		
+		return "mqtt-spy-daemon-" + name + ".messages";
+	}
+	
+	private static ScheduledExecutorService createExecutor(final String name, final int threads)
+	{
+		final AtomicInteger threadCount = new AtomicInteger();
+		
+		return Executors.newScheduledThreadPool(threads,
+				runnable -> 
+				{
+					final String threadName = name + " " + threadCount.incrementAndGet();
+					return new Thread(() -> 
+					{
+						ThreadingUtils.logThreadStarting(threadName);
+						runnable.run();
+						ThreadingUtils.logThreadEnding();
+					});
+				});
+	}
+	
 	public boolean canPublish()
 	{
 		return mqttConnection.canPublish();
@@ -157,20 +335,112 @@ public class MqttSpyDaemon extends BaseDaemon
 			mqttReconnectionManager.stop();
 		}
 						
-		// Disconnect
-		mqttConnection.disconnect();
+		for (final MqttDaemonConnection connection : connections)
+		{
+			// Disconnect
+			connection.getConnection().disconnect();
+		
+			// Stop message logger
+			connection.getCallback().stop();
+		}
+		
+		shutdown(processingExecutor, "Message processing");
+		shutdown(messageLogExecutor, "Message logging");
+	}
+	
+	private static void shutdown(final ExecutorService executor, final String name)
+	{
+		if (executor != null)
+		{
+			executor.shutdown();
+			try
+			{
+				if (!executor.awaitTermination(PROCESSING_SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS))
+				{
+					logger.warn("{} still running after {} ms", name, PROCESSING_SHUTDOWN_TIMEOUT);
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	@Override
+	protected void waitForScripts()
+	{
+		// Wait until all scripts and test cases have been started
+		for (final Thread scriptStarter : scriptStarters)
+		{
+			try
+			{
+				scriptStarter.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
 		
-		// Stop message logger
-		mqttCallback.stop();
+		super.waitForScripts();
+	}
+	
+	@Override
+	protected void stopScripts()
+	{
+		for (final MqttDaemonConnection connection : connections)
+		{
+			connection.getScriptManager().stopScripts();
+		}
+	}
+	
+	@Override
+	protected boolean areScriptsRunning()
+	{
+		for (final MqttDaemonConnection connection : connections)
+		{
+			if (connection.getScriptManager().areScriptsRunning())
+			{
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	@Override
+	protected boolean areTestCasesRunning()
+	{
+		for (final MqttDaemonConnection connection : connections)
+		{
+			if (connection.getTestCaseManager().areTestCasesStillRunning())
+			{
+				return true;
+			}
+		}
+		
+		return false;
 	}
 	
 	/**
 	 * This exposes additional methods, e.g. publish, subscribe, unsubscribe.
 	 *  
-	 * @return The Script IO with the extra methods
+	 * @return The Script IO with the extra methods (for the first connection)
 	 */
 	public MqttScriptIO more()
 	{
-		return scriptIO;
+		return connections.get(0).getScriptIO();
+	}
+	
+	/**
+	 * Gets all connections of the daemon, e.g. to run scripts or publish on other than the first one.
+	 * 
+	 * @return The connections (in the configured order)
+	 */
+	public List<MqttDaemonConnection> getConnections()
+	{
+		return Collections.unmodifiableList(connections);
 	}
 }
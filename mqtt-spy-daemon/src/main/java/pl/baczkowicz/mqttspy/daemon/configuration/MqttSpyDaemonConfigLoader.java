@@ -30,6 +30,7 @@ import org.slf4j.LoggerFactory;
 
 import pl.baczkowicz.mqttspy.common.generated.MqttConnectionDetails;
 import pl.baczkowicz.mqttspy.common.generated.ProtocolVersionEnum;
+import pl.baczkowicz.mqttspy.daemon.configuration.generated.DaemonMqttConnectionDetails;
 import pl.baczkowicz.mqttspy.daemon.configuration.generated.MqttSpyDaemonConfiguration;
 import pl.baczkowicz.mqttspy.utils.MqttConfigurationUtils;
 import pl.baczkowicz.mqttspy.utils.MqttUtils;
@@ -129,13 +130,21 @@ public class MqttSpyDaemonConfigLoader extends PropertyFileLoader
 	}
 
 	/**
-	 * Populates the connection configuration with default values.
+	 * Populates the connections' configuration with default values.
 	 */
 	private void populateDefaults()
 	{				
-		MqttConfigurationUtils.populateMessageLogDefaults(configuration.getConnection().getMessageLog());
-		populateDaemonDefaults(configuration.getConnection().getBackgroundScript());
-		generateClientIdIfMissing(configuration.getConnection());
+		final List<DaemonMqttConnectionDetails> connections = configuration.getConnection();
+		
+		for (int i = 0; i < connections.size(); i++)
+		{
+			final DaemonMqttConnectionDetails connection = connections.get(i);
+			MqttConfigurationUtils.populateMessageLogDefaults(connection.getMessageLog());
+			populateDaemonDefaults(connection.getBackgroundScript());
+			
+			// Generated IDs have a millisecond timestamp, so make them unique across connections
+			generateClientIdIfMissing(connection, i == 0 ? CLIENT_ID_PREFIX : CLIENT_ID_PREFIX + i);
+		}
 	}
 	
 	public static void populateDaemonDefaults(List<ScriptDetails> scripts)
@@ -150,12 +159,17 @@ public class MqttSpyDaemonConfigLoader extends PropertyFileLoader
 	}
 	
 	public static void generateClientIdIfMissing(final MqttConnectionDetails connection)
+	{
+		generateClientIdIfMissing(connection, CLIENT_ID_PREFIX);
+	}
+	
+	private static void generateClientIdIfMissing(final MqttConnectionDetails connection, final String prefix)
 	{
 		if (connection.getClientID().isEmpty() 
 				&& !ProtocolVersionEnum.MQTT_3_1_1.equals(connection.getProtocol()))
 		{
 			logger.info("Client ID is empty and protocol version is not 3.1.1, so going to generate one...");
-			connection.setClientID(MqttUtils.generateClientIdWithTimestamp(CLIENT_ID_PREFIX, ProtocolVersionEnum.MQTT_3_1));
+			connection.setClientID(MqttUtils.generateClientIdWithTimestamp(prefix, ProtocolVersionEnum.MQTT_3_1));
 			logger.info("Generated Client ID is " + connection.getClientID());
 		}
 	}
@@ -8,8 +8,11 @@
 
 package pl.baczkowicz.mqttspy.daemon.configuration.generated;
 
+import java.util.ArrayList;
+import java.util.List;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlType;
 import org.jvnet.jaxb2_commons.lang.Equals;
@@ -36,9 +39,10 @@ import pl.baczkowicz.spy.common.generated.Formatting;
  *   &lt;complexContent&gt;
  *     &lt;restriction base="{http://www.w3.org/2001/XMLSchema}anyType"&gt;
  *       &lt;sequence&gt;
- *         &lt;element name="Connection" type="{http://baczkowicz.pl/mqtt-spy/daemon/configuration}DaemonMqttConnectionDetails"/&gt;
+ *         &lt;element name="Connection" type="{http://baczkowicz.pl/mqtt-spy/daemon/configuration}DaemonMqttConnectionDetails" maxOccurs="unbounded"/&gt;
  *         &lt;element name="Formatting" type="{http://baczkowicz.pl/spy/common}Formatting" minOccurs="0"/&gt;
  *       &lt;/sequence&gt;
+ *       &lt;attribute name="processingThreads" type="{http://www.w3.org/2001/XMLSchema}int" /&gt;
  *     &lt;/restriction&gt;
  *   &lt;/complexContent&gt;
  * &lt;/complexType&gt;
@@ -56,56 +60,87 @@ public class MqttSpyDaemonConfiguration
 {
 
     @XmlElement(name = "Connection", required = true)
-    protected DaemonMqttConnectionDetails connection;
+    protected List<DaemonMqttConnectionDetails> connection;
     @XmlElement(name = "Formatting")
     protected Formatting formatting;
+    @XmlAttribute(name = "processingThreads")
+    protected Integer processingThreads;
 
     /**
      * Gets the value of the connection property.
      * 
+     * <p>
+     * This accessor method returns a reference to the live list,
+     * not a snapshot. Therefore any modification you make to the
+     * returned list will be present inside the JAXB object.
+     * This is why there is not a <CODE>set</CODE> method for the connection property.
+     * 
+     * <p>
+     * For example, to add a new item, do as follows:
+     * <pre>
+     *    getConnection().add(newItem);
+     * </pre>
+     * 
+     * 
+     * <p>
+     * Objects of the following type(s) are allowed in the list
+     * {@link DaemonMqttConnectionDetails }
+     * 
+     * 
+     */
+    public List<DaemonMqttConnectionDetails> getConnection() {
+        if (connection == null) {
+            connection = new ArrayList<DaemonMqttConnectionDetails>();
+        }
+        return this.connection;
+    }
+
+    /**
+     * Gets the value of the formatting property.
+     * 
      * @return
      *     possible object is
-     *     {@link DaemonMqttConnectionDetails }
+     *     {@link Formatting }
      *     
      */
-    public DaemonMqttConnectionDetails getConnection() {
-        return connection;
+    public Formatting getFormatting() {
+        return formatting;
     }
 
     /**
-     * Sets the value of the connection property.
+     * Sets the value of the formatting property.
      * 
      * @param value
      *     allowed object is
-     *     {@link DaemonMqttConnectionDetails }
+     *     {@link Formatting }
      *     
      */
-    public void setConnection(DaemonMqttConnectionDetails value) {
-        this.connection = value;
+    public void setFormatting(Formatting value) {
+        this.formatting = value;
     }
 
     /**
-     * Gets the value of the formatting property.
+     * Gets the value of the processingThreads property.
      * 
      * @return
      *     possible object is
-     *     {@link Formatting }
+     *     {@link Integer }
      *     
      */
-    public Formatting getFormatting() {
-        return formatting;
+    public Integer getProcessingThreads() {
+        return processingThreads;
     }
 
     /**
-     * Sets the value of the formatting property.
+     * Sets the value of the processingThreads property.
      * 
      * @param value
      *     allowed object is
-     *     {@link Formatting }
+     *     {@link Integer }
      *     
      */
-    public void setFormatting(Formatting value) {
-        this.formatting = value;
+    public void setProcessingThreads(Integer value) {
+        this.processingThreads = value;
     }
 
     public String toString() {
@@ -124,8 +159,8 @@ public class MqttSpyDaemonConfiguration
 
     public StringBuilder appendFields(ObjectLocator locator, StringBuilder buffer, ToStringStrategy strategy) {
         {
-            DaemonMqttConnectionDetails theConnection;
-            theConnection = this.getConnection();
+            List<DaemonMqttConnectionDetails> theConnection;
+            theConnection = (((this.connection!= null)&&(!this.connection.isEmpty()))?this.getConnection():null);
             strategy.appendField(locator, this, "connection", buffer, theConnection);
         }
         {
@@ -133,6 +168,11 @@ public class MqttSpyDaemonConfiguration
             theFormatting = this.getFormatting();
             strategy.appendField(locator, this, "formatting", buffer, theFormatting);
         }
+        {
+            Integer theProcessingThreads;
+            theProcessingThreads = this.getProcessingThreads();
+            strategy.appendField(locator, this, "processingThreads", buffer, theProcessingThreads);
+        }
         return buffer;
     }
 
@@ -145,10 +185,10 @@ public class MqttSpyDaemonConfiguration
         }
         final MqttSpyDaemonConfiguration that = ((MqttSpyDaemonConfiguration) object);
         {
-            DaemonMqttConnectionDetails lhsConnection;
-            lhsConnection = this.getConnection();
-            DaemonMqttConnectionDetails rhsConnection;
-            rhsConnection = that.getConnection();
+            List<DaemonMqttConnectionDetails> lhsConnection;
+            lhsConnection = (((this.connection!= null)&&(!this.connection.isEmpty()))?this.getConnection():null);
+            List<DaemonMqttConnectionDetails> rhsConnection;
+            rhsConnection = (((that.connection!= null)&&(!that.connection.isEmpty()))?that.getConnection():null);
             if (!strategy.equals(LocatorUtils.property(thisLocator, "connection", lhsConnection), LocatorUtils.property(thatLocator, "connection", rhsConnection), lhsConnection, rhsConnection)) {
                 return false;
             }
@@ -162,6 +202,15 @@ public class MqttSpyDaemonConfiguration
                 return false;
             }
         }
+        {
+            Integer lhsProcessingThreads;
+            lhsProcessingThreads = this.getProcessingThreads();
+            Integer rhsProcessingThreads;
+            rhsProcessingThreads = that.getProcessingThreads();
+            if (!strategy.equals(LocatorUtils.property(thisLocator, "processingThreads", lhsProcessingThreads), LocatorUtils.property(thatLocator, "processingThreads", rhsProcessingThreads), lhsProcessingThreads, rhsProcessingThreads)) {
+                return false;
+            }
+        }
         return true;
     }
 
@@ -173,8 +222,8 @@ public class MqttSpyDaemonConfiguration
     public int hashCode(ObjectLocator locator, HashCodeStrategy strategy) {
         int currentHashCode = 1;
         {
-            DaemonMqttConnectionDetails theConnection;
-            theConnection = this.getConnection();
+            List<DaemonMqttConnectionDetails> theConnection;
+            theConnection = (((this.connection!= null)&&(!this.connection.isEmpty()))?this.getConnection():null);
             currentHashCode = strategy.hashCode(LocatorUtils.property(locator, "connection", theConnection), currentHashCode, theConnection);
         }
         {
@@ -182,6 +231,11 @@ public class MqttSpyDaemonConfiguration
             theFormatting = this.getFormatting();
             currentHashCode = strategy.hashCode(LocatorUtils.property(locator, "formatting", theFormatting), currentHashCode, theFormatting);
         }
+        {
+            Integer theProcessingThreads;
+            theProcessingThreads = this.getProcessingThreads();
+            currentHashCode = strategy.hashCode(LocatorUtils.property(locator, "processingThreads", theProcessingThreads), currentHashCode, theProcessingThreads);
+        }
         return currentHashCode;
     }
 
@@ -19,11 +19,15 @@
  */
 package pl.baczkowicz.mqttspy.daemon.connectivity;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
@@ -31,10 +35,12 @@ import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import pl.baczkowicz.mqttspy.common.generated.IngestOverflowPolicyEnum;
 import pl.baczkowicz.mqttspy.common.generated.MessageLogEnum;
 import pl.baczkowicz.mqttspy.common.generated.SubscriptionDetails;
 import pl.baczkowicz.mqttspy.connectivity.BaseMqttConnection;
 import pl.baczkowicz.mqttspy.connectivity.BaseMqttSubscription;
+import pl.baczkowicz.mqttspy.connectivity.BoundedIngestQueue;
 import pl.baczkowicz.mqttspy.daemon.configuration.generated.DaemonMqttConnectionDetails;
 import pl.baczkowicz.mqttspy.logger.MqttMessageLogger;
 import pl.baczkowicz.mqttspy.messages.FormattedMqttMessage;
@@ -42,17 +48,47 @@ import pl.baczkowicz.spy.common.generated.FormatterDetails;
 import pl.baczkowicz.spy.formatting.FormattingManager;
 import pl.baczkowicz.spy.messages.MessageIdGenerator;
 import pl.baczkowicz.spy.scripts.BaseScriptManagerInterface;
+import pl.baczkowicz.spy.scripts.Script;
+import pl.baczkowicz.spy.threading.OrderedLaneExecutor;
+import pl.baczkowicz.spy.threading.OrderedLaneExecutor.OverflowPolicy;
 
 /**
  * Callback handler for the MQTT connection.
+ * 
+ * Subscription scripts don't run on the MQTT client's callback thread, but
+ * in lanes on the shared script thread pool - one lane per script. Scripts
+ * can therefore run in parallel, while each of them still sees messages in
+ * the order they were received. Lanes are bounded by the message ingest
+ * queue size; when a lane is full, the callback thread waits (BLOCK policy),
+ * or the script is skipped for the oldest queued message (DROP_OLDEST
+ * policy) or for the new one (any other policy).
+ * 
+ * Queued messages are written to the message log on a separate thread pool,
+ * so that scripts waiting for space in the message log queue (BLOCK policy)
+ * cannot hold up the message log.
+ * 
+ * As scripts can modify the message, each script gets its own copy, apart
+ * from the last matching one, which gets the received message. If messages
+ * are logged after scripts, a message is logged (as left by the last
+ * script) once all its scripts have finished, so the log can be slightly
+ * out of order.
  */
 public class MqttCallbackHandler implements MqttCallback
 {
 	/** Diagnostic logger. */
 	private final static Logger logger = LoggerFactory.getLogger(MqttCallbackHandler.class);
 	
-	/** Stores all received messages, so that we don't block the receiving thread. */
-	private final Queue<FormattedMqttMessage> messageQueue = new LinkedBlockingQueue<FormattedMqttMessage>();
+	/** If X messages dropped, log this. */
+	private final static int DROPPED_LOG_INTERVAL = 1000;
+	
+	/** How often (in milliseconds) queued messages are written to the message log. */
+	private final static int MESSAGE_LOG_INTERVAL = 10;
+	
+	/** How long (in milliseconds) to wait for queued scripts when stopping. */
+	private final static int SCRIPTS_SHUTDOWN_TIMEOUT = 5000;
+	
+	/** Stores received messages to be logged, so that we don't block the receiving thread (unless configured to do so). */
+	private final BoundedIngestQueue<FormattedMqttMessage> messageQueue;
 	
 	/** Logs all received messages (if configured). */
 	private final MqttMessageLogger messageLogger;
@@ -71,6 +107,12 @@ public class MqttCallbackHandler implements MqttCallback
 	
 	private final FormattingManager formattingManager;
 	
+	/** Periodic task writing queued messages to the message log (null if logging disabled). */
+	private final ScheduledFuture<?> messageLoggerTask;
+	
+	/** Runs subscription scripts - one lane per script. */
+	private final OrderedLaneExecutor<Script, ScriptTask> scriptLanes;
+	
 	/** Message ID. */
 	//private long currentId = 1;
 
@@ -80,22 +122,64 @@ public class MqttCallbackHandler implements MqttCallback
 	 * @param connection The connection to be used
 	 * @param connectionSettings Connection's details
 	 * @param scriptManager Script manager - for running subscription scripts
+	 * @param scriptExecutor Thread pool shared by all connections - for running subscription scripts
+	 * @param messageLogExecutor Thread pool shared by all connections - for writing the message log
+	 * @param defaultLogFile Message log file used if none configured
 	 */
 	public MqttCallbackHandler(final BaseMqttConnection connection, final DaemonMqttConnectionDetails connectionSettings, 
-			final BaseScriptManagerInterface scriptManager)
+			final BaseScriptManagerInterface scriptManager, final Executor scriptExecutor, 
+			final ScheduledExecutorService messageLogExecutor, final String defaultLogFile)
 	{
 		this.connection = connection;
 		this.connectionSettings = connectionSettings;
 		this.scriptManager = scriptManager;
 		this.formattingManager = new FormattingManager(scriptManager);
-		this.messageLogger = new MqttMessageLogger("0", messageQueue, connectionSettings.getMessageLog(), false, 10);
+		this.messageQueue = new BoundedIngestQueue<FormattedMqttMessage>(connectionSettings.getMessageIngest());
+		this.messageLogger = new MqttMessageLogger(connection.getMqttConnectionDetails().getId(), messageQueue.getQueue(), 
+				connectionSettings.getMessageLog(), defaultLogFile, MESSAGE_LOG_INTERVAL);
+		this.scriptLanes = new OrderedLaneExecutor<Script, ScriptTask>(scriptExecutor, messageQueue.getQueueSize(), 
+				getOverflowPolicy(messageQueue.getPolicy()), this::scriptSkipped);
 		
 		for (final SubscriptionDetails subscriptionDetails : connectionSettings.getSubscription())
 		{
 			this.subscriptionsDetails.put(subscriptionDetails.getTopic(), subscriptionDetails);
 		}
 		
-		new Thread(messageLogger).start();			
+		if (MessageLogEnum.DISABLED.equals(connectionSettings.getMessageLog().getValue()))
+		{
+			this.messageLoggerTask = null;
+		}
+		else
+		{
+			this.messageLoggerTask = messageLogExecutor.scheduleWithFixedDelay(
+					this::logQueuedMessages, MESSAGE_LOG_INTERVAL, MESSAGE_LOG_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	private static OverflowPolicy getOverflowPolicy(final IngestOverflowPolicyEnum ingestPolicy)
+	{
+		switch (ingestPolicy)
+		{
+			case BLOCK:
+				return OverflowPolicy.BLOCK;
+			case DROP_OLDEST:
+				return OverflowPolicy.DROP_OLDEST;
+			default:
+				return OverflowPolicy.DROP_NEWEST;
+		}
+	}
+	
+	private void logQueuedMessages()
+	{
+		try
+		{
+			messageLogger.logQueuedMessages();
+		}
+		catch (RuntimeException e)
+		{
+			// Don't let the exception cancel the periodic task
+			logger.error("Cannot log messages for connection {}", connection.getName(), e);
+		}
 	}
 
 	/** 
@@ -143,13 +227,14 @@ public class MqttCallbackHandler implements MqttCallback
 			formattingManager.formatMessage(formattedMessage, (FormatterDetails) connectionSettings.getFormatter());
 		}
 		
+		final List<Script> scripts = new ArrayList<>();
 		for (final String matchingSubscriptionTopic : matchingSubscriptions)
 		{
 			// If configured, run scripts for the matching subscriptions
 			final BaseMqttSubscription subscription = connection.getMqttSubscriptionForTopic(matchingSubscriptionTopic);
 			if (subscription.isScriptActive())
 			{
-				scriptManager.runScriptWithReceivedMessage(subscription.getScript(), receivedMessage);
+				scripts.add(subscription.getScript());
 			}
 			
 			// Store the message (e.g. to be used by test cases; not needed for logging and general scripts)
@@ -158,14 +243,54 @@ public class MqttCallbackHandler implements MqttCallback
 				subscription.getStore().messageReceived(formattedMessage);
 			}
 		}
-				
-		// After scripts
-		if (!connectionSettings.getMessageLog().isLogBeforeScripts())
+		
+		final boolean logAfterScripts = !connectionSettings.getMessageLog().isLogBeforeScripts();
+		
+		if (scripts.isEmpty())
 		{
-			logMessage(receivedMessage);
+			if (logAfterScripts)
+			{
+				logMessage(receivedMessage);
+			}
+		}
+		else
+		{
+			runScripts(scripts, receivedMessage, logAfterScripts);
 		}
 	}
 	
+	/**
+	 * Queues the given message for the given scripts, and logs it (if configured) once all have finished.
+	 * 
+	 * @param scripts Scripts of the matching subscriptions
+	 * @param receivedMessage The received message
+	 * @param logAfterScripts Whether to log the message once all scripts have finished
+	 */
+	private void runScripts(final List<Script> scripts, final FormattedMqttMessage receivedMessage, final boolean logAfterScripts)
+	{
+		final AtomicInteger remainingScripts = new AtomicInteger(scripts.size());
+		
+		for (int i = 0; i < scripts.size(); i++)
+		{
+			// Scripts run in parallel, so copy the message before any of them can modify it
+			final FormattedMqttMessage message = i == scripts.size() - 1 ? receivedMessage : new FormattedMqttMessage(receivedMessage);
+			
+			// If skipped, the task gets passed to scriptSkipped
+			scriptLanes.execute(scripts.get(i), new ScriptTask(scripts.get(i), message, receivedMessage, remainingScripts, logAfterScripts));
+		}
+	}
+	
+	private void scriptSkipped(final ScriptTask task)
+	{
+		if (scriptLanes.getSkippedTasks() % DROPPED_LOG_INTERVAL == 1)
+		{
+			logger.warn("Script {} not keeping up; skipped for {} messages so far", 
+					task.script.getName(), scriptLanes.getSkippedTasks());
+		}
+		
+		task.finished();
+	}
+	
 	/**
 	 * Adds the message to the 'to be logged' queue.
 	 *  
@@ -176,9 +301,26 @@ public class MqttCallbackHandler implements MqttCallback
 		// Add the received message to queue for logging
 		if (!MessageLogEnum.DISABLED.equals(connectionSettings.getMessageLog().getValue()))
 		{
-			messageQueue.add(receivedMessage);
+			final long droppedBefore = messageQueue.getDroppedMessages();
+			
+			if (messageQueue.add(receivedMessage) > 0 
+					&& droppedBefore / DROPPED_LOG_INTERVAL != messageQueue.getDroppedMessages() / DROPPED_LOG_INTERVAL)
+			{
+				logger.warn("Message logger not keeping up; {} messages dropped so far ({} policy)", 
+						messageQueue.getDroppedMessages(), messageQueue.getPolicy());
+			}
 		}
 	}
+	
+	/**
+	 * Gets the number of messages dropped by the logging queue.
+	 * 
+	 * @return Number of dropped messages
+	 */
+	public long getDroppedMessages()
+	{
+		return messageQueue.getDroppedMessages();
+	}
 
 	/**
 	 * Handles completion of message delivery.
@@ -191,10 +333,70 @@ public class MqttCallbackHandler implements MqttCallback
 	}
 	
 	/**
-	 * Stops the message logger.
+	 * Stops the message logger, once queued scripts have finished and all queued messages have been written.
 	 */
 	public void stop()
 	{
-		messageLogger.stop();
+		if (!scriptLanes.awaitIdle(SCRIPTS_SHUTDOWN_TIMEOUT))
+		{
+			logger.warn("Subscription scripts still running after {} ms", SCRIPTS_SHUTDOWN_TIMEOUT);
+		}
+		
+		if (messageLoggerTask != null)
+		{
+			messageLoggerTask.cancel(false);
+			messageLogger.logQueuedMessagesAndClose();
+		}
+	}
+	
+	/**
+	 * Runs a subscription script for a received message, and logs the
+	 * message (if configured) once all its scripts have finished or been skipped.
+	 */
+	private final class ScriptTask implements Runnable
+	{
+		private final Script script;
+		
+		/** The script's copy of the message. */
+		private final FormattedMqttMessage message;
+		
+		/** The message to log. */
+		private final FormattedMqttMessage receivedMessage;
+		
+		/** Number of the message's scripts that haven't finished yet. */
+		private final AtomicInteger remainingScripts;
+		
+		private final boolean logAfterScripts;
+		
+		private ScriptTask(final Script script, final FormattedMqttMessage message, final FormattedMqttMessage receivedMessage, 
+				final AtomicInteger remainingScripts, final boolean logAfterScripts)
+		{
+			this.script = script;
+			this.message = message;
+			this.receivedMessage = receivedMessage;
+			this.remainingScripts = remainingScripts;
+			this.logAfterScripts = logAfterScripts;
+		}
+		
+		@Override
+		public void run()
+		{
+			try
+			{
+				scriptManager.runScriptWithReceivedMessage(script, message);
+			}
+			finally
+			{
+				finished();
+			}
+		}
+		
+		private void finished()
+		{
+			if (remainingScripts.decrementAndGet() == 0 && logAfterScripts)
+			{
+				logMessage(receivedMessage);
+			}
+		}
 	}
 }
@@ -0,0 +1,102 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2015 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.mqttspy.daemon.connectivity;
+
+import pl.baczkowicz.mqttspy.connectivity.SimpleMqttConnection;
+import pl.baczkowicz.mqttspy.daemon.configuration.generated.DaemonMqttConnectionDetails;
+import pl.baczkowicz.mqttspy.scripts.MqttScriptIO;
+import pl.baczkowicz.mqttspy.scripts.MqttScriptManager;
+import pl.baczkowicz.spy.testcases.TestCaseManager;
+
+/**
+ * One of the daemon's connections, with its own scripts, test cases and message log.
+ */
+public class MqttDaemonConnection
+{
+	/** Connection details (as configured). */
+	private final DaemonMqttConnectionDetails connectionSettings;
+	
+	/** The connection. */
+	private final SimpleMqttConnection connection;
+	
+	/** Script manager - for background and subscription scripts. */
+	private final MqttScriptManager scriptManager;
+	
+	/** Test case manager. */
+	private final TestCaseManager testCaseManager;
+	
+	/** Callback handler - processes and logs received messages. */
+	private final MqttCallbackHandler callback;
+	
+	/** Script IO with the extra methods (publish, subscribe, unsubscribe). */
+	private final MqttScriptIO scriptIO;
+
+	/**
+	 * Creates a MqttDaemonConnection.
+	 * 
+	 * @param connectionSettings Connection details (as configured)
+	 * @param connection The connection
+	 * @param scriptManager Script manager - for background and subscription scripts
+	 * @param testCaseManager Test case manager
+	 * @param callback Callback handler
+	 * @param scriptIO Script IO with the extra methods
+	 */
+	public MqttDaemonConnection(final DaemonMqttConnectionDetails connectionSettings, final SimpleMqttConnection connection,
+			final MqttScriptManager scriptManager, final TestCaseManager testCaseManager, 
+			final MqttCallbackHandler callback, final MqttScriptIO scriptIO)
+	{
+		this.connectionSettings = connectionSettings;
+		this.connection = connection;
+		this.scriptManager = scriptManager;
+		this.testCaseManager = testCaseManager;
+		this.callback = callback;
+		this.scriptIO = scriptIO;
+	}
+
+	public DaemonMqttConnectionDetails getConnectionSettings()
+	{
+		return connectionSettings;
+	}
+
+	public SimpleMqttConnection getConnection()
+	{
+		return connection;
+	}
+
+	public MqttScriptManager getScriptManager()
+	{
+		return scriptManager;
+	}
+
+	public TestCaseManager getTestCaseManager()
+	{
+		return testCaseManager;
+	}
+
+	public MqttCallbackHandler getCallback()
+	{
+		return callback;
+	}
+
+	public MqttScriptIO getScriptIO()
+	{
+		return scriptIO;
+	}
+}
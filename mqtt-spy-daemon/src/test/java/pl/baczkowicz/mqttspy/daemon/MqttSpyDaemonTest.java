@@ -51,6 +51,15 @@ public class MqttSpyDaemonTest
 		assertTrue(daemon.start("src/test/resources/test_configurations/localhost-configuration.xml"));
 	}
 	
+	@Test
+	public void testMultipleConnectionsConfiguration()
+	{
+		final MqttSpyDaemon daemon = new MqttSpyDaemon();
+		
+		assertTrue(daemon.start("src/test/resources/test_configurations/multiple-connections.xml"));
+		assertEquals(3, daemon.getConnections().size());
+	}
+	
 	@Test
 	public void testSslWithTestCasesConfiguration()
 	{
@@ -31,6 +31,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import pl.baczkowicz.mqttspy.logger.MqttMessageLogger;
+import pl.baczkowicz.mqttspy.messages.BaseMqttMessage;
 import pl.baczkowicz.mqttspy.messages.FormattedMqttMessage;
 import pl.baczkowicz.mqttspy.ui.scripts.InteractiveMqttScriptManager;
 import pl.baczkowicz.spy.common.generated.ScriptDetails;
@@ -96,6 +97,19 @@ public class MqttAsyncConnection extends MqttConnectionWithReconnection implemen
 		connectionState.setConnectionStatus(status);
 	}
 	
+	/**
+	 * Records messages dropped by the ingest queue.
+	 *
+	 * @param count Number of dropped messages
+	 */
+	public void messagesDropped(final int count)
+	{
+		if (statisticsManager != null)
+		{
+			statisticsManager.messagesDropped(getId(), count);
+		}
+	}
+	
 	public void messageReceived(final FormattedMqttMessage receivedMessage)
 	{		
 		// TODO: we should only delete from the topic matcher when a subscription is closed for good, not when just unsubscribed
@@ -181,7 +195,7 @@ public class MqttAsyncConnection extends MqttConnectionWithReconnection implemen
 					scriptManager.runScriptWithReceivedMessage(mqttSubscription.getScript(), receivedMessage);
 				}
 				
-				// Create a copy of the message for each subscription
+				// Create a copy of the message for each subscription (shares the payload, unless a script replaces it)
 				final FormattedMqttMessage message = new FormattedMqttMessage(receivedMessage);
 								
 				// Pass the message for subscription handling
@@ -235,6 +249,22 @@ public class MqttAsyncConnection extends MqttConnectionWithReconnection implemen
 		
 		return false;
 	}
+	
+	@Override
+	public int publish(final List<? extends BaseMqttMessage> messages)
+	{
+		final int published = super.publish(messages);
+		
+		if (statisticsManager != null)
+		{
+			for (int i = 0; i < published; i++)
+			{
+				statisticsManager.messagePublished(getId(), messages.get(i).getTopic());
+			}
+		}
+		
+		return published;
+	}
 
 	public void connectionLost(Throwable cause)
 	{
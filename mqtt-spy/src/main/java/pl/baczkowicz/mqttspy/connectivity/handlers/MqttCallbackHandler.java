@@ -19,9 +19,6 @@
  */
 package pl.baczkowicz.mqttspy.connectivity.handlers;
 
-import java.util.Queue;
-import java.util.concurrent.LinkedBlockingQueue;
-
 import javafx.application.Platform;
 
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
@@ -30,6 +27,7 @@ import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import pl.baczkowicz.mqttspy.connectivity.BoundedIngestQueue;
 import pl.baczkowicz.mqttspy.connectivity.MqttAsyncConnection;
 import pl.baczkowicz.mqttspy.messages.FormattedMqttMessage;
 import pl.baczkowicz.mqttspy.ui.events.queuable.connectivity.MqttConnectionLostEvent;
@@ -43,8 +41,8 @@ public class MqttCallbackHandler implements MqttCallback
 	/** Diagnostic logger. */
 	private final static Logger logger = LoggerFactory.getLogger(MqttCallbackHandler.class);
 	
-	/** Stores all received messages, so that we don't block the receiving thread. */
-	private final Queue<FormattedMqttMessage> messageQueue = new LinkedBlockingQueue<FormattedMqttMessage>();
+	/** Stores received messages, so that we don't block the receiving thread (unless configured to do so). */
+	private final BoundedIngestQueue<FormattedMqttMessage> messageQueue;
 	
 	private MqttAsyncConnection connection;
 	
@@ -53,7 +51,9 @@ public class MqttCallbackHandler implements MqttCallback
 	public MqttCallbackHandler(final MqttAsyncConnection connection)
 	{
 		this.setConnection(connection);
-		this.messageHandler = new MqttMessageHandler(connection, messageQueue);
+		this.messageQueue = new BoundedIngestQueue<FormattedMqttMessage>(
+				connection.getProperties().getConfiguredProperties().getMessageIngest());
+		this.messageHandler = new MqttMessageHandler(connection, messageQueue.getQueue());
 		new Thread(messageHandler).start();
 	}
 
@@ -66,7 +66,12 @@ public class MqttCallbackHandler implements MqttCallback
 	public void messageArrived(final String topic, final MqttMessage message)
 	{
 		logger.debug("[{}] Received message on topic \"{}\". Payload = \"{}\"", messageQueue.size(), topic, new String(message.getPayload()));
-		messageQueue.add(new FormattedMqttMessage(MessageIdGenerator.getNewId(), topic, message, connection));
+		final int dropped = messageQueue.add(new FormattedMqttMessage(MessageIdGenerator.getNewId(), topic, message, connection));
+		
+		if (dropped > 0)
+		{
+			connection.messagesDropped(dropped);
+		}
 	}
 
 	public void deliveryComplete(IMqttDeliveryToken token)
@@ -83,4 +88,14 @@ public class MqttCallbackHandler implements MqttCallback
 	{
 		this.connection = connection;
 	}
+
+	public MqttMessageHandler getMessageHandler()
+	{
+		return messageHandler;
+	}
+	
+	public BoundedIngestQueue<FormattedMqttMessage> getMessageQueue()
+	{
+		return messageQueue;
+	}
 }
@@ -19,7 +19,9 @@
  */
 package pl.baczkowicz.mqttspy.connectivity.handlers;
 
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,10 +29,15 @@ import org.slf4j.LoggerFactory;
 import pl.baczkowicz.mqttspy.connectivity.MqttAsyncConnection;
 import pl.baczkowicz.mqttspy.messages.FormattedMqttMessage;
 import pl.baczkowicz.spy.utils.ThreadingUtils;
+import pl.baczkowicz.spy.utils.TimeUtils;
 
 /**
  * This class is responsible for handling received messages. One thread per connection expected here.
  * 
+ * The thread blocks until a message is available, and then drains whatever
+ * else is waiting in the queue in one go, so messages are processed at the
+ * rate they arrive instead of being polled.
+ * 
  * @author Kamil Baczkowicz
  *
  */
@@ -38,11 +45,29 @@ public class MqttMessageHandler implements Runnable
 {
 	private final static Logger logger = LoggerFactory.getLogger(MqttMessageHandler.class);
 	
-	private final Queue<FormattedMqttMessage> queue;
+	/** Maximum number of messages taken off the queue in one go. */
+	public static final int MAX_BATCH_SIZE = 1000;
+	
+	/** How often (in milliseconds) the processing statistics are logged. */
+	public static final int STATS_LOG_INTERVAL = 10000;
+	
+	private final BlockingQueue<FormattedMqttMessage> queue;
 
 	private MqttAsyncConnection connection;
+	
+	/** Reusable batch of messages taken off the queue. */
+	private final List<FormattedMqttMessage> batch = new ArrayList<>(MAX_BATCH_SIZE);
+	
+	/** Number of messages processed so far. */
+	private volatile long processedMessages;
+	
+	/** Message count at the time the processing rate was last calculated. */
+	private long lastRateMessageCount;
+	
+	/** Time when the processing rate was last calculated. */
+	private long lastRateTime = TimeUtils.getMonotonicTime();
 
-	public MqttMessageHandler(final MqttAsyncConnection connection, final Queue<FormattedMqttMessage> queue)
+	public MqttMessageHandler(final MqttAsyncConnection connection, final BlockingQueue<FormattedMqttMessage> queue)
 	{
 		this.queue = queue;
 		this.connection = connection;
@@ -57,19 +82,19 @@ public class MqttMessageHandler implements Runnable
 		{
 			try
 			{
-				if (queue.size() > 0)
+				// Wait for the first message, then take whatever else has arrived in the meantime
+				batch.add(queue.take());
+				queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+				
+				for (final FormattedMqttMessage content : batch)
 				{
-					final FormattedMqttMessage content = queue.remove();
 					connection.messageReceived(content);
-					
-					// Let other threads do stuff
-					Thread.sleep(1);
-				}
-				else
-				{
-					// If no messages present, sleep a bit
-					Thread.sleep(10);
 				}
+				
+				processedMessages = processedMessages + batch.size();
+				batch.clear();
+				
+				logStatistics();
 			}
 			catch (InterruptedException e)
 			{
@@ -80,9 +105,53 @@ public class MqttMessageHandler implements Runnable
 		ThreadingUtils.logThreadEnding();
 	}
 		
+	/**
+	 * Gets the number of messages waiting to be processed (queue depth).
+	 * 
+	 * @return Number of queued messages
+	 */
 	public int getMessagesToProcess()
 	{
 		return queue.size();
 	}
-
+	
+	/**
+	 * Logs the processing statistics, if the logging interval has passed.
+	 */
+	private void logStatistics()
+	{
+		if (logger.isDebugEnabled() && TimeUtils.getMonotonicTime() - lastRateTime >= STATS_LOG_INTERVAL)
+		{
+			logger.debug("[{}] Processed {} message(s) so far, {} msg/s, {} waiting", connection.getName(), 
+					getProcessedMessages(), String.format("%.1f", getProcessingRate()), getMessagesToProcess());
+		}
+	}
+	
+	/**
+	 * Gets the number of messages processed so far.
+	 * 
+	 * @return Number of processed messages
+	 */
+	public long getProcessedMessages()
+	{
+		return processedMessages;
+	}
+	
+	/**
+	 * Gets the average number of messages processed per second since the last time this method was called.
+	 * 
+	 * @return Processing rate in messages per second
+	 */
+	public synchronized double getProcessingRate()
+	{
+		final long now = TimeUtils.getMonotonicTime();
+		final long processed = processedMessages;
+		
+		final double rate = now > lastRateTime ? (processed - lastRateMessageCount) * 1000.0 / (now - lastRateTime) : 0;
+		
+		lastRateTime = now;
+		lastRateMessageCount = processed;
+		
+		return rate;
+	}
 }
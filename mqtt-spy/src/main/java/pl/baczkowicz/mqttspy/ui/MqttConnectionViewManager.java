@@ -24,8 +24,8 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import javafx.application.Platform;
@@ -64,6 +64,7 @@ import pl.baczkowicz.spy.eventbus.IKBus;
 import pl.baczkowicz.spy.exceptions.ConfigurationException;
 import pl.baczkowicz.spy.exceptions.SpyException;
 import pl.baczkowicz.spy.formatting.FormattingManager;
+import pl.baczkowicz.spy.storage.PayloadArena;
 import pl.baczkowicz.spy.ui.IConnectionViewManager;
 import pl.baczkowicz.spy.ui.configuration.IConfigurationManager;
 import pl.baczkowicz.spy.ui.configuration.UiProperties;
@@ -295,17 +296,24 @@ public class MqttConnectionViewManager implements IConnectionViewManager
 		formattingManager.initialiseFormatter(connection.getProperties().getFormatter());
 		scriptManager.setConnection(connection);
 		
+		// Keep payloads of stored messages off-heap if configured
+		final int offHeapStoreSize = UiProperties.getOffHeapStoreSize(configurationManager.getUiPropertyFile());
+		if (offHeapStoreSize > 0)
+		{
+			connection.getStore().setPayloadArena(new PayloadArena(offHeapStoreSize * 1024 * 1024));
+		}
+		
 		// Set up message logger		
 		final MessageLog messageLog = connectionProperties.getConfiguredProperties().getMessageLog();		
 		if (messageLog != null && !messageLog.getValue().equals(MessageLogEnum.DISABLED) 
 				&& messageLog.getLogFile() != null && !messageLog.getLogFile().isEmpty())
 		{
-			final Queue<FormattedMqttMessage> messageQueue= new LinkedBlockingQueue<FormattedMqttMessage>();
+			final BlockingQueue<FormattedMqttMessage> messageQueue = new LinkedBlockingQueue<FormattedMqttMessage>();
 			
 			if (connection.getMessageLogger() == null)
 			{
 				final MqttMessageLogger messageLogger = new MqttMessageLogger(
-						connection.getId(), messageQueue, messageLog, true, 50);
+						connection.getId(), messageQueue, messageLog, null, 50);
 				connection.setMessageLogger(messageLogger);
 			}
 			
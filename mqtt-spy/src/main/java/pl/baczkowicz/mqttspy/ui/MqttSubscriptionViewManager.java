@@ -128,6 +128,9 @@ public class MqttSubscriptionViewManager
 		subscription.setConnection(connection);
 		subscription.setDetails(subscriptionDetails);
 		
+		// Share the connection's off-heap payload store (if any)
+		subscription.getStore().setPayloadArena(connection.getStore().getPayloadArena());
+		
 		// Add a new tab
 		final SubscriptionController subscriptionController = createSubscriptionTab(
 				false, subscription.getStore(), subscription, connection, connectionController);
@@ -22,7 +22,6 @@ package pl.baczkowicz.mqttspy.ui;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.List;
 
 import javafx.application.Platform;
 import javafx.event.Event;
@@ -51,7 +50,6 @@ import pl.baczkowicz.mqttspy.configuration.generated.TabbedSubscriptionDetails;
 import pl.baczkowicz.mqttspy.configuration.generated.UserInterfaceMqttConnectionDetails;
 import pl.baczkowicz.mqttspy.connectivity.MqttAsyncConnection;
 import pl.baczkowicz.mqttspy.connectivity.MqttRuntimeConnectionProperties;
-import pl.baczkowicz.mqttspy.messages.BaseMqttMessage;
 import pl.baczkowicz.mqttspy.messages.FormattedMqttMessage;
 import pl.baczkowicz.mqttspy.scripts.MqttScriptManager;
 import pl.baczkowicz.mqttspy.ui.controllers.MqttConnectionController;
@@ -230,7 +228,7 @@ public class MqttViewManager extends BaseViewManager
 
 		if (selectedFile != null)
 		{			
-			final TaskWithProgressUpdater<List<BaseMqttMessage>> readAndProcess = new LogReaderTask(selectedFile, this, mqttSpyMainController);
+			final TaskWithProgressUpdater<Integer> readAndProcess = new LogReaderTask(selectedFile, this, mqttSpyMainController);
 			
 			pl.baczkowicz.spy.ui.utils.DialogFactory.createWorkerDialog(readAndProcess);
 			
@@ -400,9 +398,12 @@ public class MqttViewManager extends BaseViewManager
 	 * @param mainController The main controller
 	 * @param parent The parent UI node
 	 * @param name Name of the tab
-	 * @param list List of messages to display
+	 * @param messageCount Number of messages to display
+	 * 
+	 * @return The store to add the messages to (on the JavaFX thread, once the tab has been initialised)
 	 */
-	public void loadMessageLogTab(final MqttSpyMainController mainController, final String name, final List<BaseMqttMessage> list)
+	public ManagedMessageStoreWithFiltering<FormattedMqttMessage> loadMessageLogTab(
+			final MqttSpyMainController mainController, final String name, final int messageCount)
 	{		
 		// Load a new tab and connection pane
 		final FXMLLoader loader = FxmlUtils.createFxmlLoaderForProjectFile("ConnectionTab.fxml");
@@ -424,7 +425,7 @@ public class MqttViewManager extends BaseViewManager
 				eventBus, configurationManager, this, mqttConnectionViewManager.getUiEventQueue());			
 		
         final ManagedMessageStoreWithFiltering<FormattedMqttMessage> store = new ManagedMessageStoreWithFiltering<FormattedMqttMessage>(
-        		name, 0, list.size(), list.size(), mqttConnectionViewManager.getUiEventQueue(), //eventManager, 
+        		name, 0, messageCount, messageCount, mqttConnectionViewManager.getUiEventQueue(), //eventManager, 
         		new FormattingManager(new MqttScriptManager(null, null, null)), UiProperties.getSummaryMaxPayloadLength(configurationManager.getUiPropertyFile()));               
         
 		final SubscriptionController subscriptionController = subscriptionManager.createSubscriptionTab(
@@ -457,15 +458,11 @@ public class MqttViewManager extends BaseViewManager
 				// Apply perspective
 				connectionController.showReplayMode();				
 				
-				// Process the messages
-		        for (final BaseMqttMessage mqttMessage : list)
-		        {		        	
-		        	store.messageReceived(new FormattedMqttMessage(mqttMessage, null));
-		        }
-		        
 		        replayTab.getTabPane().getSelectionModel().select(replayTab);
 			}
 		});		
+		
+		return store;
 	}
 	
 	public void loadDefaultConfigurationFile()
@@ -530,6 +530,12 @@ public class EditMqttConnectionController extends AnchorPane implements Initiali
 		editConnectionSubscriptionsController.readValues(connection);
 		editConnectionLastWillController.readValues(connection);			
 		
+		// Not editable here - keep whatever has been configured
+		if (editedConnectionDetails != null)
+		{
+			connection.setMessageIngest(editedConnectionDetails.getMessageIngest());
+		}
+		
 		return connection;
 	}
 	
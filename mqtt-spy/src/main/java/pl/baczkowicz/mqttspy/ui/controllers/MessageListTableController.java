@@ -20,9 +20,11 @@
 package pl.baczkowicz.mqttspy.ui.controllers;
 
 import java.net.URL;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.ResourceBundle;
 
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.event.Event;
@@ -63,6 +65,30 @@ public class MessageListTableController implements Initializable
 	
 	private ObservableList<MessageContentProperties<FormattedMqttMessage>> items; 
 	
+	/** Items by message ID, kept in sync with the items list. */
+	private final Map<Long, MessageContentProperties<FormattedMqttMessage>> itemsById = new HashMap<>();
+	
+	/** Keeps the items by ID in sync - sorting only permutes the items, so only additions and removals need handling. */
+	private final ListChangeListener<MessageContentProperties<FormattedMqttMessage>> itemsListener = 
+			new ListChangeListener<MessageContentProperties<FormattedMqttMessage>>()
+	{
+		@Override
+		public void onChanged(final Change<? extends MessageContentProperties<FormattedMqttMessage>> change)
+		{
+			while (change.next())
+			{
+				for (final MessageContentProperties<FormattedMqttMessage> removed : change.getRemoved())
+				{
+					itemsById.remove(removed.getId(), removed);
+				}
+				for (final MessageContentProperties<FormattedMqttMessage> added : change.getAddedSubList())
+				{
+					itemsById.put(added.getId(), added);
+				}
+			}
+		}
+	};
+	
 	@FXML
 	private TableView<MessageContentProperties<FormattedMqttMessage>> messageTable;
 
@@ -176,16 +202,13 @@ public class MessageListTableController implements Initializable
 		final MessageContentProperties<FormattedMqttMessage> item = messageTable.getSelectionModel().getSelectedItem();
 		if (item != null)
 		{
-			final List<FormattedMqttMessage> list = store.getMessages();
-			for (int i = 0; i < store.getMessages().size(); i++)
+			final int index = store.indexOf(item.getId());
+			if (index >= 0)
 			{
-				if (list.get(i).getId() == item.getId())
-				{
-					// logger.info("{} Changing selection to " + (array.length - i), store.getName());
-					
-					eventBus.publish(new MessageIndexChangeEvent(i + 1, store, this));
-					// eventManager.changeMessageIndex(store, this, i + 1);
-				}
+				// logger.info("{} Changing selection to " + (array.length - i), store.getName());
+				
+				eventBus.publish(new MessageIndexChangeEvent(index + 1, store, this));
+				// eventManager.changeMessageIndex(store, this, i + 1);
 			}
 		}
 	}
@@ -201,17 +224,11 @@ public class MessageListTableController implements Initializable
 		if (store.getMessages().size() > 0)
 		{
 			final long id = (store.getMessages().get(event.getIndex() - 1)).getId();
+			final MessageContentProperties<FormattedMqttMessage> item = itemsById.get(id);
 
-			for (final MessageContentProperties<FormattedMqttMessage> item : items)
+			if (item != null && !item.equals(messageTable.getSelectionModel().getSelectedItem()))
 			{
-				if (item.getId() == id)
-				{
-					if (!item.equals(messageTable.getSelectionModel().getSelectedItem()))
-					{
-						messageTable.getSelectionModel().select(item);
-						break;
-					}
-				}
+				messageTable.getSelectionModel().select(item);
 			}
 		}
 	}
@@ -224,7 +241,20 @@ public class MessageListTableController implements Initializable
 	
 	public void setItems(final ObservableList<MessageContentProperties<FormattedMqttMessage>> items)
 	{
+		if (this.items != null)
+		{
+			this.items.removeListener(itemsListener);
+		}
+		
 		this.items = items;
+		
+		itemsById.clear();
+		for (final MessageContentProperties<FormattedMqttMessage> item : items)
+		{
+			itemsById.put(item.getId(), item);
+		}
+		
+		items.addListener(itemsListener);
 	}
 	
 	public void setStore(final BasicMessageStoreWithSummary<FormattedMqttMessage> store)
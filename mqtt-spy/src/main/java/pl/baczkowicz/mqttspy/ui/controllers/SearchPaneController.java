@@ -68,9 +68,11 @@ import pl.baczkowicz.spy.ui.events.MessageIndexToFirstEvent;
 import pl.baczkowicz.spy.ui.events.queuable.ui.BrowseReceivedMessageEvent;
 import pl.baczkowicz.spy.ui.properties.MessageContentProperties;
 import pl.baczkowicz.spy.ui.search.InlineScriptMatcher;
+import pl.baczkowicz.spy.ui.search.ParallelSearch;
 import pl.baczkowicz.spy.ui.search.ScriptMatcher;
 import pl.baczkowicz.spy.ui.search.SearchMatcher;
 import pl.baczkowicz.spy.ui.search.SearchOptions;
+import pl.baczkowicz.spy.ui.search.SearchTask;
 import pl.baczkowicz.spy.ui.search.SimplePayloadMatcher;
 import pl.baczkowicz.spy.ui.search.UniqueContentOnlyFilter;
 import pl.baczkowicz.spy.ui.storage.FilteredMessageStore;
@@ -163,6 +165,20 @@ public class SearchPaneController implements Initializable
 
 	private FormattingManager formattingManager;
 	
+	/** Matcher used by the last search (reused for new messages when auto-refreshing). */
+	private SearchMatcher matcher;
+	
+	private final ParallelSearch parallelSearch = new ParallelSearch();
+	
+	/** Search running in the background (null if none). */
+	private SearchTask<FormattedMqttMessage> searchTask;
+	
+	/** ID of the newest message included in the last search (newer messages are matched when auto-refreshing). */
+	private long lastSearchedId;
+	
+	/** Messages added while the search was running, to be matched once finished (when auto-refreshing). */
+	private final List<FormattedMqttMessage> pendingMessages = new ArrayList<>();
+	
 	public void initialize(URL location, ResourceBundle resources)
 	{
 		searchField.addEventFilter(KeyEvent.KEY_RELEASED, new EventHandler<KeyEvent>() 
@@ -176,7 +192,13 @@ public class SearchPaneController implements Initializable
 		        	{
 		        		search();
 		        		break;
-		        	}		        	
+		        	}
+		        	case ESCAPE:
+		        	{
+		        		cancelSearch();
+		        		break;
+		        	}
+
 		        	default:
 		        		break;
 	        	}
@@ -201,7 +223,6 @@ public class SearchPaneController implements Initializable
 			{
 				uniqueContentOnlyFilter.setUniqueContentOnly(uniqueOnlyMenu.isSelected());
 				search();
-				eventBus.publish(new MessageIndexToFirstEvent(foundMessageStore));			
 			}
 		});
 		
@@ -352,19 +373,100 @@ public class SearchPaneController implements Initializable
 	
 	private void processMessages(final List<FormattedMqttMessage> messages)
 	{
-		final SearchMatcher matcher = getSearchMatcher();
+		matcher = getSearchMatcher();
 		
-		final int firstIndex = store.getMessages().size() - 1;
+		// Oldest first
+		final List<FormattedMqttMessage> messagesToSearch = new ArrayList<>();
+		synchronized (messages)
+		{
+			for (int i = messages.size() - 1; i >= 0; i--)
+			{
+				messagesToSearch.add(messages.get(i));
+			}
+		}
 		
-		for (int i = firstIndex; i >= 0; i--)
+		if (messagesToSearch.isEmpty())
 		{
-			processMessage(store.getMessages().get(i), matcher);
-			
-			if (firstIndex == i && !matcher.isValid())
+			return;
+		}
+		
+		lastSearchedId = messagesToSearch.get(messagesToSearch.size() - 1).getId();
+		
+		// Check the matcher works before searching everything (any errors are shown on this thread)
+		processMessage(messagesToSearch.get(0), matcher);
+		if (!matcher.isValid())
+		{
+			return;
+		}
+		
+		final int alreadySearched = seachedCount;
+		final SearchTask<FormattedMqttMessage> task = new SearchTask<>(messagesToSearch.subList(1, messagesToSearch.size()), 
+				matcher, parallelSearch, new SimpleRunLaterExecutor(), this::messagesFound);
+		
+		task.workDoneProperty().addListener((observable, oldValue, newValue) -> 
+		{
+			if (task == searchTask)
 			{
-				break;
+				seachedCount = alreadySearched + newValue.intValue();
+				updateTabTitle();
 			}
-		}		
+		});
+		task.setOnSucceeded(event -> onSearchFinished(task));
+		task.setOnCancelled(event -> onSearchFinished(task));
+		task.setOnFailed(event -> 
+		{
+			logger.error("Search failed", task.getException());
+			onSearchFinished(task);
+		});
+		
+		searchTask = task;
+		
+		final Thread thread = new Thread(task, "Search " + store.getName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	private void messagesFound(final List<FormattedMqttMessage> messages)
+	{
+		for (final FormattedMqttMessage message : messages)
+		{
+			messageFound(message);
+		}
+		
+		updateTabTitle();
+	}
+	
+	private void onSearchFinished(final SearchTask<FormattedMqttMessage> task)
+	{
+		if (task != searchTask)
+		{
+			return;
+		}
+		
+		searchTask = null;
+		
+		// Match messages added in the meantime
+		final List<FormattedMqttMessage> messages = new ArrayList<>(pendingMessages);
+		pendingMessages.clear();
+		for (final FormattedMqttMessage message : messages)
+		{
+			onMessageAdded(message);
+		}
+		
+		updateTabTitle();
+		eventBus.publish(new MessageIndexToFirstEvent(foundMessageStore));
+	}
+	
+	private void cancelSearch()
+	{
+		if (searchTask != null)
+		{
+			final SearchTask<FormattedMqttMessage> task = searchTask;
+			searchTask = null;
+			pendingMessages.clear();
+			task.cancel();
+			updateTabTitle();
+		}
 	}
 	
 	private SearchMatcher getSearchMatcher()
@@ -425,6 +527,7 @@ public class SearchPaneController implements Initializable
 	@FXML
 	private void search()
 	{
+		cancelSearch();
 		clearMessages();		
 		
 		processMessages(store.getMessages());		
@@ -440,7 +543,15 @@ public class SearchPaneController implements Initializable
 		final HBox title = new HBox();
 		title.setAlignment(Pos.CENTER);
 				
-		if (isAutoRefresh())
+		if (searchTask != null)
+		{
+			final ProgressIndicator progressIndicator = new ProgressIndicator();
+			progressIndicator.progressProperty().bind(searchTask.progressProperty());
+			progressIndicator.setMaxSize(15, 15);
+			title.getChildren().add(progressIndicator);
+			title.getChildren().add(new Label(" "));
+		}
+		else if (isAutoRefresh())
 		{
 			final ProgressIndicator progressIndicator = new ProgressIndicator();
 			progressIndicator.setMaxSize(15, 15);
@@ -480,7 +591,24 @@ public class SearchPaneController implements Initializable
 		// TODO: is that ever deregistered?
 		if (autoRefreshCheckBox.isSelected())
 		{
-			final boolean matchingSearch = processMessage(message, getSearchMatcher()); 
+			// Only match messages not included in the last search
+			if (message.getId() <= lastSearchedId)
+			{
+				return;
+			}
+			
+			if (searchTask != null)
+			{
+				pendingMessages.add(message);
+				return;
+			}
+			
+			if (matcher == null)
+			{
+				matcher = getSearchMatcher();
+			}
+			
+			final boolean matchingSearch = processMessage(message, matcher); 
 			if (matchingSearch)														
 			{
 				if (messageNavigationPaneController.showLatest())
@@ -499,6 +627,7 @@ public class SearchPaneController implements Initializable
 	
 	public void cleanup()
 	{
+		cancelSearch();
 		disableAutoSearch();
 		
 		// TODO: need to check this
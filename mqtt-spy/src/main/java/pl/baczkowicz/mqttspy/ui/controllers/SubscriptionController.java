@@ -942,9 +942,12 @@ public class SubscriptionController implements Initializable, TabController
 			avg30sec = StatisticsManager.getMessagesReceived(connectionProperties.getId(), 30).overallCount;
 			avg300sec = StatisticsManager.getMessagesReceived(connectionProperties.getId(), 300).overallCount;
 			
+			final long droppedCount = StatisticsManager.getMessagesDropped(connectionProperties.getId());
+			final String droppedCountText = droppedCount > 0 ? (", " + droppedCount + " dropped") : "";
+			
 			statsLabel.setText(String.format(SUMMARY_PANE_STATS_FORMAT, 
 				topicCountText,
-				messageCountText,
+				messageCountText + droppedCountText,
 				avg5sec,
 				avg30sec,
 				avg300sec));						
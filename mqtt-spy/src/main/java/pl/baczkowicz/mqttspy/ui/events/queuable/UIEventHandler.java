@@ -19,13 +19,13 @@
  */
 package pl.baczkowicz.mqttspy.ui.events.queuable;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import javafx.application.Platform;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,8 +38,12 @@ import pl.baczkowicz.spy.ui.events.queuable.EventQueueManager;
 import pl.baczkowicz.spy.ui.events.queuable.ui.BrowseReceivedMessageEvent;
 import pl.baczkowicz.spy.ui.events.queuable.ui.BrowseRemovedMessageEvent;
 import pl.baczkowicz.spy.ui.events.queuable.ui.SpyUIEvent;
+import pl.baczkowicz.spy.ui.events.queuable.ui.SpyUIEventType;
 import pl.baczkowicz.spy.ui.events.queuable.ui.TopicSummaryNewMessageEvent;
 import pl.baczkowicz.spy.ui.events.queuable.ui.TopicSummaryRemovedMessageEvent;
+import pl.baczkowicz.spy.ui.storage.MessageListWithObservableTopicSummary;
+import pl.baczkowicz.spy.ui.storage.summary.TopicSummaryChanges;
+import pl.baczkowicz.spy.ui.threading.AdaptiveFrameScheduler;
 import pl.baczkowicz.spy.utils.ThreadingUtils;
 import pl.baczkowicz.spy.utils.TimeUtils;
 
@@ -48,19 +52,54 @@ import pl.baczkowicz.spy.utils.TimeUtils;
  * for improved performance. So rather than flooding JavaFX with hundreds or
  * thousands of requests to do runLater, we buffer those events, and then
  * process them in batches.
+ * 
+ * Topic summary events are not handled one by one - instead, each batch is
+ * folded into the net count change and the latest message per topic, so the
+ * amount of work on the JavaFX thread depends on the number of topics rather
+ * than the number of messages.
+ * 
+ * All work for one update is posted as a single frame via the
+ * AdaptiveFrameScheduler, which decides how often to update and how many
+ * events to put into a frame, based on how busy the JavaFX thread is. Events
+ * over the budget stay queued until the next frame.
+ * 
+ * Each event type gets its own share of the budget. Removals are only handled
+ * once the additions queued before them have been, so that a removal is never
+ * handled before its addition.
  */
 public class UIEventHandler implements Runnable
 {
 	final static Logger logger = LoggerFactory.getLogger(UIEventHandler.class);
 	
 	private final EventQueueManager<FormattedMqttMessage> uiEventQueue;
+	
+	/** Reusable batch of events taken off the queue. */
+	private final List<SpyUIEvent<FormattedMqttMessage>> batch = new ArrayList<>();
+	
+	/** Paces the frames posted to the JavaFX thread. */
+	private final AdaptiveFrameScheduler scheduler;
+	
+	/** Tracks which of the queued browse removals can be handled. */
+	private final RemovalTracker browseRemovals = 
+			new RemovalTracker(SpyUIEventType.BROWSE_RECEIVED, SpyUIEventType.BROWSE_REMOVED);
+	
+	/** Tracks which of the queued topic summary removals can be handled. */
+	private final RemovalTracker topicSummaryRemovals = 
+			new RemovalTracker(SpyUIEventType.TOPIC_SUMMARY_NEW, SpyUIEventType.TOPIC_SUMMARY_REMOVED);
 
 	private IKBus eventBus;
 
 	public UIEventHandler(final EventQueueManager<FormattedMqttMessage> uiEventQueue, final IKBus eventBus)
+	{
+		this(uiEventQueue, eventBus, new AdaptiveFrameScheduler());
+	}
+	
+	public UIEventHandler(final EventQueueManager<FormattedMqttMessage> uiEventQueue, final IKBus eventBus, 
+			final AdaptiveFrameScheduler scheduler)
 	{
 		this.uiEventQueue = uiEventQueue;
 		this.eventBus = eventBus;
+		this.scheduler = scheduler;
 	}
 
 	@Override
@@ -70,13 +109,14 @@ public class UIEventHandler implements Runnable
 		
 		while (true)
 		{
-			if (uiEventQueue.getEventCount() > 0)
+			// Only post a new frame once the previous one has been processed
+			if (uiEventQueue.getEventCount() > 0 && !scheduler.isFramePending())
 			{
 				showUpdates();
 			}
 			
-			// Sleep so that we don't run all the time - updating the UI 10 times a second should be more than enough
-			if (ThreadingUtils.sleep(100))			
+			// Sleep so that we don't run all the time - the interval depends on the backlog and how busy the UI is
+			if (ThreadingUtils.sleep(scheduler.nextInterval(uiEventQueue.getEventCount())))			
 			{
 				break;
 			}
@@ -88,34 +128,70 @@ public class UIEventHandler implements Runnable
 	private void showUpdates()
 	{
 		final long start = TimeUtils.getMonotonicTime();
-		long processed = 0;
-		while (uiEventQueue.getEventCount() > 0)
+		
+		// Share the budget between event types so that none of them gets starved
+		final int budgetPerType = Math.max(1, scheduler.getWorkBudget() / SpyUIEventType.values().length);
+		
+		final List<Runnable> frame = new ArrayList<>();
+		final Map<MessageListWithObservableTopicSummary<FormattedMqttMessage>, TopicSummaryChanges<FormattedMqttMessage>> topicSummaryChanges = new HashMap<>();
+		
+		int processed = 0;
+		processed = processed + drain(browseRemovals, budgetPerType, frame, topicSummaryChanges);
+		processed = processed + drain(topicSummaryRemovals, budgetPerType, frame, topicSummaryChanges);
+		
+		applyTopicSummaryChanges(topicSummaryChanges, frame);
+		
+		if (!frame.isEmpty())
 		{
-			final Map<String, List<SpyUIEvent<FormattedMqttMessage>>> events = uiEventQueue.getEvents();
-			{
-				for (final String type : events.keySet())
-				{
-					// Remove the event queue from the manager
-					final List<SpyUIEvent<FormattedMqttMessage>> eventQueue = uiEventQueue.getAndRemoveEvents(type);
-					
-					if (eventQueue.isEmpty())
-					{
-						continue;
-					}
-					
-					processed = processed + eventQueue.size();
-					processEventType(eventQueue);					
-				}
-			}								
-		}	
+			scheduler.submitFrame(frame, processed);
+		}
+		
 		final long end = TimeUtils.getMonotonicTime();
 		if (logger.isTraceEnabled())
 		{
-			logger.trace("UI event handling of {} items took {} ms", processed, (end - start));
+			logger.trace("UI event handling of {} items took {} ms; {} left; last frame waited {} ms and took {} ms", 
+					processed, (end - start), uiEventQueue.getEventCount(), 
+					scheduler.getLastFrameLatency(), scheduler.getLastFrameExecutionTime());
+		}
+	}
+	
+	private int drain(final RemovalTracker removals, final int maxEventsPerType, final List<Runnable> frame, 
+			final Map<MessageListWithObservableTopicSummary<FormattedMqttMessage>, TopicSummaryChanges<FormattedMqttMessage>> topicSummaryChanges)
+	{
+		removals.update(uiEventQueue);
+		
+		final int added = drain(removals.addedType, maxEventsPerType, frame, topicSummaryChanges);
+		removals.additionsHandled(added);
+		
+		final int removed = drain(removals.removedType, (int) Math.min(maxEventsPerType, removals.getRemovable()), frame, topicSummaryChanges);
+		removals.removalsHandled(removed);
+		
+		return added + removed;
+	}
+	
+	private int drain(final SpyUIEventType type, final int maxEvents, final List<Runnable> frame, 
+			final Map<MessageListWithObservableTopicSummary<FormattedMqttMessage>, TopicSummaryChanges<FormattedMqttMessage>> topicSummaryChanges)
+	{
+		// Take the queued events off the manager
+		final int drained = uiEventQueue.drainTo(type, batch, maxEvents);
+		
+		if (drained > 0)
+		{
+			if (SpyUIEventType.TOPIC_SUMMARY_NEW.equals(type) || SpyUIEventType.TOPIC_SUMMARY_REMOVED.equals(type))
+			{
+				collectTopicSummaryChanges(batch, topicSummaryChanges);
+			}
+			else
+			{
+				processEventType(batch, frame);
+			}
+			batch.clear();
 		}
+		
+		return drained;
 	}
 	
-	private void processEventType(final List<SpyUIEvent<FormattedMqttMessage>> eventQueue)
+	private void processEventType(final List<SpyUIEvent<FormattedMqttMessage>> eventQueue, final List<Runnable> frame)
 	{
 		// Split by parent
 		final Map<MessageList<FormattedMqttMessage>, List<SpyUIEvent<FormattedMqttMessage>>> parentToEvent = new HashMap<>();		
@@ -135,7 +211,7 @@ public class UIEventHandler implements Runnable
 		// Process in batches
 		for (final MessageList<FormattedMqttMessage> parent : parentToEvent.keySet())
 		{
-			Platform.runLater(new Runnable()
+			frame.add(new Runnable()
 			{				
 				@Override
 				public void run()
@@ -146,6 +222,58 @@ public class UIEventHandler implements Runnable
 		}		
 	}
 
+	@SuppressWarnings("unchecked")
+	private void collectTopicSummaryChanges(final List<SpyUIEvent<FormattedMqttMessage>> eventQueue, 
+			final Map<MessageListWithObservableTopicSummary<FormattedMqttMessage>, TopicSummaryChanges<FormattedMqttMessage>> topicSummaryChanges)
+	{
+		for (final SpyUIEvent<FormattedMqttMessage> event : eventQueue)
+		{
+			final MessageListWithObservableTopicSummary<FormattedMqttMessage> list = (MessageListWithObservableTopicSummary<FormattedMqttMessage>) event.getList();
+			TopicSummaryChanges<FormattedMqttMessage> changes = topicSummaryChanges.get(list);
+			
+			if (changes == null)
+			{
+				changes = new TopicSummaryChanges<>();
+				topicSummaryChanges.put(list, changes);
+			}
+			
+			if (event instanceof TopicSummaryNewMessageEvent)
+			{
+				final TopicSummaryNewMessageEvent<FormattedMqttMessage> updateEvent = (TopicSummaryNewMessageEvent<FormattedMqttMessage>) event;
+				changes.messageAdded(updateEvent.getAdded(), updateEvent.isShowTopic());
+			}
+			else
+			{
+				final TopicSummaryRemovedMessageEvent<FormattedMqttMessage> removeEvent = (TopicSummaryRemovedMessageEvent<FormattedMqttMessage>) event;
+				
+				// Remove old message from stats
+				if (removeEvent.getRemoved() != null)
+				{
+					changes.messageRemoved(removeEvent.getRemoved());
+				}
+			}
+		}
+	}
+	
+	private void applyTopicSummaryChanges(
+			final Map<MessageListWithObservableTopicSummary<FormattedMqttMessage>, TopicSummaryChanges<FormattedMqttMessage>> topicSummaryChanges,
+			final List<Runnable> frame)
+	{
+		for (final MessageListWithObservableTopicSummary<FormattedMqttMessage> list : topicSummaryChanges.keySet())
+		{
+			final TopicSummaryChanges<FormattedMqttMessage> changes = topicSummaryChanges.get(list);
+			
+			frame.add(new Runnable()
+			{				
+				@Override
+				public void run()
+				{					
+					changes.applyTo(list.getTopicSummary());
+				}
+			});
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	private void handleEvents(final List<SpyUIEvent<FormattedMqttMessage>> eventQueue)
 	{
@@ -161,41 +289,66 @@ public class UIEventHandler implements Runnable
 			eventBus.publish(new MessageRemovedEvent<>((List<BrowseRemovedMessageEvent<FormattedMqttMessage>>)(Object)eventQueue, 
 					event.getList()));
 		}
-		else if (event instanceof TopicSummaryNewMessageEvent)
+	}
+	
+	/**
+	 * Works out how many of the queued removals can be handled, i.e. have had
+	 * the additions queued before them handled already.
+	 */
+	private static class RemovalTracker
+	{
+		private final SpyUIEventType addedType;
+		
+		private final SpyUIEventType removedType;
+		
+		/** Number of removals and additions added at the time of each update, oldest first. */
+		private final Deque<long[]> pending = new ArrayDeque<>();
+		
+		private long additionsHandled;
+		
+		private long removalsHandled;
+		
+		/** Number of removals whose additions have been handled. */
+		private long removalsReady;
+		
+		private RemovalTracker(final SpyUIEventType addedType, final SpyUIEventType removedType)
 		{
-			for (final SpyUIEvent<FormattedMqttMessage> item : eventQueue)
+			this.addedType = addedType;
+			this.removedType = removedType;
+		}
+		
+		private void update(final EventQueueManager<FormattedMqttMessage> uiEventQueue)
+		{
+			// Removals first - their additions have been added before them, so are all included in the second count
+			final long removals = uiEventQueue.getAddedCount(removedType);
+			final long additions = uiEventQueue.getAddedCount(addedType);
+			
+			if (removals > removalsReady && (pending.isEmpty() || removals > pending.peekLast()[0]))
 			{
-				handleTopicSummaryNewMessageEvent((TopicSummaryNewMessageEvent<FormattedMqttMessage>) item);
+				pending.add(new long[] { removals, additions });
 			}
+			
+			additionsHandled(0);
 		}
-		else if (event instanceof TopicSummaryRemovedMessageEvent)
+		
+		private void additionsHandled(final int count)
 		{
-			for (final SpyUIEvent<FormattedMqttMessage> item : eventQueue)
+			additionsHandled = additionsHandled + count;
+			
+			while (!pending.isEmpty() && pending.peekFirst()[1] <= additionsHandled)
 			{
-				handleTopicSummaryRemovedMessageEvent((TopicSummaryRemovedMessageEvent<FormattedMqttMessage>) item);
-			}			
+				removalsReady = pending.pollFirst()[0];
+			}
 		}
-	}
-	
-	private void handleTopicSummaryNewMessageEvent(final TopicSummaryNewMessageEvent<FormattedMqttMessage> updateEvent)
-	{
-		// Calculate the overall message count per topic
-		updateEvent.getList().getTopicSummary().addMessage(updateEvent.getAdded());
 		
-		// Update the 'show' property if required
-		if (updateEvent.isShowTopic())
-		{			
-			updateEvent.getList().getTopicSummary().setShowValue(updateEvent.getAdded().getTopic(), true);											
+		private void removalsHandled(final int count)
+		{
+			removalsHandled = removalsHandled + count;
 		}
-	}
-	
-	private void handleTopicSummaryRemovedMessageEvent(final TopicSummaryRemovedMessageEvent<FormattedMqttMessage> removeEvent)
-	{
-		// Remove old message from stats
-		if (removeEvent.getRemoved() != null)
+		
+		private long getRemovable()
 		{
-			// TODO: does this actually work?
-			removeEvent.getList().getTopicSummary().removeMessage(removeEvent.getRemoved());
+			return removalsReady - removalsHandled;
 		}
 	}
 }
@@ -21,25 +21,32 @@ package pl.baczkowicz.mqttspy.ui.messagelog;
 
 import java.io.File;
 import java.util.List;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import javafx.application.Platform;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import pl.baczkowicz.mqttspy.common.generated.LoggedMqttMessage;
-import pl.baczkowicz.mqttspy.logger.MqttMessageLogParserUtils;
+import pl.baczkowicz.mqttspy.logger.MqttMessageLogLoader;
 import pl.baczkowicz.mqttspy.messages.BaseMqttMessage;
+import pl.baczkowicz.mqttspy.messages.FormattedMqttMessage;
 import pl.baczkowicz.mqttspy.ui.MqttViewManager;
 import pl.baczkowicz.mqttspy.ui.controllers.MqttSpyMainController;
-import pl.baczkowicz.spy.files.FileUtils;
+import pl.baczkowicz.spy.ui.storage.ManagedMessageStoreWithFiltering;
 import pl.baczkowicz.spy.ui.storage.TaskWithProgressUpdater;
 import pl.baczkowicz.spy.utils.ThreadingUtils;
+import pl.baczkowicz.spy.utils.tasks.ProgressUpdater;
 
 /**
- * Tasks responsible for reading the message log.
+ * Tasks responsible for reading the message log. The log is indexed first,
+ * and then parsed in chunks, which are displayed as soon as they are ready.
+ * Only one chunk at a time is handed over to the JavaFX thread, so that the
+ * parser doesn't get ahead of the UI with parsed messages piling up.
  */
-public class LogReaderTask extends TaskWithProgressUpdater<List<BaseMqttMessage>>
+public class LogReaderTask extends TaskWithProgressUpdater<Integer>
 {
 	/** Diagnostic logger. */
 	private final static Logger logger = LoggerFactory.getLogger(LogReaderTask.class);
@@ -53,6 +60,9 @@ public class LogReaderTask extends TaskWithProgressUpdater<List<BaseMqttMessage>
 	/** Main controller. */
 	protected MqttSpyMainController controller;
 	
+	/** Taken while a chunk is waiting for or being displayed on the JavaFX thread. */
+	private final Semaphore displaySlot = new Semaphore(1);
+	
 	/**
 	 * Creates a LogReaderTask with the supplied parameters.
 	 * 
@@ -69,16 +79,15 @@ public class LogReaderTask extends TaskWithProgressUpdater<List<BaseMqttMessage>
 	}
 
 	@Override
-	protected List<BaseMqttMessage> call() throws Exception
+	protected Integer call() throws Exception
 	{
-		try
-		{			
-			// Read the message log
-			updateMessage("Please wait - reading message audit log [1/4]");
-			updateProgress(0, 4);
-			final List<String> fileContent = FileUtils.readFileAsLines(selectedFile);					
-			final long totalItems = fileContent.size();
-			updateProgress(totalItems, totalItems * 4);
+		// Index the message log
+		updateMessage("Please wait - indexing message audit log [1/2]");
+		updateProgress(0, 2);
+		
+		try (final MqttMessageLogLoader loader = new MqttMessageLogLoader(selectedFile, stepProgress(0)))
+		{
+			final int totalItems = loader.getMessageCount();
 			
 			if (isCancelled())
 			{
@@ -86,47 +95,30 @@ public class LogReaderTask extends TaskWithProgressUpdater<List<BaseMqttMessage>
 				return null;
 			}
 			
-			// Parser the message log (string -> LoggedMqttMessage)
-			updateMessage("Please wait - parsing " + fileContent.size() + " messages [2/4]");					
-			final List<LoggedMqttMessage> loggedMessages = MqttMessageLogParserUtils.parseMessageLog(fileContent, this, totalItems, totalItems * 4);
-			updateProgress(totalItems * 2, totalItems * 4);
-			
-			if (isCancelled())
-			{
-				logger.info("Task cancelled!");
-				return null;
-			}
+			// Create the tab, so that messages can be displayed as they are parsed
+			final FutureTask<ManagedMessageStoreWithFiltering<FormattedMqttMessage>> tabCreation = new FutureTask<>(
+					() -> viewManager.loadMessageLogTab(controller, selectedFile.getName(), totalItems));
+			Platform.runLater(tabCreation);
+			final ManagedMessageStoreWithFiltering<FormattedMqttMessage> store = tabCreation.get();
 			
-			// Process the message log (LoggedMqttMessage -> ReceivedMqttMessage)
-			updateMessage("Please wait - processing " + loggedMessages.size() + " messages [3/4]");					
-			final List<BaseMqttMessage> processedMessages = MqttMessageLogParserUtils.processMessageLog(loggedMessages, this, totalItems * 2, totalItems * 4);
-			updateProgress(totalItems * 3, totalItems * 4);
+			// Parse and display the messages
+			updateMessage("Please wait - loading " + totalItems + " messages [2/2]");
+			final int loaded = loader.load(chunk -> displayMessages(store, chunk), stepProgress(1));
 			
 			if (isCancelled())
 			{
 				logger.info("Task cancelled!");
-				return null;
+				return loaded;
 			}
 			
-			// Display message log
-			updateMessage("Please wait - displaying " + loggedMessages.size() + " messages [4/4]");	
-			Platform.runLater(new Runnable()
-			{							
-				@Override
-				public void run()
-				{
-					viewManager.loadMessageLogTab(controller, selectedFile.getName(), processedMessages);								
-				}
-			});	
-			
 			// Done!
 			updateMessage("Finished!");
-			updateProgress(4, 4);
+			updateProgress(2, 2);
 			
 			// Make the last message visible for some time
 			ThreadingUtils.sleep(500);
 			
-			return processedMessages;
+			return loaded;
 		}
 		catch (Exception e)
 		{
@@ -135,4 +127,68 @@ public class LogReaderTask extends TaskWithProgressUpdater<List<BaseMqttMessage>
 		
 		return null;
 	}
+	
+	private void displayMessages(final ManagedMessageStoreWithFiltering<FormattedMqttMessage> store, final List<BaseMqttMessage> messages)
+	{
+		// Wait for the previous chunk to be displayed
+		try
+		{
+			while (!displaySlot.tryAcquire(100, TimeUnit.MILLISECONDS))
+			{
+				if (isCancelled())
+				{
+					return;
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return;
+		}
+		
+		Platform.runLater(new Runnable()
+		{							
+			@Override
+			public void run()
+			{
+				try
+				{
+					for (final BaseMqttMessage mqttMessage : messages)
+					{
+						store.messageReceived(new FormattedMqttMessage(mqttMessage, null));
+					}
+				}
+				finally
+				{
+					displaySlot.release();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Creates a progress updater for the given step (each step being one unit of the overall progress).
+	 * 
+	 * @param step The step (0 based)
+	 * 
+	 * @return Progress updater for the step
+	 */
+	private ProgressUpdater stepProgress(final int step)
+	{
+		return new ProgressUpdater()
+		{
+			@Override
+			public void update(final long current, final long max)
+			{
+				updateProgress(step + (max > 0 ? (double) current / max : 1), 2);
+			}
+
+			@Override
+			public boolean isCancelled()
+			{
+				return LogReaderTask.this.isCancelled();
+			}
+		};
+	}
 }
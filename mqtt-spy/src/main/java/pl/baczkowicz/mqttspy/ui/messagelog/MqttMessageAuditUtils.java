@@ -40,7 +40,7 @@ public class MqttMessageAuditUtils implements MessageAuditUtils
 		if (message instanceof FormattedMqttMessage)
 		{
 			return SimpleMqttMessageLogComposer.createReceivedMessageLog((FormattedMqttMessage) message, 
-				new MessageLog(format, "", true, true, false, false, false));
+				new MessageLog(format, "", true, true, false, false, false, null, null, null, null));
 		}
 		
 		return null;
@@ -59,7 +59,7 @@ public class MqttMessageAuditUtils implements MessageAuditUtils
 				final FormattedMqttMessage message = (FormattedMqttMessage) messages.get(i);
 				
 				messagesAsString.append(SimpleMqttMessageLogComposer.createReceivedMessageLog(message, 
-						new MessageLog(format, "", true, true, false, false, false)));
+						new MessageLog(format, "", true, true, false, false, false, null, null, null, null)));
 			}
 			messagesAsString.append(System.lineSeparator());
 		}
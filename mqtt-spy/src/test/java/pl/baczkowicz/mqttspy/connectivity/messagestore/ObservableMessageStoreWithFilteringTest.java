@@ -62,6 +62,7 @@ public class ObservableMessageStoreWithFilteringTest
 		{
 			{
 				allowing(mockedFormattingManager).formatMessage(with(any(FormattedMqttMessage.class)), with(any(FormatterDetails.class)));
+				allowing(mockedFormattingManager).formatMessageOnDemand(with(any(FormattedMqttMessage.class)), with(any(FormatterDetails.class)));
 			}
 		});
 	}
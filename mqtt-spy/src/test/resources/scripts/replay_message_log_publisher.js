@@ -0,0 +1,47 @@
+function replay()
+{
+	// Get the number of available messages (0 when run for the first time)
+	var messageCount = messageLog.getMessageCount();
+	
+	// If repeat = true, only read the message log once
+	if (messageCount == 0)
+	{
+		messageCount = messageLog.readFromFile("/home/kamil/Programming/Source/mqtt-spy/mqtt-spy-daemon/src/test/resources/mqtt-spy-daemon.messages");		
+	}
+	
+	// If there are messages to replay...
+	if (messageCount > 0)
+	{
+		var Pacing = Java.type("pl.baczkowicz.mqttspy.audit.MqttReplayPublisher$Pacing");
+		var Thread = Java.type("java.lang.Thread");
+		
+		// Publishes the messages on its own thread (ORIGINAL_TIMING, FIXED_RATE or AS_FAST_AS_POSSIBLE)
+		var publisher = messageLog.createPublisher();
+		publisher.setPacing(Pacing.ORIGINAL_TIMING);
+		publisher.setSpeed(2);
+		publisher.start();
+		
+		while (publisher.isRunning())
+		{
+			try 
+			{
+				Thread.sleep(1000);
+			}
+			catch(err) 
+			{
+				publisher.stop();
+				return false;				
+			}
+			
+			logger.info("Published " + publisher.getPublishedCount() + " messages; rate = " + publisher.getAchievedRate() + " msg/s; lag = " + publisher.getLag() + " ms");
+		}
+	}
+	else
+	{
+		logger.warn("No messages available");
+	}
+	
+	return true;
+}
+
+replay();
@@ -0,0 +1,120 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2015 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.ui.charts;
+
+/**
+ * Downsamples chart points using the Largest-Triangle-Three-Buckets
+ * algorithm (Sveinn Steinarsson, 2013). Points are split into buckets, and
+ * from each bucket the point forming the largest triangle with the point
+ * selected from the previous bucket and the average of the next bucket is
+ * kept. This keeps the visual shape of the series, including its peaks and
+ * troughs, with only as many points as can be displayed.
+ */
+public class LttbDownsampler
+{
+	/**
+	 * Selects points to display.
+	 * 
+	 * @param buffer The points
+	 * @param from Index of the first point to consider
+	 * @param to Index after the last point to consider
+	 * @param threshold Maximum number of points to select (at least 3)
+	 * 
+	 * @return Indices of the selected points, in order
+	 */
+	public static int[] downsample(final TimeSeriesBuffer buffer, final int from, final int to, final int threshold)
+	{
+		final int count = to - from;
+		
+		if (count <= threshold || threshold < 3)
+		{
+			final int[] all = new int[Math.max(0, count)];
+			for (int i = 0; i < all.length; i++)
+			{
+				all[i] = from + i;
+			}
+			return all;
+		}
+		
+		final int[] selected = new int[threshold];
+		int selectedCount = 0;
+		
+		// Always keep the first and the last point
+		selected[selectedCount++] = from;
+		
+		// Buckets between the first and the last point
+		final double bucketSize = (double) (count - 2) / (threshold - 2);
+		int previous = from;
+		
+		for (int bucket = 0; bucket < threshold - 2; bucket++)
+		{
+			final int bucketStart = from + 1 + (int) (bucket * bucketSize);
+			final int bucketEnd = from + 1 + (int) ((bucket + 1) * bucketSize);
+			
+			// Average of the next bucket (or the last point)
+			final int nextStart = bucketEnd;
+			final int nextEnd = Math.min(to - 1, from + 1 + (int) ((bucket + 2) * bucketSize));
+			double averageTime = 0;
+			double averageValue = 0;
+			
+			if (nextEnd > nextStart)
+			{
+				for (int i = nextStart; i < nextEnd; i++)
+				{
+					averageTime = averageTime + buffer.getTime(i);
+					averageValue = averageValue + buffer.getValue(i);
+				}
+				averageTime = averageTime / (nextEnd - nextStart);
+				averageValue = averageValue / (nextEnd - nextStart);
+			}
+			else
+			{
+				averageTime = buffer.getTime(to - 1);
+				averageValue = buffer.getValue(to - 1);
+			}
+			
+			// Point with the largest triangle
+			final double previousTime = buffer.getTime(previous);
+			final double previousValue = buffer.getValue(previous);
+			double maxArea = -1;
+			int maxIndex = bucketStart;
+			
+			for (int i = bucketStart; i < bucketEnd; i++)
+			{
+				final double area = Math.abs(
+						(previousTime - averageTime) * (buffer.getValue(i) - previousValue)
+						- (previousTime - buffer.getTime(i)) * (averageValue - previousValue));
+				
+				if (area > maxArea)
+				{
+					maxArea = area;
+					maxIndex = i;
+				}
+			}
+			
+			selected[selectedCount++] = maxIndex;
+			previous = maxIndex;
+		}
+		
+		selected[selectedCount++] = to - 1;
+		
+		return selected;
+	}
+}
@@ -0,0 +1,289 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2015 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.ui.charts;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import pl.baczkowicz.spy.messages.FormattedMessage;
+
+import com.jayway.jsonpath.Configuration;
+
+/**
+ * Payload of a message being put on a chart. The payload is only parsed (as
+ * a number, JSON or XML) when first needed, and then shared by all series
+ * reading the same message.
+ * 
+ * Not thread-safe.
+ */
+public class ParsedPayload
+{
+	private final FormattedMessage message;
+	
+	/** The formatted payload (null until first requested). */
+	private String payload;
+	
+	/** Whether the payload has been parsed as a number. */
+	private boolean numberParsed;
+	
+	/** The payload as a number (null if not a number). */
+	private Double number;
+	
+	/** The payload parsed as JSON (null if not parsed yet). */
+	private Object json;
+	
+	/** The payload parsed as XML (null if not parsed yet). */
+	private Document xml;
+	
+	/** Builder shared by all payloads (only used on one thread at a time). */
+	private static DocumentBuilder documentBuilder;
+	
+	/**
+	 * Creates the payload for the given message.
+	 * 
+	 * @param message The message
+	 */
+	public ParsedPayload(final FormattedMessage message)
+	{
+		this.message = message;
+	}
+	
+	/**
+	 * Gets the message.
+	 * 
+	 * @return The message
+	 */
+	public FormattedMessage getMessage()
+	{
+		return message;
+	}
+	
+	/**
+	 * Gets the formatted payload.
+	 * 
+	 * @return The formatted payload
+	 */
+	public String getPayload()
+	{
+		if (payload == null)
+		{
+			payload = message.getFormattedPayload();
+		}
+		
+		return payload;
+	}
+	
+	/**
+	 * Gets the payload as a number. Plain decimal numbers are recognised
+	 * without going through exceptions.
+	 * 
+	 * @return The number, or null if the payload is not a number
+	 */
+	public Double getNumber()
+	{
+		if (!numberParsed)
+		{
+			number = parseNumber(getPayload());
+			numberParsed = true;
+		}
+		
+		return number;
+	}
+	
+	/**
+	 * Gets the payload parsed as JSON.
+	 * 
+	 * @return The JSON document (as understood by JsonPath)
+	 */
+	public Object getJson()
+	{
+		if (json == null)
+		{
+			json = Configuration.defaultConfiguration().jsonProvider().parse(getPayload());
+		}
+		
+		return json;
+	}
+	
+	/**
+	 * Gets the payload parsed as XML.
+	 * 
+	 * @return The XML document
+	 * 
+	 * @throws SAXException Thrown when the payload is not valid XML
+	 * @throws IOException Thrown when the payload cannot be read
+	 * @throws ParserConfigurationException Thrown when no XML parser is available
+	 */
+	public Document getXml() throws SAXException, IOException, ParserConfigurationException
+	{
+		if (xml == null)
+		{
+			synchronized (ParsedPayload.class)
+			{
+				if (documentBuilder == null)
+				{
+					final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+					factory.setNamespaceAware(true);
+					documentBuilder = factory.newDocumentBuilder();
+				}
+				
+				xml = documentBuilder.parse(new InputSource(new StringReader(getPayload())));
+			}
+		}
+		
+		return xml;
+	}
+	
+	/**
+	 * Parses the given value as a number.
+	 * 
+	 * @param value The value to parse
+	 * 
+	 * @return The number, or null if the value is not a number
+	 */
+	public static Double parseNumber(final String value)
+	{
+		final String trimmed = value.trim();
+		
+		if (isPlainDecimal(trimmed))
+		{
+			return Double.parseDouble(trimmed);
+		}
+		
+		// Anything else that might still be a number (e.g. "1d", hex or "NaN") is left to Double.valueOf
+		if (!mightBeNumber(trimmed))
+		{
+			return null;
+		}
+		
+		try
+		{
+			return Double.valueOf(trimmed);
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+	}
+	
+	/**
+	 * Checks if the given value starts like a number accepted by Double.valueOf, 
+	 * so that most non-numeric payloads (e.g. JSON or text) don't go through exceptions.
+	 * 
+	 * @param value The value to check
+	 * 
+	 * @return True if the value might be a number
+	 */
+	private static boolean mightBeNumber(final String value)
+	{
+		int i = 0;
+		
+		if (i < value.length() && (value.charAt(i) == '-' || value.charAt(i) == '+'))
+		{
+			i++;
+		}
+		
+		if (i == value.length())
+		{
+			return false;
+		}
+		
+		final char c = value.charAt(i);
+		return isDigit(c) || c == '.' || c == 'N' || c == 'I';
+	}
+	
+	/**
+	 * Checks if the given value is a plain decimal number, e.g. "-12", "3.14" or "1e-3".
+	 * 
+	 * @param value The value to check
+	 * 
+	 * @return True if a plain decimal number
+	 */
+	private static boolean isPlainDecimal(final String value)
+	{
+		final int length = value.length();
+		int i = 0;
+		
+		if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+'))
+		{
+			i++;
+		}
+		
+		boolean digits = false;
+		while (i < length && isDigit(value.charAt(i)))
+		{
+			i++;
+			digits = true;
+		}
+		
+		if (i < length && value.charAt(i) == '.')
+		{
+			i++;
+			while (i < length && isDigit(value.charAt(i)))
+			{
+				i++;
+				digits = true;
+			}
+		}
+		
+		if (!digits)
+		{
+			return false;
+		}
+		
+		if (i < length && (value.charAt(i) == 'e' || value.charAt(i) == 'E'))
+		{
+			i++;
+			if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+'))
+			{
+				i++;
+			}
+			
+			final int exponentStart = i;
+			while (i < length && isDigit(value.charAt(i)))
+			{
+				i++;
+			}
+			
+			if (i == exponentStart)
+			{
+				return false;
+			}
+		}
+		
+		return i == length;
+	}
+	
+	/**
+	 * Checks if the given character is an ASCII digit (other Unicode digits are not accepted by Double.parseDouble).
+	 */
+	private static boolean isDigit(final char c)
+	{
+		return c >= '0' && c <= '9';
+	}
+}
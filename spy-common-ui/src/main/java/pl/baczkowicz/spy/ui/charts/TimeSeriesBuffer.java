@@ -0,0 +1,219 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2015 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.ui.charts;
+
+/**
+ * Ring buffer of chart points (time and value), held in primitive arrays.
+ * The buffer grows as needed, up to its maximum size - once full, adding a
+ * point overwrites the oldest one. Points are expected to be added in time
+ * order.
+ * 
+ * Not thread-safe.
+ */
+public class TimeSeriesBuffer
+{
+	/** Initial capacity of the arrays. */
+	private static final int INITIAL_CAPACITY = 64;
+	
+	/** Maximum number of points (0 for no limit). */
+	private final int maxSize;
+	
+	private long[] times;
+	
+	private double[] values;
+	
+	/** Array index of the oldest point. */
+	private int head;
+	
+	/** Number of points. */
+	private int size;
+	
+	/**
+	 * Creates the buffer.
+	 * 
+	 * @param maxSize Maximum number of points (0 for no limit)
+	 */
+	public TimeSeriesBuffer(final int maxSize)
+	{
+		this.maxSize = maxSize;
+		final int capacity = maxSize > 0 ? Math.min(maxSize, INITIAL_CAPACITY) : INITIAL_CAPACITY;
+		this.times = new long[capacity];
+		this.values = new double[capacity];
+	}
+	
+	/**
+	 * Adds a point, removing the oldest one if the buffer is full.
+	 * 
+	 * @param time Time of the point
+	 * @param value Value of the point
+	 */
+	public void add(final long time, final double value)
+	{
+		if (size == times.length)
+		{
+			if (maxSize > 0 && size >= maxSize)
+			{
+				// Overwrite the oldest
+				times[head] = time;
+				values[head] = value;
+				head = (head + 1) % times.length;
+				return;
+			}
+			
+			grow();
+		}
+		
+		final int index = (head + size) % times.length;
+		times[index] = time;
+		values[index] = value;
+		size++;
+	}
+	
+	private void grow()
+	{
+		final int capacity = maxSize > 0 ? Math.min(maxSize, times.length * 2) : times.length * 2;
+		final long[] newTimes = new long[capacity];
+		final double[] newValues = new double[capacity];
+		
+		// Unwrap, so that the oldest point is at index 0
+		final int firstPart = Math.min(size, times.length - head);
+		System.arraycopy(times, head, newTimes, 0, firstPart);
+		System.arraycopy(values, head, newValues, 0, firstPart);
+		System.arraycopy(times, 0, newTimes, firstPart, size - firstPart);
+		System.arraycopy(values, 0, newValues, firstPart, size - firstPart);
+		
+		times = newTimes;
+		values = newValues;
+		head = 0;
+	}
+	
+	/**
+	 * Removes all points older than the given time.
+	 * 
+	 * @param time The oldest time to keep
+	 * 
+	 * @return Number of removed points
+	 */
+	public int removeOlderThan(final long time)
+	{
+		int removed = 0;
+		
+		while (size > 0 && times[head] < time)
+		{
+			head = (head + 1) % times.length;
+			size--;
+			removed++;
+		}
+		
+		return removed;
+	}
+	
+	/**
+	 * Removes all points.
+	 */
+	public void clear()
+	{
+		head = 0;
+		size = 0;
+	}
+	
+	/**
+	 * Gets the number of points.
+	 * 
+	 * @return Number of points
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * Gets the maximum number of points.
+	 * 
+	 * @return Maximum number of points (0 for no limit)
+	 */
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+	
+	/**
+	 * Gets the time of the given point.
+	 * 
+	 * @param index Index of the point (0 being the oldest)
+	 * 
+	 * @return The time
+	 */
+	public long getTime(final int index)
+	{
+		return times[arrayIndex(index)];
+	}
+	
+	/**
+	 * Gets the value of the given point.
+	 * 
+	 * @param index Index of the point (0 being the oldest)
+	 * 
+	 * @return The value
+	 */
+	public double getValue(final int index)
+	{
+		return values[arrayIndex(index)];
+	}
+	
+	/**
+	 * Finds the first point not older than the given time.
+	 * 
+	 * @param time The time to look for
+	 * 
+	 * @return Index of the point, or size() if all points are older
+	 */
+	public int indexOfTime(final long time)
+	{
+		int low = 0;
+		int high = size;
+		
+		while (low < high)
+		{
+			final int middle = (low + high) >>> 1;
+			
+			if (getTime(middle) < time)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+		
+		return low;
+	}
+	
+	private int arrayIndex(final int index)
+	{
+		if (index < 0 || index >= size)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+		
+		return (head + index) % times.length;
+	}
+}
@@ -0,0 +1,38 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2015 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.ui.charts;
+
+/**
+ * Extracts a chart value from a message payload. Extractors are created with
+ * all expressions already compiled.
+ */
+public interface ValueExtractor
+{
+	/**
+	 * Extracts the value.
+	 * 
+	 * @param payload The payload to extract from
+	 * 
+	 * @return The value
+	 * 
+	 * @throws Exception Thrown when the value cannot be extracted
+	 */
+	Number extract(final ParsedPayload payload) throws Exception;
+}
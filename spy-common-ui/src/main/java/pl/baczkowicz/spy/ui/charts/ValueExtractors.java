@@ -0,0 +1,159 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2015 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.ui.charts;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import pl.baczkowicz.spy.ui.properties.ChartSeriesProperties;
+
+import com.jayway.jsonpath.JsonPath;
+
+/**
+ * Creates value extractors for chart series, and caches them per series, so
+ * that expressions are only compiled again when the series changes.
+ * 
+ * Not thread-safe.
+ */
+public class ValueExtractors
+{
+	/** JSONPath expression selecting the whole document. */
+	private static final String JSON_ROOT = "$";
+	
+	/** Cached extractors per series ID. */
+	private final Map<Integer, CachedExtractor> extractors = new HashMap<>();
+	
+	/**
+	 * Extractor created for a given series type and expression.
+	 */
+	private static class CachedExtractor
+	{
+		private final ChartSeriesTypeEnum type;
+		
+		private final String expression;
+		
+		private final ValueExtractor extractor;
+
+		private CachedExtractor(final ChartSeriesTypeEnum type, final String expression, final ValueExtractor extractor)
+		{
+			this.type = type;
+			this.expression = expression;
+			this.extractor = extractor;
+		}
+	}
+	
+	/**
+	 * Gets the extractor for the given series, creating it if the series is
+	 * new or its type or expression have changed.
+	 * 
+	 * @param series The series
+	 * 
+	 * @return The extractor, or null if the series type has no values to extract
+	 * 
+	 * @throws XPathExpressionException Thrown when the XPath expression is not valid
+	 */
+	public ValueExtractor getExtractor(final ChartSeriesProperties series) throws XPathExpressionException
+	{
+		final ChartSeriesTypeEnum type = series.typeProperty().get();
+		final String expression = series.valueExpressionProperty().get();
+		final CachedExtractor cached = extractors.get(series.getId());
+		
+		if (cached != null && cached.type == type 
+				&& (cached.expression == null ? expression == null : cached.expression.equals(expression)))
+		{
+			return cached.extractor;
+		}
+		
+		final ValueExtractor extractor = createExtractor(type, expression);
+		extractors.put(series.getId(), new CachedExtractor(type, expression, extractor));
+		
+		return extractor;
+	}
+	
+	/**
+	 * Removes all cached extractors.
+	 */
+	public void clear()
+	{
+		extractors.clear();
+	}
+	
+	/**
+	 * Creates an extractor for the given series type.
+	 * 
+	 * @param type The series type
+	 * @param expression The value expression (for JSON and XML series)
+	 * 
+	 * @return The extractor, or null if the series type has no values to extract
+	 * 
+	 * @throws XPathExpressionException Thrown when the XPath expression is not valid
+	 */
+	public static ValueExtractor createExtractor(final ChartSeriesTypeEnum type, final String expression) throws XPathExpressionException
+	{
+		if (ChartSeriesTypeEnum.PAYLOAD_PLAIN.equals(type))			
+		{
+			return payload -> 
+			{
+				final Double value = payload.getNumber();
+				
+				if (value == null)
+				{
+					throw new NumberFormatException("Not a number: \"" + payload.getPayload() + "\"");
+				}
+				
+				return value;
+			};
+		}
+		else if (ChartSeriesTypeEnum.PAYLOAD_JSON.equals(type))			
+		{	
+			final JsonPath path = JsonPath.compile(expression);
+			final boolean root = JSON_ROOT.equals(expression.trim());
+			
+			return payload -> 
+			{
+				// Plain numbers don't need parsing as JSON
+				if (root && payload.getNumber() != null)
+				{
+					return payload.getNumber();
+				}
+				
+				return JsonPath.parse(payload.getJson()).read(path, Double.class);
+			};
+		}
+		else if (ChartSeriesTypeEnum.PAYLOAD_XML.equals(type))
+		{
+			final XPathExpression xpath = XPathFactory.newInstance().newXPath().compile(expression);
+			
+			return payload -> (Double) xpath.evaluate(payload.getXml(), XPathConstants.NUMBER);
+		}
+		else if (ChartSeriesTypeEnum.SIZE.equals(type))
+		{
+			return payload -> Integer.valueOf(payload.getMessage().getPayload().length());
+		}
+		
+		// Nothing to do for now
+		return null;
+	}
+}
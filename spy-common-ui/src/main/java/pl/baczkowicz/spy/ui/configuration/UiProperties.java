@@ -52,6 +52,11 @@ public class UiProperties
 	
 	public static final String BROWSER_LM_SUBSTRING = "ui.messagebrowser.largemessage.substring";
 	
+	public static final String MESSAGE_STORE_OFF_HEAP_SIZE = "ui.messagestore.offheap.size";
+	
+	/** Maximum size of the off-heap payload store (in MB). */
+	public static final int MAX_OFF_HEAP_SIZE = 2047;
+	
 	private final static Logger logger = LoggerFactory.getLogger(UiProperties.class);
 	
 	private static Integer summaryMaxPayloadLength;
@@ -61,6 +66,8 @@ public class UiProperties
 	private static Boolean largeMessageHide;
 	
 	private static Integer largeMessageSubstring;
+	
+	private static Integer offHeapStoreSize;
 
 	public static double getApplicationHeight(final PropertyFileLoader fileLoader)
 	{
@@ -117,6 +124,24 @@ public class UiProperties
 		return largeMessageSubstring;
 	}	
 
+	/**
+	 * Gets the size of the off-heap payload store for each connection.
+	 * 
+	 * @param fileLoader The UI property file
+	 * 
+	 * @return Size in MB (0 means payloads are kept on the heap)
+	 */
+	public static int getOffHeapStoreSize(final PropertyFileLoader fileLoader)
+	{
+		if (offHeapStoreSize == null)
+		{
+			offHeapStoreSize = Math.max(0, Math.min(MAX_OFF_HEAP_SIZE, 
+					BaseConfigurationUtils.getIntegerProperty(MESSAGE_STORE_OFF_HEAP_SIZE, 0, fileLoader)));
+		}
+		
+		return offHeapStoreSize;
+	}
+
 	public static SpyPerspective getApplicationPerspective(final PropertyFileLoader fileLoader)
 	{
 		final String value = fileLoader.getProperty(PERSPECTIVE_PROPERTY);
@@ -25,12 +25,14 @@ package pl.baczkowicz.spy.ui.controllers;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -85,24 +87,23 @@ import javafx.util.Callback;
 import javafx.util.StringConverter;
 
 import javax.imageio.ImageIO;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 
 import org.gillius.jfxutils.chart.ChartPanManager;
 import org.gillius.jfxutils.chart.JFXChartUtil;
 import org.gillius.jfxutils.chart.StableTicksAxis;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xml.sax.InputSource;
 
 import pl.baczkowicz.spy.eventbus.IKBus;
 import pl.baczkowicz.spy.messages.FormattedMessage;
 import pl.baczkowicz.spy.ui.charts.ChartMode;
 import pl.baczkowicz.spy.ui.charts.ChartSeriesStatusEnum;
 import pl.baczkowicz.spy.ui.charts.ChartSeriesTypeEnum;
+import pl.baczkowicz.spy.ui.charts.LttbDownsampler;
+import pl.baczkowicz.spy.ui.charts.ParsedPayload;
+import pl.baczkowicz.spy.ui.charts.TimeSeriesBuffer;
+import pl.baczkowicz.spy.ui.charts.ValueExtractor;
+import pl.baczkowicz.spy.ui.charts.ValueExtractors;
 import pl.baczkowicz.spy.ui.events.MessageAddedEvent;
 import pl.baczkowicz.spy.ui.events.SaveChartSeriesEvent;
 import pl.baczkowicz.spy.ui.events.ShowEditChartSeriesWindowEvent;
@@ -113,9 +114,6 @@ import pl.baczkowicz.spy.ui.storage.BasicMessageStoreWithSummary;
 import pl.baczkowicz.spy.ui.utils.DialogFactory;
 import pl.baczkowicz.spy.utils.TimeUtils;
 
-import com.jayway.jsonpath.JsonPath;
-import com.jayway.jsonpath.PathNotFoundException;
-
 /**
  * Controller for line chart pane.
  */
@@ -124,6 +122,9 @@ public class LineChartPaneController<T extends FormattedMessage> implements Init
 	/** Diagnostic logger. */
 	private final static Logger logger = LoggerFactory.getLogger(LineChartPaneController.class);
 	
+	/** Minimum number of points displayed per series (when the chart is not laid out yet). */
+	private final static int MIN_DISPLAYED_POINTS = 500;
+	
 	private static boolean lastAutoRefresh = true;
 	
 	private static boolean lastDisplaySymbols = true;
@@ -208,8 +209,16 @@ public class LineChartPaneController<T extends FormattedMessage> implements Init
 	
 	private Map<Integer, Series<Number, Number>> seriesIdToSeriesData = new LinkedHashMap<>();
 	
+	/** All points per series ID (the chart only displays a downsampled subset). */
+	private Map<Integer, TimeSeriesBuffer> seriesIdToPoints = new HashMap<>();
+	
+	/** Whether the displayed points need to be updated. */
+	private boolean renderPending;
+	
 	private LineChart<Number, Number> lineChart;
 	
+	private NumberAxis xAxis;
+	
 	private boolean warningLogged;
 
 	private String seriesTypeName;
@@ -233,6 +242,9 @@ public class LineChartPaneController<T extends FormattedMessage> implements Init
 	// Should match the table - is that really needed?
 	private List<ChartSeriesProperties> allSeries = new ArrayList<>();
 	
+	/** Compiled value extractors per series. */
+	private final ValueExtractors valueExtractors = new ValueExtractors();
+	
 	/**
 	 * @param seriesValueName the seriesValueName to set
 	 */
@@ -279,7 +291,7 @@ public class LineChartPaneController<T extends FormattedMessage> implements Init
 		});
 		
 		// Axis and chart        
-		final NumberAxis xAxis = new NumberAxis();
+		xAxis = new NumberAxis();
 		final StableTicksAxis yAxis = new StableTicksAxis();
 
         xAxis.setForceZeroInRange(false);
@@ -301,6 +313,18 @@ public class LineChartPaneController<T extends FormattedMessage> implements Init
         yAxis.setForceZeroInRange(false);
 		lineChart = new LineChart<>(xAxis, yAxis);
 		
+		// Points displayed depend on the chart's width and the zoomed time range
+		final ChangeListener<Number> renderListener = (observable, oldValue, newValue) -> 
+		{
+			if (!xAxis.isAutoRanging() || observable == lineChart.widthProperty())
+			{
+				scheduleRender();
+			}
+		};
+		lineChart.widthProperty().addListener(renderListener);
+		xAxis.lowerBoundProperty().addListener(renderListener);
+		xAxis.upperBoundProperty().addListener(renderListener);
+		
 		// Set up table
 		nameColumn.setCellValueFactory(new PropertyValueFactory<ChartSeriesProperties, String>("name"));
 		nameColumn.setCellFactory(TextFieldTableCell.<ChartSeriesProperties>forTableColumn());
@@ -789,60 +813,36 @@ public class LineChartPaneController<T extends FormattedMessage> implements Init
 		eventBus.publish(new ShowEditChartSeriesWindowEvent(chartPane.getScene().getWindow(), null));
 	}
 	
-	private XYChart.Data<Number, Number> createDataObject(
-			final ChartSeriesProperties seriesProperties, 
-			final FormattedMessage message) throws XPathExpressionException, PathNotFoundException, IllegalArgumentException, IOException
+	private Number extractValue(final ChartSeriesProperties seriesProperties, final ParsedPayload payload) throws Exception
 	{
-		if (ChartSeriesTypeEnum.PAYLOAD_PLAIN.equals(seriesProperties.typeProperty().get()))			
-		{
-			final Double value = Double.valueOf(message.getFormattedPayload());
-			return new XYChart.Data<Number, Number>(message.getDate().getTime(), value);	
-		}
-		else if (ChartSeriesTypeEnum.PAYLOAD_JSON.equals(seriesProperties.typeProperty().get()))			
-		{	
-			final String expression = seriesProperties.valueExpressionProperty().get();
-			
-			final Double jsonValue = JsonPath.parse(message.getFormattedPayload()).read(expression, Double.class);			
-			
-			return new XYChart.Data<Number, Number>(message.getDate().getTime(), jsonValue);	
-		}
-		else if (ChartSeriesTypeEnum.PAYLOAD_XML.equals(seriesProperties.typeProperty().get()))
-		{
-			final XPath xpath = XPathFactory.newInstance().newXPath();
-			
-			final XPathExpression exp = xpath.compile(seriesProperties.valueExpressionProperty().get());
-			double value = (Double) exp.evaluate(new InputSource(new StringReader(message.getFormattedPayload())), XPathConstants.NUMBER);
-			
-			logger.debug("XPath value = {}", value);
-								
-			return new XYChart.Data<Number, Number>(message.getDate().getTime(), value);				
-		}
-		else if (ChartSeriesTypeEnum.SIZE.equals(seriesProperties.typeProperty().get()))
-		{
-			final Integer value = Integer.valueOf(message.getPayload().length());
-			return new XYChart.Data<Number, Number>(message.getDate().getTime(), value);	
-		}
-		else
+		final ValueExtractor extractor = valueExtractors.getExtractor(seriesProperties);
+		
+		if (extractor == null)
 		{
-			// Nothing to do for now
+			return null;
 		}
-					
-		return null;
+		
+		return extractor.extract(payload);
 	}
 	
-	private void addMessageToSeries(final ChartSeriesProperties seriesProperties, final FormattedMessage message)
+	private void addMessageToSeries(final ChartSeriesProperties seriesProperties, final ParsedPayload payload)
 	{
-		final Series<Number, Number> series = seriesIdToSeriesData.get(seriesProperties.getId());
+		final TimeSeriesBuffer points = seriesIdToPoints.get(seriesProperties.getId());
 		
-		if (series != null)
+		if (points != null)
 		{
 			try
 	    	{
 				seriesProperties.setLastUpdated(new Date());
 				
-				final Data<Number, Number> data = createDataObject(seriesProperties, message);
-				logger.debug("Series {}, data = {}", seriesProperties.getName(), data);
-	    		series.getData().add(data);
+				final Number value = extractValue(seriesProperties, payload);
+				logger.debug("Series {}, value = {}", seriesProperties.getName(), value);
+				
+				if (value != null)
+				{
+					points.add(payload.getMessage().getDate().getTime(), value.doubleValue());
+					scheduleRender();
+				}
 	    		seriesProperties.setSeriesStatus(ChartSeriesStatusEnum.OK);	    		
 	    	}
 	    	catch (Exception e)
@@ -858,6 +858,122 @@ public class LineChartPaneController<T extends FormattedMessage> implements Init
 		}
 	}
 	
+	/**
+	 * Schedules an update of the displayed points, so that a burst of
+	 * messages only results in a single update.
+	 */
+	private void scheduleRender()
+	{
+		if (!renderPending)
+		{
+			renderPending = true;
+			Platform.runLater(() -> render());
+		}
+	}
+	
+	/**
+	 * Updates the displayed points of all series - the points in the visible
+	 * time range are downsampled to the width of the chart.
+	 */
+	private void render()
+	{
+		synchronized (chartData)
+		{
+			renderPending = false;
+			
+			final int threshold = Math.max(MIN_DISPLAYED_POINTS, (int) lineChart.getWidth());
+			
+			for (final Map.Entry<Integer, Series<Number, Number>> entry : seriesIdToSeriesData.entrySet())
+			{
+				final TimeSeriesBuffer points = seriesIdToPoints.get(entry.getKey());
+				final Series<Number, Number> series = entry.getValue();
+				
+				int from = 0;
+				int to = points.size();
+				
+				if (!xAxis.isAutoRanging())
+				{
+					// Include one point either side of the range, so that lines reach the edges
+					from = Math.max(0, points.indexOfTime((long) xAxis.getLowerBound()) - 1);
+					to = Math.min(points.size(), points.indexOfTime((long) xAxis.getUpperBound()) + 1);
+				}
+				
+				final List<Data<Number, Number>> data = new ArrayList<>();
+				for (final int index : LttbDownsampler.downsample(points, from, to, threshold))
+				{
+					data.add(new XYChart.Data<Number, Number>(points.getTime(index), points.getValue(index)));
+				}
+				
+				series.getData().setAll(data);
+				
+				if (lastDisplaySymbols)
+				{
+					for (final Data<Number, Number> point : series.getData())
+					{
+						populateTooltip(series, point);
+					}
+				}
+			}
+		}
+	}
+	
+	@FXML
+	private void exportAsCsv()
+	{
+		final FileChooser fileChooser = new FileChooser();
+		fileChooser.setTitle("Select CSV file to save as...");
+		
+		final File selectedFile = fileChooser.showSaveDialog(lineChart.getScene().getWindow());
+
+		if (selectedFile != null)
+		{			
+			exportAsCsv(selectedFile);
+		}		
+	}
+	
+	/**
+	 * Exports all points of all displayed series (not only the downsampled ones).
+	 * 
+	 * @param selectedFile File to export to
+	 */
+	private void exportAsCsv(final File selectedFile)
+	{
+		final StringBuilder csv = new StringBuilder("Series,Timestamp,Time,Value");
+		csv.append(System.lineSeparator());
+		
+		synchronized (chartData)
+		{
+			for (final ChartSeriesProperties seriesProperties : allSeries)
+			{
+				final TimeSeriesBuffer points = seriesIdToPoints.get(seriesProperties.getId());
+				
+				if (points == null)
+				{
+					continue;
+				}
+				
+				for (int i = 0; i < points.size(); i++)
+				{
+					csv.append("\"" + seriesProperties.getName().replace("\"", "\"\"") + "\",");
+					csv.append(points.getTime(i) + ",");
+					csv.append(TimeUtils.DATE_WITH_MILLISECONDS_SDF.format(new Date(points.getTime(i))) + ",");
+					csv.append(points.getValue(i));
+					csv.append(System.lineSeparator());
+				}
+			}
+		}
+		
+		try
+		{
+			Files.write(selectedFile.toPath(), csv.toString().getBytes(StandardCharsets.UTF_8));
+		}
+		catch (IOException e)
+		{
+			logger.error("Cannot export to file {}", selectedFile.getAbsoluteFile(), e);
+			DialogFactory.createErrorDialog("Cannot export to file", "Chart data cannot be exported to file: " + e.getLocalizedMessage());
+		}
+	}
+	
 	@FXML
 	private void exportAsImage()
 	{
@@ -998,9 +1114,13 @@ public class LineChartPaneController<T extends FormattedMessage> implements Init
 			
 			// Dive up the data
 			divideMessagesByTopic(topics);
+			
+			// Payloads parsed for one series are reused by other series on the same topic
+			final Map<FormattedMessage, ParsedPayload> parsedPayloads = new IdentityHashMap<>();
 			lineChart.getData().clear();
 			lineChart.setCreateSymbols(lastDisplaySymbols);
 			seriesIdToSeriesData.clear();
+			seriesIdToPoints.clear();
 			
 			for (final ChartSeriesProperties seriesProperties : allSeries)
 			{
@@ -1009,12 +1129,12 @@ public class LineChartPaneController<T extends FormattedMessage> implements Init
 					continue;
 				}
 					
-				final List<FormattedMessage> extractedMessages = new ArrayList<>();
+				final MessageLimitProperties limit = showRangeBox.getValue();
 				final Series<Number, Number> series = new XYChart.Series<>();
 				seriesIdToSeriesData.put(seriesProperties.getId(), series);
+				seriesIdToPoints.put(seriesProperties.getId(), new TimeSeriesBuffer(limit.getMessageLimit()));
 		        series.setName(seriesProperties.getName());
 		        
-		        final MessageLimitProperties limit = showRangeBox.getValue();
 		        final List<FormattedMessage> messageList = chartData.get(seriesProperties.getTopic());
 		        final int itemsAvailable = messageList == null ? 0 : messageList.size();
 		        
@@ -1037,17 +1157,18 @@ public class LineChartPaneController<T extends FormattedMessage> implements Init
 		        		continue;
 		        	}
 		        	
-		        	extractedMessages.add(message);
-		        	addMessageToSeries(seriesProperties, message);
+		        	ParsedPayload payload = parsedPayloads.get(message);
+		        	if (payload == null)
+		        	{
+		        		payload = new ParsedPayload(message);
+		        		parsedPayloads.put(message, payload);
+		        	}
+		        	addMessageToSeries(seriesProperties, payload);
 		        }
-		        // logger.info("Populated = {}=?{}/{}", chartData.get(topic).size(), topicToSeries.get(topic).getData().size(), limit.getMessageLimit());
-				
-		        // For further processing, take only messages put on chart
-		        chartData.put(seriesProperties.getTopic(), extractedMessages);
 		        lineChart.getData().add(series);
-		        
-		        populateTooltips(lineChart);
 			}
+			
+			render();
 		}
 	}
 	
@@ -1072,17 +1193,6 @@ public class LineChartPaneController<T extends FormattedMessage> implements Init
 		Tooltip.install(data.getNode(), tooltip);
 	}
 	
-	private void populateTooltips(final LineChart<Number, Number> lineChart)
-	{
-		for (final Series<Number, Number> series : lineChart.getData())
-		{
-			for (final Data<Number, Number> data : series.getData())
-			{
-				populateTooltip(series, data);
-			}
-		}
-	}
-	
 	// TODO: optimise message handling
 	public void onMessageAdded(final MessageAddedEvent<FormattedMessage> event)
 	{
@@ -1098,72 +1208,40 @@ public class LineChartPaneController<T extends FormattedMessage> implements Init
 		synchronized (chartData)
 		{	
 			final String topic = message.getTopic();			
-			createTopicIfDoesNotExist(topic);		
-			
 			final List<ChartSeriesProperties> topicSeries = topicToSeries.get(topic);
 			
 			if (topicSeries != null)
 			{
+				// Parsed once for all series on this topic
+				final ParsedPayload payload = new ParsedPayload(message);
+				
 				for (final ChartSeriesProperties properties : topicSeries)
 				{
-					final Series<Number, Number> seriesData = seriesIdToSeriesData.get(properties.getId()); 
+					final TimeSeriesBuffer points = seriesIdToPoints.get(properties.getId()); 
 					
-					if (seriesData != null)
+					if (points != null)
 					{				
-						updateSeries(topic, seriesData, message, properties);
+						updateSeries(topic, points, payload, properties);
 					}
 				}
 			}
 		}
 	}
 	
-	private void updateSeries(final String topic, final Series<Number, Number> seriesData, final FormattedMessage message, final ChartSeriesProperties properties)
+	private void updateSeries(final String topic, final TimeSeriesBuffer points, final ParsedPayload payload, final ChartSeriesProperties properties)
 	{
 		final MessageLimitProperties limit = showRangeBox.getValue();
-		//logger.info("Message limit = {}", limit.getMessageLimit());
-		//logger.info("Time limit = {}", limit.getTimeLimit());
 		
 		if (autoRefreshCheckBox.isSelected() && topics.contains(topic))
 		{			
-			// Apply message limit			
-			while ((limit.getMessageLimit() > 0) && (chartData.get(topic).size() >= limit.getMessageLimit()))
-			{
-				//logger.info("Deleting = {}=?{}/{}", chartData.get(topic).size(), topicToSeries.get(topic).getData().size(), limit.getMessageLimit());
-				chartData.get(topic).remove(0);
-				
-				if (seriesData.getData().size() > 0)
-				{
-					seriesData.getData().remove(0);
-				}
-			}
-			
-			// Apply time limit
-			final Date now = new Date();
+			// Apply time limit (the message limit is applied by the buffer itself)
 			if (limit.getTimeLimit() > 0)
 			{
-				FormattedMessage oldestMessage = chartData.get(topic).get(0);
-				while (oldestMessage.getDate().getTime() + limit.getTimeLimit() < now.getTime())
-				{
-					chartData.get(topic).remove(0);
-					seriesData.getData().remove(0);
-					
-					if (chartData.get(topic).size() == 0)
-					{
-						break;
-					}
-					oldestMessage = chartData.get(topic).get(0);
-				}				
+				points.removeOlderThan(new Date().getTime() - limit.getTimeLimit());
 			}
 			
 			// Add the new message
-			chartData.get(topic).add(message);
-			addMessageToSeries(properties, message);
-			//logger.info("Added = {}=?{}/{}", chartData.get(topic).size(), topicToSeries.get(topic).getData().size(), limit.getMessageLimit());
-			
-			if (seriesData.getData().size() > 0)
-			{
-				populateTooltip(seriesData, seriesData.getData().get(seriesData.getData().size() - 1));
-			}
+			addMessageToSeries(properties, payload);
 			
 			saveOnMessage();
 		}
@@ -21,6 +21,7 @@ package pl.baczkowicz.spy.ui.controllers;
 
 import java.io.File;
 import java.net.URL;
+import java.util.List;
 import java.util.ResourceBundle;
 
 import org.slf4j.Logger;
@@ -68,6 +69,9 @@ public class MessageNavigationController implements Initializable
 {
 	final static Logger logger = LoggerFactory.getLogger(MessageNavigationController.class);
 
+	/** Used as the ID when no message is shown. */
+	private static final long NO_MESSAGE = -1;
+
 	@FXML
 	private Label messageLabel;
 
@@ -108,6 +112,9 @@ public class MessageNavigationController implements Initializable
 	private HBox messageIndexBox; 
 	
 	private int selectedMessage;
+	
+	/** ID of the message shown (NO_MESSAGE if none), used to find its index after the store changes. */
+	private long selectedMessageId = NO_MESSAGE;
 
 	private BasicMessageStoreWithSummary<? extends FormattedMessage> store; 
 	
@@ -272,6 +279,10 @@ public class MessageNavigationController implements Initializable
 		{
 			onNavigateToFirst(new MessageIndexToFirstEvent(this));
 		}
+		else if (locateSelectedMessage())
+		{
+			updateIndex(false);
+		}
 		else
 		{
 			onMessageIndexIncrement(new MessageIndexIncrementEvent(event.getMessages().size(), store));
@@ -310,20 +321,56 @@ public class MessageNavigationController implements Initializable
 		updateIndex(false);			
 	}
 	
-	// TODO: optimise message handling
 	public void onMessageRemoved(final MessageRemovedEvent<FormattedMessage> event)
 	{
-		for (final BrowseRemovedMessageEvent<FormattedMessage> message : event.getMessages())
+		// If the shown message has been removed itself, adjust the index by the number of messages removed before it
+		if (!locateSelectedMessage())
 		{
-			if (message.getMessageIndex() < selectedMessage)
+			for (final BrowseRemovedMessageEvent<FormattedMessage> message : event.getMessages())
 			{
-				selectedMessage--;					
-			}	
+				if (message.getMessageIndex() < selectedMessage)
+				{
+					selectedMessage--;					
+				}	
+			}
 		}
 		
 		updateIndex(false);
 	}
 	
+	/**
+	 * Finds the current index of the shown message using the store's ID index.
+	 * 
+	 * @return True if the message is still in the store and the index has been updated
+	 */
+	private boolean locateSelectedMessage()
+	{
+		if (selectedMessageId == NO_MESSAGE)
+		{
+			return false;
+		}
+		
+		final int index = store.indexOf(selectedMessageId);
+		if (index < 0)
+		{
+			return false;
+		}
+		
+		selectedMessage = index + 1;
+		return true;
+	}
+	
+	private void rememberSelectedMessage()
+	{
+		final List<? extends FormattedMessage> messages = store.getMessages();
+		
+		synchronized (messages)
+		{
+			selectedMessageId = (selectedMessage > 0 && selectedMessage <= messages.size()) 
+					? messages.get(selectedMessage - 1).getId() : NO_MESSAGE;
+		}
+	}
+	
 	private void showFirstMessage()
 	{
 		if (store.getMessages().size() > 0)
@@ -415,6 +462,7 @@ public class MessageNavigationController implements Initializable
 		
 		if (refreshMessageDetails)
 		{
+			rememberSelectedMessage();
 			eventBus.publish(new MessageIndexChangeEvent(selectedMessage, store, this));
 		}
 	}
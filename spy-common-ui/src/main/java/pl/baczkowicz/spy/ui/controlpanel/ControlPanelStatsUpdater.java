@@ -59,7 +59,7 @@ public class ControlPanelStatsUpdater implements Runnable
 	private final static String SINCE_PHRASE = " since " + TimeUtils.DATE_SDF.format(StatisticsManager.stats.getStartDate());
 	
 	/** How many different stat messages there are. */
-	private final static int STATS_MESSAGES = 6;
+	private final static int STATS_MESSAGES = 7;
 	
 	/** How many intervals allow before going to next stats. */
 	private final static int GO_NEXT_AFTER_INTERVALS = 10;
@@ -257,6 +257,14 @@ public class ControlPanelStatsUpdater implements Runnable
 					"Right now your %s is munching through %d msgs/s.", appName,
 					StatisticsManager.getMessagesReceived()));
 			return true;
+		}
+		
+		else if ((statMessageIndex == 6) && (StatisticsManager.getMessagesDropped() > 0))
+		{
+			controlPanelItemController.setTitle(String.format(
+					"Your %s had to drop %s messages to keep up with the brokers.", appName,
+					FormattingUtils.formatNumber(StatisticsManager.getMessagesDropped())));
+			return true;
 		}				
 		
 		return false;
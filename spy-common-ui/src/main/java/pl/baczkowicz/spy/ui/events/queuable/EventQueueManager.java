@@ -19,78 +19,128 @@
  */
 package pl.baczkowicz.spy.ui.events.queuable;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
 import pl.baczkowicz.spy.messages.FormattedMessage;
 import pl.baczkowicz.spy.storage.BasicMessageStore;
-import pl.baczkowicz.spy.ui.events.queuable.ui.BrowseReceivedMessageEvent;
-import pl.baczkowicz.spy.ui.events.queuable.ui.BrowseRemovedMessageEvent;
 import pl.baczkowicz.spy.ui.events.queuable.ui.SpyUIEvent;
-import pl.baczkowicz.spy.ui.events.queuable.ui.TopicSummaryNewMessageEvent;
-import pl.baczkowicz.spy.ui.events.queuable.ui.TopicSummaryRemovedMessageEvent;
+import pl.baczkowicz.spy.ui.events.queuable.ui.SpyUIEventType;
 
+/**
+ * Queues UI events until they are picked up by the UI event handler.
+ * 
+ * Each event type has its own lock-free queue (indexed by the type's
+ * ordinal), so that any number of producers (message handlers of all
+ * connections) can add events without blocking each other or the consumer,
+ * which drains them in batches.
+ */
 public class EventQueueManager<T extends FormattedMessage>
 {
-	private Map<String, List<SpyUIEvent<T>>> events = new HashMap<>();  
+	/** Event queues, indexed by the event type's ordinal. */
+	private final Queue<SpyUIEvent<T>>[] events;
+	
+	/** Number of queued events, indexed by the event type's ordinal. */
+	private final AtomicLong[] eventCounts;
 	
-	private AtomicLong eventCount = new AtomicLong();
+	/** Number of events ever added, indexed by the event type's ordinal. */
+	private final AtomicLong[] addedCounts;
 	
+	@SuppressWarnings({"unchecked", "rawtypes"})
 	public EventQueueManager()
 	{
-		events.put(BrowseReceivedMessageEvent.class.toString(), new ArrayList<SpyUIEvent<T>>());
-		events.put(BrowseRemovedMessageEvent.class.toString(), new ArrayList<SpyUIEvent<T>>());
-		events.put(TopicSummaryNewMessageEvent.class.toString(), new ArrayList<SpyUIEvent<T>>());
-		events.put(TopicSummaryRemovedMessageEvent.class.toString(), new ArrayList<SpyUIEvent<T>>());
+		events = new Queue[SpyUIEventType.values().length];
+		eventCounts = new AtomicLong[events.length];
+		addedCounts = new AtomicLong[events.length];
+		
+		for (int i = 0; i < events.length; i++)
+		{
+			events[i] = new ConcurrentLinkedQueue<SpyUIEvent<T>>();
+			eventCounts[i] = new AtomicLong();
+			addedCounts[i] = new AtomicLong();
+		}
 	}
 	
 	public void add(final BasicMessageStore<T> parent, final SpyUIEvent<T> event)
 	{
 		// Not using the parent for now - as probably not needed any more
 		
-		final String eventType = event.getClass().toString();		
+		final int index = event.getType().ordinal();
 		
-		synchronized (events)
-		{
-			final List<SpyUIEvent<T>> eventList = events.get(eventType);
-			eventList.add(event);
-		}
-		
-		eventCount.incrementAndGet();
+		events[index].offer(event);
+		eventCounts[index].incrementAndGet();
+		addedCounts[index].incrementAndGet();
 	}	
 	
-	public List<SpyUIEvent<T>> getAndRemoveEvents(final String eventType)
-	{		
-		final List<SpyUIEvent<T>> eventList = events.get(eventType);
+	/**
+	 * Moves queued events of the given type to the given collection, in the order they were added.
+	 * 
+	 * @param eventType Type of events to drain
+	 * @param target Where to put the events
+	 * @param maxEvents Maximum number of events to drain
+	 * 
+	 * @return Number of drained events
+	 */
+	public int drainTo(final SpyUIEventType eventType, final Collection<? super SpyUIEvent<T>> target, final int maxEvents)
+	{
+		final Queue<SpyUIEvent<T>> eventQueue = events[eventType.ordinal()];
+		
+		int drained = 0;
+		SpyUIEvent<T> event;
 		
-		synchronized (events)
+		while (drained < maxEvents && (event = eventQueue.poll()) != null)
 		{
-			events.put(eventType, new ArrayList<SpyUIEvent<T>>());
+			target.add(event);
+			drained++;
 		}
 		
-		reduceCount(eventList.size());	
-		return eventList;		
+		if (drained > 0)
+		{
+			eventCounts[eventType.ordinal()].addAndGet(-drained);
+		}
+		
+		return drained;
 	}
 	
-	public Map<String, List<SpyUIEvent<T>>> getEvents()
+	public long getEventCount()
 	{
-		return events;
+		long count = 0;
+		
+		for (final AtomicLong eventCount : eventCounts)
+		{
+			count = count + eventCount.get();
+		}
+		
+		return count;
 	}
 	
-	public long getEventCount()
+	/**
+	 * Gets the number of queued events of the given type. As the count is 
+	 * increased after an event is queued, at least that many events of the 
+	 * given type have been added before this call.
+	 * 
+	 * @param eventType Type of events to count
+	 * 
+	 * @return Number of queued events of the given type
+	 */
+	public long getEventCount(final SpyUIEventType eventType)
 	{
-		return eventCount.get();
+		return eventCounts[eventType.ordinal()].get();
 	}
 	
-	private void reduceCount(final long reduceBy)
+	/**
+	 * Gets the number of events of the given type added so far (including
+	 * those already drained). As with the queued count, at least that many
+	 * events of the given type have been added before this call.
+	 * 
+	 * @param eventType Type of events to count
+	 * 
+	 * @return Number of added events of the given type
+	 */
+	public long getAddedCount(final SpyUIEventType eventType)
 	{
-		eventCount.addAndGet(-reduceBy);
+		return addedCounts[eventType.ordinal()].get();
 	}
-	
-	// TODO: reading
-	
-	// TODO: processing in batches
 }
@@ -44,4 +44,10 @@ public class BrowseReceivedMessageEvent<T extends FormattedMessage> implements S
 	{
 		return messageList;
 	}
+	
+	@Override
+	public SpyUIEventType getType()
+	{
+		return SpyUIEventType.BROWSE_RECEIVED;
+	}
 }
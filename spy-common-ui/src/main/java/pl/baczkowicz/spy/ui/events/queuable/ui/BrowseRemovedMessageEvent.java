@@ -52,4 +52,10 @@ public class BrowseRemovedMessageEvent<T extends FormattedMessage> implements Sp
 	{
 		return store;
 	}
+	
+	@Override
+	public SpyUIEventType getType()
+	{
+		return SpyUIEventType.BROWSE_REMOVED;
+	}
 }
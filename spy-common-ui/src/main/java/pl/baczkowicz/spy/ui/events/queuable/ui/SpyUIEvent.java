@@ -29,4 +29,11 @@ import pl.baczkowicz.spy.storage.MessageList;
 public interface SpyUIEvent<T extends FormattedMessage> extends SpyEvent
 {
 	MessageList<T> getList();
+	
+	/**
+	 * Gets the type of the event, used for queuing events of the same type together.
+	 * 
+	 * @return The event type
+	 */
+	SpyUIEventType getType();
 }
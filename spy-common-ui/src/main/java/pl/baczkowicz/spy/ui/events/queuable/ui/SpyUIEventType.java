@@ -0,0 +1,34 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2014 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.ui.events.queuable.ui;
+
+/**
+ * Types of queued UI events. Each type has its own queue in the EventQueueManager, indexed by the ordinal.
+ */
+public enum SpyUIEventType
+{
+	BROWSE_RECEIVED,
+	
+	BROWSE_REMOVED,
+	
+	TOPIC_SUMMARY_NEW,
+	
+	TOPIC_SUMMARY_REMOVED
+}
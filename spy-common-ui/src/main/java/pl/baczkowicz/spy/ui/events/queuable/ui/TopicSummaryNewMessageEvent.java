@@ -52,4 +52,10 @@ public class TopicSummaryNewMessageEvent<T extends FormattedMessage> implements
 	{
 		return list;
 	}
+	
+	@Override
+	public SpyUIEventType getType()
+	{
+		return SpyUIEventType.TOPIC_SUMMARY_NEW;
+	}
 }
@@ -44,4 +44,10 @@ public class TopicSummaryRemovedMessageEvent<T extends FormattedMessage> impleme
 	{
 		return list;
 	}
+	
+	@Override
+	public SpyUIEventType getType()
+	{
+		return SpyUIEventType.TOPIC_SUMMARY_REMOVED;
+	}
 }
@@ -19,20 +19,57 @@
  */
 package pl.baczkowicz.spy.ui.search;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.script.Invocable;
+import javax.script.ScriptException;
+
+import pl.baczkowicz.spy.messages.FormattedMessage;
 import pl.baczkowicz.spy.scripts.BaseScriptManagerInterface;
 import pl.baczkowicz.spy.scripts.Script;
+import pl.baczkowicz.spy.ui.utils.DialogFactory;
 
-public class InlineScriptMatcher extends ScriptMatcher
+/**
+ * Matches messages using an inline JavaScript condition. The condition is
+ * wrapped into a search function, which is compiled once per script engine
+ * and then invoked with each message.
+ * 
+ * Engines are kept in a pool, so that messages can be matched from multiple
+ * threads at the same time - a new engine is only created when all existing
+ * ones are in use.
+ */
+public class InlineScriptMatcher implements SearchMatcher
 {
+	/** Name of the search function. */
+	private static final String SEARCH_FUNCTION = "search";
+	
+	private final BaseScriptManagerInterface scriptManager;
+	
+	/** Source of the search function. */
+	private final String searchFunction;
+	
+	/** Engines with the compiled search function, not in use at the moment. */
+	private final Queue<Invocable> idleEngines = new ConcurrentLinkedQueue<>();
+	
+	private volatile Exception lastThrownException;
+	
 	public InlineScriptMatcher(final BaseScriptManagerInterface scriptManager, final String inlineScript)
 	{
-		super(scriptManager, addAndReturnScript(scriptManager, inlineScript));
+		this.scriptManager = scriptManager;
+		this.searchFunction = createSearchFunction(inlineScript);
+		
+		// Compile straight away, so that any syntax errors are reported before searching
+		final Invocable engine = createEngine();
+		if (engine != null)
+		{
+			idleEngines.add(engine);
+		}
 	}
 	
-	public static Script addAndReturnScript(final BaseScriptManagerInterface scriptManager, final String inlineScript)
+	public static String createSearchFunction(final String inlineScript)
 	{
-		final Script script = scriptManager.addInlineScript("inline", 
-				"function search() "
+		return "function " + SEARCH_FUNCTION + "(message) "
 				+ "{ "
 					+ "var payload = message.getPayload(); "
 					+ "var formattedPayload = message.getFormattedPayload(); "
@@ -44,8 +81,64 @@ public class InlineScriptMatcher extends ScriptMatcher
 						+ "return true; "
 					+ "} "
 					+ "return false; "
-				+ "} "
-				+ "search();");
-		return script;
+				+ "}";
+	}
+	
+	private Invocable createEngine()
+	{
+		final Script script = scriptManager.addInlineScript("inline", searchFunction);
+		
+		try
+		{
+			script.getScriptEngine().eval(searchFunction);
+			return (Invocable) script.getScriptEngine();
+		}
+		catch (ScriptException e)
+		{
+			lastThrownException = e;
+			return null;
+		}
+	}
+	
+	@Override
+	public boolean matches(final FormattedMessage message)
+	{
+		Invocable engine = idleEngines.poll();
+		
+		if (engine == null)
+		{
+			engine = createEngine();
+			
+			if (engine == null)
+			{
+				return false;
+			}
+		}
+		
+		try
+		{
+			return Boolean.TRUE.equals(engine.invokeFunction(SEARCH_FUNCTION, message));
+		}
+		catch (ScriptException | NoSuchMethodException | RuntimeException e)
+		{
+			lastThrownException = e;
+			return false;
+		}
+		finally
+		{
+			idleEngines.add(engine);
+		}
+	}
+	
+	@Override
+	public boolean isValid()
+	{
+		if (lastThrownException != null)
+		{
+			DialogFactory.createErrorDialog("Script execution error", "Script failed due to: " + lastThrownException.getLocalizedMessage());
+			return false;
+		}
+
+		return true;
 	}
 }
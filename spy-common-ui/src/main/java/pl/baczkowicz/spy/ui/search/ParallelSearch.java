@@ -0,0 +1,273 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2015 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.spy.ui.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import pl.baczkowicz.spy.messages.FormattedMessage;
+import pl.baczkowicz.spy.utils.tasks.ProgressUpdater;
+
+/**
+ * Matches a list of messages against a search matcher on a pool of worker
+ * threads. The list is split into chunks, each matched by one worker, and
+ * the results are put back together in the original order. Results can
+ * also be streamed back in bounded batches, as soon as all preceding chunks
+ * have been matched.
+ * 
+ * Matchers that are not thread-safe are run on the calling thread instead,
+ * chunk by chunk, so that results are streamed back in the same way.
+ */
+public class ParallelSearch
+{
+	/** Number of messages matched by a worker in one go. */
+	public static final int CHUNK_SIZE = 500;
+	
+	/** Maximum number of matching messages passed on in one batch. */
+	public static final int BATCH_SIZE = 100;
+	
+	/** Pool shared by all searches (created on first use). */
+	private static ExecutorService sharedPool;
+	
+	private final ExecutorService executor;
+	
+	/**
+	 * Creates the search using the shared worker pool.
+	 */
+	public ParallelSearch()
+	{
+		this(getSharedPool());
+	}
+	
+	/**
+	 * Creates the search.
+	 * 
+	 * @param executor Executor to match the chunks on
+	 */
+	public ParallelSearch(final ExecutorService executor)
+	{
+		this.executor = executor;
+	}
+	
+	private static synchronized ExecutorService getSharedPool()
+	{
+		if (sharedPool == null)
+		{
+			final AtomicInteger count = new AtomicInteger();
+			
+			sharedPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(final Runnable runnable)
+				{
+					final Thread thread = new Thread(runnable, "Search worker " + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		
+		return sharedPool;
+	}
+	
+	/**
+	 * Finds all matching messages. The first message is matched on its own,
+	 * and the rest is only searched if the matcher is still valid afterwards.
+	 * 
+	 * @param messages Messages to search
+	 * @param matcher The matcher to use
+	 * 
+	 * @return Matching messages, in the same order as given
+	 * 
+	 * @throws InterruptedException Thrown when interrupted while waiting for the workers
+	 */
+	public <T extends FormattedMessage> List<T> findMatching(final List<T> messages, final SearchMatcher matcher) throws InterruptedException
+	{
+		final List<T> found = new ArrayList<>();
+		
+		if (messages.isEmpty())
+		{
+			return found;
+		}
+		
+		// Check the matcher works before searching everything
+		if (matcher.matches(messages.get(0)))
+		{
+			found.add(messages.get(0));
+		}
+		if (!matcher.isValid())
+		{
+			return found;
+		}
+		
+		search(messages.subList(1, messages.size()), matcher, null, found::addAll);
+		
+		return found;
+	}
+	
+	/**
+	 * Searches all given messages, passing on matching messages in batches
+	 * of up to BATCH_SIZE, in the same order as given. Batches are passed on
+	 * from the calling thread.
+	 * 
+	 * @param messages Messages to search
+	 * @param matcher The matcher to use
+	 * @param progress Updated with the number of searched messages, and checked for cancellation (can be null)
+	 * @param batchConsumer Consumer of the matching messages
+	 * 
+	 * @return Number of searched messages (less than given if cancelled)
+	 * 
+	 * @throws InterruptedException Thrown when interrupted while waiting for the workers
+	 */
+	public <T extends FormattedMessage> int search(final List<T> messages, final SearchMatcher matcher, 
+			final ProgressUpdater progress, final Consumer<List<T>> batchConsumer) throws InterruptedException
+	{
+		if (!matcher.isThreadSafe())
+		{
+			return searchInCallingThread(messages, matcher, progress, batchConsumer);
+		}
+		
+		final List<Future<List<T>>> chunks = new ArrayList<>();
+		
+		for (int start = 0; start < messages.size(); start = start + CHUNK_SIZE)
+		{
+			chunks.add(executor.submit(new ChunkMatcher<T>(messages.subList(start, Math.min(messages.size(), start + CHUNK_SIZE)), matcher)));
+		}
+		
+		int searched = 0;
+		
+		try
+		{
+			for (final Future<List<T>> chunk : chunks)
+			{
+				if (progress != null && progress.isCancelled())
+				{
+					break;
+				}
+				
+				searched = chunkSearched(chunk.get(), searched, messages.size(), progress, batchConsumer);
+			}
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException("Search failed", e.getCause());
+		}
+		finally
+		{
+			// Nothing left to do if cancelled, interrupted or failed
+			for (final Future<List<T>> chunk : chunks)
+			{
+				chunk.cancel(true);
+			}
+		}
+		
+		return searched;
+	}
+	
+	private <T extends FormattedMessage> int searchInCallingThread(final List<T> messages, final SearchMatcher matcher, 
+			final ProgressUpdater progress, final Consumer<List<T>> batchConsumer) throws InterruptedException
+	{
+		int searched = 0;
+		
+		for (int start = 0; start < messages.size(); start = start + CHUNK_SIZE)
+		{
+			if (progress != null && progress.isCancelled())
+			{
+				break;
+			}
+			if (Thread.interrupted())
+			{
+				throw new InterruptedException();
+			}
+			
+			final List<T> found = new ChunkMatcher<T>(messages.subList(start, Math.min(messages.size(), start + CHUNK_SIZE)), matcher).call();
+			searched = chunkSearched(found, searched, messages.size(), progress, batchConsumer);
+		}
+		
+		return searched;
+	}
+	
+	/**
+	 * Passes on the matching messages of a chunk, and updates the progress.
+	 * 
+	 * @return Number of searched messages so far
+	 */
+	private static <T extends FormattedMessage> int chunkSearched(final List<T> found, final int searchedBefore, final int total,
+			final ProgressUpdater progress, final Consumer<List<T>> batchConsumer)
+	{
+		for (int start = 0; start < found.size(); start = start + BATCH_SIZE)
+		{
+			batchConsumer.accept(new ArrayList<>(found.subList(start, Math.min(found.size(), start + BATCH_SIZE))));
+		}
+		
+		final int searched = Math.min(total, searchedBefore + CHUNK_SIZE);
+		if (progress != null)
+		{
+			progress.update(searched, total);
+		}
+		
+		return searched;
+	}
+	
+	/**
+	 * Matches one chunk of messages.
+	 */
+	private static class ChunkMatcher<T extends FormattedMessage> implements Callable<List<T>>
+	{
+		private final List<T> messages;
+		
+		private final SearchMatcher matcher;
+
+		public ChunkMatcher(final List<T> messages, final SearchMatcher matcher)
+		{
+			this.messages = messages;
+			this.matcher = matcher;
+		}
+
+		@Override
+		public List<T> call()
+		{
+			final List<T> found = new ArrayList<>();
+			
+			for (final T message : messages)
+			{
+				if (Thread.currentThread().isInterrupted())
+				{
+					break;
+				}
+				
+				if (matcher.matches(message))
+				{
+					found.add(message);
+				}
+			}
+			
+			return found;
+		}
+	}
+}
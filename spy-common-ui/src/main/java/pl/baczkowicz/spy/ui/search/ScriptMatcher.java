@@ -25,6 +25,13 @@ import pl.baczkowicz.spy.scripts.BaseScriptManager;
 import pl.baczkowicz.spy.scripts.Script;
 import pl.baczkowicz.spy.ui.utils.DialogFactory;
 
+/**
+ * Matches messages using a search script file. The script is run for each
+ * message through its script runner (as any other script), so that its
+ * context and state are set up as usual. As the script and its engine are
+ * shared, messages are matched one at a time - searches using this matcher
+ * are not parallelised.
+ */
 public class ScriptMatcher implements SearchMatcher
 {
 	private BaseScriptManagerInterface scriptManager;
@@ -40,19 +47,18 @@ public class ScriptMatcher implements SearchMatcher
 	@Override
 	public boolean matches(final FormattedMessage message)
 	{
-		boolean matches = false;
-		scriptManager.runScriptFileParameter(script, BaseScriptManager.MESSAGE_PARAMETER, message, false);
-		
-		if (script.getScriptRunner().getLastReturnValue() != null)
+		synchronized (script)
 		{
-			matches = (Boolean) script.getScriptRunner().getLastReturnValue();
+			scriptManager.runScriptFileParameter(script, BaseScriptManager.MESSAGE_PARAMETER, message, false);
+			
+			return Boolean.TRUE.equals(script.getScriptRunner().getLastReturnValue());
 		}
-		else
-		{
-			matches = false;
-		}	
-		
-		return matches;
+	}
+	
+	@Override
+	public boolean isThreadSafe()
+	{
+		return false;
 	}
 
 	@Override
@@ -26,4 +26,14 @@ public interface SearchMatcher
 	boolean matches(final FormattedMessage message);
 
 	boolean isValid();
+	
+	/**
+	 * Checks if messages can be matched from a number of threads at the same time.
+	 * 
+	 * @return True if thread-safe
+	 */
+	default boolean isThreadSafe()
+	{
+		return true;
+	}
 }
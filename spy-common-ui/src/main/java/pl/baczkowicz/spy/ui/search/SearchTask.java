@@ -0,0 +1,95 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2015 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.spy.ui.search;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.baczkowicz.spy.messages.FormattedMessage;
+import pl.baczkowicz.spy.ui.storage.TaskWithProgressUpdater;
+
+/**
+ * Background task searching a snapshot of messages. Matching messages are
+ * passed on in batches, in the snapshot's order, using the given executor
+ * (e.g. on the JavaFX thread). Once cancelled, no more batches are passed on.
+ * 
+ * The task's value is the number of searched messages.
+ * 
+ * @param <T> Type of the message
+ */
+public class SearchTask<T extends FormattedMessage> extends TaskWithProgressUpdater<Integer>
+{
+	/** Diagnostic logger. */
+	private final static Logger logger = LoggerFactory.getLogger(SearchTask.class);
+	
+	private final List<T> messages;
+	
+	private final SearchMatcher matcher;
+	
+	private final ParallelSearch search;
+	
+	private final Executor batchExecutor;
+	
+	private final Consumer<List<T>> batchConsumer;
+	
+	/**
+	 * Creates the task.
+	 * 
+	 * @param messages Messages to search (not modified while searching)
+	 * @param matcher The matcher to use (needs to be thread-safe)
+	 * @param search The parallel search to use
+	 * @param batchExecutor Executor to pass on the batches of matching messages with
+	 * @param batchConsumer Consumer of the matching messages
+	 */
+	public SearchTask(final List<T> messages, final SearchMatcher matcher, final ParallelSearch search,
+			final Executor batchExecutor, final Consumer<List<T>> batchConsumer)
+	{
+		this.messages = messages;
+		this.matcher = matcher;
+		this.search = search;
+		this.batchExecutor = batchExecutor;
+		this.batchConsumer = batchConsumer;
+		super.updateTitle("Searching " + messages.size() + " messages");
+	}
+
+	@Override
+	protected Integer call() throws Exception
+	{
+		try
+		{
+			return search.search(messages, matcher, this, batch -> batchExecutor.execute(() -> 
+			{
+				if (!isCancelled())
+				{
+					batchConsumer.accept(batch);
+				}
+			}));
+		}
+		catch (InterruptedException e)
+		{
+			logger.debug("Search cancelled");
+			return 0;
+		}
+	}
+}
@@ -25,6 +25,8 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,6 +50,9 @@ public class StatisticsManager implements Runnable
 	public static Map<String, ConnectionStats> runtimeMessagesPublished = new HashMap<>();
 	
 	public static Map<String, ConnectionStats> runtimeMessagesReceived = new HashMap<>();
+	
+	/** Number of messages dropped by the ingest queue, per connection. */
+	public static Map<String, AtomicLong> runtimeMessagesDropped = new ConcurrentHashMap<>();
 
 	private StatsIO statsFileIO;	
 	
@@ -117,6 +122,19 @@ public class StatisticsManager implements Runnable
 		}
 	}
 	
+	public void messagesDropped(final String connectionId, final int count)
+	{
+		AtomicLong dropped = runtimeMessagesDropped.get(connectionId);
+		
+		if (dropped == null)
+		{
+			runtimeMessagesDropped.putIfAbsent(connectionId, new AtomicLong());
+			dropped = runtimeMessagesDropped.get(connectionId);
+		}
+		
+		dropped.addAndGet(count);
+	}
+	
 	public static void nextInterval(final Map<String, ConnectionStats> runtimeMessages)
 	{
 		for (final String connectionId : runtimeMessages.keySet())
@@ -208,6 +226,25 @@ public class StatisticsManager implements Runnable
 		return runtimeMessagesReceived.get(connectionId).avgPeriods.get(period).average(period);
 	}
 	
+	public static long getMessagesDropped(final String connectionId)
+	{
+		final AtomicLong dropped = runtimeMessagesDropped.get(connectionId);
+		
+		return dropped == null ? 0 : dropped.get();
+	}
+	
+	public static long getMessagesDropped()
+	{
+		long total = 0;
+		
+		for (final AtomicLong dropped : runtimeMessagesDropped.values())
+		{
+			total = total + dropped.get();
+		}
+		
+		return total;
+	}
+	
 	public static void resetMessagesReceived(final String connectionId, final String topic)
 	{
 		if (runtimeMessagesReceived.get(connectionId) == null)
@@ -221,6 +258,7 @@ public class StatisticsManager implements Runnable
 	public static void resetMessagesReceived(final String connectionId)
 	{
 		resetConnection(runtimeMessagesReceived, connectionId);
+		runtimeMessagesDropped.remove(connectionId);
 	}
 	
 	private static void resetConnection(final Map<String, ConnectionStats> runtimeMessages, final String connectionId)
@@ -19,10 +19,12 @@
  */
 package pl.baczkowicz.spy.ui.storage;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -35,6 +37,12 @@ import pl.baczkowicz.spy.messages.FormattedMessage;
 
 /**
  * Message store with filtering. 
+ * 
+ * Showing or hiding topics doesn't rebuild the store from all messages -
+ * instead, the per-topic chains kept for all messages are merged into or
+ * removed from the filtered messages (the chains are created when a topic is
+ * first shown). A full rebuild is only done when message filters are active,
+ * as their results depend on the order in which messages are filtered.
  */
 public class FilteredMessageStore<T extends FormattedMessage> extends BasicMessageStoreWithSummary<T>
 {
@@ -109,6 +117,75 @@ public class FilteredMessageStore<T extends FormattedMessage> extends BasicMessa
 		}
 	}	
 	
+	/**
+	 * Adds messages on the given topics to the filtered store, merging them in time order.
+	 * 
+	 * @param topics Topics that have become browsed
+	 */
+	private void showTopicMessages(final Collection<String> topics)
+	{
+		// Get the chains first, so that the lock on all messages is never taken while holding the one on filtered messages
+		final TopicMessageChains<T> topicChains = allMessages.getTopicChains();
+		final MessageListWithObservableTopicSummary<T> filteredMessages = getMessageList();
+		
+		synchronized (filteredMessages.getMessages())
+		{
+			final List<T> merged = topicChains.mergeInto(new ArrayList<>(filteredMessages.getMessages()), topics);
+			final int previousSize = filteredMessages.getMessages().size();
+			
+			filteredMessages.replaceMessages(merged);
+			
+			// Update the counts for messages added (and for any old ones that didn't fit)
+			for (int i = 0; i < merged.size(); i++)
+			{
+				final T message = merged.get(i);
+				final boolean added = topics.contains(message.getTopic());
+				final boolean kept = i < filteredMessages.getMaxSize();
+				
+				if (added && kept)
+				{
+					filteredMessages.getTopicSummary().increaseCount(message);
+				}
+				else if (!added && !kept)
+				{
+					filteredMessages.getTopicSummary().decreaseCount(message);
+				}
+			}
+			
+			logger.trace("[{}] Merged {} topic(s) into the filtered store = {}/{}", 
+					allMessages.getName(), topics.size(), previousSize, filteredMessages.getMessages().size());
+		}
+	}
+	
+	/**
+	 * Removes messages on the given topics from the filtered store.
+	 * 
+	 * @param topics Topics that are no longer browsed
+	 */
+	private void hideTopicMessages(final Collection<String> topics)
+	{
+		final MessageListWithObservableTopicSummary<T> filteredMessages = getMessageList();
+		
+		synchronized (filteredMessages.getMessages())
+		{
+			final List<T> remaining = new ArrayList<>(filteredMessages.getMessages().size());
+			
+			for (final T message : filteredMessages.getMessages())
+			{
+				if (topics.contains(message.getTopic()))
+				{
+					filteredMessages.getTopicSummary().decreaseCount(message);
+				}
+				else
+				{
+					remaining.add(message);
+				}
+			}
+			
+			filteredMessages.replaceMessages(remaining);
+		}
+	}
+	
 	public boolean filterMessage(final T message, final boolean updateUi)
 	{
 		for (final MessageFilter<T> filter : messageFilters)
@@ -168,26 +245,32 @@ public class FilteredMessageStore<T extends FormattedMessage> extends BasicMessa
 	{
 		synchronized (browsedTopics)
 		{
-			boolean updated = false;
+			final Set<String> addedTopics = new HashSet<>();
 			
 			for (final String topic : topics)
 			{
 				if (!browsedTopics.contains(topic))
 				{
 					logger.debug("Adding {} to active filters for {}; recreate = {}", topic, allMessages.getName(), recreateStore);
-					browsedTopics.add(topic);														
-					updated = true;
+					browsedTopics.add(topic);
+					addedTopics.add(topic);
 				}
 			}
 			
-			// TODO: optimise
-			if (updated && recreateStore)
+			if (!addedTopics.isEmpty() && recreateStore)
 			{
-				logger.warn("Recreating store for topics in {}", allMessages.getName());
-				reinitialiseFilteredStore();
+				if (messageFiltersEnabled())
+				{
+					logger.debug("Recreating store for topics in {}", allMessages.getName());
+					reinitialiseFilteredStore();
+				}
+				else
+				{
+					showTopicMessages(addedTopics);
+				}
 			}
 			
-			return updated;
+			return !addedTopics.isEmpty();
 		}
 	}
 	
@@ -200,7 +283,7 @@ public class FilteredMessageStore<T extends FormattedMessage> extends BasicMessa
 	{
 		synchronized (browsedTopics)
 		{
-			boolean updated = false;
+			final Set<String> removedTopics = new HashSet<>();
 			
 			for (final String topic : topics)
 			{
@@ -208,16 +291,23 @@ public class FilteredMessageStore<T extends FormattedMessage> extends BasicMessa
 				{
 					logger.debug("Removing {} from active filters for {}", topic, allMessages.getName());
 					browsedTopics.remove(topic);		
-					updated = true;
+					removedTopics.add(topic);
 				}
 			}
 			
-			if (updated)
+			if (!removedTopics.isEmpty())
 			{
-				reinitialiseFilteredStore();
+				if (messageFiltersEnabled())
+				{
+					reinitialiseFilteredStore();
+				}
+				else
+				{
+					hideTopicMessages(removedTopics);
+				}
 			}
 			
-			return updated;
+			return !removedTopics.isEmpty();
 		}
 	}
 
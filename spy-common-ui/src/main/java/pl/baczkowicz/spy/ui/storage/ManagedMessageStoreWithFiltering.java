@@ -30,6 +30,7 @@ import org.slf4j.LoggerFactory;
 
 import pl.baczkowicz.spy.formatting.FormattingManager;
 import pl.baczkowicz.spy.messages.FormattedMessage;
+import pl.baczkowicz.spy.storage.PayloadArena;
 import pl.baczkowicz.spy.ui.events.queuable.EventQueueManager;
 import pl.baczkowicz.spy.ui.events.queuable.ui.BrowseReceivedMessageEvent;
 import pl.baczkowicz.spy.ui.events.queuable.ui.TopicSummaryNewMessageEvent;
@@ -56,6 +57,9 @@ public class ManagedMessageStoreWithFiltering<T extends FormattedMessage> extend
 	/** Stores events for the UI to be updated. */
 	protected final EventQueueManager<T> uiEventQueue;
 	
+	/** Off-heap storage for payloads of stored messages (null if kept on the heap). */
+	private PayloadArena payloadArena;
+	
 	public ManagedMessageStoreWithFiltering(final String name, final int minMessagesPerTopic, final int preferredSize, final int maxSize, 
 			final EventQueueManager<T> uiEventQueue, /*final EventManager eventManager, */final FormattingManager formattingManager,
 			final int maxPayloadLength)
@@ -86,8 +90,8 @@ public class ManagedMessageStoreWithFiltering<T extends FormattedMessage> extend
 	 */
 	public void messageReceived(final T message)
 	{	
-		// 0. Format the message with the currently selected formatter
-		formattingManager.formatMessage(message, getFormatter());
+		// 0. Format the message with the currently selected formatter (scripts now, others on first access to the formatted payload)
+		formattingManager.formatMessageOnDemand(message, getFormatter());
 				
 		// Record the current state of topics
 		final boolean allTopicsShown = !browsingFiltersEnabled();		
@@ -98,8 +102,14 @@ public class ManagedMessageStoreWithFiltering<T extends FormattedMessage> extend
 		// 1. Store the topic for the received message
 		allTopics.add(message.getTopic());
 		
-		// 2. Add the message to 'all messages' store - oldest could be removed if the store has reached its max size 
+		// 2. Add the message to 'all messages' store - oldest could be removed if the store has reached its max size
+		// (if configured, this store keeps the payloads off-heap for as long as they are stored)
+		if (payloadArena != null)
+		{
+			message.movePayloadTo(payloadArena);
+		}
 		final T removed = storeMessage(message);
+		releasePayload(removed);
 		
 		// 3. Add it to the filtered store if:
 		// - message is not filtered out
@@ -166,9 +176,35 @@ public class ManagedMessageStoreWithFiltering<T extends FormattedMessage> extend
 		return Collections.unmodifiableCollection(allTopics);
 	}
 
+	/**
+	 * Frees the off-heap payload of a message removed from the 'all messages' 
+	 * store (copying it back onto the heap, as the message can still be
+	 * referenced elsewhere).
+	 * 
+	 * @param message The removed message (can be null)
+	 */
+	void releasePayload(final T message)
+	{
+		if (payloadArena != null && message != null)
+		{
+			message.releasePayload();
+		}
+	}
+	
 	@Override
 	public void clear()
 	{
+		if (payloadArena != null)
+		{
+			synchronized (getNonFilteredMessageList().getMessages())
+			{
+				for (final T message : getNonFilteredMessageList().getMessages())
+				{
+					message.releasePayload();
+				}
+			}
+		}
+		
 		super.clear();
 		allTopics.clear();
 		filteredStore.removeAllTopicFilters();
@@ -252,6 +288,22 @@ public class ManagedMessageStoreWithFiltering<T extends FormattedMessage> extend
 		return formattingManager;
 	}
 	
+	/**
+	 * Sets the off-heap arena for payloads of stored messages. Should be set 
+	 * before any messages are received.
+	 * 
+	 * @param payloadArena The arena to use (null to keep payloads on the heap)
+	 */
+	public void setPayloadArena(final PayloadArena payloadArena)
+	{
+		this.payloadArena = payloadArena;
+	}
+	
+	public PayloadArena getPayloadArena()
+	{
+		return payloadArena;
+	}
+	
 	public void cleanUp()
 	{
 		this.getMessageStoreGarbageCollector().setRunning(false);
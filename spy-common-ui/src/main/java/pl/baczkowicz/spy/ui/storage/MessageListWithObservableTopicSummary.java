@@ -19,22 +19,29 @@
  */
 package pl.baczkowicz.spy.ui.storage;
 
+import java.util.List;
+
 import pl.baczkowicz.spy.common.generated.FormatterDetails;
 import pl.baczkowicz.spy.messages.FormattedMessage;
 import pl.baczkowicz.spy.storage.MessageList;
 import pl.baczkowicz.spy.ui.storage.summary.ObservableTopicSummary;
 
 /**
- * Message list with observable topic summary.
+ * Message list with observable topic summary. Optionally, it can also keep
+ * per-topic chains of its messages - these are only created when first
+ * requested.
  */
 public class MessageListWithObservableTopicSummary<T extends FormattedMessage> extends MessageList<T>
 {
 	private final ObservableTopicSummary<T> topicSummary;
 	
+	/** Per-topic chains of the messages (null if not requested yet). */
+	private TopicMessageChains<T> topicChains;
+	
 	public MessageListWithObservableTopicSummary(final int preferredSize, final int maxSize, 
 			final String name, final FormatterDetails messageFormat, final int maxPayloadLength)
 	{
-		super(preferredSize, maxSize, name);
+		super(preferredSize, maxSize, name, FormattedMessage::getId);
 				
 		this.topicSummary = new ObservableTopicSummary<T>(name, maxPayloadLength);
 		this.topicSummary.setFormatter(messageFormat);
@@ -45,9 +52,52 @@ public class MessageListWithObservableTopicSummary<T extends FormattedMessage> e
 		return topicSummary;
 	}
 	
+	/**
+	 * Gets the per-topic chains of the messages, creating them from the current messages on first use.
+	 * 
+	 * @return The topic chains
+	 */
+	public TopicMessageChains<T> getTopicChains()
+	{
+		synchronized (getMessages())
+		{
+			if (topicChains == null)
+			{
+				topicChains = new TopicMessageChains<>();
+				addToChains(getMessages());
+			}
+			
+			return topicChains;
+		}
+	}
+	
+	private void addToChains(final List<T> messages)
+	{
+		// Oldest first, so that sequence numbers are in the order of arrival
+		for (int i = messages.size() - 1; i >= 0; i--)
+		{
+			topicChains.messageAdded(messages.get(i));
+		}
+	}
+	
 	public T add(final T message)
 	{
-		final T removed = super.add(message);
+		final T removed;
+		
+		// Keep the chains in step with the list
+		synchronized (getMessages())
+		{
+			removed = super.add(message);
+			
+			if (topicChains != null)
+			{
+				if (removed != null)
+				{
+					topicChains.messageRemoved(removed);
+				}
+				topicChains.messageAdded(message);
+			}
+		}
 		
 		if (removed != null)
 		{
@@ -60,10 +110,49 @@ public class MessageListWithObservableTopicSummary<T extends FormattedMessage> e
 	
 	public T remove(final int index)
 	{
-		final T removed = super.remove(index);
+		final T removed;
+		
+		synchronized (getMessages())
+		{
+			removed = super.remove(index);
+			
+			if (topicChains != null)
+			{
+				topicChains.messageRemoved(removed);
+			}
+		}
 		
 		topicSummary.decreaseCount(removed);
 		
 		return removed;
 	}
+	
+	@Override
+	public void clear()
+	{
+		synchronized (getMessages())
+		{
+			super.clear();
+			
+			if (topicChains != null)
+			{
+				topicChains.clear();
+			}
+		}
+	}
+	
+	@Override
+	public void replaceMessages(final List<T> newMessages)
+	{
+		synchronized (getMessages())
+		{
+			super.replaceMessages(newMessages);
+			
+			if (topicChains != null)
+			{
+				topicChains.clear();
+				addToChains(getMessages());
+			}
+		}
+	}
 }
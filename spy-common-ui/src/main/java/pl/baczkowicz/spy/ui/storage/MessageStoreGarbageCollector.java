@@ -76,6 +76,12 @@ public class MessageStoreGarbageCollector<T extends FormattedMessage> implements
 			{	
 				// Remove from the store
 				messages.remove(i);
+				
+				// Payloads are owned by the 'all messages' store
+				if (messages == store.getNonFilteredMessageList())
+				{
+					store.releasePayload(element);
+				}
 				shouldRemove = messages.exceedingPreferredSize();
 										
 				// Update topic summary and UI
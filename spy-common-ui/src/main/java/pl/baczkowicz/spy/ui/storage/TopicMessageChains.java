@@ -0,0 +1,194 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2015 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.spy.ui.storage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import pl.baczkowicz.spy.messages.FormattedMessage;
+import pl.baczkowicz.spy.storage.LongIndexMap;
+
+/**
+ * Per-topic chains of the messages held in a message list, newest first. Each
+ * message gets an arrival sequence number, so that chains can be merged with
+ * other lists of the same messages in time order, without walking through the
+ * whole message list. Messages that are not in the chains (e.g. already
+ * removed from the list) are treated as older than all messages that are.
+ *
+ * All methods are thread-safe. No other locks are taken while holding the
+ * lock on this object.
+ */
+public class TopicMessageChains<T extends FormattedMessage>
+{
+	/** Used as the sequence number of messages that are not in the chains (lower than any other). */
+	public static final long NO_SEQUENCE = LongIndexMap.NO_VALUE;
+
+	/** Messages per topic, newest first. */
+	private final Map<String, Deque<T>> chains = new HashMap<>();
+
+	/** Arrival sequence number per message ID. */
+	private final LongIndexMap sequences = new LongIndexMap();
+
+	/** Sequence number of the last added message. */
+	private long lastSequence;
+
+	/**
+	 * Records a message added to the list.
+	 *
+	 * @param message The added message
+	 */
+	public synchronized void messageAdded(final T message)
+	{
+		Deque<T> chain = chains.get(message.getTopic());
+
+		if (chain == null)
+		{
+			chain = new ArrayDeque<>();
+			chains.put(message.getTopic(), chain);
+		}
+
+		chain.addFirst(message);
+		lastSequence++;
+		sequences.put(message.getId(), lastSequence);
+	}
+
+	/**
+	 * Records a message removed from the list.
+	 *
+	 * @param message The removed message
+	 */
+	public synchronized void messageRemoved(final T message)
+	{
+		final Deque<T> chain = chains.get(message.getTopic());
+
+		if (chain == null)
+		{
+			return;
+		}
+
+		// Messages are mostly removed oldest first
+		if (chain.peekLast() == message)
+		{
+			chain.pollLast();
+		}
+		else
+		{
+			chain.removeLastOccurrence(message);
+		}
+
+		if (chain.isEmpty())
+		{
+			chains.remove(message.getTopic());
+		}
+		sequences.remove(message.getId());
+	}
+
+	/**
+	 * Removes all chains.
+	 */
+	public synchronized void clear()
+	{
+		chains.clear();
+		sequences.clear();
+	}
+
+	/**
+	 * Gets the arrival sequence number of the given message.
+	 *
+	 * @param message The message
+	 *
+	 * @return The sequence number, or NO_SEQUENCE if the message is not in the chains
+	 */
+	public synchronized long getSequence(final T message)
+	{
+		return sequenceOf(message);
+	}
+
+	/**
+	 * Merges the chains for the given topics into the given list.
+	 *
+	 * @param messages Messages to merge with, newest first (e.g. messages on other topics)
+	 * @param topics Topics whose chains to merge
+	 *
+	 * @return A new list with all messages, newest first (messages in both are only included once)
+	 */
+	public synchronized List<T> mergeInto(final List<T> messages, final Collection<String> topics)
+	{
+		List<T> merged = messages;
+
+		for (final String topic : topics)
+		{
+			final Deque<T> chain = chains.get(topic);
+
+			if (chain != null)
+			{
+				merged = merge(merged, chain);
+			}
+		}
+
+		return merged;
+	}
+
+	private List<T> merge(final List<T> messages, final Collection<T> chain)
+	{
+		final List<T> merged = new ArrayList<>(messages.size() + chain.size());
+		final Iterator<T> chainIterator = chain.iterator();
+
+		T next = chainIterator.hasNext() ? chainIterator.next() : null;
+
+		for (final T message : messages)
+		{
+			final long messageSequence = sequenceOf(message);
+
+			// Take all newer chain messages first (all of them if the message is not in the chains)
+			while (next != null && sequenceOf(next) >= messageSequence)
+			{
+				// Skip the message if it's already in the list
+				if (next != message)
+				{
+					merged.add(next);
+				}
+
+				next = chainIterator.hasNext() ? chainIterator.next() : null;
+			}
+
+			merged.add(message);
+		}
+
+		while (next != null)
+		{
+			merged.add(next);
+			next = chainIterator.hasNext() ? chainIterator.next() : null;
+		}
+
+		return merged;
+	}
+
+	private long sequenceOf(final T message)
+	{
+		return sequences.get(message.getId());
+	}
+}
@@ -73,6 +73,23 @@ public class ObservableTopicSummary<T extends FormattedMessage> extends TopicSum
 		}				
 	}
 
+	public SubscriptionTopicSummaryProperties<T> applyChanges(final String topic, final int countChange, final T latestMessage)
+	{
+		synchronized (topicToSummaryMapping)
+		{
+			final AtomicBoolean newAdded = new AtomicBoolean(false);
+
+			final SubscriptionTopicSummaryProperties<T> updatedElement = super.applyChanges(topic, countChange, latestMessage, newAdded);
+			
+			if (newAdded.get())
+			{				
+				observableTopicSummaryList.add(updatedElement);
+			}
+			
+			return updatedElement;
+		}				
+	}
+
 	public void toggleShowValues(final Collection<String> topics)
 	{
 		synchronized (topicToSummaryMapping)
@@ -104,6 +104,54 @@ public class TopicSummary<T extends FormattedMessage> extends TopicMessageCount
 		}				
 	}
 
+	/**
+	 * Applies the net result of a number of added and removed messages on the given topic.
+	 * 
+	 * @param topic The topic
+	 * @param countChange Net change of the message count
+	 * @param latestMessage The most recently added message (null if none added)
+	 * @param newAdded Set to true if a new topic entry has been created
+	 * 
+	 * @return The updated topic entry (null if none found)
+	 */
+	public SubscriptionTopicSummaryProperties<T> applyChanges(final String topic, final int countChange, 
+			final T latestMessage, final AtomicBoolean newAdded)
+	{
+		synchronized (topicToSummaryMapping)
+		{
+			SubscriptionTopicSummaryProperties<T> item = topicToSummaryMapping.get(topic);
+	
+			if (item == null)
+			{
+				if (latestMessage == null)
+				{
+					logger.error("[{}] Found empty value for topic {}", name, topic);
+					return null;
+				}
+				
+				item = new SubscriptionTopicSummaryProperties<T>(false, countChange, latestMessage, maxPayloadLength);
+				topicToSummaryMapping.put(topic, item);
+				newAdded.set(true);
+			}
+			else
+			{
+				if (countChange != 0)
+				{
+					item.setCount(item.countProperty().intValue() + countChange);
+				}
+				
+				if (latestMessage != null)
+				{
+					item.setMessage(latestMessage);
+				}
+			}
+			
+			logger.trace("[{}] has {} messages", name, item.countProperty().intValue());
+			
+			return item;
+		}
+	}
+
 	public void setFormatter(final FormatterDetails messageFormat)
 	{
 		this.messageFormat = messageFormat;		
@@ -0,0 +1,115 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2014 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.ui.storage.summary;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import pl.baczkowicz.spy.messages.FormattedMessage;
+import pl.baczkowicz.spy.messages.IBaseMessage;
+
+/**
+ * Collects the net changes to a topic summary from a batch of added and
+ * removed messages, so that they can be applied with one update per topic
+ * rather than one per message.
+ */
+public class TopicSummaryChanges<T extends FormattedMessage>
+{
+	/** Changes per topic (in the order the topics were first seen). */
+	private final Map<String, TopicChange<T>> changes = new LinkedHashMap<>();
+	
+	/**
+	 * Records a message added to the store.
+	 * 
+	 * @param message The added message
+	 * @param showTopic Whether the topic should be shown
+	 */
+	public void messageAdded(final T message, final boolean showTopic)
+	{
+		final TopicChange<T> change = getChange(message.getTopic());
+		
+		change.countChange++;
+		change.latestMessage = message;
+		change.showTopic = change.showTopic || showTopic;
+	}
+	
+	/**
+	 * Records a message removed from the store.
+	 * 
+	 * @param message The removed message
+	 */
+	public void messageRemoved(final IBaseMessage message)
+	{
+		getChange(message.getTopic()).countChange--;
+	}
+	
+	/**
+	 * Applies all collected changes to the given topic summary. Expected to be called on the JavaFX thread.
+	 * 
+	 * @param topicSummary The topic summary to update
+	 */
+	public void applyTo(final ObservableTopicSummary<T> topicSummary)
+	{
+		for (final Map.Entry<String, TopicChange<T>> entry : changes.entrySet())
+		{
+			final TopicChange<T> change = entry.getValue();
+			
+			if (topicSummary.applyChanges(entry.getKey(), change.countChange, change.latestMessage) != null && change.showTopic)
+			{
+				topicSummary.setShowValue(entry.getKey(), true);
+			}
+		}
+	}
+	
+	/**
+	 * Gets the number of topics affected.
+	 * 
+	 * @return Number of topics
+	 */
+	public int size()
+	{
+		return changes.size();
+	}
+	
+	private TopicChange<T> getChange(final String topic)
+	{
+		TopicChange<T> change = changes.get(topic);
+		
+		if (change == null)
+		{
+			change = new TopicChange<T>();
+			changes.put(topic, change);
+		}
+		
+		return change;
+	}
+	
+	/**
+	 * Net change for a single topic.
+	 */
+	private static class TopicChange<T>
+	{
+		private int countChange;
+		
+		private T latestMessage;
+		
+		private boolean showTopic;
+	}
+}
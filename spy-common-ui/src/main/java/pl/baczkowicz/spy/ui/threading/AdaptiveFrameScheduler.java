@@ -0,0 +1,252 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2015 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.spy.ui.threading;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.baczkowicz.spy.utils.TimeUtils;
+
+/**
+ * Paces UI updates produced by a background thread. All work for one update
+ * is posted to the JavaFX thread as a single frame, and no new frame is posted
+ * until the previous one has run, so the runLater queue never builds up.
+ *
+ * For each frame, the time spent waiting for the JavaFX thread (which grows
+ * when pulses are slow) and the time spent executing the frame are measured.
+ * These, together with the event backlog, drive the interval between frames
+ * (between MIN_INTERVAL and MAX_INTERVAL) and the work budget, i.e. the number
+ * of events that should go into the next frame. Anything over the budget
+ * should be left for the subsequent frames.
+ */
+public class AdaptiveFrameScheduler
+{
+	private final static Logger logger = LoggerFactory.getLogger(AdaptiveFrameScheduler.class);
+
+	/** Shortest interval between frames (roughly one JavaFX pulse). */
+	public static final long MIN_INTERVAL = 16;
+
+	/** Interval used when there is no backlog. */
+	public static final long DEFAULT_INTERVAL = 100;
+
+	/** Longest interval between frames. */
+	public static final long MAX_INTERVAL = 1000;
+
+	/** How long a frame should take to execute on the JavaFX thread. */
+	public static final long TARGET_FRAME_TIME = 16;
+
+	/** Smallest number of events per frame. */
+	public static final int MIN_WORK_BUDGET = 100;
+
+	/** Initial number of events per frame. */
+	public static final int DEFAULT_WORK_BUDGET = 1000;
+
+	/** Largest number of events per frame. */
+	public static final int MAX_WORK_BUDGET = 50000;
+
+	/** Executor running frames on the JavaFX thread. */
+	private final Executor executor;
+
+	/** Whether a frame has been posted but not completed yet. */
+	private volatile boolean framePending;
+
+	/** Time the last frame waited for the JavaFX thread. */
+	private volatile long lastFrameLatency;
+
+	/** Time the last frame took to execute. */
+	private volatile long lastFrameExecutionTime;
+
+	/** Number of events to put into the next frame. */
+	private volatile int workBudget = DEFAULT_WORK_BUDGET;
+
+	/** Current interval between frames. */
+	private long interval = DEFAULT_INTERVAL;
+
+	/**
+	 * Creates the scheduler using Platform.runLater to run the frames.
+	 */
+	public AdaptiveFrameScheduler()
+	{
+		this(new SimpleRunLaterExecutor());
+	}
+
+	/**
+	 * Creates the scheduler.
+	 *
+	 * @param executor Executor running frames on the JavaFX thread
+	 */
+	public AdaptiveFrameScheduler(final Executor executor)
+	{
+		this.executor = executor;
+	}
+
+	/**
+	 * Posts the given work as one frame.
+	 *
+	 * @param work Tasks to run on the JavaFX thread
+	 * @param events Number of events the work covers
+	 */
+	public void submitFrame(final List<Runnable> work, final int events)
+	{
+		final long posted = TimeUtils.getMonotonicTime();
+		final int budget = workBudget;
+		framePending = true;
+
+		try
+		{
+			executor.execute(createFrame(work, events, posted, budget));
+		}
+		catch (RuntimeException e)
+		{
+			// E.g. rejected after shutdown - otherwise no frame would ever be posted again
+			framePending = false;
+			logger.warn("Cannot post frame with {} events", events, e);
+		}
+	}
+
+	private Runnable createFrame(final List<Runnable> work, final int events, final long posted, final int budget)
+	{
+		return new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				final long start = TimeUtils.getMonotonicTime();
+				try
+				{
+					for (final Runnable task : work)
+					{
+						task.run();
+					}
+				}
+				finally
+				{
+					frameCompleted(start - posted, TimeUtils.getMonotonicTime() - start, events, budget);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Records the frame's measurements and adjusts the work budget.
+	 *
+	 * @param latency Time the frame waited for the JavaFX thread
+	 * @param executionTime Time it took to execute the frame
+	 * @param events Number of events in the frame
+	 * @param budget Work budget the frame was built with
+	 */
+	void frameCompleted(final long latency, final long executionTime, final int events, final int budget)
+	{
+		lastFrameLatency = latency;
+		lastFrameExecutionTime = executionTime;
+
+		if (executionTime > TARGET_FRAME_TIME)
+		{
+			// Too much work - scale down proportionally
+			workBudget = (int) Math.max(MIN_WORK_BUDGET, Math.min(budget, events) * TARGET_FRAME_TIME / executionTime);
+		}
+		else if (events >= budget && executionTime <= TARGET_FRAME_TIME / 2)
+		{
+			// Budget used up and the frame was cheap - allow more
+			workBudget = Math.min(MAX_WORK_BUDGET, budget * 2);
+		}
+
+		framePending = false;
+	}
+
+	/**
+	 * Calculates how long to wait before the next frame.
+	 *
+	 * @param backlog Number of events still waiting to be processed
+	 *
+	 * @return The interval in milliseconds
+	 */
+	public long nextInterval(final long backlog)
+	{
+		if (framePending)
+		{
+			// The JavaFX thread hasn't caught up yet - back off
+			interval = Math.min(MAX_INTERVAL, interval * 2);
+		}
+		else
+		{
+			// Leave the JavaFX thread at least as much time as the last frame needed
+			final long frameCost = lastFrameLatency + lastFrameExecutionTime;
+			final long base = backlog > 0 ? MIN_INTERVAL : DEFAULT_INTERVAL;
+
+			interval = Math.max(MIN_INTERVAL, Math.min(MAX_INTERVAL, Math.max(base, frameCost * 2)));
+		}
+
+		return interval;
+	}
+
+	/**
+	 * Checks whether the last frame is still waiting for or running on the JavaFX thread.
+	 *
+	 * @return True if a frame is pending
+	 */
+	public boolean isFramePending()
+	{
+		return framePending;
+	}
+
+	/**
+	 * Gets the number of events to put into the next frame.
+	 *
+	 * @return The work budget
+	 */
+	public int getWorkBudget()
+	{
+		return workBudget;
+	}
+
+	/**
+	 * Gets the current interval between frames.
+	 *
+	 * @return The interval in milliseconds
+	 */
+	public long getInterval()
+	{
+		return interval;
+	}
+
+	/**
+	 * Gets the time the last frame waited for the JavaFX thread.
+	 *
+	 * @return Latency in milliseconds
+	 */
+	public long getLastFrameLatency()
+	{
+		return lastFrameLatency;
+	}
+
+	/**
+	 * Gets the time the last frame took to execute.
+	 *
+	 * @return Execution time in milliseconds
+	 */
+	public long getLastFrameExecutionTime()
+	{
+		return lastFrameExecutionTime;
+	}
+}
@@ -0,0 +1,93 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2016 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.spy.ui.charts;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class TimeSeriesBufferTest extends TestCase
+{
+	@Test
+	public void testGrowAndOverwrite()
+	{
+		final TimeSeriesBuffer buffer = new TimeSeriesBuffer(100);
+		
+		for (int i = 0; i < 250; i++)
+		{
+			buffer.add(i, i * 2);
+		}
+		
+		assertEquals(100, buffer.size());
+		assertEquals(150, buffer.getTime(0));
+		assertEquals(498.0, buffer.getValue(99));
+		
+		assertEquals(10, buffer.removeOlderThan(160));
+		assertEquals(160, buffer.getTime(0));
+		assertEquals(0, buffer.indexOfTime(0));
+		assertEquals(5, buffer.indexOfTime(165));
+		assertEquals(90, buffer.indexOfTime(1000));
+		
+		// Unlimited
+		final TimeSeriesBuffer unlimited = new TimeSeriesBuffer(0);
+		for (int i = 0; i < 1000; i++)
+		{
+			unlimited.add(i, i);
+		}
+		assertEquals(1000, unlimited.size());
+		assertEquals(0, unlimited.getTime(0));
+	}
+	
+	@Test
+	public void testDownsampling()
+	{
+		final TimeSeriesBuffer buffer = new TimeSeriesBuffer(0);
+		
+		for (int i = 0; i < 100000; i++)
+		{
+			// Flat line with a single spike and a single dip
+			buffer.add(i, i == 33333 ? 100 : (i == 66666 ? -100 : 0));
+		}
+		
+		final int[] selected = LttbDownsampler.downsample(buffer, 0, buffer.size(), 1000);
+		
+		assertEquals(1000, selected.length);
+		assertEquals(0, selected[0]);
+		assertEquals(99999, selected[999]);
+		
+		boolean spike = false;
+		boolean dip = false;
+		for (int i = 0; i < selected.length; i++)
+		{
+			if (i > 0)
+			{
+				assertTrue(selected[i] > selected[i - 1]);
+			}
+			spike = spike || selected[i] == 33333;
+			dip = dip || selected[i] == 66666;
+		}
+		assertTrue(spike);
+		assertTrue(dip);
+		
+		// Nothing to downsample
+		assertEquals(10, LttbDownsampler.downsample(buffer, 5, 15, 1000).length);
+		assertEquals(5, LttbDownsampler.downsample(buffer, 5, 15, 1000)[0]);
+	}
+}
@@ -0,0 +1,98 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2016 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.spy.ui.charts;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import pl.baczkowicz.spy.messages.FormattedMessage;
+import pl.baczkowicz.spy.ui.properties.ChartSeriesProperties;
+
+public class ValueExtractorsTest extends TestCase
+{
+	@Test
+	public void testExtractors() throws Exception
+	{
+		final ParsedPayload json = payload("{ temp: \"20.6\", energy: 42}");
+		final ParsedPayload xml = payload("<book category=\"COOKING\"> <year>2005</year> <price>30.00</price> </book>");
+		
+		assertEquals(20.6, ValueExtractors.createExtractor(ChartSeriesTypeEnum.PAYLOAD_JSON, "$.temp").extract(json));
+		assertEquals(42.0, ValueExtractors.createExtractor(ChartSeriesTypeEnum.PAYLOAD_JSON, "$.energy").extract(json));
+		assertEquals(30.0, ValueExtractors.createExtractor(ChartSeriesTypeEnum.PAYLOAD_XML, "/book/price").extract(xml));
+		assertEquals(-1.5, ValueExtractors.createExtractor(ChartSeriesTypeEnum.PAYLOAD_PLAIN, "").extract(payload(" -1.5 ")));
+		assertEquals(17.0, ValueExtractors.createExtractor(ChartSeriesTypeEnum.PAYLOAD_JSON, "$").extract(payload("17")));
+		assertEquals(4, ValueExtractors.createExtractor(ChartSeriesTypeEnum.SIZE, "").extract(payload("abcd")));
+		
+		// Parsed once for all series
+		assertSame(json.getJson(), json.getJson());
+		assertSame(xml.getXml(), xml.getXml());
+		
+		try
+		{
+			ValueExtractors.createExtractor(ChartSeriesTypeEnum.PAYLOAD_PLAIN, "").extract(payload("abc"));
+			fail();
+		}
+		catch (NumberFormatException e)
+		{
+			// Expected
+		}
+	}
+	
+	@Test
+	public void testParseNumber()
+	{
+		assertEquals(12.0, ParsedPayload.parseNumber("12"));
+		assertEquals(0.5, ParsedPayload.parseNumber(".5"));
+		assertEquals(1e-3, ParsedPayload.parseNumber("1e-3"));
+		assertEquals(Double.NaN, ParsedPayload.parseNumber("NaN"));
+		assertNull(ParsedPayload.parseNumber("1e"));
+		assertNull(ParsedPayload.parseNumber("-"));
+		assertNull(ParsedPayload.parseNumber("{}"));
+		assertNull(ParsedPayload.parseNumber("\u0661\u0662"));
+		assertEquals(Double.NEGATIVE_INFINITY, ParsedPayload.parseNumber("-Infinity"));
+		
+		// Also accepted by Double.valueOf
+		assertEquals(1.0, ParsedPayload.parseNumber("1d"));
+		assertEquals(2.5, ParsedPayload.parseNumber(" 2.5f "));
+		assertEquals(1.0, ParsedPayload.parseNumber("0x1p0"));
+		assertNull(ParsedPayload.parseNumber("0x1F"));
+	}
+	
+	@Test
+	public void testExtractorsCachedPerSeries() throws Exception
+	{
+		final ValueExtractors extractors = new ValueExtractors();
+		final ChartSeriesProperties series = new ChartSeriesProperties(1, "series", "topic", ChartSeriesTypeEnum.PAYLOAD_JSON, "$.temp");
+		
+		final ValueExtractor extractor = extractors.getExtractor(series);
+		assertSame(extractor, extractors.getExtractor(series));
+		
+		series.valueExpressionProperty().set("$.energy");
+		assertNotSame(extractor, extractors.getExtractor(series));
+		assertEquals(42.0, extractors.getExtractor(series).extract(payload("{ temp: 20, energy: 42}")));
+	}
+	
+	private static ParsedPayload payload(final String payload)
+	{
+		return new ParsedPayload(new FormattedMessage(1, "topic", payload, new Date()));
+	}
+}
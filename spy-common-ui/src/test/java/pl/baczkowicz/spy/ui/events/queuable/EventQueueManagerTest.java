@@ -0,0 +1,111 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2015 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.ui.events.queuable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import pl.baczkowicz.spy.messages.FormattedMessage;
+import pl.baczkowicz.spy.ui.events.queuable.ui.BrowseRemovedMessageEvent;
+import pl.baczkowicz.spy.ui.events.queuable.ui.SpyUIEvent;
+import pl.baczkowicz.spy.ui.events.queuable.ui.SpyUIEventType;
+import pl.baczkowicz.spy.ui.events.queuable.ui.TopicSummaryRemovedMessageEvent;
+
+public class EventQueueManagerTest extends TestCase
+{
+	@Test
+	public void testDrainByType()
+	{
+		final EventQueueManager<FormattedMessage> manager = new EventQueueManager<>();
+		
+		for (int i = 0; i < 5; i++)
+		{
+			manager.add(null, new BrowseRemovedMessageEvent<FormattedMessage>(null, null, i));
+			manager.add(null, new TopicSummaryRemovedMessageEvent<FormattedMessage>(null, null));
+		}
+		
+		assertEquals(10, manager.getEventCount());
+		
+		final List<SpyUIEvent<FormattedMessage>> batch = new ArrayList<>();
+		assertEquals(0, manager.drainTo(SpyUIEventType.BROWSE_RECEIVED, batch, 100));
+		assertEquals(3, manager.drainTo(SpyUIEventType.BROWSE_REMOVED, batch, 3));
+		assertEquals(2, manager.drainTo(SpyUIEventType.BROWSE_REMOVED, batch, 100));
+		
+		// Events come out in the order they were added
+		for (int i = 0; i < 5; i++)
+		{
+			assertEquals(i, ((BrowseRemovedMessageEvent<FormattedMessage>) batch.get(i)).getMessageIndex());
+		}
+		
+		assertEquals(5, manager.getEventCount());
+		assertEquals(5, manager.drainTo(SpyUIEventType.TOPIC_SUMMARY_REMOVED, batch, 100));
+		assertEquals(0, manager.getEventCount());
+		
+		// Drained events are still counted as added
+		assertEquals(5, manager.getAddedCount(SpyUIEventType.BROWSE_REMOVED));
+		assertEquals(0, manager.getAddedCount(SpyUIEventType.BROWSE_RECEIVED));
+	}
+	
+	@Test
+	public void testConcurrentProducers() throws InterruptedException
+	{
+		final EventQueueManager<FormattedMessage> manager = new EventQueueManager<>();
+		final int producers = 4;
+		final int eventsPerProducer = 10000;
+		
+		final List<Thread> threads = new ArrayList<>();
+		for (int p = 0; p < producers; p++)
+		{
+			final Thread thread = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					for (int i = 0; i < eventsPerProducer; i++)
+					{
+						manager.add(null, new BrowseRemovedMessageEvent<FormattedMessage>(null, null, i));
+					}					
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		
+		// Drain while the producers are still running
+		final List<SpyUIEvent<FormattedMessage>> batch = new ArrayList<>();
+		int drained = 0;
+		while (drained < producers * eventsPerProducer)
+		{
+			drained = drained + manager.drainTo(SpyUIEventType.BROWSE_REMOVED, batch, 1000);
+			batch.clear();
+		}
+		
+		for (final Thread thread : threads)
+		{
+			thread.join();
+		}
+		
+		assertEquals(producers * eventsPerProducer, drained);
+		assertEquals(0, manager.getEventCount());
+	}
+}
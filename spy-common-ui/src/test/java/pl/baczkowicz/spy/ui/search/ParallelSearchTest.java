@@ -0,0 +1,164 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2016 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.spy.ui.search;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import pl.baczkowicz.spy.messages.FormattedMessage;
+import pl.baczkowicz.spy.utils.tasks.ProgressUpdater;
+
+public class ParallelSearchTest extends TestCase
+{
+	@Test
+	public void testSameResultsAsSerialSearch() throws InterruptedException
+	{
+		final List<FormattedMessage> messages = new ArrayList<>();
+		
+		for (int i = 1; i <= ParallelSearch.CHUNK_SIZE * 5 + 7; i++)
+		{
+			messages.add(new FormattedMessage(i, "topic", "value " + (i % 13), new Date()));
+		}
+		
+		final SearchMatcher matcher = new SimplePayloadMatcher("value 3", true);
+		final List<FormattedMessage> expected = new ArrayList<>();
+		
+		for (final FormattedMessage message : messages)
+		{
+			if (matcher.matches(message))
+			{
+				expected.add(message);
+			}
+		}
+		
+		assertEquals(expected, new ParallelSearch().findMatching(messages, matcher));
+	}
+	
+	@Test
+	public void testInvalidMatcherStopsAfterFirstMessage() throws InterruptedException
+	{
+		final List<FormattedMessage> messages = new ArrayList<>();
+		
+		for (int i = 1; i <= 1000; i++)
+		{
+			messages.add(new FormattedMessage(i, "topic", "value", new Date()));
+		}
+		
+		final List<FormattedMessage> matched = new ArrayList<>();
+		final SearchMatcher matcher = new SearchMatcher()
+		{
+			@Override
+			public boolean matches(final FormattedMessage message)
+			{
+				matched.add(message);
+				return true;
+			}
+
+			@Override
+			public boolean isValid()
+			{
+				return false;
+			}
+		};
+		
+		assertEquals(1, new ParallelSearch().findMatching(messages, matcher).size());
+		assertEquals(1, matched.size());
+	}
+	
+	@Test
+	public void testBatchesAndCancellation() throws InterruptedException
+	{
+		final List<FormattedMessage> messages = new ArrayList<>();
+		
+		for (int i = 1; i <= ParallelSearch.CHUNK_SIZE * 4; i++)
+		{
+			messages.add(new FormattedMessage(i, "topic", "value", new Date()));
+		}
+		
+		final List<List<FormattedMessage>> batches = new ArrayList<>();
+		final ProgressUpdater progress = new ProgressUpdater()
+		{
+			private long current;
+			
+			@Override
+			public void update(final long current, final long max)
+			{
+				this.current = current;
+			}
+			
+			@Override
+			public boolean isCancelled()
+			{
+				// Cancel after the first two chunks
+				return current >= ParallelSearch.CHUNK_SIZE * 2;
+			}
+		};
+		
+		final int searched = new ParallelSearch().search(messages, new SimplePayloadMatcher("value", true), progress, batches::add);
+		
+		assertEquals(ParallelSearch.CHUNK_SIZE * 2, searched);
+		assertEquals(ParallelSearch.CHUNK_SIZE * 2 / ParallelSearch.BATCH_SIZE, batches.size());
+		assertEquals(ParallelSearch.BATCH_SIZE, batches.get(0).size());
+		assertEquals(messages.get(ParallelSearch.BATCH_SIZE), batches.get(1).get(0));
+	}
+	
+	@Test
+	public void testNotThreadSafeMatcher() throws InterruptedException
+	{
+		final List<FormattedMessage> messages = new ArrayList<>();
+		
+		for (int i = 1; i <= ParallelSearch.CHUNK_SIZE * 3; i++)
+		{
+			messages.add(new FormattedMessage(i, "topic", "value" + (i % 2), new Date()));
+		}
+		
+		final Thread caller = Thread.currentThread();
+		final SearchMatcher matcher = new SearchMatcher()
+		{
+			@Override
+			public boolean matches(final FormattedMessage message)
+			{
+				assertSame(caller, Thread.currentThread());
+				return message.getPayload().equals("value1");
+			}
+
+			@Override
+			public boolean isValid()
+			{
+				return true;
+			}
+			
+			@Override
+			public boolean isThreadSafe()
+			{
+				return false;
+			}
+		};
+		
+		final List<FormattedMessage> found = new ParallelSearch().findMatching(messages, matcher);
+		assertEquals(ParallelSearch.CHUNK_SIZE * 3 / 2, found.size());
+		assertEquals(messages.get(0), found.get(0));
+		assertEquals(messages.get(messages.size() - 2), found.get(found.size() - 1));
+	}
+}
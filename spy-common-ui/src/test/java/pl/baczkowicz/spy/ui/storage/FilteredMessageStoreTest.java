@@ -0,0 +1,121 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2016 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.spy.ui.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import pl.baczkowicz.spy.messages.FormattedMessage;
+
+public class FilteredMessageStoreTest extends TestCase
+{
+	@Test
+	public void testTopicTogglesSameAsRebuild()
+	{
+		final Random random = new Random(1);
+		final MessageListWithObservableTopicSummary<FormattedMessage> allMessages =
+				new MessageListWithObservableTopicSummary<>(200, 300, "all", null, 100);
+		final FilteredMessageStore<FormattedMessage> store =
+				new FilteredMessageStore<>(allMessages, 200, 300, "all", null, null, 100);
+
+		for (int i = 1; i <= 5000; i++)
+		{
+			final int operation = random.nextInt(20);
+			final String topic = "topic/" + random.nextInt(10);
+
+			if (operation == 0)
+			{
+				store.applyTopicFilter(topic, true);
+			}
+			else if (operation == 1)
+			{
+				store.updateTopicFilter(topic, false);
+			}
+			else if (operation == 2 && allMessages.getMessages().size() > 0)
+			{
+				// Garbage collection (from both stores)
+				final FormattedMessage removed = allMessages.remove(random.nextInt(allMessages.getMessages().size()));
+				store.getFilteredMessages().getMessages().remove(removed);
+			}
+			else
+			{
+				final FormattedMessage message = new FormattedMessage(i, topic);
+				final FormattedMessage evicted = allMessages.add(message);
+				store.getFilteredMessages().getMessages().remove(evicted);
+
+				if (store.getBrowsedTopics().contains(topic))
+				{
+					store.getFilteredMessages().add(message);
+				}
+			}
+
+			if (operation < 2)
+			{
+				assertEquals(expectedMessages(allMessages, store), store.getMessages());
+			}
+		}
+	}
+
+	@Test
+	public void testCountsUpdated()
+	{
+		final MessageListWithObservableTopicSummary<FormattedMessage> allMessages =
+				new MessageListWithObservableTopicSummary<>(10, 10, "all", null, 100);
+		final FilteredMessageStore<FormattedMessage> store =
+				new FilteredMessageStore<>(allMessages, 10, 10, "all", null, null, 100);
+
+		for (int i = 1; i <= 6; i++)
+		{
+			allMessages.add(new FormattedMessage(i, "topic/" + (i % 2)));
+		}
+
+		store.applyTopicFilter("topic/1", true);
+		store.applyTopicFilter("topic/0", true);
+		assertEquals(6, store.getMessages().size());
+		assertEquals(6, store.getMessages().get(0).getId());
+		assertEquals(3, store.getFilteredMessages().getTopicSummary().getCountForTopic("topic/0"));
+
+		store.updateTopicFilter("topic/0", false);
+		assertEquals(3, store.getMessages().size());
+		assertEquals(5, store.getMessages().get(0).getId());
+		assertEquals(0, store.getFilteredMessages().getTopicSummary().getCountForTopic("topic/0"));
+		assertEquals(3, store.getFilteredMessages().getTopicSummary().getCountForTopic("topic/1"));
+	}
+
+	private static List<FormattedMessage> expectedMessages(
+			final MessageListWithObservableTopicSummary<FormattedMessage> allMessages, final FilteredMessageStore<FormattedMessage> store)
+	{
+		final List<FormattedMessage> expected = new ArrayList<>();
+
+		for (final FormattedMessage message : allMessages.getMessages())
+		{
+			if (store.getBrowsedTopics().contains(message.getTopic()))
+			{
+				expected.add(message);
+			}
+		}
+
+		return expected;
+	}
+}
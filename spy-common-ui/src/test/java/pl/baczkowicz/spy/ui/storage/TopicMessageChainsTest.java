@@ -0,0 +1,56 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2016 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.spy.ui.storage;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import pl.baczkowicz.spy.messages.FormattedMessage;
+
+public class TopicMessageChainsTest extends TestCase
+{
+	@Test
+	public void testMessagesNotInChainsAreOldest()
+	{
+		final TopicMessageChains<FormattedMessage> chains = new TopicMessageChains<>();
+		final FormattedMessage removed = new FormattedMessage(1, "a", "", null);
+		final FormattedMessage a2 = new FormattedMessage(2, "a", "", null);
+		final FormattedMessage b3 = new FormattedMessage(3, "b", "", null);
+		final FormattedMessage a4 = new FormattedMessage(4, "a", "", null);
+		final FormattedMessage b5 = new FormattedMessage(5, "b", "", null);
+
+		for (final FormattedMessage message : Arrays.asList(removed, a2, b3, a4, b5))
+		{
+			chains.messageAdded(message);
+		}
+		chains.messageRemoved(removed);
+
+		assertEquals(TopicMessageChains.NO_SEQUENCE, chains.getSequence(removed));
+		assertTrue(chains.getSequence(a2) < chains.getSequence(a4));
+
+		// The removed message stays after all messages in the chains
+		final List<FormattedMessage> merged = chains.mergeInto(Arrays.asList(a4, a2, removed), Arrays.asList("b"));
+		assertEquals(Arrays.asList(b5, a4, b3, a2, removed), merged);
+		assertEquals(Arrays.asList(b5, b3, removed), chains.mergeInto(Arrays.asList(removed), Arrays.asList("b")));
+	}
+}
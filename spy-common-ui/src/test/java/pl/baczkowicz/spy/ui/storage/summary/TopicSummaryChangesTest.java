@@ -0,0 +1,78 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.ui.storage.summary;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import pl.baczkowicz.spy.messages.FormattedMessage;
+import pl.baczkowicz.spy.ui.properties.SubscriptionTopicSummaryProperties;
+
+public class TopicSummaryChangesTest extends TestCase
+{
+	@Test
+	public void testSameAsPerMessageUpdates()
+	{
+		final Random random = new Random(1);
+		final ObservableTopicSummary<FormattedMessage> expected = new ObservableTopicSummary<>("expected", 100);
+		final ObservableTopicSummary<FormattedMessage> actual = new ObservableTopicSummary<>("actual", 100);
+		final List<FormattedMessage> stored = new ArrayList<>();
+		
+		for (int window = 0; window < 50; window++)
+		{
+			final TopicSummaryChanges<FormattedMessage> changes = new TopicSummaryChanges<>();
+			
+			for (int i = 0; i < 100; i++)
+			{
+				if (stored.size() > 0 && random.nextInt(3) == 0)
+				{
+					final FormattedMessage removed = stored.remove(random.nextInt(stored.size()));
+					expected.removeMessage(removed);
+					changes.messageRemoved(removed);
+				}
+				else
+				{
+					final FormattedMessage added = new FormattedMessage(i, "topic/" + random.nextInt(20));
+					added.setFormattedPayload("payload " + i);
+					stored.add(added);
+					expected.addMessage(added);
+					changes.messageAdded(added, false);
+				}
+			}
+			
+			assertTrue(changes.size() <= 20);
+			changes.applyTo(actual);
+		}
+		
+		assertEquals(expected.getObservableMessagesPerTopic().size(), actual.getObservableMessagesPerTopic().size());
+		
+		for (final SubscriptionTopicSummaryProperties<FormattedMessage> item : expected.getObservableMessagesPerTopic())
+		{
+			final SubscriptionTopicSummaryProperties<FormattedMessage> other = actual.applyChanges(item.topicProperty().getValue(), 0, null);
+			
+			assertEquals(item.countProperty().intValue(), other.countProperty().intValue());
+			assertSame(item.getMqttContent(), other.getMqttContent());
+		}
+	}
+}
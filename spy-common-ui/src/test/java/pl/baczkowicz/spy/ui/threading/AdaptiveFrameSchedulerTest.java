@@ -0,0 +1,109 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2015 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.spy.ui.threading;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class AdaptiveFrameSchedulerTest extends TestCase
+{
+	@Test
+	public void testFramePendingBacksOff()
+	{
+		final List<Runnable> posted = new ArrayList<>();
+		final AdaptiveFrameScheduler scheduler = new AdaptiveFrameScheduler(posted::add);
+		final AtomicInteger executed = new AtomicInteger();
+
+		scheduler.submitFrame(Arrays.asList(executed::incrementAndGet, executed::incrementAndGet), 2);
+		assertTrue(scheduler.isFramePending());
+		assertEquals(1, posted.size());
+
+		// Keeps doubling while the frame is pending, up to the maximum
+		assertEquals(AdaptiveFrameScheduler.DEFAULT_INTERVAL * 2, scheduler.nextInterval(100));
+		for (int i = 0; i < 10; i++)
+		{
+			scheduler.nextInterval(100);
+		}
+		assertEquals(AdaptiveFrameScheduler.MAX_INTERVAL, scheduler.getInterval());
+
+		posted.get(0).run();
+		assertEquals(2, executed.get());
+		assertFalse(scheduler.isFramePending());
+
+		// Cheap frame with a backlog - go as fast as possible
+		assertEquals(AdaptiveFrameScheduler.MIN_INTERVAL, scheduler.nextInterval(100));
+
+		// No backlog - back to the default
+		assertEquals(AdaptiveFrameScheduler.DEFAULT_INTERVAL, scheduler.nextInterval(0));
+	}
+
+	@Test
+	public void testWorkBudget()
+	{
+		final AdaptiveFrameScheduler scheduler = new AdaptiveFrameScheduler(Runnable::run);
+		final int budget = scheduler.getWorkBudget();
+
+		// Budget used up quickly - grows
+		scheduler.frameCompleted(0, 0, budget, budget);
+		assertEquals(budget * 2, scheduler.getWorkBudget());
+
+		// Four times over the target frame time - shrinks proportionally
+		scheduler.frameCompleted(0, AdaptiveFrameScheduler.TARGET_FRAME_TIME * 4, budget * 2, budget * 2);
+		assertEquals(budget / 2, scheduler.getWorkBudget());
+
+		// Never below the minimum
+		scheduler.frameCompleted(0, 10000, 10, budget);
+		assertEquals(AdaptiveFrameScheduler.MIN_WORK_BUDGET, scheduler.getWorkBudget());
+
+		// Slow frame - the interval leaves the JavaFX thread some room
+		scheduler.frameCompleted(100, 50, 10, budget);
+		assertEquals(300, scheduler.nextInterval(100));
+	}
+
+	@Test
+	public void testRejectedFrame()
+	{
+		final List<Runnable> posted = new ArrayList<>();
+		final AtomicInteger attempts = new AtomicInteger();
+		final AdaptiveFrameScheduler scheduler = new AdaptiveFrameScheduler(task -> 
+		{
+			if (attempts.incrementAndGet() == 1)
+			{
+				throw new RejectedExecutionException();
+			}
+			posted.add(task);
+		});
+
+		scheduler.submitFrame(Arrays.asList(() -> {}), 1);
+		assertFalse(scheduler.isFramePending());
+
+		// Next frame still gets posted
+		scheduler.submitFrame(Arrays.asList(() -> {}), 1);
+		assertTrue(scheduler.isFramePending());
+		assertEquals(1, posted.size());
+	}
+}
@@ -0,0 +1,527 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2015 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.spy.audit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.baczkowicz.spy.exceptions.SpyException;
+import pl.baczkowicz.spy.files.ByteLineReader;
+import pl.baczkowicz.spy.messages.BaseMessage;
+import pl.baczkowicz.spy.utils.tasks.ProgressUpdater;
+
+/**
+ * Sparse index of an audit log, kept in a sidecar file next to the log (with
+ * the INDEX_FILE_EXTENSION appended). For every n-th message, it records the
+ * byte offset of the message's line and the latest message time seen so far,
+ * so that replay can jump to any message number or time by reading at most n
+ * lines. It also records the number of messages, and the topics with their
+ * message counts, so that none of these require a scan of the log.
+ * 
+ * The index is built in a single pass over the log, and then reused for as
+ * long as the log's size and modification time stay the same. Empty lines are
+ * not counted as messages.
+ */
+public class AuditIndex
+{
+	/** Diagnostic logger. */
+	private final static Logger logger = LoggerFactory.getLogger(AuditIndex.class);
+	
+	/** Extension appended to the log's file name to get the index file name. */
+	public static final String INDEX_FILE_EXTENSION = ".idx";
+	
+	/** Default number of messages between index entries. */
+	public static final int DEFAULT_INTERVAL = 1000;
+	
+	/** Maximum number of topics recorded in the index. */
+	public static final int MAX_TOPICS = 100000;
+	
+	/** Marks the index files ("SPYI"). */
+	private static final int MAGIC = 0x53505949;
+	
+	private static final int VERSION = 1;
+	
+	/** Size of the indexed log. */
+	private long logSize;
+	
+	/** Modification time of the indexed log. */
+	private long logModified;
+	
+	/** Number of messages between index entries. */
+	private int interval;
+	
+	private long messageCount;
+	
+	/** Offsets of the lines of every interval-th message. */
+	private long[] offsets;
+	
+	/** Latest message time up to (and including) every interval-th message. */
+	private long[] times;
+	
+	private int entryCount;
+	
+	/** Message counts per topic, in the order of first appearance. */
+	private final Map<String, Long> topics = new LinkedHashMap<>();
+	
+	/** Whether all topics have been recorded (see MAX_TOPICS). */
+	private boolean allTopics = true;
+	
+	private AuditIndex(final int interval, final int expectedEntries)
+	{
+		this.interval = interval;
+		this.offsets = new long[Math.max(16, expectedEntries)];
+		this.times = new long[offsets.length];
+	}
+	
+	/**
+	 * Gets the index file for the given log.
+	 * 
+	 * @param logFile The audit log
+	 * 
+	 * @return The index file (which might not exist)
+	 */
+	public static File getIndexFile(final File logFile)
+	{
+		return new File(logFile.getPath() + INDEX_FILE_EXTENSION);
+	}
+	
+	/**
+	 * Reads the index of the given log if it exists and is up to date;
+	 * otherwise builds it and saves it for later use.
+	 * 
+	 * @param logFile The audit log
+	 * @param decoder Decoder of the log's lines
+	 * @param progress Updated with the number of indexed bytes, and checked for cancellation (can be null)
+	 * 
+	 * @return The index
+	 * 
+	 * @throws SpyException Thrown when the log cannot be read
+	 */
+	public static AuditIndex loadOrBuild(final File logFile, final IAuditLineDecoder decoder, final ProgressUpdater progress) throws SpyException
+	{
+		final File indexFile = getIndexFile(logFile);
+		
+		if (indexFile.exists())
+		{
+			try
+			{
+				final AuditIndex index = read(indexFile);
+				
+				if (index.isValidFor(logFile))
+				{
+					logger.info("Using audit log index at {}", indexFile);
+					return index;
+				}
+				
+				logger.info("Audit log index at {} is out of date", indexFile);
+			}
+			catch (IOException e)
+			{
+				logger.warn("Cannot read audit log index at " + indexFile, e);
+			}
+		}
+		
+		final AuditIndex index;
+		try
+		{
+			index = build(logFile, decoder, DEFAULT_INTERVAL, progress);
+		}
+		catch (IOException e)
+		{
+			throw new SpyException("Cannot index the audit log at " + logFile, e);
+		}
+		
+		if (progress == null || !progress.isCancelled())
+		{
+			try
+			{
+				index.write(indexFile);
+			}
+			catch (IOException e)
+			{
+				// The index can still be used, just needs to be rebuilt next time
+				logger.warn("Cannot save audit log index at " + indexFile, e);
+			}
+		}
+		
+		return index;
+	}
+	
+	/**
+	 * Builds the index of the given log.
+	 * 
+	 * @param logFile The audit log
+	 * @param decoder Decoder of the log's lines
+	 * @param interval Number of messages between index entries
+	 * @param progress Updated with the number of indexed bytes, and checked for cancellation (can be null)
+	 * 
+	 * @return The index
+	 * 
+	 * @throws IOException Thrown when the log cannot be read
+	 */
+	public static AuditIndex build(final File logFile, final IAuditLineDecoder decoder, final int interval, final ProgressUpdater progress) throws IOException
+	{
+		final long size = logFile.length();
+		final long modified = logFile.lastModified();
+		
+		// Assume about 200 bytes per message
+		final AuditIndex index = new AuditIndex(interval, (int) Math.min(1 << 20, size / 200 / interval + 1));
+		index.logSize = size;
+		index.logModified = modified;
+		
+		long latestTime = Long.MIN_VALUE;
+		long failed = 0;
+		
+		// Same charset as used when writing the log
+		try (final ByteLineReader reader = new ByteLineReader(new FileInputStream(logFile), 0, Charset.defaultCharset()))
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				if (line.isEmpty())
+				{
+					continue;
+				}
+				
+				try
+				{
+					final BaseMessage message = decoder.decodeHeader(line);
+					latestTime = Math.max(latestTime, message.getDate().getTime());
+					index.addTopic(message.getTopic());
+				}
+				catch (SpyException | RuntimeException e)
+				{
+					failed++;
+				}
+				
+				if (index.messageCount % interval == 0)
+				{
+					index.addEntry(reader.getLineStart(), latestTime);
+				}
+				index.messageCount++;
+				
+				if (progress != null && index.messageCount % interval == 0)
+				{
+					if (progress.isCancelled())
+					{
+						logger.info("Indexing cancelled");
+						break;
+					}
+					progress.update(reader.getOffset(), size);
+				}
+			}
+		}
+		
+		if (failed > 0)
+		{
+			logger.warn("{} message(s) in {} could not be decoded", failed, logFile);
+		}
+		logger.info("Indexed {} messages in {}", index.messageCount, logFile);
+		
+		return index;
+	}
+	
+	private void addEntry(final long offset, final long time)
+	{
+		if (entryCount == offsets.length)
+		{
+			offsets = Arrays.copyOf(offsets, entryCount * 2);
+			times = Arrays.copyOf(times, entryCount * 2);
+		}
+		
+		offsets[entryCount] = offset;
+		times[entryCount] = time;
+		entryCount++;
+	}
+	
+	private void addTopic(final String topic)
+	{
+		final Long count = topics.get(topic);
+		
+		if (count != null)
+		{
+			topics.put(topic, count + 1);
+		}
+		else if (topics.size() < MAX_TOPICS)
+		{
+			topics.put(topic, 1L);
+		}
+		else
+		{
+			allTopics = false;
+		}
+	}
+	
+	/**
+	 * Reads the index from the given file.
+	 * 
+	 * @param indexFile The index file
+	 * 
+	 * @return The index
+	 * 
+	 * @throws IOException Thrown when the file cannot be read or is not a valid index
+	 */
+	public static AuditIndex read(final File indexFile) throws IOException
+	{
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+			{
+				throw new IOException("Not a valid audit log index");
+			}
+			
+			final long logSize = in.readLong();
+			final long logModified = in.readLong();
+			final int interval = in.readInt();
+			final long messageCount = in.readLong();
+			final int entryCount = in.readInt();
+			
+			final AuditIndex index = new AuditIndex(interval, entryCount);
+			index.logSize = logSize;
+			index.logModified = logModified;
+			index.messageCount = messageCount;
+			
+			for (int i = 0; i < entryCount; i++)
+			{
+				index.addEntry(in.readLong(), in.readLong());
+			}
+			
+			index.allTopics = in.readBoolean();
+			final int topicCount = in.readInt();
+			for (int i = 0; i < topicCount; i++)
+			{
+				final byte[] topic = new byte[in.readInt()];
+				in.readFully(topic);
+				index.topics.put(new String(topic, StandardCharsets.UTF_8), in.readLong());
+			}
+			
+			return index;
+		}
+	}
+	
+	/**
+	 * Writes the index to the given file. The file is replaced only once the
+	 * whole index has been written.
+	 * 
+	 * @param indexFile The index file
+	 * 
+	 * @throws IOException Thrown when the file cannot be written
+	 */
+	public void write(final File indexFile) throws IOException
+	{
+		final File tempFile = new File(indexFile.getPath() + ".tmp");
+		
+		try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(logSize);
+			out.writeLong(logModified);
+			out.writeInt(interval);
+			out.writeLong(messageCount);
+			out.writeInt(entryCount);
+			
+			for (int i = 0; i < entryCount; i++)
+			{
+				out.writeLong(offsets[i]);
+				out.writeLong(times[i]);
+			}
+			
+			out.writeBoolean(allTopics);
+			out.writeInt(topics.size());
+			for (final Map.Entry<String, Long> topic : topics.entrySet())
+			{
+				// Not using writeUTF, as topics can be longer than it allows
+				final byte[] bytes = topic.getKey().getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+				out.writeLong(topic.getValue());
+			}
+		}
+		
+		Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	/**
+	 * Checks whether this index is up to date for the given log.
+	 * 
+	 * @param logFile The audit log
+	 * 
+	 * @return True if the log hasn't changed since it was indexed
+	 */
+	public boolean isValidFor(final File logFile)
+	{
+		return logFile.length() == logSize && logFile.lastModified() == logModified;
+	}
+	
+	/**
+	 * Finds the index entry to start reading from to get to the given message.
+	 * 
+	 * @param messageNumber Number of the message (starting from 0)
+	 * 
+	 * @return The entry, or -1 if there are no entries
+	 */
+	public int findEntryForMessage(final long messageNumber)
+	{
+		if (entryCount == 0)
+		{
+			return -1;
+		}
+		
+		return (int) Math.max(0, Math.min(entryCount - 1, messageNumber / interval));
+	}
+	
+	/**
+	 * Finds the last index entry at which the latest message time is still
+	 * before the given time (so that the first message at or after the given
+	 * time comes after that entry).
+	 * 
+	 * @param time The time to look for
+	 * 
+	 * @return The entry, or -1 if the first message is already at or after the given time
+	 */
+	public int findEntryBeforeTime(final long time)
+	{
+		// Times are the latest message times seen so far, so never decreasing
+		int low = 0;
+		int high = entryCount - 1;
+		int found = -1;
+		
+		while (low <= high)
+		{
+			final int middle = (low + high) >>> 1;
+			
+			if (times[middle] < time)
+			{
+				found = middle;
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle - 1;
+			}
+		}
+		
+		return found;
+	}
+	
+	/**
+	 * Gets the number of messages in the log.
+	 * 
+	 * @return Number of messages
+	 */
+	public long getMessageCount()
+	{
+		return messageCount;
+	}
+	
+	/**
+	 * Gets the number of messages between index entries.
+	 * 
+	 * @return The interval
+	 */
+	public int getInterval()
+	{
+		return interval;
+	}
+	
+	/**
+	 * Gets the number of index entries.
+	 * 
+	 * @return Number of entries
+	 */
+	public int getEntryCount()
+	{
+		return entryCount;
+	}
+	
+	/**
+	 * Gets the number of the first message at the given entry.
+	 * 
+	 * @param entry The entry
+	 * 
+	 * @return Message number (starting from 0)
+	 */
+	public long getMessageNumber(final int entry)
+	{
+		return (long) entry * interval;
+	}
+	
+	/**
+	 * Gets the offset of the line of the first message at the given entry.
+	 * 
+	 * @param entry The entry
+	 * 
+	 * @return Offset in bytes
+	 */
+	public long getOffset(final int entry)
+	{
+		return offsets[entry];
+	}
+	
+	/**
+	 * Gets the latest message time up to (and including) the first message at the given entry.
+	 * 
+	 * @param entry The entry
+	 * 
+	 * @return Time in milliseconds
+	 */
+	public long getTime(final int entry)
+	{
+		return times[entry];
+	}
+	
+	/**
+	 * Gets the message counts per topic, in the order of first appearance.
+	 * 
+	 * @return Message counts per topic
+	 */
+	public Map<String, Long> getTopics()
+	{
+		return Collections.unmodifiableMap(topics);
+	}
+	
+	/**
+	 * Checks whether all topics have been recorded (up to MAX_TOPICS are).
+	 * 
+	 * @return True if all topics are in the index
+	 */
+	public boolean hasAllTopics()
+	{
+		return allTopics;
+	}
+}
@@ -21,10 +21,14 @@
 package pl.baczkowicz.spy.audit;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import pl.baczkowicz.spy.exceptions.SpyException;
 import pl.baczkowicz.spy.messages.BaseMessage;
 import pl.baczkowicz.spy.utils.ThreadingUtils;
 import pl.baczkowicz.spy.utils.TimeUtils;
@@ -34,16 +38,16 @@ public abstract class AuditReplay implements IAuditReplayIO, Runnable
 	/** Diagnostic logger. */
 	private final static Logger logger = LoggerFactory.getLogger(AuditReplay.class);
 	
-	protected StreamedAuditReader auditReader;
+	protected IAuditReader auditReader;
 	
 	/** Current replay time (as in the message log). */
-	private long replayTime;
+	private volatile long replayTime;
 
 	/** Timestamp of the last time checker run. */
 	private long lastUpdated;
 	
 	/** Flag indicating whether the time checker is running. */
-	private boolean running = false;
+	private volatile boolean running = false;
 
 	/** The current running speed. */
 	private double speed = 1;
@@ -51,11 +55,15 @@ public abstract class AuditReplay implements IAuditReplayIO, Runnable
 	@Override
 	public long readFromFile(final String logLocation)
 	{
-		auditReader = new StreamedAuditReader();
+		if (auditReader != null)
+		{
+			auditReader.closeAuditFile();
+			auditReader = null;
+		}
 		
 		try
 		{
-			auditReader.openAuditFile(new File(logLocation));
+			auditReader = openAuditFile(new File(logLocation));
 			logger.info("Found {} messages in {}", auditReader.getCount(), logLocation);
 			
 			return auditReader.getCount();
@@ -78,10 +86,73 @@ public abstract class AuditReplay implements IAuditReplayIO, Runnable
 		return auditReader.getCount();
 	}
 	
+	@Override
+	public Map<String, Long> getTopicSummary()
+	{
+		if (auditReader == null)
+		{
+			return Collections.emptyMap();
+		}
+		
+		return auditReader.getTopics();
+	}
+	
+	@Override
+	public synchronized long seekToMessage(final long messageNumber)
+	{
+		if (auditReader == null)
+		{
+			return 0;
+		}
+		
+		try
+		{
+			return positionChanged(auditReader.seekToMessage(messageNumber));
+		}
+		catch (IOException e)
+		{
+			logger.error("Cannot seek to message number " + messageNumber, e);
+			return positionChanged(auditReader.getPosition());
+		}
+	}
+	
+	@Override
+	public synchronized long seekToTime(final long timestamp)
+	{
+		if (auditReader == null)
+		{
+			return 0;
+		}
+		
+		try
+		{
+			return positionChanged(auditReader.seekToTime(timestamp));
+		}
+		catch (IOException e)
+		{
+			logger.error("Cannot seek to time " + timestamp, e);
+			return positionChanged(auditReader.getPosition());
+		}
+	}
+	
+	private long positionChanged(final long messageNumber)
+	{
+		messagePositionChanged(messageNumber);
+		
+		// Continue replaying from the new position's time
+		if (running && messageNumber < auditReader.getCount())
+		{
+			replayTime = getMessageTime();
+			lastUpdated = TimeUtils.getMonotonicTime();
+		}
+		
+		return messageNumber;
+	}
+	
 	@Override
 	public void start()
 	{
-		if (auditReader.getCount() > 0)
+		if (auditReader != null && auditReader.getCount() > 0)
 		{
 			replayTime = getMessageTime();
 			lastUpdated = TimeUtils.getMonotonicTime();
@@ -147,15 +218,18 @@ public abstract class AuditReplay implements IAuditReplayIO, Runnable
 		
 		while (running)
 		{
-			final long now = TimeUtils.getMonotonicTime();
-			
-			if (now > lastUpdated)
+			synchronized (this)
 			{
-				final long sinceLastUpdated = now - lastUpdated;				
-				final double increase = sinceLastUpdated * speed;
+				final long now = TimeUtils.getMonotonicTime();
 				
-				replayTime =  replayTime + (long) increase;
-				lastUpdated = now;
+				if (now > lastUpdated)
+				{
+					final long sinceLastUpdated = now - lastUpdated;				
+					final double increase = sinceLastUpdated * speed;
+					
+					replayTime =  replayTime + (long) increase;
+					lastUpdated = now;
+				}
 			}
 			
 			if (ThreadingUtils.sleep(10))			
@@ -168,7 +242,36 @@ public abstract class AuditReplay implements IAuditReplayIO, Runnable
 		ThreadingUtils.logThreadEnding();
 	}
 	
+	/**
+	 * Opens the given audit log. By default, the log is read line by line.
+	 * 
+	 * @param file The audit log
+	 * 
+	 * @return The reader for the log
+	 * 
+	 * @throws SpyException Thrown when the log cannot be opened
+	 */
+	protected IAuditReader openAuditFile(final File file) throws SpyException
+	{
+		final StreamedAuditReader reader = new StreamedAuditReader();
+		reader.openAuditFile(file, this::decodeHeader);
+		
+		return reader;
+	}
+	
 	abstract protected long getMessageTime();
 
 	abstract protected BaseMessage getMessage();
+	
+	/**
+	 * Decodes the topic and time of the message on the given line (used for indexing the log).
+	 */
+	abstract protected BaseMessage decodeHeader(final String line) throws SpyException;
+	
+	/**
+	 * Called after seeking, so that any message read ahead gets discarded.
+	 * 
+	 * @param messageNumber Number of the next message
+	 */
+	abstract protected void messagePositionChanged(final long messageNumber);
 }
@@ -0,0 +1,41 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2015 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.spy.audit;
+
+import pl.baczkowicz.spy.exceptions.SpyException;
+import pl.baczkowicz.spy.messages.BaseMessage;
+
+/**
+ * Decodes the basic details of messages in an audit log, as needed for indexing.
+ */
+public interface IAuditLineDecoder
+{
+	/**
+	 * Decodes the topic and time of the message on the given line. The payload
+	 * doesn't need to be decoded.
+	 * 
+	 * @param line The audit log line
+	 * 
+	 * @return The message (with at least the topic and date set)
+	 * 
+	 * @throws SpyException Thrown when the line cannot be decoded
+	 */
+	BaseMessage decodeHeader(final String line) throws SpyException;
+}
@@ -0,0 +1,90 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2015 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.spy.audit;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Reads messages from an audit log in order, and allows seeking to any
+ * message number or time. How messages are read is up to the implementation
+ * (e.g. line by line, or block by block).
+ */
+public interface IAuditReader
+{
+	/**
+	 * Gets the number of messages in the log.
+	 * 
+	 * @return Number of messages
+	 */
+	long getCount();
+	
+	/**
+	 * Gets the number of messages per topic.
+	 * 
+	 * @return Message counts per topic
+	 */
+	Map<String, Long> getTopics();
+	
+	/**
+	 * Checks if there are any more messages to read.
+	 * 
+	 * @return True if there is a next message
+	 * 
+	 * @throws IOException Thrown when the log cannot be read
+	 */
+	boolean hasNext() throws IOException;
+	
+	/**
+	 * Gets the number of the next message to be read.
+	 * 
+	 * @return Message number (starting from 0)
+	 */
+	long getPosition();
+	
+	/**
+	 * Positions the reader at the given message.
+	 * 
+	 * @param messageNumber Number of the message (starting from 0)
+	 * 
+	 * @return Number of the next message to be read (lower than requested if there are not enough messages)
+	 * 
+	 * @throws IOException Thrown when the log cannot be read
+	 */
+	long seekToMessage(final long messageNumber) throws IOException;
+	
+	/**
+	 * Positions the reader at the first message logged at or after the given
+	 * time (if messages are not in order, at the first message after which all
+	 * messages are later than any message before the given time).
+	 * 
+	 * @param time The time to look for (in milliseconds)
+	 * 
+	 * @return Number of the next message to be read (equal to the message count if all messages are before the given time)
+	 * 
+	 * @throws IOException Thrown when the log cannot be read
+	 */
+	long seekToTime(final long time) throws IOException;
+	
+	/**
+	 * Closes the log.
+	 */
+	void closeAuditFile();
+}
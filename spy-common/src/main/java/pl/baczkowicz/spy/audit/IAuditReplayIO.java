@@ -19,6 +19,8 @@
  */
 package pl.baczkowicz.spy.audit;
 
+import java.util.Map;
+
 import pl.baczkowicz.spy.messages.BaseMessage;
 import pl.baczkowicz.spy.utils.tasks.StoppableTask;
 
@@ -43,6 +45,38 @@ public interface IAuditReplayIO extends StoppableTask
 	 */
 	long getMessageCount();
 	
+	/**
+	 * Gets the number of messages per topic in the file (taken from the file's index).
+	 * 
+	 * @return Message counts per topic
+	 */
+	Map<String, Long> getTopicSummary();
+	
+	/**
+	 * Positions the replay at the given message, so that it becomes the next message.
+	 * 
+	 * @param messageNumber Number of the message (starting from 0)
+	 * 
+	 * @return Number of the next message
+	 */
+	long seekToMessage(final long messageNumber);
+	
+	/**
+	 * Positions the replay at the first message logged at or after the given time.
+	 * 
+	 * @param timestamp The time to look for (in milliseconds)
+	 * 
+	 * @return Number of the next message (equal to the message count if there are no more messages)
+	 */
+	long seekToTime(final long timestamp);
+	
+	/**
+	 * Gets the number of the next message to be returned.
+	 * 
+	 * @return Number of the next message (starting from 0)
+	 */
+	long getMessagePosition();
+	
 	/**
 	 * Starts the time checker to see if messages are due for publishing - see the isReadyToPublish method.
 	 */
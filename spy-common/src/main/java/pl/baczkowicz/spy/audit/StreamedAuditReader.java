@@ -21,50 +21,186 @@
 package pl.baczkowicz.spy.audit;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Map;
 
 import pl.baczkowicz.spy.exceptions.SpyException;
-import pl.baczkowicz.spy.files.FileUtils;
-import pl.baczkowicz.spy.files.StreamedFileReader;
+import pl.baczkowicz.spy.files.ByteLineReader;
 
-public class StreamedAuditReader
+/**
+ * Reads messages from an audit log, one line at a time. Uses the log's
+ * sidecar index (see AuditIndex) to get the number of messages and to seek to
+ * any message number or time without reading the log from the start.
+ */
+public class StreamedAuditReader implements IAuditReader
 {
 	private long lines;
 	
 	private File file;
 	
-	private StreamedFileReader reader = new StreamedFileReader();
+	private AuditIndex index;
+	
+	private IAuditLineDecoder decoder;
+	
+	private ByteLineReader reader;
+	
+	/** The next line to return (read ahead; null if not read yet). */
+	private String nextLine;
 	
-	public void openAuditFile(final File selectedFile) throws SpyException
+	/** Number of the next message to return. */
+	private long position;
+	
+	public void openAuditFile(final File selectedFile, final IAuditLineDecoder decoder) throws SpyException
 	{
 		file = selectedFile;
-		lines = FileUtils.countLines(file);
+		this.decoder = decoder;
+		index = AuditIndex.loadOrBuild(file, decoder, null);
+		lines = index.getMessageCount();
+		
+		try
+		{
+			openAt(0, 0);
+		}
+		catch (IOException e)
+		{
+			throw new SpyException("Cannon open file " + file, e);
+		}
+	}
+	
+	private void openAt(final long offset, final long messageNumber) throws IOException
+	{
+		closeReader();
 		
+		final FileInputStream in = new FileInputStream(file);
 		try
 		{
-			reader.openFile(file);
+			in.getChannel().position(offset);
 		}
 		catch (IOException e)
 		{
-			new SpyException("Cannon open file " + file, e);
+			in.close();
+			throw e;
 		}
+		
+		// Same charset as used when writing the log
+		reader = new ByteLineReader(in, offset, Charset.defaultCharset());
+		nextLine = null;
+		position = messageNumber;
 	}
 	
+	@Override
 	public boolean hasNext() throws IOException
 	{
-		return reader.hasNext();
+		while (nextLine == null)
+		{
+			nextLine = reader.readLine();
+			
+			if (nextLine == null)
+			{
+				return false;
+			}
+			else if (nextLine.isEmpty())
+			{
+				// Empty lines are not messages (as in the index)
+				nextLine = null;
+			}
+		}
+		
+		return true;
 	}
 	
 	public String getNextLine() throws IOException
 	{
-		return reader.getNextLine();
+		if (!hasNext())
+		{
+			return null;
+		}
+		
+		final String line = nextLine;
+		nextLine = null;
+		position++;
+		
+		return line;
 	}
 	
+	@Override
+	public long seekToMessage(final long messageNumber) throws IOException
+	{
+		final int entry = index.findEntryForMessage(messageNumber);
+		
+		if (entry < 0)
+		{
+			openAt(0, 0);
+		}
+		else
+		{
+			openAt(index.getOffset(entry), index.getMessageNumber(entry));
+		}
+		
+		while (position < messageNumber && getNextLine() != null)
+		{
+			// Skip to the requested message
+		}
+		
+		return position;
+	}
+	
+	@Override
+	public long seekToTime(final long time) throws IOException
+	{
+		final int entry = index.findEntryBeforeTime(time);
+		
+		if (entry < 0)
+		{
+			openAt(0, 0);
+			return position;
+		}
+		
+		openAt(index.getOffset(entry), index.getMessageNumber(entry));
+		long latestTime = index.getTime(entry);
+		
+		// The message at the entry is before the given time
+		getNextLine();
+		
+		while (hasNext())
+		{
+			try
+			{
+				latestTime = Math.max(latestTime, decoder.decodeHeader(nextLine).getDate().getTime());
+			}
+			catch (SpyException | RuntimeException e)
+			{
+				// Ignore messages that cannot be decoded (as when indexing)
+			}
+			
+			if (latestTime >= time)
+			{
+				break;
+			}
+			
+			getNextLine();
+		}
+		
+		return position;
+	}
+	
+	private void closeReader() throws IOException
+	{
+		if (reader != null)
+		{
+			reader.close();
+			reader = null;
+		}
+	}
+	
+	@Override
 	public void closeAuditFile()
 	{
 		try
 		{
-			reader.closeFile();
+			closeReader();
 		}
 		catch (IOException e)
 		{
@@ -72,8 +208,31 @@ public class StreamedAuditReader
 		}
 	}
 	
+	@Override
 	public long getCount()
 	{
 		return lines;
 	}
+	
+	@Override
+	public long getPosition()
+	{
+		return position;
+	}
+	
+	@Override
+	public Map<String, Long> getTopics()
+	{
+		return index.getTopics();
+	}
+	
+	/**
+	 * Gets the index of the audit log.
+	 * 
+	 * @return The index
+	 */
+	public AuditIndex getIndex()
+	{
+		return index;
+	}
 }
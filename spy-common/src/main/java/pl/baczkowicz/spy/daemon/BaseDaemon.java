@@ -21,6 +21,7 @@ package pl.baczkowicz.spy.daemon;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.BooleanSupplier;
 
 import javax.script.ScriptException;
 
@@ -163,6 +164,32 @@ public abstract class BaseDaemon implements IDaemon
 	
 	protected void runScripts(final List<ScriptDetails> scriptSettings, final TestCasesSettings testCasesSettings, 
 			final RunningMode runningMode, final Map<String, Object> parameters) throws SpyException
+	{
+		runScripts(scriptManager, testCaseManager, this::canPublish, scriptSettings, testCasesSettings, parameters);
+		
+		// If in 'scripts only' mode, exit when all scripts finished
+		if (RunningMode.SCRIPTS_ONLY.equals(runningMode))
+		{
+			waitAndStop();
+		}
+	}
+	
+	/**
+	 * Starts the given background scripts and test cases, using the given
+	 * managers (e.g. when the daemon has more than one connection).
+	 * 
+	 * @param scriptManager The script manager to use
+	 * @param testCaseManager The test case manager to use
+	 * @param canPublish Checks if the connection used by the test cases is established
+	 * @param scriptSettings Background scripts to run
+	 * @param testCasesSettings Test cases to run (null if none)
+	 * @param parameters Custom script parameters (null if none)
+	 * 
+	 * @throws SpyException Thrown if cannot run the scripts
+	 */
+	protected void runScripts(final BaseScriptManagerInterface scriptManager, final TestCaseManager testCaseManager,
+			final BooleanSupplier canPublish, final List<ScriptDetails> scriptSettings, 
+			final TestCasesSettings testCasesSettings, final Map<String, Object> parameters) throws SpyException
 	{
 		scriptManager.addCustomParameters(parameters);
 
@@ -190,19 +217,13 @@ public abstract class BaseDaemon implements IDaemon
 			}
 			
 			testCaseManager.loadTestCases(testCasesSettings.getLocation());
-			while (!canPublish())
+			while (!canPublish.getAsBoolean())
 			{
 				logger.debug("Client not connected yet - can't start test cases... [waiting another 1000ms]");
 				ThreadingUtils.sleep(1000);
 			}
 			testCaseManager.runAllTestCases();
 		}
-		
-		// If in 'scripts only' mode, exit when all scripts finished
-		if (RunningMode.SCRIPTS_ONLY.equals(runningMode))
-		{
-			waitAndStop();
-		}
 	}
 	
 	protected void waitForScripts()
@@ -210,20 +231,40 @@ public abstract class BaseDaemon implements IDaemon
 		ThreadingUtils.sleep(1000);
 		
 		// Wait until all scripts have completed or got frozen
-		while (scriptManager.areScriptsRunning())
+		while (areScriptsRunning())
 		{
 			logger.debug("Scripts are still running... [waiting another 1000ms]");
 			ThreadingUtils.sleep(1000);
 		}
 		
 		// Wait until all test cases have completed or got frozen
-		while (testCaseManager.areTestCasesStillRunning())
+		while (areTestCasesRunning())
 		{
 			logger.debug("Test cases are still running... [waiting another 1000ms]");
 			ThreadingUtils.sleep(1000);
 		}
 	}	
 	
+	/**
+	 * Checks if any scripts are still running.
+	 * 
+	 * @return True if any scripts are running
+	 */
+	protected boolean areScriptsRunning()
+	{
+		return scriptManager.areScriptsRunning();
+	}
+	
+	/**
+	 * Checks if any test cases are still running.
+	 * 
+	 * @return True if any test cases are running
+	 */
+	protected boolean areTestCasesRunning()
+	{
+		return testCaseManager.areTestCasesStillRunning();
+	}
+	
 	protected void displayGoodbyeMessage()
 	{
 		ThreadingUtils.sleep(1000);
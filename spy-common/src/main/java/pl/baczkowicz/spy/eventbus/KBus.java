@@ -20,275 +20,310 @@
 package pl.baczkowicz.spy.eventbus;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-
+/**
+ * Event bus. Subscriptions are kept in an immutable dispatch table, which is
+ * replaced (copied on write) whenever anything subscribes or unsubscribes.
+ * For each event type, the table holds an array of matching subscriptions
+ * (consumer, filter and executor), worked out on the first event of that
+ * type. Publishing therefore doesn't lock or allocate (apart from
+ * asynchronous notifications), and events can be published from any number
+ * of threads.
+ */
 public class KBus implements IKBus
 {
-    /** Logger. */
-    private static final Logger logger = LoggerFactory.getLogger(KBus.class);
-
-    /** Map of subscribers to the consumer methods for that subscriber. */
-    private final Map<Object, Set<Consumer<?>>> subscribers = new HashMap<>();
-
-    /** Map of Consumers to filters. */
-    private final Map<Consumer<?>, Object> consumerFilters = new HashMap<>();
-
-    /** Map of Consumers to the class types. */
-    private final Map<Consumer<?>, Class<?>> consumerTypes = new HashMap<>();
-
-    /** Map of Class types to consumers.  This is used for performance reasons and is recalculated after a change. */
-    private final Map<Class<?>, Collection<Consumer<?>>> typeConsumers = new HashMap<>();
-    
-    /** Map of Class types to executors. This is used for asynchronous execution. */
-    private final Map<Consumer<?>, Executor> consumerExecutors = new HashMap<>();
+	/** Logger. */
+	private static final Logger logger = LoggerFactory.getLogger(KBus.class);
+	
+	/** Lock for changing the subscriptions. */
+	private final Object lock = new Object();
 	
-	private Collection<Consumer<?>> getConsumersForType(final Object event)
+	/** The current dispatch table. */
+	private volatile DispatchTable dispatchTable = new DispatchTable(new Subscription[0]);
+	
+	/**
+	 * Publishes an event in a synchronous way (unless the consumer has an executor).
+	 */
+	@Override
+	public void publish(final Object event)
 	{
-		Collection<Consumer<?>> matchedConsumers;
-		
-		// Try to get previously matched consumers
-		final Collection<Consumer<?>> previouslyMatchedConsumers = typeConsumers.get(event.getClass());
+		final Subscription[] subscriptions = dispatchTable.getSubscriptions(event.getClass());
 		
-		// If none available, try to match
-		if (previouslyMatchedConsumers == null)
-		{		
-			matchedConsumers = matchConsumersForType(event.getClass());
+		for (int i = 0; i < subscriptions.length; i++)
+		{
+			final Subscription subscription = subscriptions[i];
 			
-			typeConsumers.put(event.getClass(), matchedConsumers);
+			try
+			{
+				if (subscription.filter == null)
+				{
+					notifyConsumer(subscription, event);
+				}
+				else if (event instanceof IFilterableEvent && subscription.filter.equals(((IFilterableEvent) event).getFilter()))
+				{
+					notifyConsumer(subscription, event);
+				}
+			}
+			catch (final ClassCastException e)
+			{
+				logger.warn("Consumer {} can't accept events of type = {}", subscription.consumer, event.getClass(), e);
+			}
+		}
+	}
+	
+	/**
+	 * Notifies the consumer with the event. If an executor has been specified, it is used.
+	 *
+	 * @param subscription Subscription of the consumer
+	 * @param event The event to notify
+	 */
+	private static void notifyConsumer(final Subscription subscription, final Object event)
+	{
+		if (subscription.executor == null)
+		{
+			subscription.consumer.accept(event);
 		}
 		else
 		{
-			matchedConsumers = previouslyMatchedConsumers;
+			subscription.executor.execute(() -> subscription.consumer.accept(event));
 		}
-		
-		return matchedConsumers;
 	}
 	
-	private Collection<Consumer<?>> matchConsumersForType(final Class<?> eventType)
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public <S> void subscribe(final Object subscriber, final Consumer<? super S> consumer, final Class<S> eventType)
 	{
-		final Collection<Consumer<?>> matchedConsumers = new ArrayList<>();
+		subscribe(subscriber, consumer, eventType, null, null);
+	}
 	
-		logger.trace("Matching consumers for type {}", eventType);
-		
-		synchronized (consumerTypes)
-		{
-			for (final Consumer<?> consumer : consumerTypes.keySet())
-			{
-				final Class<?> consumerType = consumerTypes.get(consumer);
-				
-				// Compares two Classes with each other (because of that couldn't use instanceof or isInstance)
-				if (consumerType.isAssignableFrom(eventType))
-				{
-					matchedConsumers.add(consumer);
-				}
-			}
-		}
-		
-		logger.trace("Matched {} consumers for type {}: {}", matchedConsumers.size(), eventType, matchedConsumers);
-		
-		return matchedConsumers;
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public <S> void subscribe(final Object subscriber, final Consumer<? super S> consumer, final Class<S> eventType, final Executor executor)
+	{
+		subscribe(subscriber, consumer, eventType, executor, null);
 	}
-
+	
 	/**
-     * Publishes an event in a synchronous way.
-     */
-    @SuppressWarnings("unchecked")
+	 * {@inheritDoc}
+	 */
 	@Override
-    public void publish(final Object event)
-    {
-        final Collection<Consumer<?>> matchedConsumers = getConsumersForType(event);
-
-        for (final Consumer<?> consumer : matchedConsumers)
-        {
-            // No need to synchronise here, read-only
-            final Object filter = consumerFilters.get(consumer);
-
-            try
-            {
-                if (filter == null)
-                {
-                    notifyConsumer((Consumer<Object>) consumer, event);
-                }
-                else if (event instanceof IFilterableEvent && filter.equals(((IFilterableEvent) event).getFilter()))
-                {
-                    notifyConsumer((Consumer<Object>) consumer, event);
-                }
-            }
-            catch (final ClassCastException e)
-            {
-                logger.warn("Consumer {} can't accept events of type = {}", consumer, event.getClass(), e);
-            }
-        }
-    }
-    
-    /**
-     * Notifies the consumer with the event. If an executor has been specified, it is used.
-     *
-     * @param consumer Consumer of the event
-     * @param event The event to notify
-     */
-    private void notifyConsumer(final Consumer<Object> consumer, final Object event)
-    {
-        final Executor executor = consumerExecutors.get(consumer);
-        
-        if (executor == null)
-        {
-            consumer.accept(event);
-        }
-        else
-        {
-            executor.execute(() -> { consumer.accept(event); });
-        }
-    }
+	public <S> void subscribeWithFilterOnly(final Object subscriber, final Consumer<? super S> consumer, final Class<S> eventType, final Object filter)
+	{
+		subscribe(subscriber, consumer, eventType, null, filter);
+	}
 	
-	private void recalculateExistingMappings()
+	/**
+	 * {@inheritDoc}
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public <S> void subscribe(final Object subscriber, final Consumer<? super S> consumer, final Class<S> eventType, final Executor executor,
+			final Object filter)
 	{
-		// Recalculate all existing eventType to consumer mappings
-		for (final Class<?> type : typeConsumers.keySet())
-		{	
-			typeConsumers.put(type, matchConsumersForType(type));
+		final Subscription subscription = new Subscription(subscriber, (Consumer<Object>) consumer, eventType, executor, filter);
+		
+		synchronized (lock)
+		{
+			// One subscription per consumer
+			final List<Subscription> subscriptions = copySubscriptions(existing -> existing.consumer.equals(consumer));
+			subscriptions.add(subscription);
+			
+			replaceDispatchTable(subscriptions);
 		}
 	}
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public <S> void subscribe(final Object subscriber, final Consumer<? super S> consumer, final Class<S> eventType)
-    {
-        subscribe(subscriber, consumer, eventType, null, null);
-    }
-    
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public <S> void subscribe(final Object subscriber, final Consumer<? super S> consumer, final Class<S> eventType, final Executor executor)
-    {
-        subscribe(subscriber, consumer, eventType, executor, null);        
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public <S> void subscribeWithFilterOnly(final Object subscriber, final Consumer<? super S> consumer, final Class<S> eventType, final Object filter)
-    {
-        subscribe(subscriber, consumer, eventType, null, filter);      
-    }    
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public <S> void subscribe(final Object subscriber, final Consumer<? super S> consumer, final Class<S> eventType, final Executor executor,
-            final Object filter)
-    {
-        synchronized (consumerTypes)
-        {
-            Set<Consumer<?>> consumers = subscribers.get(subscriber);
-
-            if (consumers == null)
-            {
-                consumers = new HashSet<>();
-                subscribers.put(subscriber, consumers);
-            }
-            consumers.add(consumer);
-
-            consumerFilters.put(consumer, filter);
-            consumerTypes.put(consumer, eventType);
-            consumerExecutors.put(consumer, executor);
-
-            recalculateExistingMappings();
-        }        
-    }
-
+	
 	@Override
 	public void unsubscribe(final Object subscriber)
 	{
-		synchronized (consumerTypes)
+		synchronized (lock)
 		{
 			logger.trace("Trying to remove {} from subscribers", subscriber);
 			
-			final Set<Consumer<?>> removed = subscribers.remove(subscriber);
-						
-			if (removed != null)
+			final List<Subscription> subscriptions = copySubscriptions(existing -> Objects.equals(existing.subscriber, subscriber));
+			final int removed = dispatchTable.subscriptions.length - subscriptions.size();
+			
+			if (removed > 0)
 			{
-				for (final Consumer<?> consumer : removed)
-				{
-					consumerFilters.remove(consumer);		
-					consumerTypes.remove(consumer);				
-				}
-				logger.trace("Removed consumers: {}", removed.size());
+				logger.trace("Removed consumers: {}", removed);
 			}
 			else
 			{
 				logger.warn("Removed consumers: 0");	
 			}
-					
-			recalculateExistingMappings();
+			
+			replaceDispatchTable(subscriptions);
 		}
 	}
 	
 	@Override
 	public void unsubscribeConsumer(final Object subscriber, final Consumer<?> consumer)
 	{
-		synchronized (consumerTypes)
+		synchronized (lock)
 		{
 			logger.trace("Trying to remove {} owned by {}", consumer, subscriber);
 			
-			// Remove from subscriber's list of consumers
-			final Set<Consumer<?>> consumers = subscribers.get(subscriber);
-			if (consumers != null)
-			{
-				consumers.remove(consumer);
-			}
-			
-			logger.trace("Removing {} from filters; contains: {}", consumer, consumerFilters.containsKey(consumer));
-			consumerFilters.remove(consumer);
-						
-			logger.trace("Removing {} from types; contains: {}", consumer, consumerTypes.containsKey(consumer));
-			consumerTypes.remove(consumer);
-			
-			recalculateExistingMappings();
+			replaceDispatchTable(copySubscriptions(
+					existing -> Objects.equals(existing.subscriber, subscriber) && existing.consumer.equals(consumer)));
 		}
 	}
-
+	
 	@Override
 	public void unsubscribeConsumer(final Object subscriber, final Class<?> eventType)
 	{
-		synchronized (consumerTypes)
+		synchronized (lock)
 		{
 			logger.trace("Trying to remove consumer of type {} from {}", eventType, subscriber);
-						
-			final Collection<Consumer<?>> consumers = subscribers.get(subscriber);
-			
-			Consumer<?> foundConsumer = null;
 			
 			// Find the consumer based on its type
-			for (final Consumer<?> consumer : consumerTypes.keySet())
+			for (final Subscription subscription : dispatchTable.subscriptions)
 			{
-				if (consumerTypes.get(consumer).equals(eventType) && consumers.contains(consumer))
+				if (subscription.eventType.equals(eventType) && Objects.equals(subscription.subscriber, subscriber))
 				{
-					foundConsumer = consumer;
+					unsubscribeConsumer(subscriber, subscription.consumer);
 					break;
 				}
 			}
+		}
+	}
+	
+	/**
+	 * Copies the current subscriptions, apart from the ones to be removed. To be called while holding the lock.
+	 * 
+	 * @param toRemove Matches subscriptions to be removed
+	 * 
+	 * @return The remaining subscriptions
+	 */
+	private List<Subscription> copySubscriptions(final Predicate<Subscription> toRemove)
+	{
+		final List<Subscription> subscriptions = new ArrayList<>();
+		
+		for (final Subscription subscription : dispatchTable.subscriptions)
+		{
+			if (!toRemove.test(subscription))
+			{
+				subscriptions.add(subscription);
+			}
+		}
+		
+		return subscriptions;
+	}
+	
+	/**
+	 * Replaces the dispatch table, working out mappings for event types seen so far. To be called while holding the lock.
+	 * 
+	 * @param subscriptions The new subscriptions
+	 */
+	private void replaceDispatchTable(final List<Subscription> subscriptions)
+	{
+		final DispatchTable newTable = new DispatchTable(subscriptions.toArray(new Subscription[subscriptions.size()]));
+		
+		for (final Class<?> eventType : dispatchTable.typeSubscriptions.keySet())
+		{
+			newTable.getSubscriptions(eventType);
+		}
+		
+		dispatchTable = newTable;
+	}
+	
+	/**
+	 * Immutable set of subscriptions, with the matching subscriptions for each event type (worked out when first needed).
+	 */
+	private static final class DispatchTable
+	{
+		/** All subscriptions (in the order of subscribing). */
+		private final Subscription[] subscriptions;
+		
+		/** Subscriptions matching each event type. */
+		private final Map<Class<?>, Subscription[]> typeSubscriptions = new ConcurrentHashMap<>();
+		
+		private DispatchTable(final Subscription[] subscriptions)
+		{
+			this.subscriptions = subscriptions;
+		}
+		
+		private Subscription[] getSubscriptions(final Class<?> eventType)
+		{
+			final Subscription[] matched = typeSubscriptions.get(eventType);
+			
+			if (matched != null)
+			{
+				return matched;
+			}
 			
-			if (foundConsumer != null)
+			// All threads work out the same result, so it doesn't matter whose gets stored
+			final Subscription[] newlyMatched = match(eventType);
+			typeSubscriptions.put(eventType, newlyMatched);
+			
+			return newlyMatched;
+		}
+		
+		private Subscription[] match(final Class<?> eventType)
+		{
+			logger.trace("Matching consumers for type {}", eventType);
+			
+			final List<Subscription> matched = new ArrayList<>();
+			for (final Subscription subscription : subscriptions)
 			{
-				unsubscribeConsumer(subscriber, foundConsumer);
+				// Compares two Classes with each other (because of that couldn't use instanceof or isInstance)
+				if (subscription.eventType.isAssignableFrom(eventType))
+				{
+					matched.add(subscription);
+				}
 			}
+			
+			final Subscription[] result = matched.toArray(new Subscription[matched.size()]);
+			logger.trace("Matched {} consumers for type {}: {}", result.length, eventType, Arrays.asList(result));
+			
+			return result;
+		}
+	}
+	
+	/**
+	 * A consumer, with the type of events it accepts, the filter and the executor.
+	 */
+	private static final class Subscription
+	{
+		private final Object subscriber;
+		
+		private final Consumer<Object> consumer;
+		
+		private final Class<?> eventType;
+		
+		/** Executor for asynchronous notifications (null for synchronous). */
+		private final Executor executor;
+		
+		/** Filter (null = no filter). */
+		private final Object filter;
+		
+		private Subscription(final Object subscriber, final Consumer<Object> consumer, final Class<?> eventType, 
+				final Executor executor, final Object filter)
+		{
+			this.subscriber = subscriber;
+			this.consumer = consumer;
+			this.eventType = eventType;
+			this.executor = executor;
+			this.filter = filter;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return consumer.toString();
 		}
 	}
 }
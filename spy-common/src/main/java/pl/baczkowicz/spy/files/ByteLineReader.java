@@ -0,0 +1,166 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2015 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.spy.files;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads lines from a stream of bytes, keeping track of the byte offset at
+ * which each line starts, so that reading can later be resumed from any line
+ * (e.g. by opening the file at that offset). Lines are terminated by '\n',
+ * with any trailing '\r' removed.
+ */
+public class ByteLineReader implements Closeable
+{
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private final InputStream in;
+	
+	private final Charset charset;
+	
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	
+	private int bufferPosition;
+	
+	private int bufferLimit;
+	
+	private byte[] line = new byte[1024];
+	
+	/** Offset of the next unread byte. */
+	private long offset;
+	
+	/** Offset of the last read line. */
+	private long lineStart;
+	
+	/**
+	 * Creates the reader.
+	 * 
+	 * @param in The stream to read from
+	 * @param startOffset Offset of the stream's first byte (e.g. in the file)
+	 * @param charset Charset of the lines
+	 */
+	public ByteLineReader(final InputStream in, final long startOffset, final Charset charset)
+	{
+		this.in = in;
+		this.offset = startOffset;
+		this.charset = charset;
+	}
+	
+	/**
+	 * Reads the next line.
+	 * 
+	 * @return The line, without the line terminator, or null if there are no more lines
+	 * 
+	 * @throws IOException Thrown when the stream cannot be read
+	 */
+	public String readLine() throws IOException
+	{
+		lineStart = offset;
+		int lineLength = 0;
+		boolean terminated = false;
+		
+		while (!terminated)
+		{
+			if (bufferPosition == bufferLimit && !fill())
+			{
+				if (offset == lineStart)
+				{
+					return null;
+				}
+				break;
+			}
+			
+			int end = bufferPosition;
+			while (end < bufferLimit && buffer[end] != '\n')
+			{
+				end++;
+			}
+			
+			final int length = end - bufferPosition;
+			if (lineLength + length > line.length)
+			{
+				line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+			}
+			System.arraycopy(buffer, bufferPosition, line, lineLength, length);
+			lineLength = lineLength + length;
+			offset = offset + length;
+			bufferPosition = end;
+			
+			if (end < bufferLimit)
+			{
+				// Skip the terminator
+				bufferPosition++;
+				offset++;
+				terminated = true;
+			}
+		}
+		
+		if (lineLength > 0 && line[lineLength - 1] == '\r')
+		{
+			lineLength--;
+		}
+		
+		return new String(line, 0, lineLength, charset);
+	}
+	
+	private boolean fill() throws IOException
+	{
+		final int read = in.read(buffer);
+		
+		if (read <= 0)
+		{
+			return false;
+		}
+		
+		bufferPosition = 0;
+		bufferLimit = read;
+		return true;
+	}
+	
+	/**
+	 * Gets the offset at which the last read line starts.
+	 * 
+	 * @return Offset in bytes
+	 */
+	public long getLineStart()
+	{
+		return lineStart;
+	}
+	
+	/**
+	 * Gets the offset of the next unread byte.
+	 * 
+	 * @return Offset in bytes
+	 */
+	public long getOffset()
+	{
+		return offset;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		in.close();
+	}
+}
@@ -0,0 +1,230 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2015 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.spy.files;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import pl.baczkowicz.spy.utils.tasks.ProgressUpdater;
+
+/**
+ * Read-only, memory-mapped text file with an index of line offsets, so that
+ * any line can be read without loading the whole file into memory. Files
+ * bigger than 2GB are mapped in a number of regions. Empty lines are not
+ * indexed.
+ * 
+ * Lines can be read from multiple threads at the same time.
+ */
+public class MappedLineFile implements Closeable
+{
+	/** Default size of a mapped region. */
+	private static final int DEFAULT_REGION_SIZE = Integer.MAX_VALUE;
+	
+	private final RandomAccessFile file;
+	
+	private final Charset charset;
+	
+	private final long size;
+	
+	private final int regionSize;
+	
+	/** Mapped regions of the file. */
+	private final MappedByteBuffer[] regions;
+	
+	/** Start offsets of the indexed lines. */
+	private long[] lineStarts = new long[1024];
+	
+	/** End offsets of the indexed lines (excluding the line terminator). */
+	private long[] lineEnds = new long[1024];
+	
+	private int lineCount;
+	
+	/**
+	 * Maps the given file and indexes its lines.
+	 * 
+	 * @param file The file to map
+	 * @param charset Charset of the file
+	 * @param progress Updated with the number of indexed bytes, and checked for cancellation (can be null)
+	 * 
+	 * @throws IOException Thrown when the file cannot be mapped
+	 */
+	public MappedLineFile(final File file, final Charset charset, final ProgressUpdater progress) throws IOException
+	{
+		this(file, charset, progress, DEFAULT_REGION_SIZE);
+	}
+	
+	MappedLineFile(final File file, final Charset charset, final ProgressUpdater progress, final int regionSize) throws IOException
+	{
+		this.file = new RandomAccessFile(file, "r");
+		this.charset = charset;
+		this.regionSize = regionSize;
+		
+		try
+		{
+			final FileChannel channel = this.file.getChannel();
+			this.size = channel.size();
+			this.regions = new MappedByteBuffer[(int) ((size + regionSize - 1) / regionSize)];
+			
+			for (int i = 0; i < regions.length; i++)
+			{
+				final long start = (long) i * regionSize;
+				regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(regionSize, size - start));
+			}
+			
+			index(progress);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			this.file.close();
+			throw e;
+		}
+	}
+	
+	private void index(final ProgressUpdater progress)
+	{
+		long lineStart = 0;
+		
+		for (int i = 0; i < regions.length; i++)
+		{
+			final MappedByteBuffer region = regions[i];
+			final long regionStart = (long) i * regionSize;
+			final int limit = region.limit();
+			
+			for (int position = 0; position < limit; position++)
+			{
+				if (region.get(position) == '\n')
+				{
+					addLine(lineStart, regionStart + position);
+					lineStart = regionStart + position + 1;
+				}
+			}
+			
+			if (progress != null)
+			{
+				if (progress.isCancelled())
+				{
+					return;
+				}
+				progress.update(regionStart + limit, size);
+			}
+		}
+		
+		// Last line without a terminator
+		addLine(lineStart, size);
+	}
+	
+	private void addLine(final long start, final long terminator)
+	{
+		long end = terminator;
+		
+		if (end > start && getByte(end - 1) == '\r')
+		{
+			end--;
+		}
+		
+		if (end == start)
+		{
+			return;
+		}
+		
+		if (lineCount == lineStarts.length)
+		{
+			lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+			lineEnds = Arrays.copyOf(lineEnds, lineCount * 2);
+		}
+		
+		lineStarts[lineCount] = start;
+		lineEnds[lineCount] = end;
+		lineCount++;
+	}
+	
+	private byte getByte(final long offset)
+	{
+		return regions[(int) (offset / regionSize)].get((int) (offset % regionSize));
+	}
+	
+	/**
+	 * Gets the number of indexed (non-empty) lines.
+	 * 
+	 * @return Number of lines
+	 */
+	public int getLineCount()
+	{
+		return lineCount;
+	}
+	
+	/**
+	 * Gets the size of the file.
+	 * 
+	 * @return Size in bytes
+	 */
+	public long getSize()
+	{
+		return size;
+	}
+	
+	/**
+	 * Reads the given line.
+	 * 
+	 * @param line Index of the line
+	 * 
+	 * @return The line, without the line terminator
+	 */
+	public String getLine(final int line)
+	{
+		if (line < 0 || line >= lineCount)
+		{
+			throw new IndexOutOfBoundsException("Line: " + line + ", lines: " + lineCount);
+		}
+		
+		final long start = lineStarts[line];
+		final byte[] bytes = new byte[(int) (lineEnds[line] - start)];
+		
+		int copied = 0;
+		while (copied < bytes.length)
+		{
+			final long offset = start + copied;
+			final MappedByteBuffer region = regions[(int) (offset / regionSize)];
+			final int regionOffset = (int) (offset % regionSize);
+			final int length = Math.min(bytes.length - copied, region.limit() - regionOffset);
+			
+			// Read through a duplicate, so that the shared region's position is never changed
+			final ByteBuffer view = region.duplicate();
+			view.position(regionOffset);
+			view.get(bytes, copied, length);
+			copied = copied + length;
+		}
+		
+		return new String(bytes, charset);
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		file.close();
+	}
+}
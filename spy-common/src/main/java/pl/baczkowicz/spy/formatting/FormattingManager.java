@@ -64,11 +64,61 @@ public class FormattingManager
 		}
 	}
 	
+	/**
+	 * Formats the given message when its formatted payload is first accessed,
+	 * unless it has already been formatted with the given formatter.
+	 * 
+	 * Script-based formatters are applied straight away instead, as they are
+	 * not thread-safe and can be slow, so shouldn't run on whichever thread
+	 * (e.g. the JavaFX thread or a search worker) first reads the message.
+	 * 
+	 * @param message The message to format
+	 * @param formatter The formatter to use
+	 */
+	public void formatMessageOnDemand(final FormattedMessage message, final FormatterDetails formatter)
+	{
+		final boolean alreadyFormatted = formatter == null 
+				? message.getLastUsedFormatter() == null : formatter.equals(message.getLastUsedFormatter());
+		
+		if (alreadyFormatted)
+		{
+			// Make sure a previously requested formatter doesn't override this one
+			message.deferFormatting(null, null);
+			return;
+		}
+		
+		if (formatter != null && FormattingUtils.isScriptBased(formatter))
+		{
+			formatMessage(message, formatter);
+		}
+		else
+		{
+			message.deferFormatting(formatter, this);
+		}
+	}
+	
 	public void formatMessage(final FormattedMessage message, final FormatterDetails formatter)
+	{
+		// Anything deferred is now superseded
+		message.deferFormatting(null, null);
+		
+		applyFormatter(message, formatter);
+	}
+	
+	/**
+	 * Formats the given message, without affecting any deferred formatting.
+	 * 
+	 * @param message The message to format
+	 * @param formatter The formatter to use
+	 */
+	public void applyFormatter(final FormattedMessage message, final FormatterDetails formatter)
 	{
 		if (formatter == null)
 		{
-			message.setFormattedPayload(message.getPayload());
+			// No formatting - the payload will be used as it is
+			message.setLastUsedFormatter(null);
+			message.setFormattedPayload(null);
+			message.setPrettyPayload(null);
 		}		
 		else if (!formatter.equals(message.getLastUsedFormatter()))
 		{
@@ -83,8 +133,9 @@ public class FormattingManager
 			else
 			{
 				// Use the raw payload to make sure any formatting/encoding that is applied is correct
-				message.setFormattedPayload(FormattingUtils.checkAndFormatText(formatter, message.getRawPayload()));
-				message.setPrettyPayload(message.getFormattedPayload());
+				final String formattedPayload = FormattingUtils.checkAndFormatText(formatter, message.getRawPayload());
+				message.setFormattedPayload(formattedPayload);
+				message.setPrettyPayload(formattedPayload);
 			}
 		}
 	}
@@ -21,6 +21,8 @@ package pl.baczkowicz.spy.messages;
 
 import java.util.Date;
 
+import pl.baczkowicz.spy.storage.PayloadArena;
+
 /**
  * Represents a message, e.g. received on a topic.
  */
@@ -133,4 +135,28 @@ public class BaseMessage implements IBaseMessage
 	{
 		this.rawPayload = rawPayload;
 	}	
+	
+	/**
+	 * Moves the payload to the given off-heap arena, so that it is no longer
+	 * kept on the heap. Not supported by default.
+	 * 
+	 * @param arena Where to move the payload to
+	 * 
+	 * @return True if the payload has been moved
+	 */
+	public boolean movePayloadTo(final PayloadArena arena)
+	{
+		return false;
+	}
+	
+	/**
+	 * Frees the off-heap copy of the payload (if it has been moved to an
+	 * arena), e.g. when the message is removed from the store owning the
+	 * arena. The payload is copied back onto the heap first, as the message
+	 * might still be used elsewhere (e.g. search results or charts).
+	 */
+	public void releasePayload()
+	{
+		// Nothing to do by default
+	}
 }
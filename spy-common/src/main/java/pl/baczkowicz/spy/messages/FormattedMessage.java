@@ -22,9 +22,14 @@ package pl.baczkowicz.spy.messages;
 import java.util.Date;
 
 import pl.baczkowicz.spy.common.generated.FormatterDetails;
+import pl.baczkowicz.spy.formatting.FormattingManager;
 
 /**
  * Represents a formatted message, e.g. received on a topic.
+ * 
+ * Formatting can be deferred until the formatted payload is first accessed,
+ * so that no work is done for messages nobody looks at. If no formatted 
+ * payload has been set, the payload itself is used.
  */
 public class FormattedMessage extends BaseMessage
 {	
@@ -36,6 +41,12 @@ public class FormattedMessage extends BaseMessage
 	private String formattedPayload;
 
 	private String prettyPayload;
+	
+	/** Formatter to apply on first access to the formatted payload. */
+	private FormatterDetails deferredFormatter;
+	
+	/** Formatting manager to apply the deferred formatter with (null if nothing deferred). */
+	private volatile FormattingManager deferredFormattingManager;
 
 	public FormattedMessage(final long id, final String topic)
 	{
@@ -64,7 +75,8 @@ public class FormattedMessage extends BaseMessage
 	
 	public String getFormattedPayload()
 	{
-		return formattedPayload;
+		applyDeferredFormatting();
+		return formattedPayload != null ? formattedPayload : getPayload();
 	}
 
 	public void setFormattedPayload(final String formattedPayload)
@@ -84,6 +96,44 @@ public class FormattedMessage extends BaseMessage
 	
 	public String getPrettyPayload()
 	{
-		return prettyPayload;
+		applyDeferredFormatting();
+		return prettyPayload != null ? prettyPayload : getFormattedPayload();
+	}
+	
+	/**
+	 * Requests the given formatter to be applied when the formatted payload is first accessed.
+	 * 
+	 * @param formatter The formatter to apply
+	 * @param formattingManager The formatting manager to apply the formatter with (null to cancel)
+	 */
+	public void deferFormatting(final FormatterDetails formatter, final FormattingManager formattingManager)
+	{
+		synchronized (this)
+		{
+			this.deferredFormatter = formatter;
+			this.deferredFormattingManager = formattingManager;
+		}
+	}
+	
+	private void applyDeferredFormatting()
+	{
+		if (deferredFormattingManager == null)
+		{
+			return;
+		}
+		
+		synchronized (this)
+		{
+			final FormattingManager formattingManager = deferredFormattingManager;
+			
+			if (formattingManager != null)
+			{
+				formattingManager.applyFormatter(this, deferredFormatter);
+				
+				// Only cleared once formatted, so that other readers wait for the result
+				deferredFormatter = null;
+				deferredFormattingManager = null;
+			}
+		}
 	}
 }
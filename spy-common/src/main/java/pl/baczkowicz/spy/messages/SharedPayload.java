@@ -0,0 +1,135 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2015 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.spy.messages;
+
+import pl.baczkowicz.spy.storage.PayloadArena;
+import pl.baczkowicz.spy.utils.ConversionUtils;
+
+/**
+ * Immutable holder of a payload and its decoded string, which can be shared
+ * between copies of a message (e.g. one per matching subscription), so that
+ * the payload doesn't need to be copied or decoded more than once. The
+ * payload is only decoded when the string is first requested.
+ *
+ * The payload array must not be modified in place - messages replace it with
+ * a new array instead (e.g. when a script sets the payload), after which a new
+ * holder gets created.
+ *
+ * When messages sharing the payload move it off-heap, they also share a single
+ * copy in the payload arena.
+ */
+public final class SharedPayload
+{
+	/** The payload. */
+	private final byte[] payload;
+
+	/** The payload decoded as a string (null until first requested). */
+	private volatile String decodedPayload;
+
+	/** Arena holding an off-heap copy of the payload. */
+	private PayloadArena arena;
+
+	/** The off-heap copy of the payload (null if none). */
+	private PayloadArena.Allocation allocation;
+
+	/**
+	 * Creates the holder. The payload is decoded on first request.
+	 *
+	 * @param payload The payload
+	 */
+	public SharedPayload(final byte[] payload)
+	{
+		this(payload, null);
+	}
+
+	/**
+	 * Creates the holder.
+	 *
+	 * @param payload The payload
+	 * @param decodedPayload The payload decoded as a string (null if not decoded yet)
+	 */
+	public SharedPayload(final byte[] payload, final String decodedPayload)
+	{
+		this.payload = payload;
+		this.decodedPayload = decodedPayload;
+	}
+
+	/**
+	 * Checks if this holder is for the given payload array.
+	 *
+	 * @param payload The payload array to check
+	 *
+	 * @return True if the given array is the one held
+	 */
+	public boolean holds(final byte[] payload)
+	{
+		return this.payload == payload;
+	}
+
+	/**
+	 * Stores the payload in the given arena, unless it's already stored there,
+	 * in which case the existing copy is shared.
+	 *
+	 * @param arena The arena to store the payload in
+	 *
+	 * @return The allocation (which the caller needs to release), or null if there is no space
+	 */
+	public synchronized PayloadArena.Allocation storeIn(final PayloadArena arena)
+	{
+		if (allocation != null && this.arena == arena && arena.retain(allocation))
+		{
+			return allocation;
+		}
+
+		this.arena = arena;
+		this.allocation = arena.store(payload);
+
+		return allocation;
+	}
+
+	/**
+	 * Gets the payload.
+	 *
+	 * @return The payload
+	 */
+	public byte[] getPayload()
+	{
+		return payload;
+	}
+
+	/**
+	 * Gets the decoded payload, decoding it if not done yet.
+	 *
+	 * @return The payload decoded as a string
+	 */
+	public String getDecodedPayload()
+	{
+		String decoded = decodedPayload;
+
+		if (decoded == null)
+		{
+			// Decoding is idempotent, so a concurrent decode only wastes a bit of work
+			decoded = ConversionUtils.arrayToString(payload);
+			decodedPayload = decoded;
+		}
+
+		return decoded;
+	}
+}
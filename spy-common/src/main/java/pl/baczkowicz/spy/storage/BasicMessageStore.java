@@ -69,6 +69,30 @@ public class BasicMessageStore<T> implements MessageStore<T>
 	{
 		return messageList;
 	}
+	
+	/**
+	 * Gets the index of the message with the given ID (in the list returned by getMessages).
+	 * 
+	 * @param id The message ID
+	 * 
+	 * @return The index of the message, or -1 if not in the store
+	 */
+	public int indexOf(final long id)
+	{
+		return getMessageList().indexOf(id);
+	}
+	
+	/**
+	 * Gets the message with the given ID.
+	 * 
+	 * @param id The message ID
+	 * 
+	 * @return The message, or null if not in the store
+	 */
+	public T getById(final long id)
+	{
+		return getMessageList().getById(id);
+	}
 
 	public void clear()
 	{
@@ -0,0 +1,241 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2014 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.spy.storage;
+
+import java.util.Arrays;
+
+/**
+ * Map of long keys to long values, using open addressing (linear probing) on
+ * primitive arrays, so that no objects are allocated per entry. The arrays
+ * only get reallocated when the map grows.
+ *
+ * Long.MIN_VALUE cannot be stored as a value, as it marks empty slots.
+ *
+ * This class is not synchronized.
+ */
+public final class LongIndexMap
+{
+	/** Returned when there is no value for a key; also marks empty slots. */
+	public static final long NO_VALUE = Long.MIN_VALUE;
+
+	/** Initial number of slots (power of 2). */
+	private static final int INITIAL_SLOTS = 16;
+
+	/** Keys. */
+	private long[] keys;
+
+	/** Values (NO_VALUE for empty slots). */
+	private long[] values;
+
+	/** Number of entries. */
+	private int size;
+
+	/**
+	 * Creates an empty map.
+	 */
+	public LongIndexMap()
+	{
+		allocate(INITIAL_SLOTS);
+	}
+
+	/**
+	 * Gets the value for the given key.
+	 *
+	 * @param key The key
+	 *
+	 * @return The value, or NO_VALUE if not present
+	 */
+	public long get(final long key)
+	{
+		final int mask = keys.length - 1;
+
+		for (int slot = slot(key, mask); values[slot] != NO_VALUE; slot = (slot + 1) & mask)
+		{
+			if (keys[slot] == key)
+			{
+				return values[slot];
+			}
+		}
+
+		return NO_VALUE;
+	}
+
+	/**
+	 * Sets the value for the given key.
+	 *
+	 * @param key The key
+	 * @param value The value (can't be NO_VALUE)
+	 */
+	public void put(final long key, final long value)
+	{
+		if (value == NO_VALUE)
+		{
+			throw new IllegalArgumentException("Value cannot be " + NO_VALUE);
+		}
+
+		// Keep at least half of the slots empty
+		if (2 * (size + 1) > keys.length)
+		{
+			grow();
+		}
+
+		final int mask = keys.length - 1;
+		int slot = slot(key, mask);
+
+		while (values[slot] != NO_VALUE)
+		{
+			if (keys[slot] == key)
+			{
+				values[slot] = value;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		keys[slot] = key;
+		values[slot] = value;
+		size++;
+	}
+
+	/**
+	 * Removes the given key.
+	 *
+	 * @param key The key
+	 *
+	 * @return True if removed
+	 */
+	public boolean remove(final long key)
+	{
+		return remove(key, get(key));
+	}
+
+	/**
+	 * Removes the given key, but only if it is mapped to the given value.
+	 *
+	 * @param key The key
+	 * @param value The expected value
+	 *
+	 * @return True if removed
+	 */
+	public boolean remove(final long key, final long value)
+	{
+		final int mask = keys.length - 1;
+
+		for (int slot = slot(key, mask); values[slot] != NO_VALUE; slot = (slot + 1) & mask)
+		{
+			if (keys[slot] == key)
+			{
+				if (values[slot] != value)
+				{
+					return false;
+				}
+
+				removeSlot(slot, mask);
+				size--;
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Removes all entries (keeping the arrays).
+	 */
+	public void clear()
+	{
+		Arrays.fill(values, NO_VALUE);
+		size = 0;
+	}
+
+	/**
+	 * Gets the number of entries.
+	 *
+	 * @return Number of entries
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Empties the given slot, moving back any following entries that would no
+	 * longer be found otherwise (so that no tombstones are needed).
+	 */
+	private void removeSlot(final int removed, final int mask)
+	{
+		int gap = removed;
+		int slot = removed;
+
+		while (true)
+		{
+			slot = (slot + 1) & mask;
+
+			if (values[slot] == NO_VALUE)
+			{
+				break;
+			}
+
+			// Leave the entry where it is if its home slot is cyclically between the gap and its slot
+			final int home = slot(keys[slot], mask);
+			final boolean reachable = gap <= slot ? (gap < home && home <= slot) : (gap < home || home <= slot);
+
+			if (!reachable)
+			{
+				keys[gap] = keys[slot];
+				values[gap] = values[slot];
+				gap = slot;
+			}
+		}
+
+		values[gap] = NO_VALUE;
+	}
+
+	private void grow()
+	{
+		final long[] oldKeys = keys;
+		final long[] oldValues = values;
+
+		allocate(keys.length * 2);
+		size = 0;
+
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			if (oldValues[i] != NO_VALUE)
+			{
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+
+	private void allocate(final int slots)
+	{
+		keys = new long[slots];
+		values = new long[slots];
+		Arrays.fill(values, NO_VALUE);
+	}
+
+	private static int slot(final long key, final int mask)
+	{
+		// Spread sequential keys (e.g. message IDs) over the table
+		final long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+}
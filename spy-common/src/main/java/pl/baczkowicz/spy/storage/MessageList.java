@@ -19,15 +19,20 @@
  */
 package pl.baczkowicz.spy.storage;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.ToLongFunction;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Class for storing received messages.
+ * Class for storing received messages. Messages are kept newest first, in a
+ * ring buffer sized to the maximum number of messages, so that storing a new
+ * message and evicting the oldest one doesn't shift the rest of the store.
+ * 
+ * If created with an ID function, messages are also indexed by ID, so that
+ * the position of a message can be found in constant time.
  */
 public class MessageList<T>
 {
@@ -38,6 +43,8 @@ public class MessageList<T>
 	public static final int DEFAULT_MIN_MESSAGES_PER_TOPIC = 10;
 
 	private final List<T> messages;
+	
+	private final RingBufferList<T> ringBuffer;
 
 	private final int maxSize;
 
@@ -46,11 +53,17 @@ public class MessageList<T>
 	private final int preferredSize;
 	
 	public MessageList(final int preferredSize, final int maxSize, final String name)
+	{
+		this(preferredSize, maxSize, name, null);
+	}
+	
+	public MessageList(final int preferredSize, final int maxSize, final String name, final ToLongFunction<? super T> idFunction)
 	{
 		this.name = name;
 		this.preferredSize = preferredSize;
 		this.maxSize = maxSize;
-		this.messages = Collections.synchronizedList(new ArrayList<T>());
+		this.ringBuffer = new RingBufferList<T>(maxSize, idFunction);
+		this.messages = Collections.synchronizedList(ringBuffer);
 	}
 	
 	public void clear()
@@ -97,6 +110,55 @@ public class MessageList<T>
 		return removed;
 	}
 	
+	/**
+	 * Replaces all messages in the list (up to the maximum size).
+	 * 
+	 * @param newMessages The new messages, newest first
+	 */
+	public void replaceMessages(final List<T> newMessages)
+	{
+		synchronized (messages)
+		{
+			ringBuffer.clear();
+			
+			final int count = Math.min(newMessages.size(), maxSize);
+			for (int i = 0; i < count; i++)
+			{
+				ringBuffer.addLast(newMessages.get(i));
+			}
+		}
+	}
+	
+	/**
+	 * Gets the index of the message with the given ID. Requires the list to be created with an ID function.
+	 * 
+	 * @param id The message ID
+	 * 
+	 * @return The index of the message, or -1 if not in the list
+	 */
+	public int indexOf(final long id)
+	{
+		synchronized (messages)
+		{
+			return ringBuffer.indexOfKey(id);
+		}
+	}
+	
+	/**
+	 * Gets the message with the given ID. Requires the list to be created with an ID function.
+	 * 
+	 * @param id The message ID
+	 * 
+	 * @return The message, or null if not in the list
+	 */
+	public T getById(final long id)
+	{
+		synchronized (messages)
+		{
+			return ringBuffer.getByKey(id);
+		}
+	}
+	
 	public boolean isMaxSize()
 	{
 		synchronized (messages)
@@ -0,0 +1,358 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2015 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.spy.storage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import pl.baczkowicz.spy.messages.SharedPayload;
+
+/**
+ * Off-heap storage for message payloads, so that large message stores don't
+ * keep all the payloads on the heap (and the garbage collector doesn't have
+ * to walk through them).
+ *
+ * Payloads are written one after another into a direct buffer used as a
+ * ring. As messages are mostly removed oldest first, space is reclaimed from
+ * the oldest allocation onwards - if an allocation in the middle is released,
+ * its space gets reused once all older allocations have been released too.
+ * If there is no space for a payload, it is not stored (and should be kept
+ * on the heap instead).
+ *
+ * An allocation can be shared by a number of messages (e.g. copies of the
+ * same message in different stores) - it is released once all of them have
+ * released it.
+ *
+ * Payloads read recently are kept on the heap (with their decoded strings) in
+ * a small LRU cache, so that a message being displayed, searched or formatted
+ * doesn't need to be copied out and decoded on every access.
+ *
+ * All methods are thread-safe.
+ */
+public class PayloadArena
+{
+	/** Number of recently read payloads kept on the heap. */
+	public static final int VIEW_CACHE_SIZE = 256;
+
+	/** The off-heap buffer. */
+	private final ByteBuffer buffer;
+
+	/** Size of the buffer. */
+	private final int capacity;
+
+	/** Live allocations, oldest first. */
+	private final Deque<Allocation> allocations = new ArrayDeque<>();
+
+	/** Logical position of the next allocation (never wraps). */
+	private long head;
+
+	/** Logical position of the oldest live allocation (never wraps). */
+	private long tail;
+
+	/** Number of bytes taken by stored payloads. */
+	private long storedBytes;
+
+	/** Recently read payloads, least recently used first. */
+	private final Map<Allocation, SharedPayload> views = new LinkedHashMap<Allocation, SharedPayload>(16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Allocation, SharedPayload> eldest)
+		{
+			return size() > VIEW_CACHE_SIZE;
+		}
+	};
+
+	/**
+	 * A payload stored in the arena.
+	 */
+	public static final class Allocation
+	{
+		/** Logical position where the allocation ends. */
+		private final long end;
+
+		/** Offset of the payload in the buffer. */
+		private final int offset;
+
+		/** Length of the payload. */
+		private final int length;
+
+		/** Number of messages using the allocation. */
+		private int references = 1;
+
+		/** Whether the allocation has been released. */
+		private boolean released;
+
+		private Allocation(final long end, final int offset, final int length)
+		{
+			this.end = end;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		/**
+		 * Gets the length of the stored payload.
+		 *
+		 * @return Payload length in bytes
+		 */
+		public int getLength()
+		{
+			return length;
+		}
+	}
+
+	/**
+	 * Creates the arena.
+	 *
+	 * @param capacity Size of the off-heap buffer in bytes
+	 */
+	public PayloadArena(final int capacity)
+	{
+		if (capacity < 1)
+		{
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+
+		this.capacity = capacity;
+		this.buffer = ByteBuffer.allocateDirect(capacity);
+	}
+
+	/**
+	 * Stores the given payload.
+	 *
+	 * @param payload The payload to store
+	 *
+	 * @return The allocation, or null if there is not enough space
+	 */
+	public synchronized Allocation store(final byte[] payload)
+	{
+		if (allocations.isEmpty())
+		{
+			// Nothing live - start from the beginning of the buffer
+			head = 0;
+			tail = 0;
+		}
+
+		final int length = payload.length;
+		int offset = (int) (head % capacity);
+
+		// Payloads are never split - if it doesn't fit before the end of the buffer, skip to the beginning
+		final int padding = offset + length > capacity ? capacity - offset : 0;
+
+		if (length == 0 || padding + length > capacity - (head - tail))
+		{
+			return null;
+		}
+
+		if (padding > 0)
+		{
+			offset = 0;
+		}
+
+		final Allocation allocation = new Allocation(head + padding + length, offset, length);
+
+		buffer.position(offset);
+		buffer.put(payload);
+
+		allocations.addLast(allocation);
+		head = allocation.end;
+		storedBytes = storedBytes + length;
+
+		return allocation;
+	}
+
+	/**
+	 * Reads a copy of the given payload.
+	 *
+	 * @param allocation Where the payload is stored
+	 *
+	 * @return The payload, or null if the allocation has been released
+	 */
+	public synchronized byte[] read(final Allocation allocation)
+	{
+		if (allocation.released)
+		{
+			return null;
+		}
+
+		final byte[] payload = new byte[allocation.length];
+
+		buffer.position(allocation.offset);
+		buffer.get(payload);
+
+		return payload;
+	}
+
+	/**
+	 * Gets the given payload (with its decoded string) as a heap copy, shared
+	 * by all readers for as long as it stays in the cache of recently read
+	 * payloads.
+	 *
+	 * @param allocation Where the payload is stored
+	 *
+	 * @return The payload, or null if the allocation has been released
+	 */
+	public synchronized SharedPayload readShared(final Allocation allocation)
+	{
+		SharedPayload view = views.get(allocation);
+
+		if (view == null)
+		{
+			final byte[] payload = read(allocation);
+
+			if (payload == null)
+			{
+				return null;
+			}
+
+			view = new SharedPayload(payload);
+			views.put(allocation, view);
+		}
+
+		return view;
+	}
+
+	/**
+	 * Gets the given payload only if it is in the cache of recently read payloads.
+	 *
+	 * @param allocation Where the payload is stored
+	 *
+	 * @return The payload, or null if not cached
+	 */
+	public synchronized SharedPayload getCachedView(final Allocation allocation)
+	{
+		return views.get(allocation);
+	}
+
+	/**
+	 * Takes another reference to the given allocation.
+	 *
+	 * @param allocation The allocation to share
+	 *
+	 * @return True if successful; false if the allocation has already been released
+	 */
+	public synchronized boolean retain(final Allocation allocation)
+	{
+		if (allocation.released)
+		{
+			return false;
+		}
+
+		allocation.references++;
+		return true;
+	}
+
+	/**
+	 * Releases a reference to the given allocation. Once there are no more
+	 * references, its space can be reused.
+	 *
+	 * @param allocation The allocation to release
+	 */
+	public synchronized void release(final Allocation allocation)
+	{
+		if (allocation.released)
+		{
+			return;
+		}
+
+		allocation.references--;
+		if (allocation.references > 0)
+		{
+			return;
+		}
+
+		allocation.released = true;
+		storedBytes = storedBytes - allocation.length;
+		views.remove(allocation);
+
+		// Reclaim space from the oldest allocation onwards
+		while (!allocations.isEmpty() && allocations.peekFirst().released)
+		{
+			tail = allocations.pollFirst().end;
+		}
+
+		if (allocations.isEmpty())
+		{
+			tail = head;
+		}
+	}
+
+	/**
+	 * Releases all allocations.
+	 */
+	public synchronized void clear()
+	{
+		for (final Allocation allocation : allocations)
+		{
+			allocation.released = true;
+		}
+
+		allocations.clear();
+		views.clear();
+		head = 0;
+		tail = 0;
+		storedBytes = 0;
+	}
+
+	/**
+	 * Gets the size of the off-heap buffer.
+	 *
+	 * @return Capacity in bytes
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * Gets the number of bytes that cannot be reused yet (including any
+	 * released allocations waiting for older ones and padding).
+	 *
+	 * @return Used space in bytes
+	 */
+	public synchronized long getUsedSpace()
+	{
+		return head - tail;
+	}
+
+	/**
+	 * Gets the number of bytes taken by stored payloads.
+	 *
+	 * @return Stored bytes
+	 */
+	public synchronized long getStoredBytes()
+	{
+		return storedBytes;
+	}
+
+	/**
+	 * Gets the number of live allocations (including released ones waiting for older ones).
+	 *
+	 * @return Number of allocations
+	 */
+	public synchronized int getAllocationCount()
+	{
+		return allocations.size();
+	}
+}
@@ -0,0 +1,400 @@
+/***********************************************************************************
+ *
+ * Copyright (c) 2014 Kamil Baczkowicz
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ *
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *
+ */
+package pl.baczkowicz.spy.storage;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.function.ToLongFunction;
+
+/**
+ * Fixed-capacity list backed by a circular array. Index 0 is the head of the
+ * list (in the message store that's the newest message).
+ *
+ * Adding or removing at either end and random access are O(1). Adding or
+ * removing in the middle shifts the shorter side of the buffer. The backing
+ * array grows on demand up to the capacity, so large limits don't cost memory
+ * until they are actually used.
+ *
+ * Optionally, elements can be indexed by a key (e.g. the message ID), so that
+ * the index of an element can be found in O(1). Each element gets a sequence
+ * number, which only changes when the element is shifted, so the key index is
+ * maintained at no more cost than the list itself. The index is kept in
+ * primitive arrays, so indexing doesn't allocate per element either.
+ *
+ * This class is not synchronized.
+ */
+public class RingBufferList<T> extends AbstractList<T> implements RandomAccess
+{
+	/** Initial size of the backing array. */
+	private static final int INITIAL_ARRAY_SIZE = 16;
+
+	/** Maximum number of elements. */
+	private final int capacity;
+
+	/** Backing array. */
+	private Object[] elements;
+
+	/** Position of the element with index 0. */
+	private int head;
+
+	/** Number of elements. */
+	private int size;
+
+	/** Gets the key of an element (null if elements are not indexed). */
+	private final ToLongFunction<? super T> keyFunction;
+
+	/** Key to sequence number (null if elements are not indexed). */
+	private final LongIndexMap keyIndex;
+
+	/** Sequence number of the element with index 0. */
+	private long headSequence;
+
+	/**
+	 * Creates the list with the given capacity.
+	 *
+	 * @param capacity Maximum number of elements the list can hold
+	 */
+	public RingBufferList(final int capacity)
+	{
+		this(capacity, null);
+	}
+
+	/**
+	 * Creates the list with the given capacity, indexing elements by the given key.
+	 *
+	 * @param capacity Maximum number of elements the list can hold
+	 * @param keyFunction Gets the key of an element (null if elements shouldn't be indexed)
+	 */
+	public RingBufferList(final int capacity, final ToLongFunction<? super T> keyFunction)
+	{
+		if (capacity < 0)
+		{
+			throw new IllegalArgumentException("Capacity cannot be negative: " + capacity);
+		}
+
+		this.capacity = capacity;
+		this.elements = new Object[Math.min(capacity, INITIAL_ARRAY_SIZE)];
+		this.keyFunction = keyFunction;
+		this.keyIndex = keyFunction != null ? new LongIndexMap() : null;
+	}
+
+	/**
+	 * Adds the element at the start of the list.
+	 *
+	 * @param element The element to add
+	 */
+	public void addFirst(final T element)
+	{
+		ensureSpace();
+		head = decrement(head);
+		headSequence--;
+		elements[head] = element;
+		indexElement(element, headSequence);
+		size++;
+		modCount++;
+	}
+
+	/**
+	 * Adds the element at the end of the list.
+	 *
+	 * @param element The element to add
+	 */
+	public void addLast(final T element)
+	{
+		ensureSpace();
+		elements[position(size)] = element;
+		indexElement(element, headSequence + size);
+		size++;
+		modCount++;
+	}
+
+	/**
+	 * Removes the first element of the list.
+	 *
+	 * @return The removed element
+	 */
+	public T removeFirst()
+	{
+		return remove(0);
+	}
+
+	/**
+	 * Removes the last element of the list.
+	 *
+	 * @return The removed element
+	 */
+	public T removeLast()
+	{
+		return remove(size - 1);
+	}
+
+	@Override
+	public T get(final int index)
+	{
+		checkIndex(index);
+		return elementAt(position(index));
+	}
+
+	@Override
+	public T set(final int index, final T element)
+	{
+		checkIndex(index);
+
+		final int position = position(index);
+		final T previous = elementAt(position);
+		elements[position] = element;
+		unindexElement(previous, headSequence + index);
+		indexElement(element, headSequence + index);
+
+		return previous;
+	}
+
+	@Override
+	public void add(final int index, final T element)
+	{
+		if (index < 0 || index > size)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+
+		if (index == 0)
+		{
+			addFirst(element);
+			return;
+		}
+
+		if (index == size)
+		{
+			addLast(element);
+			return;
+		}
+
+		ensureSpace();
+
+		if (index < size / 2)
+		{
+			// Move the head part one slot to the left
+			head = decrement(head);
+			headSequence--;
+			for (int i = 0; i < index; i++)
+			{
+				elements[position(i)] = elements[position(i + 1)];
+				indexElement(elementAt(position(i)), headSequence + i);
+			}
+		}
+		else
+		{
+			// Move the tail part one slot to the right
+			for (int i = size; i > index; i--)
+			{
+				elements[position(i)] = elements[position(i - 1)];
+				indexElement(elementAt(position(i)), headSequence + i);
+			}
+		}
+
+		elements[position(index)] = element;
+		indexElement(element, headSequence + index);
+		size++;
+		modCount++;
+	}
+
+	@Override
+	public T remove(final int index)
+	{
+		checkIndex(index);
+
+		final T removed = elementAt(position(index));
+		unindexElement(removed, headSequence + index);
+
+		if (index < size / 2)
+		{
+			// Close the gap by moving the head part one slot to the right
+			for (int i = index; i > 0; i--)
+			{
+				elements[position(i)] = elements[position(i - 1)];
+				indexElement(elementAt(position(i)), headSequence + i);
+			}
+			elements[head] = null;
+			head = increment(head);
+			headSequence++;
+		}
+		else
+		{
+			// Close the gap by moving the tail part one slot to the left
+			for (int i = index; i < size - 1; i++)
+			{
+				elements[position(i)] = elements[position(i + 1)];
+				indexElement(elementAt(position(i)), headSequence + i);
+			}
+			elements[position(size - 1)] = null;
+		}
+
+		size--;
+		modCount++;
+
+		return removed;
+	}
+
+	@Override
+	public void clear()
+	{
+		Arrays.fill(elements, null);
+		head = 0;
+		headSequence = 0;
+		size = 0;
+		if (keyIndex != null)
+		{
+			keyIndex.clear();
+		}
+		modCount++;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Gets the index of the element with the given key.
+	 *
+	 * @param key The key to look for
+	 *
+	 * @return The index, or -1 if there is no such element
+	 */
+	public int indexOfKey(final long key)
+	{
+		if (keyIndex == null)
+		{
+			throw new IllegalStateException("Elements are not indexed");
+		}
+
+		final long sequence = keyIndex.get(key);
+
+		return sequence != LongIndexMap.NO_VALUE ? (int) (sequence - headSequence) : -1;
+	}
+
+	/**
+	 * Gets the element with the given key.
+	 *
+	 * @param key The key to look for
+	 *
+	 * @return The element, or null if there is no such element
+	 */
+	public T getByKey(final long key)
+	{
+		final int index = indexOfKey(key);
+
+		return index >= 0 ? get(index) : null;
+	}
+
+	/**
+	 * Gets the maximum number of elements this list can hold.
+	 *
+	 * @return The capacity
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * Checks if the list has reached its capacity.
+	 *
+	 * @return True if no more elements can be added
+	 */
+	public boolean isFull()
+	{
+		return size >= capacity;
+	}
+
+	/**
+	 * Makes sure there is space for one more element, growing the backing array if required.
+	 */
+	private void ensureSpace()
+	{
+		if (size >= capacity)
+		{
+			throw new IllegalStateException("List full (capacity = " + capacity + ")");
+		}
+
+		if (size == elements.length)
+		{
+			final int newLength = (int) Math.min((long) capacity, Math.max(1, 2L * elements.length));
+			final Object[] newElements = new Object[newLength];
+
+			// Unwrap the elements, so that the head is at position 0
+			final int headPart = Math.min(size, elements.length - head);
+			System.arraycopy(elements, head, newElements, 0, headPart);
+			System.arraycopy(elements, 0, newElements, headPart, size - headPart);
+
+			elements = newElements;
+			head = 0;
+		}
+	}
+
+	private void indexElement(final T element, final long sequence)
+	{
+		if (keyIndex != null && element != null)
+		{
+			keyIndex.put(keyFunction.applyAsLong(element), sequence);
+		}
+	}
+
+	private void unindexElement(final T element, final long sequence)
+	{
+		if (keyIndex != null && element != null)
+		{
+			// Only remove the key if it still points at this element
+			keyIndex.remove(keyFunction.applyAsLong(element), sequence);
+		}
+	}
+
+	private void checkIndex(final int index)
+	{
+		if (index < 0 || index >= size)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+	}
+
+	private int position(final int index)
+	{
+		final int position = head + index;
+		return position < elements.length ? position : position - elements.length;
+	}
+
+	private int increment(final int position)
+	{
+		return position + 1 < elements.length ? position + 1 : 0;
+	}
+
+	private int decrement(final int position)
+	{
+		return position == 0 ? elements.length - 1 : position - 1;
+	}
+
+	@SuppressWarnings("unchecked")
+	private T elementAt(final int position)
+	{
+		return (T) elements[position];
+	}
+}
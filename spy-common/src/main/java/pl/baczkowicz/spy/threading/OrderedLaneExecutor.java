@@ -0,0 +1,443 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2015 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+
+package pl.baczkowicz.spy.threading;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.baczkowicz.spy.utils.ThreadingUtils;
+
+/**
+ * Runs tasks on the given executor in lanes identified by keys. Tasks with
+ * the same key run one at a time, in the order they were added; tasks with
+ * different keys can run in parallel.
+ * 
+ * Each lane holds a bounded number of tasks. When a lane is full, the
+ * caller either waits for space, or the new task or the oldest queued one is
+ * skipped (as configured). Skipped tasks, including any still queued when
+ * the executor rejects a lane (e.g. after shutdown), are passed to the
+ * given handler, so that the caller can clean up after them.
+ * 
+ * A lane runs a limited number of tasks in one go, and then gives way to
+ * other work waiting for the executor. Idle lanes are removed whenever a
+ * new lane gets created, so that lanes of keys no longer in use (e.g.
+ * replaced scripts) don't pile up.
+ * 
+ * @param <K> Type of the lane keys
+ * @param <T> Type of the tasks
+ */
+public class OrderedLaneExecutor<K, T extends Runnable>
+{
+	/** What to do when a lane is full. */
+	public enum OverflowPolicy
+	{
+		/** The caller waits for space in the lane. */
+		BLOCK,
+		
+		/** The new task is skipped. */
+		DROP_NEWEST,
+		
+		/** The oldest queued task is skipped to make space for the new one. */
+		DROP_OLDEST
+	}
+	
+	/** Diagnostic logger. */
+	private final static Logger logger = LoggerFactory.getLogger(OrderedLaneExecutor.class);
+	
+	/** Maximum number of tasks a lane runs before giving way. */
+	private final static int MAX_TASKS_PER_RUN = 100;
+	
+	/** Maximum time (in milliseconds) to wait for space in one go, before checking the lane is still running. */
+	private final static int MAX_WAIT_TIME = 10;
+	
+	/** The executor running the lanes. */
+	private final Executor executor;
+	
+	/** Maximum number of queued tasks in each lane. */
+	private final int laneSize;
+	
+	/** What to do when a lane is full. */
+	private final OverflowPolicy policy;
+	
+	/** Gets the skipped tasks (null if nothing to do). */
+	private final Consumer<T> skippedTaskHandler;
+	
+	/** Lanes, by key. */
+	private final Map<K, Lane> lanes = new ConcurrentHashMap<>();
+	
+	/** Number of skipped tasks. */
+	private final AtomicLong skippedTasks = new AtomicLong();
+	
+	/**
+	 * Creates an OrderedLaneExecutor.
+	 * 
+	 * @param executor The executor running the lanes
+	 * @param laneSize Maximum number of queued tasks in each lane
+	 * @param policy What to do when a lane is full
+	 * @param skippedTaskHandler Gets the skipped tasks (can be null)
+	 */
+	public OrderedLaneExecutor(final Executor executor, final int laneSize, final OverflowPolicy policy, 
+			final Consumer<T> skippedTaskHandler)
+	{
+		if (laneSize < 1)
+		{
+			throw new IllegalArgumentException("Lane size must be positive: " + laneSize);
+		}
+		
+		this.executor = executor;
+		this.laneSize = laneSize;
+		this.policy = policy;
+		this.skippedTaskHandler = skippedTaskHandler;
+	}
+	
+	/**
+	 * Adds the task to the lane with the given key. If the lane is full,
+	 * waits for space only with the BLOCK policy.
+	 * 
+	 * @param key Key of the lane
+	 * @param task The task to run
+	 * 
+	 * @return True if the task has been added; false if skipped straight away (lane full, or interrupted while waiting)
+	 */
+	public boolean execute(final K key, final T task)
+	{
+		while (true)
+		{
+			Lane lane = lanes.get(key);
+			
+			if (lane == null)
+			{
+				final Lane newLane = new Lane(key);
+				lane = lanes.putIfAbsent(key, newLane);
+				
+				if (lane == null)
+				{
+					lane = newLane;
+					removeIdleLanes(newLane);
+				}
+			}
+			
+			final Boolean added = lane.add(task);
+			
+			// Otherwise the lane has just been removed - try again with a new one
+			if (added != null)
+			{
+				return added;
+			}
+		}
+	}
+	
+	private void removeIdleLanes(final Lane newLane)
+	{
+		for (final Lane lane : lanes.values())
+		{
+			if (lane != newLane)
+			{
+				lane.removeIfIdle();
+			}
+		}
+	}
+	
+	/**
+	 * Checks if all lanes are empty and not running.
+	 * 
+	 * @return True if there is nothing to do
+	 */
+	public boolean isIdle()
+	{
+		for (final Lane lane : lanes.values())
+		{
+			if (!lane.isIdle())
+			{
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Waits until all lanes are idle, or the timeout expires.
+	 * 
+	 * @param timeout Maximum time to wait (in milliseconds)
+	 * 
+	 * @return True if all lanes are idle
+	 */
+	public boolean awaitIdle(final long timeout)
+	{
+		final long end = System.currentTimeMillis() + timeout;
+		
+		while (!isIdle())
+		{
+			if (System.currentTimeMillis() >= end || ThreadingUtils.sleep(10))
+			{
+				return isIdle();
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Gets the number of queued tasks in the lane with the given key.
+	 * 
+	 * @param key Key of the lane
+	 * 
+	 * @return Number of queued tasks (0 if no such lane)
+	 */
+	public int getQueuedTasks(final K key)
+	{
+		final Lane lane = lanes.get(key);
+		
+		return lane != null ? lane.queue.size() : 0;
+	}
+	
+	/**
+	 * Gets the number of lanes.
+	 * 
+	 * @return Number of lanes (including idle ones not removed yet)
+	 */
+	public int getLaneCount()
+	{
+		return lanes.size();
+	}
+	
+	/**
+	 * Gets the number of skipped tasks.
+	 * 
+	 * @return Number of tasks skipped so far
+	 */
+	public long getSkippedTasks()
+	{
+		return skippedTasks.get();
+	}
+	
+	private void skipped(final T task)
+	{
+		skippedTasks.incrementAndGet();
+		
+		if (skippedTaskHandler != null)
+		{
+			try
+			{
+				skippedTaskHandler.accept(task);
+			}
+			catch (RuntimeException e)
+			{
+				logger.error("Cannot handle skipped task", e);
+			}
+		}
+	}
+	
+	/**
+	 * Queue of tasks for one key. Scheduled on the executor only when it has
+	 * tasks and isn't already scheduled or running.
+	 */
+	private final class Lane implements Runnable
+	{
+		/** Key of the lane. */
+		private final K key;
+		
+		/** Queued tasks. */
+		private final BlockingQueue<T> queue = new ArrayBlockingQueue<>(laneSize);
+		
+		/** Whether the lane is scheduled or running. */
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+		
+		/** Whether the lane has been removed (guarded by the lane's lock). */
+		private boolean removed;
+		
+		private Lane(final K key)
+		{
+			this.key = key;
+		}
+		
+		/**
+		 * Adds the task to the queue, applying the overflow policy.
+		 * 
+		 * @return True if added; false if skipped; null if the lane has been removed
+		 */
+		private Boolean add(final T task)
+		{
+			List<T> skippedTasks = null;
+			boolean added;
+			
+			synchronized (this)
+			{
+				if (removed)
+				{
+					return null;
+				}
+				
+				added = queue.offer(task);
+				
+				if (!added && OverflowPolicy.BLOCK.equals(policy))
+				{
+					try
+					{
+						while (!added)
+						{
+							// Make sure the lane is running (or gets drained if it can't)
+							schedule();
+							wait(MAX_WAIT_TIME);
+							
+							if (removed)
+							{
+								return null;
+							}
+							added = queue.offer(task);
+						}
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+					}
+				}
+				else if (!added && OverflowPolicy.DROP_OLDEST.equals(policy))
+				{
+					skippedTasks = new ArrayList<>();
+					while (!added)
+					{
+						final T oldest = queue.poll();
+						if (oldest != null)
+						{
+							skippedTasks.add(oldest);
+						}
+						added = queue.offer(task);
+					}
+				}
+			}
+			
+			// Handle skipped tasks without holding the lock
+			if (skippedTasks != null)
+			{
+				skippedTasks.forEach(OrderedLaneExecutor.this::skipped);
+			}
+			else if (!added)
+			{
+				skipped(task);
+			}
+			
+			schedule();
+			return added;
+		}
+		
+		/**
+		 * Removes the lane if it is empty and not running. Tasks added
+		 * afterwards go to a new lane.
+		 */
+		private void removeIfIdle()
+		{
+			synchronized (this)
+			{
+				if (!removed && isIdle())
+				{
+					removed = true;
+					lanes.remove(key, this);
+				}
+			}
+		}
+		
+		private void schedule()
+		{
+			if (!queue.isEmpty() && scheduled.compareAndSet(false, true))
+			{
+				try
+				{
+					executor.execute(this);
+				}
+				catch (RejectedExecutionException e)
+				{
+					logger.debug("Cannot run lane - skipping {} queued task(s)", queue.size(), e);
+					
+					// Nothing would take the tasks off otherwise
+					T task;
+					while ((task = queue.poll()) != null)
+					{
+						skipped(task);
+					}
+					scheduled.set(false);
+					
+					// Tasks might have been added while draining
+					schedule();
+				}
+			}
+		}
+		
+		@Override
+		public void run()
+		{
+			try
+			{
+				for (int i = 0; i < MAX_TASKS_PER_RUN; i++)
+				{
+					final T task = queue.poll();
+					if (task == null)
+					{
+						break;
+					}
+					
+					try
+					{
+						task.run();
+					}
+					catch (RuntimeException e)
+					{
+						logger.error("Task failed", e);
+					}
+				}
+			}
+			finally
+			{
+				scheduled.set(false);
+				
+				// Tasks might have been added after the last poll, or there are more to do
+				schedule();
+				
+				if (OverflowPolicy.BLOCK.equals(policy))
+				{
+					synchronized (this)
+					{
+						// Wake up callers waiting for space
+						notifyAll();
+					}
+				}
+			}
+		}
+		
+		private boolean isIdle()
+		{
+			return !scheduled.get() && queue.isEmpty();
+		}
+	}
+}
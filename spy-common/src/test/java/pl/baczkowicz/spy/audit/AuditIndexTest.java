@@ -0,0 +1,120 @@
+package pl.baczkowicz.spy.audit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import pl.baczkowicz.spy.exceptions.SpyException;
+import pl.baczkowicz.spy.messages.BaseMessage;
+
+public class AuditIndexTest extends TestCase
+{
+	/** Lines in the "time topic payload" format. */
+	private final IAuditLineDecoder decoder = line ->
+	{
+		final String[] parts = line.split(" ");
+		
+		if (parts.length != 3)
+		{
+			throw new SpyException("Invalid line: " + line);
+		}
+		
+		return new BaseMessage(0, parts[1], parts[2], new Date(Long.parseLong(parts[0])));
+	};
+	
+	private File createLog(final int count) throws IOException
+	{
+		final File file = File.createTempFile("audit", ".messages");
+		file.deleteOnExit();
+		AuditIndex.getIndexFile(file).deleteOnExit();
+		
+		final List<String> lines = new ArrayList<>();
+		for (int i = 0; i < count; i++)
+		{
+			// Every 10th message is logged a bit late
+			final long time = i % 10 == 9 ? 1000 + i * 10 - 25 : 1000 + i * 10;
+			lines.add(time + " topic/" + (i % 3) + " payload" + i);
+			
+			if (i % 100 == 50)
+			{
+				lines.add("");
+			}
+		}
+		Files.write(file.toPath(), lines);
+		
+		return file;
+	}
+	
+	@Test
+	public void testBuildAndReuse() throws IOException, SpyException
+	{
+		final File log = createLog(2500);
+		final AuditIndex index = AuditIndex.loadOrBuild(log, decoder, null);
+		
+		assertEquals(2500, index.getMessageCount());
+		assertEquals(3, index.getEntryCount());
+		assertEquals(3, index.getTopics().size());
+		assertEquals(834L, (long) index.getTopics().get("topic/0"));
+		assertTrue(AuditIndex.getIndexFile(log).exists());
+		
+		final AuditIndex read = AuditIndex.read(AuditIndex.getIndexFile(log));
+		assertTrue(read.isValidFor(log));
+		assertEquals(index.getMessageCount(), read.getMessageCount());
+		assertEquals(index.getTopics(), read.getTopics());
+		for (int i = 0; i < index.getEntryCount(); i++)
+		{
+			assertEquals(index.getOffset(i), read.getOffset(i));
+			assertEquals(index.getTime(i), read.getTime(i));
+		}
+		
+		// Changed log - the index gets rebuilt
+		Files.write(log.toPath(), "1 a b\n".getBytes(), StandardOpenOption.APPEND);
+		assertFalse(read.isValidFor(log));
+		assertEquals(2501, AuditIndex.loadOrBuild(log, decoder, null).getMessageCount());
+	}
+	
+	@Test
+	public void testSeek() throws IOException, SpyException
+	{
+		final File log = createLog(2500);
+		final StreamedAuditReader reader = new StreamedAuditReader();
+		reader.openAuditFile(log, decoder);
+		
+		try
+		{
+			assertEquals(2500, reader.getCount());
+			assertTrue(reader.getNextLine().endsWith("payload0"));
+			
+			for (final long number : new long[] {1999, 0, 1000, 1001, 2499, 151})
+			{
+				assertEquals(number, reader.seekToMessage(number));
+				assertTrue(reader.getNextLine().endsWith(" payload" + number));
+			}
+			
+			// Past the end
+			assertEquals(2500, reader.seekToMessage(3000));
+			assertFalse(reader.hasNext());
+			
+			// Exact time, time between messages, and a late message
+			assertEquals(1500, reader.seekToTime(1000 + 1500 * 10));
+			assertEquals(1501, reader.seekToTime(1000 + 1500 * 10 + 1));
+			assertEquals(1001, reader.seekToTime(1000 + 1001 * 10));
+			assertTrue(reader.getNextLine().endsWith(" payload1001"));
+			
+			assertEquals(0, reader.seekToTime(0));
+			assertEquals(2500, reader.seekToTime(Long.MAX_VALUE));
+		}
+		finally
+		{
+			reader.closeAuditFile();
+		}
+	}
+}
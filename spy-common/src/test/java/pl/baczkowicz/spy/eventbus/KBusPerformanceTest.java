@@ -0,0 +1,87 @@
+package pl.baczkowicz.spy.eventbus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import pl.baczkowicz.spy.eventbus.sample.SampleCountChangeEvent;
+import pl.baczkowicz.spy.eventbus.sample.SampleInfoChangeEvent;
+
+/**
+ * Measures publishing throughput - from one thread, and from a number of
+ * threads at the same time (as with message handlers of many connections).
+ */
+public class KBusPerformanceTest
+{
+	private static final int EVENTS_PER_THREAD = 2000000;
+	
+	private static final int WARM_UP_ROUNDS = 3;
+	
+	@Ignore
+	@Test
+	public void measurePublishing() throws InterruptedException
+	{
+		final IKBus eventBus = new KBus();
+		final LongAdder received = new LongAdder();
+		
+		// A mix of consumers: matching by type, by supertype, with and without filters
+		for (int i = 0; i < 10; i++)
+		{
+			eventBus.subscribe(new Object(), (Consumer<SampleCountChangeEvent>) event -> received.increment(), SampleCountChangeEvent.class);
+			eventBus.subscribe(new Object(), (Consumer<FilterableEvent>) event -> received.increment(), FilterableEvent.class);
+			eventBus.subscribeWithFilterOnly(new Object(), (Consumer<SampleInfoChangeEvent>) event -> received.increment(), 
+					SampleInfoChangeEvent.class, "filter" + i);
+		}
+		
+		for (final int threads : new int[] { 1, 2, 4, 8 })
+		{
+			for (int i = 0; i < WARM_UP_ROUNDS; i++)
+			{
+				publish(eventBus, threads);
+			}
+			
+			final long startTime = System.nanoTime();
+			publish(eventBus, threads);
+			final long totalTime = System.nanoTime() - startTime;
+			
+			final long events = (long) threads * EVENTS_PER_THREAD;
+			System.out.println(threads + " thread(s): " + events + " events in " + (totalTime / 1000000) + " ms; " 
+					+ (events * 1000000000L / totalTime) + " events/s; avg = " + (totalTime * threads / events) + " ns per event per thread");
+		}
+		
+		System.out.println("Received = " + received.sum());
+	}
+	
+	private static void publish(final IKBus eventBus, final int threadCount) throws InterruptedException
+	{
+		final SampleCountChangeEvent countEvent = new SampleCountChangeEvent("count", 1);
+		final SampleInfoChangeEvent infoEvent = new SampleInfoChangeEvent("info", 1);
+		infoEvent.setFilter("filter1");
+		
+		final List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < threadCount; i++)
+		{
+			threads.add(new Thread(() -> 
+			{
+				for (int j = 0; j < EVENTS_PER_THREAD; j++)
+				{
+					eventBus.publish((j & 1) == 0 ? countEvent : infoEvent);
+				}
+			}));
+		}
+		
+		for (final Thread thread : threads)
+		{
+			thread.start();
+		}
+		
+		for (final Thread thread : threads)
+		{
+			thread.join();
+		}
+	}
+}
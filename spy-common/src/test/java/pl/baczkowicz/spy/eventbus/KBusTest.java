@@ -1,5 +1,8 @@
 package pl.baczkowicz.spy.eventbus;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 import junit.framework.TestCase;
@@ -79,4 +82,65 @@ public class KBusTest extends TestCase
 		
 		assertEquals(1, subscriber.getMessageCount());
 	}
+	
+	@Test
+	public void testExecutor()
+	{
+		final IKBus eventBus = new KBus();
+		final SampleSubscriber subscriber = new SampleSubscriber();
+		final List<Runnable> tasks = new ArrayList<>();
+		
+		eventBus.subscribe(subscriber, subscriber::onAnyEvent, SampleInfoChangeEvent.class, tasks::add);
+		eventBus.publish(new SampleInfoChangeEvent("hello", 51));
+		
+		// Not notified until the executor runs the task
+		assertEquals(0, subscriber.getMessageCount());
+		assertEquals(1, tasks.size());
+		
+		tasks.get(0).run();
+		assertEquals(1, subscriber.getMessageCount());
+	}
+	
+	@Test
+	public void testPublishWhileSubscribing() throws InterruptedException
+	{
+		final IKBus eventBus = new KBus();
+		final AtomicLong received = new AtomicLong();
+		final Object subscriber = new Object();
+		eventBus.subscribe(subscriber, (Consumer<SampleCountChangeEvent>) event -> received.incrementAndGet(), SampleCountChangeEvent.class);
+		
+		final int threadCount = 4;
+		final int events = 100000;
+		final List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < threadCount; i++)
+		{
+			threads.add(new Thread(() -> 
+			{
+				for (int j = 0; j < events; j++)
+				{
+					eventBus.publish(new SampleCountChangeEvent("hello", j));
+				}
+			}));
+		}
+		
+		for (final Thread thread : threads)
+		{
+			thread.start();
+		}
+		
+		// Other subscribers come and go in the meantime
+		final SampleSubscriber otherSubscriber = new SampleSubscriber();
+		for (int i = 0; i < 1000; i++)
+		{
+			eventBus.subscribe(otherSubscriber, otherSubscriber::onAnyEvent, Object.class);
+			eventBus.unsubscribe(otherSubscriber);
+		}
+		
+		for (final Thread thread : threads)
+		{
+			thread.join();
+		}
+		
+		assertEquals(threadCount * events, received.get());
+	}
 }
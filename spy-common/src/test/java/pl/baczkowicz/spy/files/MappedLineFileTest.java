@@ -0,0 +1,43 @@
+package pl.baczkowicz.spy.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class MappedLineFileTest extends TestCase
+{
+	@Test
+	public void testLinesAcrossRegions() throws IOException
+	{
+		final File file = File.createTempFile("mapped", ".txt");
+		file.deleteOnExit();
+		Files.write(file.toPath(), "first line\r\n\nsecond\nthird line, last\nóą unterminated".getBytes(StandardCharsets.UTF_8));
+		
+		// Small regions, so that lines span a number of them
+		try (final MappedLineFile lines = new MappedLineFile(file, StandardCharsets.UTF_8, null, 7))
+		{
+			assertEquals(4, lines.getLineCount());
+			assertEquals("first line", lines.getLine(0));
+			assertEquals("second", lines.getLine(1));
+			assertEquals("third line, last", lines.getLine(2));
+			assertEquals("óą unterminated", lines.getLine(3));
+		}
+	}
+	
+	@Test
+	public void testEmptyFile() throws IOException
+	{
+		final File file = File.createTempFile("mapped", ".txt");
+		file.deleteOnExit();
+		
+		try (final MappedLineFile lines = new MappedLineFile(file, StandardCharsets.UTF_8, null))
+		{
+			assertEquals(0, lines.getLineCount());
+		}
+	}
+}
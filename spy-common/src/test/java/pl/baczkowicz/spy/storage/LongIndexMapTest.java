@@ -0,0 +1,53 @@
+package pl.baczkowicz.spy.storage;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class LongIndexMapTest extends TestCase
+{
+	@Test
+	public void testSameAsHashMap()
+	{
+		final Random random = new Random(3);
+		final LongIndexMap map = new LongIndexMap();
+		final Map<Long, Long> reference = new HashMap<Long, Long>();
+
+		for (int i = 0; i < 100000; i++)
+		{
+			// Small key range, so that there are plenty of collisions and removals
+			final long key = random.nextInt(500) - 250;
+			final int operation = random.nextInt(3);
+
+			if (operation == 0)
+			{
+				map.put(key, i);
+				reference.put(key, (long) i);
+			}
+			else if (operation == 1)
+			{
+				final Long value = reference.get(key);
+				final long expected = value != null && random.nextBoolean() ? value : i;
+				assertEquals(reference.remove(key, expected), map.remove(key, expected));
+			}
+			else if (random.nextInt(1000) == 0)
+			{
+				map.clear();
+				reference.clear();
+			}
+
+			assertEquals(reference.size(), map.size());
+			final Long value = reference.get(key);
+			assertEquals(value != null ? value.longValue() : LongIndexMap.NO_VALUE, map.get(key));
+		}
+
+		for (final Map.Entry<Long, Long> entry : reference.entrySet())
+		{
+			assertEquals(entry.getValue().longValue(), map.get(entry.getKey()));
+		}
+	}
+}
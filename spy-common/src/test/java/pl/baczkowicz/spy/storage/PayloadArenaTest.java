@@ -0,0 +1,94 @@
+package pl.baczkowicz.spy.storage;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import pl.baczkowicz.spy.storage.PayloadArena.Allocation;
+
+public class PayloadArenaTest extends TestCase
+{
+	private static byte[] payload(final int length, final int value)
+	{
+		final byte[] payload = new byte[length];
+		Arrays.fill(payload, (byte) value);
+		return payload;
+	}
+
+	@Test
+	public void testStoreAndRead()
+	{
+		final PayloadArena arena = new PayloadArena(100);
+
+		final Allocation first = arena.store(payload(40, 1));
+		final Allocation second = arena.store(payload(40, 2));
+
+		assertTrue(Arrays.equals(payload(40, 1), arena.read(first)));
+		assertTrue(Arrays.equals(payload(40, 2), arena.read(second)));
+		assertEquals(80, arena.getStoredBytes());
+
+		// No space left
+		assertNull(arena.store(payload(40, 3)));
+
+		arena.release(first);
+		assertNull(arena.read(first));
+		assertEquals(40, arena.getStoredBytes());
+	}
+
+	@Test
+	public void testWrapAround()
+	{
+		final PayloadArena arena = new PayloadArena(100);
+
+		final Allocation first = arena.store(payload(40, 1));
+		final Allocation second = arena.store(payload(40, 2));
+		arena.release(first);
+
+		// Doesn't fit in the last 20 bytes, so goes to the beginning
+		final Allocation third = arena.store(payload(30, 3));
+		assertNotNull(third);
+		assertEquals(90, arena.getUsedSpace());
+		assertTrue(Arrays.equals(payload(40, 2), arena.read(second)));
+		assertTrue(Arrays.equals(payload(30, 3), arena.read(third)));
+
+		// Padding and third allocation still in use
+		assertNull(arena.store(payload(20, 4)));
+		arena.release(second);
+		assertNotNull(arena.store(payload(20, 4)));
+	}
+
+	@Test
+	public void testReleaseOutOfOrder()
+	{
+		final PayloadArena arena = new PayloadArena(100);
+
+		final Allocation first = arena.store(payload(50, 1));
+		final Allocation second = arena.store(payload(50, 2));
+
+		// Space of the second one can only be reused once the first one is released
+		arena.release(second);
+		assertNull(arena.store(payload(10, 3)));
+		assertEquals(2, arena.getAllocationCount());
+
+		arena.release(first);
+		assertEquals(0, arena.getAllocationCount());
+		assertNotNull(arena.store(payload(100, 3)));
+	}
+
+	@Test
+	public void testRecentlyReadCached()
+	{
+		final PayloadArena arena = new PayloadArena(100);
+
+		final Allocation first = arena.store(payload(10, 1));
+		assertNull(arena.getCachedView(first));
+		assertSame(arena.readShared(first), arena.readShared(first));
+		assertSame(arena.readShared(first), arena.getCachedView(first));
+
+		arena.release(first);
+		assertNull(arena.getCachedView(first));
+		assertNull(arena.readShared(first));
+	}
+}
@@ -0,0 +1,137 @@
+package pl.baczkowicz.spy.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class RingBufferListTest extends TestCase
+{
+	@Test
+	public void testNewestFirst()
+	{
+		final MessageList<Integer> list = new MessageList<Integer>(3, 5, "test");
+
+		for (int i = 1; i <= 5; i++)
+		{
+			assertNull(list.add(i));
+		}
+
+		// Store full - the oldest message should be evicted
+		assertEquals(Integer.valueOf(1), list.add(6));
+		assertEquals(Integer.valueOf(2), list.add(7));
+
+		assertEquals(5, list.getMessages().size());
+		assertEquals(Integer.valueOf(7), list.getMessages().get(0));
+		assertEquals(Integer.valueOf(3), list.getMessages().get(4));
+	}
+
+	@Test
+	public void testCapacity()
+	{
+		final RingBufferList<Integer> list = new RingBufferList<Integer>(2);
+		list.addFirst(1);
+		list.addFirst(2);
+
+		assertTrue(list.isFull());
+
+		try
+		{
+			list.addFirst(3);
+			fail("Expected the list to be full");
+		}
+		catch (IllegalStateException e)
+		{
+			// Expected
+		}
+	}
+
+	@Test
+	public void testSameAsArrayList()
+	{
+		final Random random = new Random(1);
+		final RingBufferList<Integer> ring = new RingBufferList<Integer>(100);
+		final List<Integer> reference = new ArrayList<Integer>();
+
+		for (int i = 0; i < 20000; i++)
+		{
+			final int operation = random.nextInt(10);
+
+			if (reference.size() < 100 && operation < 5)
+			{
+				final int index = operation < 3 ? 0 : random.nextInt(reference.size() + 1);
+				ring.add(index, i);
+				reference.add(index, i);
+			}
+			else if (!reference.isEmpty() && operation < 9)
+			{
+				final int index = operation < 7 ? reference.size() - 1 : random.nextInt(reference.size());
+				assertEquals(reference.remove(index), ring.remove(index));
+			}
+			else if (operation == 9 && random.nextInt(50) == 0)
+			{
+				ring.clear();
+				reference.clear();
+			}
+
+			assertEquals(reference, ring);
+		}
+	}
+
+	@Test
+	public void testKeyIndex()
+	{
+		final Random random = new Random(2);
+		final RingBufferList<Integer> ring = new RingBufferList<Integer>(50, Integer::longValue);
+		final List<Integer> reference = new ArrayList<Integer>();
+
+		for (int i = 0; i < 20000; i++)
+		{
+			final int operation = random.nextInt(10);
+
+			if (reference.size() < 50 && operation < 5)
+			{
+				final int index = operation < 3 ? 0 : random.nextInt(reference.size() + 1);
+				ring.add(index, i);
+				reference.add(index, i);
+			}
+			else if (!reference.isEmpty() && operation < 8)
+			{
+				final int index = operation < 7 ? reference.size() - 1 : random.nextInt(reference.size());
+				final Integer removed = reference.remove(index);
+				assertEquals(removed, ring.remove(index));
+				assertEquals(-1, ring.indexOfKey(removed));
+			}
+			else if (!reference.isEmpty() && operation == 8)
+			{
+				final int index = random.nextInt(reference.size());
+				ring.set(index, -i);
+				reference.set(index, -i);
+			}
+			else if (operation == 9 && random.nextInt(50) == 0)
+			{
+				ring.clear();
+				reference.clear();
+			}
+
+			for (int j = 0; j < reference.size(); j++)
+			{
+				assertEquals(j, ring.indexOfKey(reference.get(j)));
+			}
+		}
+
+		// Removed elements are no longer indexed
+		final MessageList<Integer> list = new MessageList<Integer>(3, 3, "test", Integer::longValue);
+		for (int i = 1; i <= 4; i++)
+		{
+			list.add(i);
+		}
+		assertEquals(-1, list.indexOf(1));
+		assertNull(list.getById(1));
+		assertEquals(0, list.indexOf(4));
+		assertEquals(Integer.valueOf(2), list.getById(2));
+	}
+}
@@ -0,0 +1,296 @@
+package pl.baczkowicz.spy.threading;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import pl.baczkowicz.spy.threading.OrderedLaneExecutor.OverflowPolicy;
+
+public class OrderedLaneExecutorTest extends TestCase
+{
+	@Test
+	public void testOrderWithinLanes() throws InterruptedException
+	{
+		final ExecutorService pool = Executors.newFixedThreadPool(4);
+		final OrderedLaneExecutor<Integer, Runnable> lanes = new OrderedLaneExecutor<Integer, Runnable>(pool, 10000, OverflowPolicy.DROP_NEWEST, null);
+		final List<List<Integer>> results = new ArrayList<>();
+
+		for (int lane = 0; lane < 8; lane++)
+		{
+			results.add(new ArrayList<Integer>());
+		}
+
+		for (int i = 0; i < 10000; i++)
+		{
+			final int lane = i % 8;
+			final int value = i;
+
+			// Lists aren't thread-safe - only one task per lane runs at a time
+			assertTrue(lanes.execute(lane, () -> results.get(lane).add(value)));
+		}
+
+		assertTrue(lanes.awaitIdle(10000));
+		pool.shutdown();
+
+		for (int lane = 0; lane < 8; lane++)
+		{
+			assertEquals(1250, results.get(lane).size());
+			for (int i = 0; i < 1250; i++)
+			{
+				assertEquals(lane + i * 8, results.get(lane).get(i).intValue());
+			}
+		}
+	}
+
+	@Test
+	public void testSlowLaneDoesntBlockOthers() throws InterruptedException
+	{
+		final ExecutorService pool = Executors.newFixedThreadPool(2);
+		final OrderedLaneExecutor<String, Runnable> lanes = new OrderedLaneExecutor<String, Runnable>(pool, 100, OverflowPolicy.DROP_NEWEST, null);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch fastDone = new CountDownLatch(100);
+
+		lanes.execute("slow", () -> 
+		{
+			try
+			{
+				release.await();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		for (int i = 0; i < 100; i++)
+		{
+			lanes.execute("fast", fastDone::countDown);
+		}
+
+		assertTrue(fastDone.await(10, TimeUnit.SECONDS));
+		assertFalse(lanes.isIdle());
+
+		release.countDown();
+		assertTrue(lanes.awaitIdle(10000));
+		pool.shutdown();
+	}
+
+	@Test
+	public void testRejectWhenFull()
+	{
+		final List<Runnable> scheduled = new ArrayList<>();
+		final List<Runnable> skipped = new ArrayList<>();
+		final OrderedLaneExecutor<String, Runnable> lanes = new OrderedLaneExecutor<String, Runnable>(scheduled::add, 2, OverflowPolicy.DROP_NEWEST, skipped::add);
+		final List<Integer> results = new ArrayList<>();
+		final Runnable third = () -> results.add(3);
+
+		assertTrue(lanes.execute("a", () -> results.add(1)));
+		assertTrue(lanes.execute("a", () -> results.add(2)));
+		assertFalse(lanes.execute("a", third));
+		assertTrue(lanes.execute("b", () -> results.add(4)));
+
+		// Each lane scheduled once
+		assertEquals(2, scheduled.size());
+		assertEquals(1, lanes.getSkippedTasks());
+		assertEquals(1, skipped.size());
+		assertSame(third, skipped.get(0));
+		assertEquals(2, lanes.getQueuedTasks("a"));
+
+		for (final Runnable lane : scheduled)
+		{
+			lane.run();
+		}
+
+		assertEquals(3, results.size());
+		assertEquals(Integer.valueOf(1), results.get(0));
+		assertEquals(Integer.valueOf(2), results.get(1));
+		assertTrue(lanes.isIdle());
+	}
+
+	@Test
+	public void testDropOldestWhenFull()
+	{
+		final List<Runnable> scheduled = new ArrayList<>();
+		final List<Runnable> skipped = new ArrayList<>();
+		final OrderedLaneExecutor<String, Runnable> lanes = new OrderedLaneExecutor<String, Runnable>(scheduled::add, 2, OverflowPolicy.DROP_OLDEST, skipped::add);
+		final List<Integer> results = new ArrayList<>();
+		final Runnable first = () -> results.add(1);
+
+		assertTrue(lanes.execute("a", first));
+		assertTrue(lanes.execute("a", () -> results.add(2)));
+		assertTrue(lanes.execute("a", () -> results.add(3)));
+
+		assertEquals(1, lanes.getSkippedTasks());
+		assertSame(first, skipped.get(0));
+
+		scheduled.get(0).run();
+		assertEquals(2, results.size());
+		assertEquals(Integer.valueOf(2), results.get(0));
+		assertEquals(Integer.valueOf(3), results.get(1));
+	}
+
+	@Test
+	public void testRejectedLaneDrained()
+	{
+		final List<Runnable> skipped = new ArrayList<>();
+		final Executor rejecting = task -> 
+		{
+			throw new RejectedExecutionException("Shut down");
+		};
+		final OrderedLaneExecutor<String, Runnable> lanes = new OrderedLaneExecutor<String, Runnable>(rejecting, 1, OverflowPolicy.DROP_NEWEST, skipped::add);
+
+		// The lane doesn't stay full, so no tasks get stuck
+		for (int i = 0; i < 10; i++)
+		{
+			lanes.execute("a", () -> fail("Shouldn't run"));
+		}
+
+		assertEquals(10, skipped.size());
+		assertEquals(10, lanes.getSkippedTasks());
+		assertEquals(0, lanes.getQueuedTasks("a"));
+		assertTrue(lanes.isIdle());
+	}
+
+	@Test
+	public void testFullBlockingQueue() throws InterruptedException
+	{
+		// Tasks (and skipped tasks) wait for space in a small queue, as with the BLOCK ingest policy
+		final ExecutorService pool = Executors.newFixedThreadPool(2);
+		final ScheduledExecutorService consumerPool = Executors.newScheduledThreadPool(1);
+		final BlockingQueue<Integer> queue = new ArrayBlockingQueue<>(10);
+		final CountDownLatch consumed = new CountDownLatch(1000);
+
+		final OrderedLaneExecutor<Integer, QueuingTask> lanes = new OrderedLaneExecutor<Integer, QueuingTask>(pool, 10, OverflowPolicy.DROP_NEWEST, QueuingTask::run);
+
+		consumerPool.scheduleWithFixedDelay(() -> 
+		{
+			while (queue.poll() != null)
+			{
+				consumed.countDown();
+			}
+		}, 1, 1, TimeUnit.MILLISECONDS);
+
+		// Adding doesn't wait for the lanes
+		for (int i = 0; i < 1000; i++)
+		{
+			lanes.execute(i % 4, new QueuingTask(queue, i));
+		}
+
+		assertTrue(consumed.await(10, TimeUnit.SECONDS));
+		assertTrue(lanes.awaitIdle(10000));
+
+		pool.shutdown();
+		consumerPool.shutdown();
+	}
+
+	@Test
+	public void testBlockWhenFull() throws InterruptedException
+	{
+		final ExecutorService pool = Executors.newFixedThreadPool(1);
+		final OrderedLaneExecutor<String, Runnable> lanes = new OrderedLaneExecutor<String, Runnable>(pool, 2, OverflowPolicy.BLOCK, null);
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<Integer> results = new ArrayList<>();
+
+		lanes.execute("a", () -> 
+		{
+			try
+			{
+				release.await();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		// Waits for space in the lane
+		final Thread producer = new Thread(() -> 
+		{
+			for (int i = 0; i < 100; i++)
+			{
+				final int value = i;
+				assertTrue(lanes.execute("a", () -> results.add(value)));
+			}
+		});
+		producer.start();
+
+		producer.join(100);
+		assertTrue(producer.isAlive());
+
+		release.countDown();
+		producer.join(10000);
+		assertFalse(producer.isAlive());
+		assertTrue(lanes.awaitIdle(10000));
+		pool.shutdown();
+
+		// Nothing skipped, in order
+		assertEquals(0, lanes.getSkippedTasks());
+		assertEquals(100, results.size());
+		for (int i = 0; i < 100; i++)
+		{
+			assertEquals(i, results.get(i).intValue());
+		}
+	}
+
+	@Test
+	public void testIdleLanesRemoved()
+	{
+		final List<Runnable> scheduled = new ArrayList<>();
+		final OrderedLaneExecutor<Integer, Runnable> lanes = new OrderedLaneExecutor<Integer, Runnable>(scheduled::add, 10, OverflowPolicy.DROP_NEWEST, null);
+		final List<Integer> results = new ArrayList<>();
+
+		for (int i = 0; i < 100; i++)
+		{
+			final int value = i;
+			assertTrue(lanes.execute(i, () -> results.add(value)));
+			scheduled.remove(0).run();
+		}
+
+		// Only the last lane is kept
+		assertEquals(100, results.size());
+		assertEquals(1, lanes.getLaneCount());
+
+		// Busy lanes are kept
+		assertTrue(lanes.execute(100, () -> results.add(100)));
+		assertTrue(lanes.execute(101, () -> results.add(101)));
+		assertEquals(2, lanes.getLaneCount());
+	}
+
+	private static class QueuingTask implements Runnable
+	{
+		private final BlockingQueue<Integer> queue;
+
+		private final int value;
+
+		private QueuingTask(final BlockingQueue<Integer> queue, final int value)
+		{
+			this.queue = queue;
+			this.value = value;
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				queue.put(value);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}